@@ -5,7 +5,9 @@ import javax.swing.Timer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import damose.config.AppConstants;
+import damose.controller.LoadProgressListener;
 import damose.controller.MainController;
+import damose.controller.StaticLoadStage;
 import damose.database.DatabaseManager;
 import damose.database.SessionManager;
 import damose.model.ConnectionMode;
@@ -22,6 +24,9 @@ public class DamoseApp {
     private static final AtomicBoolean loadingFinalized = new AtomicBoolean(false);
     private static final AtomicBoolean appStarted = new AtomicBoolean(false);
     private static final AtomicBoolean rtReady = new AtomicBoolean(false);
+    private static volatile long rtWarmupStartedMillis;
+    private static boolean staticLoadDone;
+    private static Boolean pendingRtOutcome;
 
     /**
      * Returns the result of main.
@@ -58,6 +63,8 @@ public class DamoseApp {
         loadingFinalized.set(false);
         appStarted.set(false);
         rtReady.set(false);
+        staticLoadDone = false;
+        pendingRtOutcome = null;
         loadingDialog = new LoadingDialog(null);
         loadingDialog.setVisible(true);
 
@@ -70,8 +77,6 @@ public class DamoseApp {
                     loadingDialog.stepInitDone();
                     loadingDialog.stepStaticStart();
                     loadingDialog.stepStaticProgress("GTFS statico");
-                    loadingDialog.stepStaticDone(8000, 15000);
-                    loadingDialog.stepRTStart(AppConstants.RT_TIMEOUT_SECONDS);
                 });
 
                 startApplicationInBackground();
@@ -85,10 +90,20 @@ public class DamoseApp {
     }
 
     private static void startApplicationInBackground() {
-        SwingUtilities.invokeLater(() -> loadingDialog.stepAppStart());
         new Thread(() -> {
             try {
                 MainController controller = new MainController();
+                controller.setLoadProgressListener(new LoadProgressListener() {
+                    @Override
+                    public void onStageCompleted(StaticLoadStage stage, int completed, int total, long elapsedMillis) {
+                        loadingDialog.stepStaticStage(stage.label(), completed, total, elapsedMillis);
+                    }
+
+                    @Override
+                    public void onLoadCompleted(int stopsCount, int tripsCount, long elapsedMillis) {
+                        SwingUtilities.invokeLater(() -> onStaticLoadCompleted(stopsCount, tripsCount, elapsedMillis));
+                    }
+                });
                 controller.start();
                 appStarted.set(true);
                 tryFinalizeLoading();
@@ -104,7 +119,28 @@ public class DamoseApp {
         }, "AppStartThread").start();
     }
 
+    private static void onStaticLoadCompleted(int stopsCount, int tripsCount, long elapsedMillis) {
+        staticLoadDone = true;
+        loadingDialog.stepStaticDone(stopsCount, tripsCount, elapsedMillis);
+        if (pendingRtOutcome != null) {
+            applyRtOutcome(pendingRtOutcome);
+            return;
+        }
+        long waitedSeconds = (System.currentTimeMillis() - rtWarmupStartedMillis) / 1000L;
+        int remaining = (int) Math.max(1, AppConstants.RT_TIMEOUT_SECONDS - waitedSeconds);
+        loadingDialog.stepRTStart(remaining);
+    }
+
+    private static void applyRtOutcome(boolean success) {
+        if (success) {
+            loadingDialog.stepRTDone();
+        } else {
+            loadingDialog.stepRTTimeout();
+        }
+    }
+
     private static void startRealtimeWarmup() {
+        rtWarmupStartedMillis = System.currentTimeMillis();
         RealtimeService.setOnDataReceived(() -> markRtReady(true));
         RealtimeService.setMode(ConnectionMode.ONLINE);
         RealtimeService.startPolling();
@@ -124,10 +160,10 @@ public class DamoseApp {
             return;
         }
         SwingUtilities.invokeLater(() -> {
-            if (success) {
-                loadingDialog.stepRTDone();
+            if (staticLoadDone) {
+                applyRtOutcome(success);
             } else {
-                loadingDialog.stepRTTimeout();
+                pendingRtOutcome = success;
             }
         });
         tryFinalizeLoading();
@@ -141,6 +177,7 @@ public class DamoseApp {
             return;
         }
         SwingUtilities.invokeLater(() -> {
+            loadingDialog.stepAppStart();
             loadingDialog.stepAppDone();
             loadingDialog.setProgress(100, "Pronto!");
 
@@ -16,14 +16,25 @@ public final class AppConstants {
     public static final String TRIP_UPDATES_URL =
             "https://romamobilita.it/sites/default/files/rome_rtgtfs_trip_updates_feed.pb";
 
+    public static final String GTFS_STATIC_RESOURCE_DIR = "/gtfs_static/";
+    public static final String GTFS_SOURCE_PROPERTY = "damose.gtfs";
+    public static final String GTFS_SOURCE_ENV = "DAMOSE_GTFS";
     public static final String GTFS_STOPS_PATH = "/gtfs_static/stops.txt";
     public static final String GTFS_TRIPS_PATH = "/gtfs_static/trips.txt";
     public static final String GTFS_SHAPES_PATH = "/gtfs_static/shapes.txt";
     public static final String GTFS_STOP_TIMES_PATH = "/gtfs_static/stop_times.txt";
+    public static final String GTFS_CALENDAR_PATH = "/gtfs_static/calendar.txt";
     public static final String GTFS_CALENDAR_DATES_PATH = "/gtfs_static/calendar_dates.txt";
+    public static final String GTFS_ROUTES_PATH = "/gtfs_static/routes.txt";
+    public static final String LAZY_SHAPES_PROPERTY = "damose.shapes.lazy";
+    public static final int SHAPE_CACHE_SIZE = 64;
+    public static final String GTFS_SNAPSHOT_FILE =
+            System.getProperty("user.home") + "/.damose/cache/gtfs_static.snapshot";
 
     public static final int RT_TIMEOUT_SECONDS = 30;
     public static final int RT_UPDATE_INTERVAL_MS = 30_000;
+    public static final int RT_MIN_POLL_INTERVAL_MS = 5_000;
+    public static final int RT_MAX_BACKOFF_MS = 60_000;
     public static final int RT_STALE_THRESHOLD_SECONDS = 95;
     public static final int HTTP_CONNECT_TIMEOUT_MS = 30_000;
     public static final int HTTP_READ_TIMEOUT_MS = 60_000;
@@ -31,6 +42,7 @@ public final class AppConstants {
     public static final int IN_ARRIVO_THRESHOLD_MIN = 2;
     public static final int STATIC_WINDOW_MIN = 120;
     public static final int RT_WINDOW_MIN = 90;
+    public static final int ARRIVAL_BOARD_CACHE_SIZE = 128;
 
     public static final Color BG_DARK = new Color(17, 17, 21);
     public static final Color BG_MEDIUM = new Color(24, 24, 28);
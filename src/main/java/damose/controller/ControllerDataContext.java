@@ -5,7 +5,7 @@ import java.util.List;
 import damose.data.mapper.StopTripMapper;
 import damose.data.mapper.TripMatcher;
 import damose.model.Stop;
-import damose.model.StopTime;
+import damose.model.StopTimeTable;
 import damose.model.Trip;
 import damose.service.ArrivalService;
 import damose.service.RouteService;
@@ -17,7 +17,7 @@ public final class ControllerDataContext {
 
     private final List<Stop> stops;
     private final List<Trip> trips;
-    private final List<StopTime> stopTimes;
+    private final StopTimeTable stopTimes;
     private final TripMatcher tripMatcher;
     private final StopTripMapper stopTripMapper;
     private final RouteService routeService;
@@ -25,7 +25,7 @@ public final class ControllerDataContext {
 
     public ControllerDataContext(List<Stop> stops,
                                  List<Trip> trips,
-                                 List<StopTime> stopTimes,
+                                 StopTimeTable stopTimes,
                                  TripMatcher tripMatcher,
                                  StopTripMapper stopTripMapper,
                                  RouteService routeService,
@@ -54,9 +54,9 @@ public final class ControllerDataContext {
     }
 
     /**
-     * Returns the stop times.
+     * Returns the stop time table.
      */
-    public List<StopTime> getStopTimes() {
+    public StopTimeTable getStopTimeTable() {
         return stopTimes;
     }
 
@@ -1,8 +1,20 @@
 package damose.controller;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import damose.data.loader.CalendarLoader;
+import damose.data.loader.GtfsSnapshot;
+import damose.data.loader.GtfsSnapshotStore;
+import damose.data.loader.GtfsSource;
 import damose.data.loader.RoutesLoader;
 import damose.data.loader.ShapesLoader;
 import damose.data.loader.StopTimesLoader;
@@ -10,57 +22,213 @@ import damose.data.loader.StopsLoader;
 import damose.data.loader.TripsLoader;
 import damose.data.mapper.StopTripMapper;
 import damose.data.mapper.TripMatcher;
+import damose.model.Route;
+import damose.model.ShapeStore;
 import damose.model.Stop;
-import damose.model.StopTime;
+import damose.model.StopTimeTable;
 import damose.model.Trip;
 import damose.model.TripServiceCalendar;
 import damose.service.ArrivalService;
 import damose.service.RouteService;
-import org.jxmapviewer.viewer.GeoPosition;
 
 /**
  * Coordinates application flow for controller data loader.
+ * Independent GTFS files are parsed concurrently; each index is built as soon as its own inputs are ready.
  */
 public final class ControllerDataLoader {
 
+    private static final int TOTAL_STAGES = StaticLoadStage.values().length;
+
     /**
      * Returns the result of load.
      */
     public ControllerDataContext load() {
+        return load(LoadProgressListener.NONE);
+    }
+
+    /**
+     * Loads static data reporting per-stage progress to the given listener.
+     */
+    public ControllerDataContext load(LoadProgressListener listener) {
         System.out.println("Caricamento dati statici...");
+        LoadProgressListener progress = listener != null ? listener : LoadProgressListener.NONE;
+        long startNanos = System.nanoTime();
+
+        GtfsSource source = GtfsSource.fromConfiguration();
+        GtfsSnapshotStore snapshotStore = new GtfsSnapshotStore();
+        byte[] sourceDigest = snapshotStore.computeSourceDigest(source);
+        GtfsSnapshot cached = snapshotStore.read(sourceDigest);
+        if (cached != null) {
+            System.out.println("GTFS snapshot restored in " + (System.nanoTime() - startNanos) / 1_000_000L + " ms");
+        }
+
+        ExecutorService executor = newLoaderExecutor();
+        try {
+            StageRunner runner = new StageRunner(executor, progress);
+
+            CompletableFuture<List<Stop>> stopsFuture = runner.submit(StaticLoadStage.STOPS,
+                    cached != null ? cached::stops : () -> StopsLoader.load(source));
+            CompletableFuture<List<Trip>> tripsFuture = runner.submit(StaticLoadStage.TRIPS,
+                    cached != null ? cached::trips : () -> TripsLoader.load(source));
+            CompletableFuture<StopTimeTable> stopTimesFuture = runner.submit(StaticLoadStage.STOP_TIMES,
+                    cached != null ? cached::stopTimes : () -> StopTimesLoader.load(source));
+            CompletableFuture<ShapeStore> shapesFuture = runner.submit(StaticLoadStage.SHAPES,
+                    cached != null
+                            ? () -> ShapesLoader.restore(cached.shapes(), source)
+                            : () -> ShapesLoader.loadConfigured(source));
+            CompletableFuture<List<Route>> routesFuture = runner.submit(StaticLoadStage.ROUTES,
+                    cached != null ? () -> restoreRoutes(cached.routes()) : () -> RoutesLoader.load(source));
+            CompletableFuture<TripServiceCalendar> calendarFuture = runner.submit(StaticLoadStage.CALENDAR,
+                    cached != null ? cached::calendar : () -> loadCalendar(source));
+
+            CompletableFuture<TripMatcher> matcherFuture = runner.then(
+                    StaticLoadStage.TRIP_INDEX, tripsFuture, TripMatcher::new);
+            CompletableFuture<StopTripMapper> mapperFuture = runner.then(
+                    StaticLoadStage.STOP_INDEX, stopTimesFuture, matcherFuture, StopTripMapper::new);
+            CompletableFuture<RouteService> routeServiceFuture = runner.after(
+                    StaticLoadStage.ROUTE_INDEX,
+                    () -> new RouteService(tripsFuture.join(), stopTimesFuture.join(),
+                            stopsFuture.join(), shapesFuture.join()),
+                    tripsFuture, stopTimesFuture, stopsFuture, shapesFuture);
+            CompletableFuture<ArrivalService> arrivalServiceFuture = runner.after(
+                    StaticLoadStage.ARRIVALS,
+                    () -> new ArrivalService(matcherFuture.join(), mapperFuture.join(), calendarFuture.join()),
+                    matcherFuture, mapperFuture, calendarFuture);
 
-        List<Stop> stops = StopsLoader.load();
-        List<Trip> trips = TripsLoader.load();
-        List<StopTime> stopTimes = StopTimesLoader.load();
-        java.util.Map<String, List<GeoPosition>> shapesById = ShapesLoader.load();
-        RoutesLoader.load();
+            CompletableFuture.allOf(routesFuture, routeServiceFuture, arrivalServiceFuture).join();
 
-        System.out.println("Stops loaded: " + (stops == null ? 0 : stops.size()));
-        System.out.println("Trips loaded: " + (trips == null ? 0 : trips.size()));
+            List<Stop> stops = stopsFuture.join();
+            List<Trip> trips = tripsFuture.join();
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
 
-        TripMatcher matcher = new TripMatcher(trips);
-        StopTripMapper stopTripMapper = new StopTripMapper(stopTimes, matcher);
-        RouteService routeService = new RouteService(trips, stopTimes, stops, shapesById);
+            System.out.println("Stops loaded: " + (stops == null ? 0 : stops.size()));
+            System.out.println("Trips loaded: " + (trips == null ? 0 : trips.size()));
+            System.out.println("Static data ready in " + elapsedMillis + " ms");
+            progress.onLoadCompleted(stops == null ? 0 : stops.size(), trips == null ? 0 : trips.size(), elapsedMillis);
 
-        TripServiceCalendar calendar;
+            if (cached == null) {
+                writeSnapshotInBackground(snapshotStore, sourceDigest, new GtfsSnapshot(
+                        stops,
+                        trips,
+                        stopTimesFuture.join(),
+                        shapesFuture.join(),
+                        routesFuture.join(),
+                        calendarFuture.join()
+                ));
+            }
+
+            return new ControllerDataContext(
+                    stops,
+                    trips,
+                    stopTimesFuture.join(),
+                    matcherFuture.join(),
+                    mapperFuture.join(),
+                    routeServiceFuture.join(),
+                    arrivalServiceFuture.join()
+            );
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Static data load failed", cause);
+        } finally {
+            executor.shutdown();
+            closeQuietly(source);
+        }
+    }
+
+    private static void closeQuietly(GtfsSource source) {
         try {
-            calendar = CalendarLoader.load();
+            source.close();
+        } catch (IOException e) {
+            System.err.println("Could not close GTFS feed: " + e.getMessage());
+        }
+    }
+
+    private static List<Route> restoreRoutes(List<Route> routes) {
+        RoutesLoader.register(routes);
+        return routes;
+    }
+
+    private static void writeSnapshotInBackground(GtfsSnapshotStore store, byte[] sourceDigest, GtfsSnapshot snapshot) {
+        if (snapshot.stops() == null || snapshot.stops().isEmpty()
+                || snapshot.stopTimes() == null || snapshot.stopTimes().size() == 0) {
+            return;
+        }
+        Thread writer = new Thread(() -> {
+            long start = System.nanoTime();
+            if (store.write(snapshot, sourceDigest)) {
+                System.out.println("GTFS snapshot written in " + (System.nanoTime() - start) / 1_000_000L + " ms");
+            }
+        }, "gtfs-snapshot-writer");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.MIN_PRIORITY);
+        writer.start();
+    }
+
+    private static TripServiceCalendar loadCalendar(GtfsSource source) {
+        try {
+            return CalendarLoader.load(source);
         } catch (Exception e) {
-            System.out.println("Could not load calendar_dates: " + e.getMessage());
-            calendar = new TripServiceCalendar();
+            System.out.println("Could not load service calendar: " + e.getMessage());
+            return new TripServiceCalendar();
         }
+    }
 
-        ArrivalService arrivalService = new ArrivalService(matcher, stopTripMapper, calendar);
-
-        return new ControllerDataContext(
-                stops,
-                trips,
-                stopTimes,
-                matcher,
-                stopTripMapper,
-                routeService,
-                arrivalService
-        );
+    private static ExecutorService newLoaderExecutor() {
+        int threads = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 6));
+        AtomicInteger counter = new AtomicInteger(0);
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread t = new Thread(runnable, "gtfs-loader-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
-}
 
+    /**
+     * Runs stages on the loader pool, timing each one and forwarding progress.
+     */
+    private static final class StageRunner {
+
+        private final ExecutorService executor;
+        private final LoadProgressListener listener;
+        private final AtomicInteger completed = new AtomicInteger(0);
+
+        StageRunner(ExecutorService executor, LoadProgressListener listener) {
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        <T> CompletableFuture<T> submit(StaticLoadStage stage, Supplier<T> task) {
+            return CompletableFuture.supplyAsync(() -> timed(stage, task), executor);
+        }
+
+        <A, T> CompletableFuture<T> then(StaticLoadStage stage,
+                                         CompletableFuture<A> input,
+                                         Function<A, T> task) {
+            return input.thenApplyAsync(a -> timed(stage, () -> task.apply(a)), executor);
+        }
+
+        <A, B, T> CompletableFuture<T> then(StaticLoadStage stage,
+                                            CompletableFuture<A> first,
+                                            CompletableFuture<B> second,
+                                            BiFunction<A, B, T> task) {
+            return first.thenCombineAsync(second, (a, b) -> timed(stage, () -> task.apply(a, b)), executor);
+        }
+
+        <T> CompletableFuture<T> after(StaticLoadStage stage, Supplier<T> task, CompletableFuture<?>... inputs) {
+            return CompletableFuture.allOf(inputs).thenApplyAsync(ignored -> timed(stage, task), executor);
+        }
+
+        private <T> T timed(StaticLoadStage stage, Supplier<T> task) {
+            listener.onStageStarted(stage);
+            long start = System.nanoTime();
+            T result = task.get();
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+            System.out.println("Static stage " + stage.name().toLowerCase() + " done in " + elapsedMillis + " ms");
+            listener.onStageCompleted(stage, completed.incrementAndGet(), TOTAL_STAGES, elapsedMillis);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package damose.controller;
+
+/**
+ * Receives per-stage progress from the static GTFS load pipeline.
+ * Callbacks arrive on loader threads; implementations must hop to the EDT themselves.
+ */
+public interface LoadProgressListener {
+
+    LoadProgressListener NONE = new LoadProgressListener() {
+    };
+
+    /**
+     * Called when a stage starts running.
+     */
+    default void onStageStarted(StaticLoadStage stage) {
+    }
+
+    /**
+     * Called when a stage finishes; completed counts every stage finished so far.
+     */
+    default void onStageCompleted(StaticLoadStage stage, int completed, int total, long elapsedMillis) {
+    }
+
+    /**
+     * Called once after every stage finished.
+     */
+    default void onLoadCompleted(int stopsCount, int tripsCount, long elapsedMillis) {
+    }
+}
@@ -15,9 +15,10 @@ import damose.database.SessionManager;
 import damose.model.ConnectionMode;
 import damose.model.Route;
 import damose.model.Stop;
-import damose.model.VehiclePosition;
 import damose.service.FavoritesService;
 import damose.service.RealtimeService;
+import damose.service.RealtimeSnapshot;
+import damose.service.VehiclePositionDelta;
 import damose.util.MemoryManager;
 import damose.view.MainView;
 import damose.view.map.MapOverlayManager;
@@ -43,21 +44,29 @@ public class MainController {
     private boolean autoOfflineNoticeShown = false;
     private MainView view;
     private volatile long currentFeedTs = Instant.now().getEpochSecond();
+    private LoadProgressListener loadProgressListener = LoadProgressListener.NONE;
 
     private List<Stop> linesList;
 
+    /**
+     * Registers the listener notified while static data is loading.
+     */
+    public void setLoadProgressListener(LoadProgressListener listener) {
+        loadProgressListener = listener != null ? listener : LoadProgressListener.NONE;
+    }
+
     /**
      * Handles start.
      */
     public void start() {
         System.out.println("Starting application...");
 
-        dataContext = dataLoader.load();
+        dataContext = dataLoader.load(loadProgressListener);
         routeVehicleMarkerBuilder = new RouteVehicleMarkerBuilder(
                 dataContext.getTripMatcher(),
                 RoutesLoader::getRouteById
         );
-        vehiclePanelInfoBuilder = new VehiclePanelInfoBuilder(dataContext, () -> currentFeedTs);
+        vehiclePanelInfoBuilder = new VehiclePanelInfoBuilder(dataContext, this::currentFeedTimestamp);
 
         view = new MainView();
         view.init();
@@ -83,7 +92,7 @@ public class MainController {
         MapOverlayManager.updateMap(
                 view.getMapViewer(),
                 Collections.emptyList(),
-                Collections.emptyList(),
+                RealtimeSnapshot.empty(),
                 dataContext.getTrips()
         );
 
@@ -177,7 +186,7 @@ public class MainController {
             String stopId = view.getFloatingPanelStopId();
             if (stopId != null) {
                 List<String> allTrips = dataContext.getArrivalService()
-                        .getAllTripsForStopToday(stopId, mode, currentFeedTs);
+                        .getAllTripsForStopToday(stopId, mode, currentFeedTimestamp());
                 view.showAllTripsInPanel(allTrips);
             }
         });
@@ -223,7 +232,7 @@ public class MainController {
                             autoOfflineNoticeShown = false;
                             System.out.println("Connected successfully - Online mode active");
                             if (stopPanelFlow != null) {
-                                stopPanelFlow.refreshFloatingPanelIfVisible(mode, currentFeedTs);
+                                stopPanelFlow.refreshFloatingPanelIfVisible(mode, currentFeedTimestamp());
                             }
                         } else {
                             mode = ConnectionMode.OFFLINE;
@@ -253,7 +262,7 @@ public class MainController {
                 view.getConnectionButton().setOffline();
                 refreshMapOverlay();
                 if (stopPanelFlow != null) {
-                    stopPanelFlow.refreshFloatingPanelIfVisible(mode, currentFeedTs);
+                    stopPanelFlow.refreshFloatingPanelIfVisible(mode, currentFeedTimestamp());
                 }
                 System.out.println("Offline mode active");
             });
@@ -269,6 +278,9 @@ public class MainController {
 
     private void setupFloatingPanelClose() {
         view.setOnFloatingPanelClose(() -> {
+            if (stopPanelFlow != null) {
+                stopPanelFlow.unsubscribe();
+            }
             clearFollowedVehicle();
             MapOverlayManager.clearVisibleStops();
             refreshMapOverlay();
@@ -338,7 +350,7 @@ public class MainController {
                 routeViewport.centerOnStop(view.getMapViewer(), stop);
             }
             if (stopPanelFlow != null) {
-                stopPanelFlow.showFloatingArrivals(stop, mode, currentFeedTs);
+                stopPanelFlow.showFloatingArrivals(stop, mode, currentFeedTimestamp());
             }
             refreshMapOverlay();
         }
@@ -440,7 +452,7 @@ public class MainController {
         MapOverlayManager.clearSelectedStopId();
         routeViewport.centerOnStop(view.getMapViewer(), stop);
         if (stopPanelFlow != null) {
-            stopPanelFlow.showFloatingArrivals(stop, mode, currentFeedTs);
+            stopPanelFlow.showFloatingArrivals(stop, mode, currentFeedTimestamp());
         }
         refreshMapOverlay();
     }
@@ -457,6 +469,13 @@ public class MainController {
         }
     }
 
+    /**
+     * Returns the latest feed timestamp while online; offline no feed is polled, so the wall clock is used.
+     */
+    private long currentFeedTimestamp() {
+        return mode == ConnectionMode.ONLINE ? currentFeedTs : Instant.now().getEpochSecond();
+    }
+
     private void refreshMapOverlay() {
         realtimeScheduler.refreshMapOverlay(view, dataContext.getTrips(), mode, this::onVehiclePositionsUpdated);
     }
@@ -470,13 +489,20 @@ public class MainController {
                 () -> mode,
                 ts -> currentFeedTs = ts,
                 this::onVehiclePositionsUpdated,
+                this::onVehiclePositionsUnchanged,
                 this::onRealtimeHealthChanged
         );
     }
 
-    private void onVehiclePositionsUpdated(List<VehiclePosition> positions) {
+    private void onVehiclePositionsUnchanged(RealtimeSnapshot snapshot) {
+        if (vehicleFollowFlow != null) {
+            vehicleFollowFlow.onVehiclePositionsUnchanged(snapshot);
+        }
+    }
+
+    private void onVehiclePositionsUpdated(VehiclePositionDelta delta) {
         if (vehicleFollowFlow != null) {
-            vehicleFollowFlow.onVehiclePositionsUpdated(positions, routeVehicleMarkerBuilder);
+            vehicleFollowFlow.onVehiclePositionsUpdated(delta, routeVehicleMarkerBuilder);
         }
     }
 
@@ -508,7 +534,7 @@ public class MainController {
             view.showBottomNotice("Feed realtime non disponibile. Passaggio automatico in modalita offline.");
         }
         if (stopPanelFlow != null) {
-            stopPanelFlow.refreshFloatingPanelIfVisible(mode, currentFeedTs);
+            stopPanelFlow.refreshFloatingPanelIfVisible(mode, currentFeedTimestamp());
         }
         refreshMapOverlay();
         System.out.println("Realtime feed unavailable - switched to Offline mode");
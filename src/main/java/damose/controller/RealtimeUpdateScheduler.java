@@ -3,36 +3,34 @@ package damose.controller;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
-import java.util.Timer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import javax.swing.SwingUtilities;
 
-import com.google.transit.realtime.GtfsRealtime;
-
 import damose.config.AppConstants;
 import damose.data.mapper.StopTripMapper;
 import damose.model.ConnectionMode;
 import damose.model.Trip;
-import damose.model.TripUpdateRecord;
-import damose.model.VehiclePosition;
 import damose.service.ArrivalService;
-import damose.service.GtfsParser;
 import damose.service.RealtimeService;
+import damose.service.RealtimeSnapshot;
 import damose.service.ServiceQualityTracker;
+import damose.service.VehiclePositionDelta;
 import damose.view.MainView;
 import damose.view.map.MapOverlayManager;
 
 /**
  * Coordinates application flow for realtime update scheduler.
+ * Runs once for every snapshot published by {@link RealtimeService}, on its publisher thread.
  */
 public final class RealtimeUpdateScheduler {
 
-    private Timer timer;
-    private volatile long lastTripUpdatesFeedTs = Long.MIN_VALUE;
-    private volatile long lastVehiclePositionsFeedTs = Long.MIN_VALUE;
-    private volatile List<VehiclePosition> lastVehiclePositions = Collections.emptyList();
+    private Consumer<RealtimeSnapshot> snapshotListener;
+    private volatile long lastTripUpdatesVersion = -1;
+    // Guarded by this: publish runs on the publisher thread and, for overlay refreshes, on the EDT.
+    private long lastPublishedVehiclesVersion = -1;
+    private RealtimeSnapshot lastPublishedSnapshot;
 
     public void start(MainView view,
                       List<Trip> trips,
@@ -40,76 +38,50 @@ public final class RealtimeUpdateScheduler {
                       ArrivalService arrivalService,
                       Supplier<ConnectionMode> modeSupplier,
                       Consumer<Long> feedTimestampConsumer,
-                      Consumer<List<VehiclePosition>> vehiclePositionsConsumer,
+                      Consumer<VehiclePositionDelta> vehicleDeltaConsumer,
+                      Consumer<RealtimeSnapshot> unchangedVehiclesConsumer,
                       Consumer<Boolean> realtimeHealthConsumer) {
         stop();
-        timer = new Timer("realtime-updates", true);
-        timer.scheduleAtFixedRate(new java.util.TimerTask() {
-            @Override
-            /**
-             * Handles run.
-             */
-            public void run() {
-                runCycle(view, trips, stopTripMapper, arrivalService, modeSupplier,
-                        feedTimestampConsumer, vehiclePositionsConsumer, realtimeHealthConsumer);
-            }
-        }, 0, 30_000);
+        RealtimeService.setStopTripMapper(stopTripMapper);
+        snapshotListener = snapshot -> runCycle(view, trips, snapshot, arrivalService, modeSupplier,
+                feedTimestampConsumer, vehicleDeltaConsumer, unchangedVehiclesConsumer, realtimeHealthConsumer);
+        RealtimeService.addSnapshotListener(snapshotListener);
     }
 
     /**
      * Handles stop.
      */
     public void stop() {
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+        if (snapshotListener != null) {
+            RealtimeService.removeSnapshotListener(snapshotListener);
+            snapshotListener = null;
+        }
+        lastTripUpdatesVersion = -1;
+        synchronized (this) {
+            lastPublishedVehiclesVersion = -1;
+            lastPublishedSnapshot = null;
         }
-        lastTripUpdatesFeedTs = Long.MIN_VALUE;
-        lastVehiclePositionsFeedTs = Long.MIN_VALUE;
-        lastVehiclePositions = Collections.emptyList();
     }
 
     public void refreshMapOverlay(MainView view, List<Trip> trips, ConnectionMode mode,
-                                  Consumer<List<VehiclePosition>> vehiclePositionsConsumer) {
-        List<VehiclePosition> positions = Collections.emptyList();
-
-        if (mode == ConnectionMode.ONLINE) {
-            GtfsRealtime.FeedMessage vpFeed = RealtimeService.getLatestVehiclePositions();
-            if (vpFeed != null) {
-                try {
-                    positions = getOrParseVehiclePositions(vpFeed);
-                } catch (Exception e) {
-                    System.out.println("Error parsing vehicle positions: " + e.getMessage());
-                }
-            }
-        }
-
-        final List<VehiclePosition> busPositions = positions;
-        SwingUtilities.invokeLater(() -> {
-            MapOverlayManager.updateMap(view.getMapViewer(), Collections.emptyList(), busPositions, trips);
-            if (vehiclePositionsConsumer != null) {
-                vehiclePositionsConsumer.accept(busPositions);
-            }
-        });
+                                  Consumer<VehiclePositionDelta> vehicleDeltaConsumer) {
+        RealtimeSnapshot snapshot = mode == ConnectionMode.ONLINE
+                ? RealtimeService.getSnapshot()
+                : RealtimeSnapshot.empty();
+        publish(view, trips, snapshot, vehicleDeltaConsumer, true);
     }
 
     private void runCycle(MainView view,
                           List<Trip> trips,
-                          StopTripMapper stopTripMapper,
+                          RealtimeSnapshot snapshot,
                           ArrivalService arrivalService,
                           Supplier<ConnectionMode> modeSupplier,
                           Consumer<Long> feedTimestampConsumer,
-                          Consumer<List<VehiclePosition>> vehiclePositionsConsumer,
+                          Consumer<VehiclePositionDelta> vehicleDeltaConsumer,
+                          Consumer<RealtimeSnapshot> unchangedVehiclesConsumer,
                           Consumer<Boolean> realtimeHealthConsumer) {
-        GtfsRealtime.FeedMessage tuFeed = RealtimeService.getLatestTripUpdates();
-        GtfsRealtime.FeedMessage vpFeed = RealtimeService.getLatestVehiclePositions();
-
-        long feedTs;
-        try {
-            feedTs = (tuFeed != null && tuFeed.hasHeader() && tuFeed.getHeader().hasTimestamp())
-                    ? tuFeed.getHeader().getTimestamp()
-                    : Instant.now().getEpochSecond();
-        } catch (Exception ignored) {
+        long feedTs = snapshot.feedTimestamp();
+        if (feedTs == Long.MIN_VALUE) {
             feedTs = Instant.now().getEpochSecond();
         }
         feedTimestampConsumer.accept(feedTs);
@@ -122,62 +94,51 @@ public final class RealtimeUpdateScheduler {
             realtimeHealthConsumer.accept(healthy);
         }
 
-        if (mode == ConnectionMode.ONLINE) {
-            try {
-                long tripFeedTs = extractFeedTimestamp(tuFeed, feedTs);
-                if (tripFeedTs != lastTripUpdatesFeedTs) {
-                    List<TripUpdateRecord> updates = GtfsParser.parseTripUpdates(tuFeed, stopTripMapper, feedTs);
-                    arrivalService.updateRealtimeArrivals(updates, feedTs);
-                    lastTripUpdatesFeedTs = tripFeedTs;
+        if (mode != ConnectionMode.ONLINE) {
+            snapshot = RealtimeSnapshot.empty();
+        } else {
+            if (snapshot.tripUpdatesVersion() != lastTripUpdatesVersion) {
+                try {
+                    arrivalService.updateRealtimeArrivals(snapshot, feedTs);
+                    lastTripUpdatesVersion = snapshot.tripUpdatesVersion();
+                } catch (Exception ex) {
+                    System.out.println("Error applying TripUpdates RT: " + ex.getMessage());
                 }
-            } catch (Exception ex) {
-                System.out.println("Error parsing TripUpdates RT: " + ex.getMessage());
             }
+            System.out.println("Buses parsed: " + snapshot.vehicles().size());
+            ServiceQualityTracker.getInstance().updateVehicleCount(snapshot.vehicles().size());
         }
 
-        List<VehiclePosition> computedPositions;
-        try {
-            if (mode == ConnectionMode.ONLINE && vpFeed != null) {
-                computedPositions = getOrParseVehiclePositions(vpFeed);
-                System.out.println("Buses parsed: " + computedPositions.size());
-                ServiceQualityTracker.getInstance().updateVehicleCount(computedPositions.size());
-            } else {
-                computedPositions = Collections.emptyList();
-                if (vpFeed == null) {
-                    System.out.println("VehiclePositions feed is null");
-                }
-            }
-        } catch (Exception e) {
-            System.out.println("Error parsing VehiclePositions: " + e.getMessage());
-            computedPositions = Collections.emptyList();
+        boolean published = publish(view, trips, snapshot, vehicleDeltaConsumer, false);
+        if (!published && unchangedVehiclesConsumer != null) {
+            // Panels built from TripUpdates and the clock still need a refresh when no vehicle moved.
+            RealtimeSnapshot current = snapshot;
+            SwingUtilities.invokeLater(() -> unchangedVehiclesConsumer.accept(current));
         }
-
-        final List<VehiclePosition> busPositions = computedPositions;
-        SwingUtilities.invokeLater(() -> {
-            MapOverlayManager.updateMap(view.getMapViewer(), Collections.emptyList(), busPositions, trips);
-            if (vehiclePositionsConsumer != null) {
-                vehiclePositionsConsumer.accept(busPositions);
-            }
-        });
     }
 
-    private List<VehiclePosition> getOrParseVehiclePositions(GtfsRealtime.FeedMessage vpFeed) {
-        long feedTs = extractFeedTimestamp(vpFeed, Long.MIN_VALUE);
-        if (feedTs == lastVehiclePositionsFeedTs) {
-            return lastVehiclePositions;
+    /**
+     * Hands the vehicles that changed since the last published snapshot to the map and the consumer,
+     * and returns whether anything was handed over. Unless forced, nothing is when no vehicle changed.
+     * Synchronized so each delta is taken against the previous publish and handed over in that order.
+     */
+    private synchronized boolean publish(MainView view, List<Trip> trips, RealtimeSnapshot snapshot,
+                                         Consumer<VehiclePositionDelta> vehicleDeltaConsumer, boolean force) {
+        if (!force && snapshot.vehiclePositionsVersion() == lastPublishedVehiclesVersion) {
+            return false;
         }
-
-        List<VehiclePosition> parsed = GtfsParser.parseVehiclePositions(vpFeed);
-        lastVehiclePositionsFeedTs = feedTs;
-        lastVehiclePositions = parsed != null ? parsed : Collections.emptyList();
-        return lastVehiclePositions;
-    }
-
-    private static long extractFeedTimestamp(GtfsRealtime.FeedMessage feed, long fallback) {
-        if (feed == null || !feed.hasHeader() || !feed.getHeader().hasTimestamp()) {
-            return fallback;
+        lastPublishedVehiclesVersion = snapshot.vehiclePositionsVersion();
+        VehiclePositionDelta delta = VehiclePositionDelta.between(lastPublishedSnapshot, snapshot);
+        lastPublishedSnapshot = snapshot;
+        if (!force && delta.base() != null && delta.isEmpty()) {
+            return false;
         }
-        return feed.getHeader().getTimestamp();
+        SwingUtilities.invokeLater(() -> {
+            MapOverlayManager.updateMap(view.getMapViewer(), Collections.emptyList(), delta, trips);
+            if (vehicleDeltaConsumer != null) {
+                vehicleDeltaConsumer.accept(delta);
+            }
+        });
+        return true;
     }
 }
-
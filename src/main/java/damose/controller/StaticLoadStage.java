@@ -0,0 +1,30 @@
+package damose.controller;
+
+/**
+ * Stages of the static GTFS load pipeline, in the order they are usually reported.
+ */
+public enum StaticLoadStage {
+    STOPS("fermate"),
+    TRIPS("viaggi"),
+    STOP_TIMES("orari"),
+    SHAPES("percorsi"),
+    ROUTES("linee"),
+    CALENDAR("calendario"),
+    TRIP_INDEX("indice viaggi"),
+    STOP_INDEX("indice fermate"),
+    ROUTE_INDEX("indice linee"),
+    ARRIVALS("servizio arrivi");
+
+    private final String label;
+
+    StaticLoadStage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the user-facing label.
+     */
+    public String label() {
+        return label;
+    }
+}
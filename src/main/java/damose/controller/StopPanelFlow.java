@@ -1,7 +1,9 @@
 package damose.controller;
 
 import java.awt.geom.Point2D;
+import java.time.Instant;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 import javax.swing.SwingUtilities;
 
@@ -9,16 +11,22 @@ import org.jxmapviewer.viewer.GeoPosition;
 
 import damose.model.ConnectionMode;
 import damose.model.Stop;
+import damose.service.ArrivalService;
 import damose.service.FavoritesService;
+import damose.service.RouteArrivalInfo;
 import damose.view.MainView;
 
 /**
  * Handles stop-focused floating panel presentation and refresh.
+ * While online, the stop shown in the panel is subscribed to realtime board pushes, so its arrivals are
+ * refreshed as soon as an update changes them.
  */
 final class StopPanelFlow {
 
     private final MainView view;
     private final ControllerDataContext dataContext;
+    private BiConsumer<String, List<RouteArrivalInfo>> boardListener;
+    private String subscribedStopId;
 
     StopPanelFlow(MainView view, ControllerDataContext dataContext) {
         this.view = view;
@@ -28,25 +36,70 @@ final class StopPanelFlow {
     void refreshFloatingPanelIfVisible(ConnectionMode mode, long currentFeedTs) {
         String stopId = view.getFloatingPanelStopId();
         if (stopId == null || !view.isFloatingPanelVisible()) {
+            unsubscribe();
             return;
         }
 
         Stop stop = findStopById(stopId);
         if (stop == null) {
+            unsubscribe();
             return;
         }
 
-        List<String> arrivi = dataContext.getArrivalService()
-                .computeArrivalsForStop(stopId, mode, currentFeedTs);
+        ArrivalService arrivals = dataContext.getArrivalService();
+        long shownVersion = arrivals.realtimeArrivalsVersion();
+        List<String> arrivi = arrivals.computeArrivalsForStop(stopId, mode, currentFeedTs);
         boolean isFavorite = FavoritesService.isFavorite(stopId);
         view.refreshFloatingPanel(stop.getStopName(), stopId, arrivi, isFavorite);
+        subscribe(stop, mode, currentFeedTs, shownVersion);
     }
 
     void showFloatingArrivals(Stop stop, ConnectionMode mode, long currentFeedTs) {
-        List<String> arrivi = dataContext.getArrivalService()
-                .computeArrivalsForStop(stop.getStopId(), mode, currentFeedTs);
+        ArrivalService arrivals = dataContext.getArrivalService();
+        long shownVersion = arrivals.realtimeArrivalsVersion();
+        List<String> arrivi = arrivals.computeArrivalsForStop(stop.getStopId(), mode, currentFeedTs);
         boolean isFavorite = FavoritesService.isFavorite(stop.getStopId());
         showPanel(stop, arrivi, isFavorite);
+        subscribe(stop, mode, currentFeedTs, shownVersion);
+    }
+
+    /**
+     * Stops realtime board pushes for the stop shown in the floating panel.
+     */
+    void unsubscribe() {
+        if (boardListener != null) {
+            dataContext.getArrivalService().removeBoardListener(boardListener);
+            boardListener = null;
+            subscribedStopId = null;
+        }
+    }
+
+    /**
+     * Subscribes the shown stop, whose board was computed from tables of at least shownVersion, to board pushes;
+     * the board is only delivered again when newer tables were published meanwhile.
+     */
+    private void subscribe(Stop stop, ConnectionMode mode, long currentFeedTs, long shownVersion) {
+        if (mode != ConnectionMode.ONLINE) {
+            unsubscribe();
+            return;
+        }
+        if (stop.getStopId().equals(subscribedStopId)) {
+            return;
+        }
+        unsubscribe();
+
+        BiConsumer<String, List<RouteArrivalInfo>> listener = (stopId, board) -> {
+            List<String> arrivi = ArrivalService.formatBoard(board, Instant.now().getEpochSecond());
+            SwingUtilities.invokeLater(() -> {
+                if (stopId.equals(view.getFloatingPanelStopId()) && view.isFloatingPanelVisible()) {
+                    view.refreshFloatingPanel(stop.getStopName(), stopId, arrivi, FavoritesService.isFavorite(stopId));
+                }
+            });
+        };
+        boardListener = listener;
+        subscribedStopId = stop.getStopId();
+        dataContext.getArrivalService()
+                .addBoardListener(List.of(stop.getStopId()), currentFeedTs, shownVersion, listener);
     }
 
     private Stop findStopById(String stopId) {
@@ -1,7 +1,7 @@
 package damose.controller;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Supplier;
 
 import javax.swing.SwingUtilities;
@@ -9,6 +9,8 @@ import javax.swing.SwingUtilities;
 import damose.data.mapper.TripMatcher;
 import damose.model.Stop;
 import damose.model.VehiclePosition;
+import damose.service.RealtimeSnapshot;
+import damose.service.VehiclePositionDelta;
 import damose.view.MainView;
 import damose.view.component.RouteSidePanel;
 import damose.view.map.MapOverlayManager;
@@ -27,7 +29,10 @@ final class VehicleFollowFlow {
     private final VehiclePanelInfoBuilder vehiclePanelInfoBuilder;
     private final Supplier<TripMatcher> tripMatcherSupplier;
 
-    private volatile List<VehiclePosition> latestVehiclePositions = Collections.emptyList();
+    private volatile RealtimeSnapshot latestSnapshot = RealtimeSnapshot.empty();
+    private String markersRouteId;
+    private Integer markersDirection;
+    private List<Stop> markersRouteStops;
 
     VehicleFollowFlow(MainView view,
                       RouteViewportNavigator routeViewport,
@@ -52,21 +57,45 @@ final class VehicleFollowFlow {
 
         followedVehicleState.follow(markerId);
         MapOverlayManager.setSelectedVehicleMarkerId(markerId);
-        updateFollowedVehicleTracking(latestVehiclePositions, true);
+        updateFollowedVehicleTracking(latestSnapshot, true);
     }
 
-    void onVehiclePositionsUpdated(List<VehiclePosition> positions,
+    /**
+     * Refreshes the followed vehicle's panel in a cycle where no vehicle moved; its next arrival comes
+     * from TripUpdates and the clock, which change without the vehicle reporting a new position.
+     */
+    void onVehiclePositionsUnchanged(RealtimeSnapshot snapshot) {
+        latestSnapshot = snapshot;
+        updateFollowedVehicleTracking(snapshot, false);
+    }
+
+    /**
+     * Refreshes the route side panel, skipped when the delta leaves the route's vehicles unchanged,
+     * and the followed vehicle's panel.
+     */
+    void onVehiclePositionsUpdated(VehiclePositionDelta delta,
                                    RouteVehicleMarkerBuilder routeVehicleMarkerBuilder) {
-        List<VehiclePosition> snapshot = positions == null ? List.of() : List.copyOf(positions);
-        latestVehiclePositions = snapshot;
+        RealtimeSnapshot snapshot = delta.target();
+        latestSnapshot = snapshot;
 
         String routeId = routePanelState.routeId();
         List<Stop> routeStops = routePanelState.routeStops();
         Integer directionFilter = routePanelState.direction();
         if (routeVehicleMarkerBuilder != null && routeId != null && routeStops != null && routeStops.size() >= 2) {
-            view.updateRouteSidePanelVehicles(
-                    routeVehicleMarkerBuilder.buildForRoute(snapshot, routeId, routeStops, directionFilter)
-            );
+            boolean sameRoute = routeId.equals(markersRouteId)
+                    && Objects.equals(directionFilter, markersDirection)
+                    && routeStops == markersRouteStops;
+            if (!sameRoute || delta.base() == null || delta.anyChanged(vp -> mayServeRoute(vp, routeId))) {
+                markersRouteId = routeId;
+                markersDirection = directionFilter;
+                markersRouteStops = routeStops;
+                view.updateRouteSidePanelVehicles(
+                        routeVehicleMarkerBuilder.buildForRoute(snapshot.vehicles(), routeId, routeStops, directionFilter)
+                );
+            }
+        } else {
+            markersRouteId = null;
+            markersRouteStops = null;
         }
 
         updateFollowedVehicleTracking(snapshot, false);
@@ -84,7 +113,7 @@ final class VehicleFollowFlow {
         }
     }
 
-    private void updateFollowedVehicleTracking(List<VehiclePosition> positions, boolean animate) {
+    private void updateFollowedVehicleTracking(RealtimeSnapshot snapshot, boolean animate) {
         String markerId = trimToNull(followedVehicleState.markerId());
         if (markerId == null) {
             return;
@@ -92,7 +121,7 @@ final class VehicleFollowFlow {
 
         VehiclePosition tracked = vehicleTrackingResolver.findByMarkerId(
                 markerId,
-                positions,
+                snapshot,
                 routePanelState.routeId(),
                 routePanelState.direction(),
                 tripMatcherSupplier.get()
@@ -128,6 +157,11 @@ final class VehicleFollowFlow {
         }
     }
 
+    private static boolean mayServeRoute(VehiclePosition vp, String routeId) {
+        String vpRouteId = trimToNull(vp.getRouteId());
+        return vpRouteId == null || vpRouteId.equalsIgnoreCase(routeId.trim());
+    }
+
     private static String trimToNull(String value) {
         if (value == null) return null;
         String trimmed = value.trim();
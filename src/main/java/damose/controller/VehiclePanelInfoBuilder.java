@@ -1,29 +1,25 @@
 package damose.controller;
 
 import java.time.Instant;
-import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.function.LongSupplier;
 
-import com.google.transit.realtime.GtfsRealtime;
-
 import damose.config.AppConstants;
 import damose.data.loader.RoutesLoader;
-import damose.data.mapper.TripIdUtils;
+import damose.data.mapper.StopIdUtils;
 import damose.model.Route;
 import damose.model.Stop;
-import damose.model.StopTime;
+import damose.model.StopTimeTable;
 import damose.model.Trip;
 import damose.model.TripUpdateRecord;
 import damose.model.VehiclePosition;
 import damose.model.VehicleType;
-import damose.service.GtfsParser;
 import damose.service.RealtimeService;
+import damose.util.ServiceDayClock;
 
 /**
  * Builds floating panel information for a selected vehicle.
@@ -36,6 +32,7 @@ public final class VehiclePanelInfoBuilder {
 
     private final ControllerDataContext dataContext;
     private final LongSupplier feedTimestampSupplier;
+    private final ServiceDayClock serviceDayClock = ServiceDayClock.systemDefault();
 
     public VehiclePanelInfoBuilder(ControllerDataContext dataContext, LongSupplier feedTimestampSupplier) {
         this.dataContext = dataContext;
@@ -114,25 +111,11 @@ public final class VehiclePanelInfoBuilder {
             return null;
         }
 
-        GtfsRealtime.FeedMessage tuFeed = RealtimeService.getLatestTripUpdates();
-        if (tuFeed == null) {
-            return null;
-        }
-
         long currentFeedTs = feedTimestampSupplier.getAsLong();
-        List<TripUpdateRecord> updates = GtfsParser.parseTripUpdates(
-                tuFeed,
-                dataContext.getStopTripMapper(),
-                currentFeedTs
-        );
-        if (updates.isEmpty()) {
-            return null;
-        }
-
-        Set<String> candidateTripVariants = TripIdUtils.generateVariants(
+        List<TripUpdateRecord> updates = RealtimeService.getSnapshot().tripUpdatesForTrip(
                 trip != null ? trip.getTripId() : vp.getTripId()
         );
-        if (candidateTripVariants.isEmpty()) {
+        if (updates.isEmpty()) {
             return null;
         }
 
@@ -140,7 +123,6 @@ public final class VehiclePanelInfoBuilder {
         TripUpdateRecord best = null;
         for (TripUpdateRecord update : updates) {
             if (update == null) continue;
-            if (!tripVariantMatches(candidateTripVariants, update.getTripId())) continue;
 
             String updateRoute = trimToNull(update.getRouteId());
             if (!matchesRouteFilter(routeId, updateRoute)) continue;
@@ -174,60 +156,61 @@ public final class VehiclePanelInfoBuilder {
             return null;
         }
 
-        List<StopTime> stopTimes = dataContext.getStopTripMapper().getStopTimesForTrip(tripId);
-        if (stopTimes.isEmpty()) {
+        StopTimeTable table = dataContext.getStopTripMapper().getStopTimeTable();
+        int[] rows = dataContext.getStopTripMapper().getStopTimeRowsForTrip(tripId);
+        long currentFeedTs = feedTimestampSupplier.getAsLong();
+        if (rows.length == 0 || currentFeedTs <= 0) {
             return null;
         }
 
         int currentSeq = vp.getStopSequence();
         long nowEpoch = Instant.now().getEpochSecond();
-        long currentFeedTs = feedTimestampSupplier.getAsLong();
-        StopTime best = null;
+        ServiceDayClock.Window serviceDays = serviceDayClock.windowFor(currentFeedTs);
+        int best = -1;
         long bestEpoch = Long.MAX_VALUE;
 
-        for (StopTime stopTime : stopTimes) {
-            if (stopTime == null) continue;
-            if (currentSeq >= 0 && stopTime.getStopSequence() <= currentSeq) continue;
+        for (int row : rows) {
+            if (currentSeq >= 0 && table.stopSequence(row) <= currentSeq) continue;
 
-            LocalTime arr = stopTime.getArrivalTime();
-            if (arr == null) continue;
-
-            long scheduledEpoch = computeScheduledEpochForFeed(arr, currentFeedTs);
-            if (scheduledEpoch < nowEpoch - 60) continue;
+            long scheduledEpoch = serviceDays.closestEpoch(table.arrivalSeconds(row), currentFeedTs);
+            if (scheduledEpoch < 0 || scheduledEpoch < nowEpoch - 60) continue;
 
             if (scheduledEpoch < bestEpoch) {
                 bestEpoch = scheduledEpoch;
-                best = stopTime;
+                best = row;
             }
         }
 
-        if (best == null) {
+        if (best < 0) {
             return null;
         }
-        return new NextArrivalInfo(resolveStopName(best.getStopId()), bestEpoch, bestEpoch, false);
+        return new NextArrivalInfo(resolveStopName(table.stopId(best)), bestEpoch, bestEpoch, false);
     }
 
     private Long findScheduledEpochForTripStop(String tripId, String stopId, long feedTs) {
         if (dataContext.getStopTripMapper() == null) {
             return null;
         }
-        String normalizedStop = normalizeStopIdForMatch(stopId);
+        String normalizedStop = StopIdUtils.normalizeForMatch(stopId);
         if (tripId == null || normalizedStop == null) {
             return null;
         }
 
-        List<StopTime> stopTimes = dataContext.getStopTripMapper().getStopTimesForTrip(tripId);
-        if (stopTimes == null || stopTimes.isEmpty()) {
+        StopTimeTable table = dataContext.getStopTripMapper().getStopTimeTable();
+        int[] rows = dataContext.getStopTripMapper().getStopTimeRowsForTrip(tripId);
+        if (rows.length == 0 || feedTs <= 0) {
             return null;
         }
 
+        ServiceDayClock.Window serviceDays = serviceDayClock.windowFor(feedTs);
         Long bestEpoch = null;
-        for (StopTime stopTime : stopTimes) {
-            if (stopTime == null || stopTime.getArrivalTime() == null) continue;
-            String candidateStop = normalizeStopIdForMatch(stopTime.getStopId());
+        for (int row : rows) {
+            int arrivalSeconds = table.arrivalSeconds(row);
+            if (arrivalSeconds < 0) continue;
+            String candidateStop = StopIdUtils.normalizeForMatch(table.stopId(row));
             if (candidateStop == null || !candidateStop.equalsIgnoreCase(normalizedStop)) continue;
 
-            long candidateEpoch = computeScheduledEpochForFeed(stopTime.getArrivalTime(), feedTs);
+            long candidateEpoch = serviceDays.closestEpoch(arrivalSeconds, feedTs);
             if (candidateEpoch <= 0) continue;
             if (bestEpoch == null || candidateEpoch < bestEpoch) {
                 bestEpoch = candidateEpoch;
@@ -306,71 +289,6 @@ public final class VehiclePanelInfoBuilder {
         return "fermata " + normalized;
     }
 
-    private long computeScheduledEpochForFeed(LocalTime scheduled, long feedEpochSeconds) {
-        if (scheduled == null || feedEpochSeconds <= 0) {
-            return -1;
-        }
-
-        ZoneId zone = ZoneId.systemDefault();
-        LocalDate feedDate = Instant.ofEpochSecond(feedEpochSeconds).atZone(zone).toLocalDate();
-
-        long best = -1;
-        long bestDiff = Long.MAX_VALUE;
-        for (int delta = -1; delta <= 1; delta++) {
-            long candidateEpoch = scheduled
-                    .atDate(feedDate.plusDays(delta))
-                    .atZone(zone)
-                    .toEpochSecond();
-            long diff = Math.abs(candidateEpoch - feedEpochSeconds);
-            if (diff < bestDiff) {
-                bestDiff = diff;
-                best = candidateEpoch;
-            }
-        }
-        return best;
-    }
-
-    private static boolean tripVariantMatches(Set<String> variants, String rawTripId) {
-        if (variants == null || variants.isEmpty() || rawTripId == null) {
-            return false;
-        }
-        Set<String> updateVariants = TripIdUtils.generateVariants(rawTripId);
-        if (updateVariants.isEmpty()) {
-            return false;
-        }
-        for (String candidate : updateVariants) {
-            if (variants.contains(candidate)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private static String normalizeStopIdForMatch(String rawStopId) {
-        if (rawStopId == null) return null;
-        String s = rawStopId.trim();
-        if (s.isEmpty()) return null;
-
-        while (true) {
-            String lower = s.toLowerCase();
-            if (lower.startsWith("stop:")) {
-                s = s.substring("stop:".length()).trim();
-                continue;
-            }
-            int colon = s.indexOf(':');
-            if (colon > 0 && colon < 6) {
-                s = s.substring(colon + 1).trim();
-                continue;
-            }
-            break;
-        }
-
-        s = s.replaceFirst("^\\d+#", "");
-        s = s.replaceFirst("[_:]\\d+$", "");
-        s = s.trim();
-        return s.isEmpty() ? null : s;
-    }
-
     private static String resolveRouteCode(Route route, String fallbackRouteId) {
         if (route == null) {
             return safe(fallbackRouteId);
@@ -1,10 +1,9 @@
 package damose.controller;
 
-import java.util.List;
-
 import damose.data.mapper.TripMatcher;
 import damose.model.Trip;
 import damose.model.VehiclePosition;
+import damose.service.RealtimeSnapshot;
 
 /**
  * Resolves a tracked vehicle from marker id and current route/direction filters.
@@ -12,19 +11,17 @@ import damose.model.VehiclePosition;
 final class VehicleTrackingResolver {
 
     VehiclePosition findByMarkerId(String markerId,
-                                   List<VehiclePosition> positions,
+                                   RealtimeSnapshot snapshot,
                                    String routeFilter,
                                    Integer directionFilter,
                                    TripMatcher tripMatcher) {
-        if (markerId == null || positions == null || positions.isEmpty() || tripMatcher == null) {
+        if (markerId == null || snapshot == null || tripMatcher == null) {
             return null;
         }
 
         String normalizedRouteFilter = trimToNull(routeFilter);
 
-        for (VehiclePosition vp : positions) {
-            if (vp == null || vp.getPosition() == null) continue;
-            if (!markerId.equalsIgnoreCase(resolveMarkerId(vp))) continue;
+        for (VehiclePosition vp : snapshot.vehiclesByMarkerId(markerId)) {
 
             Integer vpDirection = vp.getDirectionId() >= 0 ? vp.getDirectionId() : null;
             String vpRouteId = trimToNull(vp.getRouteId());
@@ -44,16 +41,6 @@ final class VehicleTrackingResolver {
         return null;
     }
 
-    private static String resolveMarkerId(VehiclePosition vp) {
-        String markerId = trimToNull(vp.getVehicleId());
-        if (markerId != null) return markerId;
-
-        markerId = trimToNull(vp.getTripId());
-        if (markerId != null) return markerId;
-
-        return "unknown";
-    }
-
     private static boolean matchesRouteFilter(String filterRouteId, String candidateRouteId) {
         if (filterRouteId == null) return true;
         if (candidateRouteId == null) return false;
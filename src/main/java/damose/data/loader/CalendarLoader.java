@@ -1,21 +1,22 @@
 package damose.data.loader;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Callable;
 
 import damose.config.AppConstants;
 import damose.model.TripServiceCalendar;
 
 /**
  * Static data loader for calendar loader.
+ * Weekly services from calendar.txt are expanded first, then calendar_dates.txt exceptions are applied on top.
+ * Either file may be missing.
  */
 public final class CalendarLoader {
 
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String[] WEEKDAY_COLUMNS = {
+            "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"
+    };
 
     private CalendarLoader() {
     }
@@ -24,7 +25,9 @@ public final class CalendarLoader {
      * Returns the result of load.
      */
     public static TripServiceCalendar load() {
-        return loadFromCalendarDates(AppConstants.GTFS_CALENDAR_DATES_PATH);
+        return load(AppConstants.GTFS_CALENDAR_PATH, () -> GtfsCsvReader.openResource(AppConstants.GTFS_CALENDAR_PATH),
+                AppConstants.GTFS_CALENDAR_DATES_PATH,
+                () -> GtfsCsvReader.openResource(AppConstants.GTFS_CALENDAR_DATES_PATH));
     }
 
     /**
@@ -32,57 +35,109 @@ public final class CalendarLoader {
      */
     public static TripServiceCalendar loadFromCalendarDates(String calendarDatesPath) {
         TripServiceCalendar calendar = new TripServiceCalendar();
+        readCalendarDates(calendar, calendarDatesPath, () -> GtfsCsvReader.openResource(calendarDatesPath));
+        System.out.println("TripServiceCalendar loaded: serviceCount=" + calendar.serviceCount());
+        return calendar;
+    }
+
+    /**
+     * Returns the service calendar of the given feed.
+     */
+    public static TripServiceCalendar load(GtfsSource source) {
+        return load(source.describe(GtfsSource.CALENDAR), () -> source.openCsv(GtfsSource.CALENDAR),
+                source.describe(GtfsSource.CALENDAR_DATES), () -> source.openCsv(GtfsSource.CALENDAR_DATES));
+    }
+
+    private static TripServiceCalendar load(String calendarLocation, Callable<GtfsCsvReader> calendarOpener,
+                                            String datesLocation, Callable<GtfsCsvReader> datesOpener) {
+        TripServiceCalendar calendar = new TripServiceCalendar();
+        readCalendar(calendar, calendarLocation, calendarOpener);
+        readCalendarDates(calendar, datesLocation, datesOpener);
+        System.out.println("TripServiceCalendar loaded: serviceCount=" + calendar.serviceCount());
+        return calendar;
+    }
 
-        try (InputStream in = CalendarLoader.class.getResourceAsStream(calendarDatesPath)) {
-            if (in == null) {
-                System.out.println("calendar_dates.txt not found: " + calendarDatesPath);
-                return calendar;
+    private static void readCalendar(TripServiceCalendar calendar, String location, Callable<GtfsCsvReader> opener) {
+        try (GtfsCsvReader reader = opener.call()) {
+            if (reader == null) {
+                System.out.println("calendar.txt not found: " + location);
+                return;
             }
+            if (!reader.readHeader()) return;
 
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                br.readLine();
+            int serviceCol = reader.column("service_id", 0);
+            int[] weekdayCols = new int[WEEKDAY_COLUMNS.length];
+            for (int i = 0; i < WEEKDAY_COLUMNS.length; i++) {
+                weekdayCols[i] = reader.column(WEEKDAY_COLUMNS[i], i + 1);
+            }
+            int startCol = reader.column("start_date", 8);
+            int endCol = reader.column("end_date", 9);
+
+            while (reader.next()) {
+                if (reader.fieldCount() < 10 || reader.isEmpty(serviceCol)) {
+                    System.out.println("calendar.txt: line " + reader.recordNumber()
+                            + " ignored (insufficient columns)");
+                    continue;
+                }
 
-                String line;
-                int lineNo = 1;
-                while ((line = br.readLine()) != null) {
-                    lineNo++;
-                    line = line.trim();
-                    if (line.isEmpty()) continue;
+                LocalDate start = reader.getDate(startCol);
+                LocalDate end = reader.getDate(endCol);
+                if (start == null || end == null) {
+                    System.out.println("calendar.txt: line " + reader.recordNumber() + " parsing failed");
+                    continue;
+                }
 
-                    String[] cols = line.split(",", -1);
-                    if (cols.length < 2) {
-                        System.out.println("calendar_dates.txt: line " + lineNo + " ignored (insufficient columns)");
-                        continue;
+                int weekdayMask = 0;
+                for (int i = 0; i < weekdayCols.length; i++) {
+                    if (reader.getInt(weekdayCols[i], 0) == 1) {
+                        weekdayMask |= TripServiceCalendar.weekdayBit(DayOfWeek.of(i + 1));
                     }
+                }
+                calendar.addWeeklyService(reader.getPooledString(serviceCol), start, end, weekdayMask);
+            }
+        } catch (Exception e) {
+            System.out.println("Error reading calendar.txt: " + e.getMessage());
+        }
+    }
 
-                    String serviceId = cols[0].trim();
-                    String dateStr = cols.length > 1 ? cols[1].trim() : "";
-                    String exStr = cols.length > 2 ? cols[2].trim() : "";
+    private static void readCalendarDates(TripServiceCalendar calendar, String location,
+                                          Callable<GtfsCsvReader> opener) {
+        try (GtfsCsvReader reader = opener.call()) {
+            if (reader == null) {
+                System.out.println("calendar_dates.txt not found: " + location);
+                return;
+            }
+            if (!reader.readHeader()) return;
 
-                    if (serviceId.isEmpty() || dateStr.isEmpty() || exStr.isEmpty()) {
-                        continue;
-                    }
+            int serviceCol = reader.column("service_id", 0);
+            int dateCol = reader.column("date", 1);
+            int exceptionCol = reader.column("exception_type", 2);
 
-                    try {
-                        LocalDate date = LocalDate.parse(dateStr, DATE_FORMAT);
-                        int exceptionType = Integer.parseInt(exStr);
-
-                        if (exceptionType == 1) {
-                            calendar.addServiceDate(serviceId, date);
-                        } else if (exceptionType == 2) {
-                            calendar.removeServiceDate(serviceId, date);
-                        }
-                    } catch (Exception e) {
-                        System.out.println("calendar_dates.txt: line " + lineNo + " parsing failed: " + e.getMessage());
-                    }
+            while (reader.next()) {
+                if (reader.fieldCount() < 2) {
+                    System.out.println("calendar_dates.txt: line " + reader.recordNumber()
+                            + " ignored (insufficient columns)");
+                    continue;
+                }
+                if (reader.isEmpty(serviceCol) || reader.isEmpty(dateCol) || reader.isEmpty(exceptionCol)) {
+                    continue;
+                }
+
+                LocalDate date = reader.getDate(dateCol);
+                int exceptionType = reader.getInt(exceptionCol, -1);
+                if (date == null || exceptionType < 0) {
+                    System.out.println("calendar_dates.txt: line " + reader.recordNumber() + " parsing failed");
+                    continue;
+                }
+
+                if (exceptionType == 1) {
+                    calendar.addServiceDate(reader.getPooledString(serviceCol), date);
+                } else if (exceptionType == 2) {
+                    calendar.removeServiceDate(reader.getPooledString(serviceCol), date);
                 }
             }
         } catch (Exception e) {
             System.out.println("Error reading calendar_dates.txt: " + e.getMessage());
         }
-
-        System.out.println("TripServiceCalendar loaded: serviceCount=" + calendar.serviceCount());
-        return calendar;
     }
 }
-
@@ -0,0 +1,206 @@
+package damose.data.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a CSV file held in memory into line-aligned byte ranges that are tokenized on a ForkJoinPool.
+ * A boundary is only placed on a line break outside quotes, so each chunk yields exactly the records
+ * a sequential read would, and results come back in file order.
+ */
+final class ChunkedCsv {
+
+    /**
+     * Smallest range worth a task of its own.
+     */
+    static final int MIN_CHUNK_BYTES = 4 << 20;
+
+    private static final int MAX_CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Parses one chunk of records.
+     */
+    @FunctionalInterface
+    interface ChunkParser<T> {
+        T parse(GtfsCsvReader chunk) throws IOException;
+    }
+
+    private final ByteBuffer data;
+    private final GtfsCsvReader header;
+    private final int bodyStart;
+
+    private ChunkedCsv(ByteBuffer data, GtfsCsvReader header, int bodyStart) {
+        this.data = data;
+        this.header = header;
+        this.bodyStart = bodyStart;
+    }
+
+    /**
+     * Maps a classpath resource backed by a plain file, or reads it fully otherwise (e.g. from a jar).
+     * Returns null when the resource does not exist.
+     */
+    static ByteBuffer readResource(String resourcePath) throws IOException {
+        URL url = ChunkedCsv.class.getResource(resourcePath);
+        if (url == null) {
+            return null;
+        }
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Path.of(url.toURI()), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // fall through to a stream read
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            return ByteBuffer.wrap(in.readAllBytes());
+        }
+    }
+
+    /**
+     * Reads the header of data. When headerColumn is given, a first line lacking it is treated as data,
+     * with positional columns.
+     */
+    static ChunkedCsv open(ByteBuffer data, String headerColumn) throws IOException {
+        int limit = data.limit();
+        int end = 0;
+        while (end < limit) {
+            end = recordEnd(data, end, false);
+            GtfsCsvReader header = new GtfsCsvReader(data.slice(0, end));
+            if (header.readHeader()) {
+                return headerColumn == null || header.hasColumn(headerColumn)
+                        ? new ChunkedCsv(data, header, end)
+                        : new ChunkedCsv(data, null, 0);
+            }
+        }
+        return new ChunkedCsv(data, null, limit);
+    }
+
+    /**
+     * Returns the number of chunks to split a file of the given size into.
+     */
+    static int chunkCountFor(long bytes, int parallelism) {
+        if (parallelism <= 1 || bytes < 2L * MIN_CHUNK_BYTES) {
+            return 1;
+        }
+        long bySize = bytes / MIN_CHUNK_BYTES;
+        return (int) Math.max(1, Math.min(bySize, (long) parallelism * MAX_CHUNKS_PER_THREAD));
+    }
+
+    /**
+     * Parses the body in up to chunkCount ranges and returns the partial results in file order.
+     */
+    <T> List<T> parse(int chunkCount, ForkJoinPool pool, ChunkParser<T> parser) throws IOException {
+        int[] bounds = chunkCount <= 1 ? new int[] {bodyStart, data.limit()} : boundaries(chunkCount, pool);
+
+        List<Callable<T>> tasks = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            tasks.add(() -> parseRange(from, to, parser));
+        }
+        if (tasks.size() == 1) {
+            return List.of(parseRange(bounds[0], bounds[1], parser));
+        }
+
+        List<T> results = new ArrayList<>(tasks.size());
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    private <T> T parseRange(int from, int to, ChunkParser<T> parser) throws IOException {
+        try (GtfsCsvReader chunk = new GtfsCsvReader(data.slice(from, to - from))) {
+            if (header != null) {
+                chunk.useHeaderOf(header);
+            }
+            return parser.parse(chunk);
+        }
+    }
+
+    /**
+     * Places chunkCount - 1 boundaries near equal offsets, moved forward to the next record start.
+     * The quote parity at each offset comes from a parallel count over the preceding ranges.
+     */
+    private int[] boundaries(int chunkCount, ForkJoinPool pool) throws IOException {
+        int limit = data.limit();
+        long span = limit - bodyStart;
+        int[] raw = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) {
+            raw[i] = (int) (bodyStart + span * i / chunkCount);
+        }
+
+        List<Callable<Integer>> counts = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            int from = raw[i];
+            int to = raw[i + 1];
+            counts.add(() -> countQuotes(data, from, to));
+        }
+        List<Future<Integer>> quoteCounts = pool.invokeAll(counts);
+
+        List<Integer> bounds = new ArrayList<>(chunkCount + 1);
+        bounds.add(bodyStart);
+        long quotesBefore = 0;
+        for (int i = 1; i < chunkCount; i++) {
+            quotesBefore += await(quoteCounts.get(i - 1));
+            int boundary = recordEnd(data, raw[i], (quotesBefore & 1) != 0);
+            if (boundary > bounds.get(bounds.size() - 1) && boundary < limit) {
+                bounds.add(boundary);
+            }
+        }
+        bounds.add(limit);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns the offset just past the first line feed at or after from that is outside quotes.
+     */
+    static int recordEnd(ByteBuffer data, int from, boolean inQuotes) {
+        int limit = data.limit();
+        for (int i = from; i < limit; i++) {
+            byte b = data.get(i);
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private static int countQuotes(ByteBuffer data, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (data.get(i) == '"') count++;
+        }
+        return count;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing CSV chunks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package damose.data.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32C;
+
+/**
+ * GTFS feed read from classpath resources under a fixed directory.
+ */
+final class ClasspathGtfsSource implements GtfsSource {
+
+    private final String directory;
+
+    ClasspathGtfsSource(String directory) {
+        this.directory = directory.endsWith("/") ? directory : directory + "/";
+    }
+
+    @Override
+    public InputStream open(String fileName) {
+        return ClasspathGtfsSource.class.getResourceAsStream(directory + fileName);
+    }
+
+    @Override
+    public ByteBuffer read(String fileName) throws IOException {
+        return ChunkedCsv.readResource(directory + fileName);
+    }
+
+    /**
+     * Jar entries contribute their stored CRC and size; plain files are checksummed by content.
+     */
+    @Override
+    public String fingerprint(String fileName) {
+        URL url = ClasspathGtfsSource.class.getResource(directory + fileName);
+        if (url == null) {
+            return "missing";
+        }
+
+        try {
+            URLConnection connection = url.openConnection();
+            if (connection instanceof JarURLConnection jarConnection) {
+                jarConnection.setUseCaches(false);
+                JarEntry entry = jarConnection.getJarEntry();
+                if (entry != null && entry.getCrc() != -1) {
+                    return "crc32:" + entry.getCrc() + ":" + entry.getSize();
+                }
+            }
+
+            CRC32C crc = new CRC32C();
+            long size = 0;
+            byte[] chunk = new byte[1 << 16];
+            try (InputStream in = connection.getInputStream()) {
+                int read;
+                while ((read = in.read(chunk)) > 0) {
+                    crc.update(chunk, 0, read);
+                    size += read;
+                }
+            }
+            return "crc32c:" + crc.getValue() + ":" + size;
+        } catch (IOException e) {
+            return "unreadable";
+        }
+    }
+
+    @Override
+    public String describe(String fileName) {
+        return directory + fileName;
+    }
+}
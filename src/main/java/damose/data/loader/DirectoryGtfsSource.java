@@ -0,0 +1,57 @@
+package damose.data.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * GTFS feed read from an unpacked directory on disk.
+ */
+final class DirectoryGtfsSource implements GtfsSource {
+
+    private final Path directory;
+
+    DirectoryGtfsSource(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public InputStream open(String fileName) throws IOException {
+        Path file = directory.resolve(fileName);
+        return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+    }
+
+    @Override
+    public ByteBuffer read(String fileName) throws IOException {
+        Path file = directory.resolve(fileName);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Size and modification time stand in for the content; re-hashing a large directory feed would defeat the cache.
+     */
+    @Override
+    public String fingerprint(String fileName) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(directory.resolve(fileName), BasicFileAttributes.class);
+            return "file:" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+
+    @Override
+    public String describe(String fileName) {
+        return directory.resolve(fileName).toString();
+    }
+}
@@ -0,0 +1,597 @@
+package damose.data.loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streaming CSV tokenizer working directly on UTF-8 bytes.
+ * Each record is split into field slices of an internal buffer; numbers and GTFS times are parsed
+ * in place, and Strings are only created on request. Quoting follows {@link CsvParser#parseLine}:
+ * double quotes toggle quoting anywhere in a field, {@code ""} inside quotes is a literal quote,
+ * and quoted fields may span lines. Accessors trim surrounding whitespace like the loaders always did.
+ */
+public final class GtfsCsvReader implements Closeable {
+
+    /**
+     * Marker for a missing or malformed time.
+     */
+    public static final int NO_TIME = -1;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 18;
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer source;
+    private byte[] buf;
+    private int limit;
+    private int pos;
+    private boolean eof;
+
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private int fieldCount;
+    private int recordStart;
+    private long bufferOrigin;
+    private long recordNumber;
+    private boolean replayCurrent;
+
+    private Map<String, Integer> header = Map.of();
+    private String[] pool = new String[1 << 12];
+    private int poolSize;
+
+    /**
+     * Reads from a stream; the stream is closed with the reader.
+     */
+    public GtfsCsvReader(InputStream in) {
+        this(Channels.newChannel(in), null, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads from a channel; the channel is closed with the reader.
+     */
+    public GtfsCsvReader(ReadableByteChannel channel) {
+        this(channel, null, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the remaining bytes of a (possibly memory-mapped) buffer without consuming it.
+     */
+    public GtfsCsvReader(ByteBuffer bytes) {
+        this(null, bytes.slice(), DEFAULT_BUFFER_SIZE);
+    }
+
+    private GtfsCsvReader(ReadableByteChannel channel, ByteBuffer source, int bufferSize) {
+        this.channel = channel;
+        this.source = source;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Opens a classpath resource, or returns null when it does not exist.
+     */
+    public static GtfsCsvReader openResource(String resourcePath) {
+        InputStream in = GtfsCsvReader.class.getResourceAsStream(resourcePath);
+        return in == null ? null : new GtfsCsvReader(in);
+    }
+
+    /**
+     * Reads the first record as header. Returns false for an empty input.
+     */
+    public boolean readHeader() throws IOException {
+        if (!next()) {
+            return false;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < fieldCount; i++) {
+            String name = getString(i);
+            if (i == 0 && name.startsWith("\uFEFF")) {
+                name = name.substring(1).trim();
+            }
+            columns.putIfAbsent(name.toLowerCase(Locale.ROOT), i);
+        }
+        header = columns;
+        return true;
+    }
+
+    /**
+     * Returns whether the header names the given column.
+     */
+    public boolean hasColumn(String name) {
+        return header.containsKey(name);
+    }
+
+    /**
+     * Returns the index of a named column, or fallback when the header does not name it.
+     */
+    public int column(String name, int fallback) {
+        Integer index = header.get(name);
+        return index != null ? index : fallback;
+    }
+
+    /**
+     * Resolves columns of this reader with the header already read by another one, e.g. for a chunk of the same file.
+     */
+    void useHeaderOf(GtfsCsvReader other) {
+        header = other.header;
+    }
+
+    /**
+     * Makes the next call to {@link #next()} return the current record again, e.g. a header-less first line.
+     */
+    public void replayCurrentRecord() {
+        header = Map.of();
+        replayCurrent = true;
+    }
+
+    /**
+     * Advances to the next non-blank record. Returns false at end of input.
+     */
+    public boolean next() throws IOException {
+        if (replayCurrent) {
+            replayCurrent = false;
+            return true;
+        }
+        while (true) {
+            if (!readRecord()) {
+                return false;
+            }
+            recordNumber++;
+            if (fieldCount > 1 || !isEmpty(0)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the 1-based number of the current record, header included.
+     */
+    public long recordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Returns the input offset of the first byte of the current record.
+     */
+    public long recordOffset() {
+        return bufferOrigin + recordStart;
+    }
+
+    /**
+     * Returns the input offset just past the current record, line break included.
+     */
+    public long recordEndOffset() {
+        return bufferOrigin + pos;
+    }
+
+    /**
+     * Returns the number of fields of the current record.
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns whether the field is missing or blank.
+     */
+    public boolean isEmpty(int field) {
+        return trimmedStart(field) >= trimmedEnd(field);
+    }
+
+    /**
+     * Returns the trimmed field as a new String, or "" when missing.
+     */
+    public String getString(int field) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        return s >= e ? "" : new String(buf, s, e - s, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the trimmed field, reusing one String instance per distinct ASCII value seen by this reader.
+     */
+    public String getPooledString(int field) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        if (s >= e) {
+            return "";
+        }
+
+        int hash = 0;
+        for (int i = s; i < e; i++) {
+            byte b = buf[i];
+            if (b < 0) {
+                return new String(buf, s, e - s, StandardCharsets.UTF_8);
+            }
+            hash = 31 * hash + b;
+        }
+
+        int mask = pool.length - 1;
+        int slot = mix(hash) & mask;
+        String candidate;
+        while ((candidate = pool[slot]) != null) {
+            if (asciiEquals(candidate, s, e)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String value = new String(buf, s, e - s, StandardCharsets.ISO_8859_1);
+        pool[slot] = value;
+        if (++poolSize * 2 > pool.length) {
+            growPool();
+        }
+        return value;
+    }
+
+    /**
+     * Parses the field as a decimal int, or returns fallback when missing or malformed.
+     */
+    public int getInt(int field, int fallback) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        if (s >= e) {
+            return fallback;
+        }
+
+        boolean negative = false;
+        if (buf[s] == '-' || buf[s] == '+') {
+            negative = buf[s] == '-';
+            s++;
+        }
+        if (s >= e || e - s > 10) {
+            return fallback;
+        }
+
+        long value = 0;
+        for (int i = s; i < e; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return fallback;
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return fallback;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses the field as a double, or returns fallback when missing or malformed.
+     * Plain decimals with up to 15 significant digits are parsed exactly in place;
+     * anything else goes through {@link Double#parseDouble}.
+     */
+    public double getDouble(int field, double fallback) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        if (s >= e) {
+            return fallback;
+        }
+
+        int i = s;
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+') {
+            negative = buf[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenDot = false;
+        for (; i < e; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && b == '0') {
+                    if (seenDot) scale++;
+                    continue;
+                }
+                if (++digits > MAX_FAST_DIGITS) {
+                    return parseDoubleSlow(s, e, fallback);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenDot) scale++;
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return parseDoubleSlow(s, e, fallback);
+            }
+        }
+        if (!seenDigit) {
+            return parseDoubleSlow(s, e, fallback);
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[scale];
+        } else {
+            return parseDoubleSlow(s, e, fallback);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an H:MM:SS field into seconds since the start of the service day (hours may exceed 23).
+     * Returns {@link #NO_TIME} when missing or malformed.
+     */
+    public int getTimeSeconds(int field) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        if (s >= e) {
+            return NO_TIME;
+        }
+
+        int hours = 0;
+        int minutes = 0;
+        int seconds = 0;
+        int part = 0;
+        int digits = 0;
+        for (int i = s; i < e; i++) {
+            byte b = buf[i];
+            if (b == ':') {
+                if (digits == 0 || ++part > 2) return NO_TIME;
+                digits = 0;
+            } else if (b >= '0' && b <= '9') {
+                if (++digits > 6) return NO_TIME;
+                int digit = b - '0';
+                if (part == 0) {
+                    hours = hours * 10 + digit;
+                } else if (part == 1) {
+                    minutes = minutes * 10 + digit;
+                } else {
+                    seconds = seconds * 10 + digit;
+                }
+            } else {
+                return NO_TIME;
+            }
+        }
+        if (part != 2 || digits == 0 || minutes > 59 || seconds > 59) {
+            return NO_TIME;
+        }
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    /**
+     * Parses a YYYYMMDD field, or returns null when missing or malformed.
+     */
+    public LocalDate getDate(int field) {
+        int s = trimmedStart(field);
+        int e = trimmedEnd(field);
+        if (e - s != 8) {
+            return null;
+        }
+        int value = 0;
+        for (int i = s; i < e; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) return null;
+            value = value * 10 + digit;
+        }
+        try {
+            return LocalDate.of(value / 10000, (value / 100) % 100, value % 100);
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private boolean readRecord() throws IOException {
+        fieldCount = 0;
+        recordStart = pos;
+
+        if (pos >= limit && !fill()) {
+            return false;
+        }
+
+        int start = pos;
+        int write = pos;
+        boolean inQuotes = false;
+        while (true) {
+            if (pos >= limit) {
+                int shift = recordStart;
+                if (!fill()) {
+                    addField(start, write);
+                    return true;
+                }
+                shift -= recordStart;
+                start -= shift;
+                write -= shift;
+            }
+
+            byte b = buf[pos];
+            if (inQuotes) {
+                if (b == '"') {
+                    if (pos + 1 >= limit) {
+                        int shift = recordStart;
+                        boolean more = fill();
+                        shift -= recordStart;
+                        start -= shift;
+                        write -= shift;
+                        if (!more) {
+                            pos++;
+                            addField(start, write);
+                            return true;
+                        }
+                    }
+                    if (buf[pos + 1] == '"') {
+                        buf[write++] = '"';
+                        pos += 2;
+                    } else {
+                        inQuotes = false;
+                        pos++;
+                    }
+                } else {
+                    buf[write++] = b;
+                    pos++;
+                }
+            } else if (b == '"') {
+                inQuotes = true;
+                pos++;
+            } else if (b == ',') {
+                addField(start, write);
+                pos++;
+                start = pos;
+                write = pos;
+            } else if (b == '\n' || b == '\r') {
+                addField(start, write);
+                pos++;
+                if (b == '\r') {
+                    if (pos >= limit) {
+                        fill();
+                    }
+                    if (pos < limit && buf[pos] == '\n') {
+                        pos++;
+                    }
+                }
+                return true;
+            } else {
+                buf[write++] = b;
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Loads more bytes, moving the current record to the front of the buffer (growing it if needed).
+     * Returns false when the input is exhausted. Field offsets are rebased by the caller.
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+
+        int keep = limit - recordStart;
+        if (recordStart > 0) {
+            System.arraycopy(buf, recordStart, buf, 0, keep);
+            for (int i = 0; i < fieldCount; i++) {
+                fieldStart[i] -= recordStart;
+                fieldEnd[i] -= recordStart;
+            }
+            pos -= recordStart;
+            bufferOrigin += recordStart;
+            recordStart = 0;
+            limit = keep;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+
+        int read = readInto(buf, limit, buf.length - limit);
+        if (read <= 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private int readInto(byte[] target, int offset, int length) throws IOException {
+        if (source != null) {
+            int count = Math.min(length, source.remaining());
+            if (count == 0) {
+                return -1;
+            }
+            source.get(target, offset, count);
+            return count;
+        }
+        ByteBuffer window = ByteBuffer.wrap(target, offset, length);
+        int read;
+        do {
+            read = channel.read(window);
+        } while (read == 0);
+        return read;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private int trimmedStart(int field) {
+        if (field < 0 || field >= fieldCount) {
+            return 0;
+        }
+        int s = fieldStart[field];
+        int e = fieldEnd[field];
+        while (s < e && (buf[s] & 0xFF) <= ' ') s++;
+        return s;
+    }
+
+    private int trimmedEnd(int field) {
+        if (field < 0 || field >= fieldCount) {
+            return 0;
+        }
+        int s = fieldStart[field];
+        int e = fieldEnd[field];
+        while (e > s && (buf[e - 1] & 0xFF) <= ' ') e--;
+        return e;
+    }
+
+    private double parseDoubleSlow(int s, int e, double fallback) {
+        try {
+            return Double.parseDouble(new String(buf, s, e - s, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException ex) {
+            return fallback;
+        }
+    }
+
+    private boolean asciiEquals(String candidate, int s, int e) {
+        if (candidate.length() != e - s) {
+            return false;
+        }
+        for (int i = 0; i < candidate.length(); i++) {
+            if (candidate.charAt(i) != buf[s + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void growPool() {
+        String[] old = pool;
+        pool = new String[old.length * 2];
+        int mask = pool.length - 1;
+        for (String value : old) {
+            if (value == null) continue;
+            int slot = mix(value.hashCode()) & mask;
+            while (pool[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            pool[slot] = value;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,21 @@
+package damose.data.loader;
+
+import java.util.List;
+
+import damose.model.Route;
+import damose.model.ShapeStore;
+import damose.model.Stop;
+import damose.model.StopTimeTable;
+import damose.model.Trip;
+import damose.model.TripServiceCalendar;
+
+/**
+ * Parsed GTFS static tables, as produced by the CSV loaders or restored from a binary snapshot.
+ */
+public record GtfsSnapshot(List<Stop> stops,
+                           List<Trip> trips,
+                           StopTimeTable stopTimes,
+                           ShapeStore shapes,
+                           List<Route> routes,
+                           TripServiceCalendar calendar) {
+}
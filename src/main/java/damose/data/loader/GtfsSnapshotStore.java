@@ -0,0 +1,482 @@
+package damose.data.loader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import damose.config.AppConstants;
+import damose.model.Route;
+import damose.model.ShapeStore;
+import damose.model.ShapeTable;
+import damose.model.Stop;
+import damose.model.StopTimeTable;
+import damose.model.Trip;
+import damose.model.TripServiceCalendar;
+import damose.util.StringDictionary;
+
+/**
+ * Reads and writes the versioned binary snapshot of parsed GTFS static tables.
+ * The snapshot is keyed by a digest of the source files, so a changed feed is never served from cache.
+ * Layout: header (magic, version, source digest), string table, then one section per table;
+ * stop_times are stored column by column with their own id dictionary, shapes as fixed-point coordinate runs
+ * (or, when decoded on demand, as byte ranges into shapes.txt) and service calendars as day bitsets.
+ */
+public final class GtfsSnapshotStore {
+
+    private static final int MAGIC = 0x44475331;
+    private static final int FORMAT_VERSION = 5;
+    private static final int DIGEST_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + 4 + DIGEST_LENGTH;
+    private static final int PACKED_SHAPES = 0;
+    private static final int INDEXED_SHAPES = 1;
+
+    private final Path snapshotFile;
+
+    public GtfsSnapshotStore() {
+        this(Path.of(AppConstants.GTFS_SNAPSHOT_FILE));
+    }
+
+    public GtfsSnapshotStore(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Returns a digest of the bundled GTFS source files.
+     */
+    public byte[] computeSourceDigest() {
+        return computeSourceDigest(GtfsSource.bundled());
+    }
+
+    /**
+     * Returns a digest of the table files of a feed, built from each file's fingerprint and the shape loading mode.
+     */
+    public byte[] computeSourceDigest(GtfsSource source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String fileName : GtfsSource.TABLE_FILES) {
+                digest.update(fileName.getBytes(StandardCharsets.UTF_8));
+                digest.update(source.fingerprint(fileName).getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((ShapesLoader.lazyEnabled() ? "shapes:lazy" : "shapes:packed").getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns the snapshot for the given source digest, or null when missing, stale or unreadable.
+     */
+    public GtfsSnapshot read(byte[] sourceDigest) {
+        if (sourceDigest == null || !Files.isRegularFile(snapshotFile)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) break;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_LENGTH
+                    || header.getInt() != MAGIC
+                    || header.getInt() != FORMAT_VERSION) {
+                System.out.println("GTFS snapshot ignored: unknown format");
+                return null;
+            }
+            byte[] storedDigest = new byte[DIGEST_LENGTH];
+            header.get(storedDigest);
+            if (!Arrays.equals(storedDigest, sourceDigest)) {
+                System.out.println("GTFS snapshot is stale, falling back to CSV");
+                return null;
+            }
+
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf.position(HEADER_LENGTH);
+            return decode(buf);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("GTFS snapshot unreadable, falling back to CSV: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot atomically, replacing any previous one.
+     */
+    public boolean write(GtfsSnapshot snapshot, byte[] sourceDigest) {
+        if (snapshot == null || sourceDigest == null || sourceDigest.length != DIGEST_LENGTH) {
+            return false;
+        }
+
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try {
+            Path parent = snapshotFile.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            StringTable strings = collectStrings(snapshot);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(sourceDigest);
+                strings.writeTo(out);
+                encode(snapshot, strings, out);
+            }
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not write GTFS snapshot: " + e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+            return false;
+        }
+    }
+
+    private static StringTable collectStrings(GtfsSnapshot snapshot) {
+        StringTable strings = new StringTable();
+        for (Stop stop : snapshot.stops()) {
+            strings.add(stop.getStopId());
+            strings.add(stop.getStopCode());
+            strings.add(stop.getStopName());
+        }
+        for (Trip trip : snapshot.trips()) {
+            strings.add(trip.getRouteId());
+            strings.add(trip.getServiceId());
+            strings.add(trip.getTripId());
+            strings.add(trip.getTripHeadsign());
+            strings.add(trip.getTripShortName());
+            strings.add(trip.getShapeId());
+        }
+        for (int code = 0; code < snapshot.shapes().size(); code++) {
+            strings.add(snapshot.shapes().shapeId(code));
+        }
+        for (Route route : snapshot.routes()) {
+            strings.add(route.getRouteId());
+            strings.add(route.getAgencyId());
+            strings.add(route.getRouteShortName());
+            strings.add(route.getRouteLongName());
+            strings.add(route.getRouteColor());
+            strings.add(route.getRouteTextColor());
+        }
+        TripServiceCalendar calendar = snapshot.calendar();
+        for (int code = 0; code < calendar.serviceCodeCount(); code++) {
+            strings.add(calendar.serviceId(code));
+        }
+        return strings;
+    }
+
+    private static void encode(GtfsSnapshot snapshot, StringTable strings, DataOutputStream out) throws IOException {
+        out.writeInt(snapshot.stops().size());
+        for (Stop stop : snapshot.stops()) {
+            out.writeInt(strings.indexOf(stop.getStopId()));
+            out.writeInt(strings.indexOf(stop.getStopCode()));
+            out.writeInt(strings.indexOf(stop.getStopName()));
+            out.writeDouble(stop.getStopLat());
+            out.writeDouble(stop.getStopLon());
+        }
+
+        out.writeInt(snapshot.trips().size());
+        for (Trip trip : snapshot.trips()) {
+            out.writeInt(strings.indexOf(trip.getRouteId()));
+            out.writeInt(strings.indexOf(trip.getServiceId()));
+            out.writeInt(strings.indexOf(trip.getTripId()));
+            out.writeInt(strings.indexOf(trip.getTripHeadsign()));
+            out.writeInt(strings.indexOf(trip.getTripShortName()));
+            out.writeInt(trip.getDirectionId());
+            out.writeInt(strings.indexOf(trip.getShapeId()));
+        }
+
+        writeStopTimes(snapshot.stopTimes(), out);
+
+        writeShapes(snapshot.shapes(), strings, out);
+
+        out.writeInt(snapshot.routes().size());
+        for (Route route : snapshot.routes()) {
+            out.writeInt(strings.indexOf(route.getRouteId()));
+            out.writeInt(strings.indexOf(route.getAgencyId()));
+            out.writeInt(strings.indexOf(route.getRouteShortName()));
+            out.writeInt(strings.indexOf(route.getRouteLongName()));
+            out.writeInt(route.getVehicleType().getGtfsCode());
+            out.writeInt(strings.indexOf(route.getRouteColor()));
+            out.writeInt(strings.indexOf(route.getRouteTextColor()));
+        }
+
+        TripServiceCalendar calendar = snapshot.calendar();
+        out.writeInt(calendar.serviceCodeCount());
+        for (int code = 0; code < calendar.serviceCodeCount(); code++) {
+            long[] words = calendar.dayWords(code);
+            out.writeInt(strings.indexOf(calendar.serviceId(code)));
+            out.writeInt(calendar.firstDay(code));
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private static GtfsSnapshot decode(ByteBuffer buf) {
+        String[] strings = readStringTable(buf);
+
+        int stopCount = buf.getInt();
+        List<Stop> stops = new ArrayList<>(stopCount);
+        for (int i = 0; i < stopCount; i++) {
+            String stopId = string(strings, buf.getInt());
+            String stopCode = string(strings, buf.getInt());
+            String stopName = string(strings, buf.getInt());
+            stops.add(new Stop(stopId, stopCode, stopName, buf.getDouble(), buf.getDouble()));
+        }
+
+        int tripCount = buf.getInt();
+        List<Trip> trips = new ArrayList<>(tripCount);
+        for (int i = 0; i < tripCount; i++) {
+            String routeId = string(strings, buf.getInt());
+            String serviceId = string(strings, buf.getInt());
+            String tripId = string(strings, buf.getInt());
+            String headsign = string(strings, buf.getInt());
+            String shortName = string(strings, buf.getInt());
+            int directionId = buf.getInt();
+            String shapeId = string(strings, buf.getInt());
+            trips.add(new Trip(routeId, serviceId, tripId, headsign, shortName, directionId, shapeId));
+        }
+
+        StopTimeTable stopTimes = readStopTimes(buf);
+
+        ShapeStore shapes = readShapes(buf, strings);
+
+        int routeCount = buf.getInt();
+        List<Route> routes = new ArrayList<>(routeCount);
+        for (int i = 0; i < routeCount; i++) {
+            String routeId = string(strings, buf.getInt());
+            String agencyId = string(strings, buf.getInt());
+            String shortName = string(strings, buf.getInt());
+            String longName = string(strings, buf.getInt());
+            int routeType = buf.getInt();
+            String color = string(strings, buf.getInt());
+            String textColor = string(strings, buf.getInt());
+            routes.add(new Route(routeId, agencyId, shortName, longName, routeType, color, textColor));
+        }
+
+        int serviceCount = buf.getInt();
+        TripServiceCalendar calendar = new TripServiceCalendar();
+        for (int i = 0; i < serviceCount; i++) {
+            String serviceId = string(strings, buf.getInt());
+            int firstDay = buf.getInt();
+            long[] words = new long[buf.getInt()];
+            buf.asLongBuffer().get(words);
+            buf.position(buf.position() + words.length * Long.BYTES);
+            calendar.setServiceDays(serviceId, firstDay, words);
+        }
+
+        return new GtfsSnapshot(stops, trips, stopTimes, shapes, routes, calendar);
+    }
+
+    private static void writeStopTimes(StopTimeTable table, DataOutputStream out) throws IOException {
+        StringDictionary dictionary = table.dictionary();
+        out.writeInt(dictionary.size());
+        for (int code = 0; code < dictionary.size(); code++) {
+            byte[] bytes = dictionary.get(code).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        StopTimeTable.Columns columns = table.columns();
+        int rows = table.size();
+        out.writeInt(rows);
+        writeInts(columns.tripCodes(), rows, out);
+        writeInts(columns.stopCodes(), rows, out);
+        writeInts(columns.headsignCodes(), rows, out);
+        writeInts(columns.arrivalSeconds(), rows, out);
+        writeInts(columns.departureSeconds(), rows, out);
+        writeInts(columns.stopSequences(), rows, out);
+        out.write(columns.pickupTypes(), 0, rows);
+        out.write(columns.dropOffTypes(), 0, rows);
+        out.write(columns.timepoints(), 0, rows);
+        for (int i = 0; i < rows; i++) {
+            out.writeFloat(columns.shapeDistTraveled()[i]);
+        }
+    }
+
+    private static StopTimeTable readStopTimes(ByteBuffer buf) {
+        String[] values = readStringTable(buf);
+        StringDictionary dictionary = new StringDictionary(values.length);
+        for (String value : values) {
+            dictionary.intern(value);
+        }
+
+        int rows = buf.getInt();
+        int[] tripCodes = readInts(buf, rows);
+        int[] stopCodes = readInts(buf, rows);
+        int[] headsignCodes = readInts(buf, rows);
+        int[] arrivals = readInts(buf, rows);
+        int[] departures = readInts(buf, rows);
+        int[] sequences = readInts(buf, rows);
+        byte[] pickups = readBytes(buf, rows);
+        byte[] dropOffs = readBytes(buf, rows);
+        byte[] timepoints = readBytes(buf, rows);
+        float[] shapeDist = new float[rows];
+        buf.asFloatBuffer().get(shapeDist);
+        buf.position(buf.position() + rows * Float.BYTES);
+
+        StopTimeTable.Builder builder = StopTimeTable.builder(dictionary, rows);
+        for (int i = 0; i < rows; i++) {
+            builder.addCodes(tripCodes[i], stopCodes[i], headsignCodes[i], arrivals[i], departures[i],
+                    sequences[i], pickups[i], dropOffs[i], shapeDist[i], timepoints[i]);
+        }
+        return builder.build();
+    }
+
+    private static void writeShapes(ShapeStore store, StringTable strings, DataOutputStream out) throws IOException {
+        if (store instanceof LazyShapeStore lazy) {
+            writeShapeIndex(lazy, strings, out);
+            return;
+        }
+        ShapeTable shapes = (ShapeTable) store;
+        out.writeInt(PACKED_SHAPES);
+        out.writeInt(shapes.size());
+        out.writeInt(shapes.totalPoints());
+        for (int code = 0; code < shapes.size(); code++) {
+            ShapeTable.Polyline shape = shapes.shape(code);
+            out.writeInt(strings.indexOf(shapes.shapeId(code)));
+            out.writeInt(shape.size());
+            for (int i = 0; i < shape.size(); i++) {
+                out.writeInt(shape.latitudeUnits(i));
+                out.writeInt(shape.longitudeUnits(i));
+            }
+        }
+    }
+
+    private static void writeShapeIndex(LazyShapeStore shapes, StringTable strings, DataOutputStream out)
+            throws IOException {
+        out.writeInt(INDEXED_SHAPES);
+        out.writeInt(shapes.size());
+        for (int code = 0; code < shapes.size(); code++) {
+            out.writeInt(strings.indexOf(shapes.shapeId(code)));
+        }
+        writeInts(shapes.rowCounts(), shapes.size(), out);
+        writeInts(shapes.runOffsets(), shapes.size() + 1, out);
+        out.writeInt(shapes.runBounds().length);
+        writeInts(shapes.runBounds(), shapes.runBounds().length, out);
+        writeInts(shapes.columns(), 3, out);
+    }
+
+    private static ShapeStore readShapes(ByteBuffer buf, String[] strings) {
+        if (buf.getInt() == INDEXED_SHAPES) {
+            return readShapeIndex(buf, strings);
+        }
+        int shapeCount = buf.getInt();
+        ShapeTable.Builder builder = ShapeTable.builder(buf.getInt());
+        for (int i = 0; i < shapeCount; i++) {
+            builder.startShape(string(strings, buf.getInt()));
+            int pointCount = buf.getInt();
+            for (int p = 0; p < pointCount; p++) {
+                builder.addUnits(buf.getInt(), buf.getInt());
+            }
+            builder.endShape();
+        }
+        return builder.build();
+    }
+
+    private static LazyShapeStore readShapeIndex(ByteBuffer buf, String[] strings) {
+        int shapeCount = buf.getInt();
+        StringDictionary ids = new StringDictionary(shapeCount);
+        for (int i = 0; i < shapeCount; i++) {
+            ids.intern(string(strings, buf.getInt()));
+        }
+        int[] rowCounts = readInts(buf, shapeCount);
+        int[] runOffsets = readInts(buf, shapeCount + 1);
+        int[] runBounds = readInts(buf, buf.getInt());
+        int[] columns = readInts(buf, 3);
+        return new LazyShapeStore(ids, rowCounts, runOffsets, runBounds, columns[0], columns[1], columns[2], null);
+    }
+
+    private static void writeInts(int[] values, int count, DataOutputStream out) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buf, int count) {
+        int[] values = new int[count];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    private static byte[] readBytes(ByteBuffer buf, int count) {
+        byte[] values = new byte[count];
+        buf.get(values);
+        return values;
+    }
+
+    private static String[] readStringTable(ByteBuffer buf) {
+        int count = buf.getInt();
+        String[] strings = new String[count];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = buf.getInt();
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buf.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * Deduplicated string pool; every string in the snapshot is stored once and referenced by index.
+     */
+    private static final class StringTable {
+
+        private final Map<String, Integer> indexByValue = new LinkedHashMap<>();
+
+        void add(String value) {
+            if (value != null) {
+                indexByValue.putIfAbsent(value, indexByValue.size());
+            }
+        }
+
+        int indexOf(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = indexByValue.get(value);
+            if (index == null) {
+                throw new IllegalStateException("String not registered in snapshot table: " + value);
+            }
+            return index;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(indexByValue.size());
+            for (String value : indexByValue.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package damose.data.loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import damose.config.AppConstants;
+
+/**
+ * Location of a GTFS static feed: the bundled classpath copy, an external directory or an external zip.
+ * Files are addressed by their GTFS name (e.g. "stops.txt") and read as streams, never extracted to disk.
+ * Implementations allow different files to be read concurrently.
+ */
+public interface GtfsSource extends Closeable {
+
+    String STOPS = "stops.txt";
+    String TRIPS = "trips.txt";
+    String STOP_TIMES = "stop_times.txt";
+    String SHAPES = "shapes.txt";
+    String ROUTES = "routes.txt";
+    String CALENDAR = "calendar.txt";
+    String CALENDAR_DATES = "calendar_dates.txt";
+
+    /**
+     * Files whose content determines the parsed static tables.
+     */
+    String[] TABLE_FILES = {STOPS, TRIPS, STOP_TIMES, SHAPES, ROUTES, CALENDAR, CALENDAR_DATES};
+
+    /**
+     * Opens a file as a stream, or returns null when the feed does not contain it.
+     */
+    InputStream open(String fileName) throws IOException;
+
+    /**
+     * Returns the whole file, memory-mapped when it is a plain file, or null when the feed does not contain it.
+     * Other files, such as zip entries, are read whole onto the heap.
+     */
+    ByteBuffer read(String fileName) throws IOException;
+
+    /**
+     * Returns a cheap identity of the file content, used to invalidate cached tables.
+     */
+    String fingerprint(String fileName);
+
+    /**
+     * Returns a human-readable location of the file, for logs.
+     */
+    String describe(String fileName);
+
+    /**
+     * Opens a file for tokenizing, or returns null when the feed does not contain it.
+     */
+    default GtfsCsvReader openCsv(String fileName) throws IOException {
+        InputStream in = open(fileName);
+        return in == null ? null : new GtfsCsvReader(in);
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Returns the feed bundled under /gtfs_static on the classpath.
+     */
+    static GtfsSource bundled() {
+        return new ClasspathGtfsSource(AppConstants.GTFS_STATIC_RESOURCE_DIR);
+    }
+
+    /**
+     * Returns a source reading an external directory or zip file.
+     */
+    static GtfsSource of(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return new DirectoryGtfsSource(path);
+        }
+        if (Files.isRegularFile(path)) {
+            return new ZipGtfsSource(path);
+        }
+        throw new IOException("GTFS feed not found: " + path);
+    }
+
+    /**
+     * Returns the feed selected with -D{@value AppConstants#GTFS_SOURCE_PROPERTY} or the
+     * {@value AppConstants#GTFS_SOURCE_ENV} environment variable, or the bundled one when none is set or usable.
+     */
+    static GtfsSource fromConfiguration() {
+        String configured = System.getProperty(AppConstants.GTFS_SOURCE_PROPERTY);
+        if (configured == null || configured.isBlank()) {
+            configured = System.getenv(AppConstants.GTFS_SOURCE_ENV);
+        }
+        if (configured == null || configured.isBlank()) {
+            return bundled();
+        }
+
+        try {
+            GtfsSource source = of(Path.of(configured.trim()));
+            System.out.println("Using external GTFS feed: " + configured.trim());
+            return source;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot open GTFS feed " + configured + ", using bundled data: " + e.getMessage());
+            return bundled();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package damose.data.loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import damose.config.AppConstants;
+import damose.model.ShapeStore;
+import damose.model.ShapeTable;
+import damose.util.StringDictionary;
+
+/**
+ * Shapes decoded on first request from the raw bytes of shapes.txt.
+ * An indexing pass only records, per shape id, its row count and the byte ranges holding its rows;
+ * decoded shapes are kept in a bounded LRU cache. Point counts are raw row counts, before duplicate removal.
+ */
+public final class LazyShapeStore implements ShapeStore {
+
+    private final StringDictionary ids;
+    private final int[] rowCounts;
+    private final int[] runOffsets;
+    private final int[] runBounds;
+    private final int latCol;
+    private final int lonCol;
+    private final int seqCol;
+    private final ByteBuffer data;
+    private final Map<Integer, ShapeTable.Polyline> decoded;
+
+    LazyShapeStore(StringDictionary ids, int[] rowCounts, int[] runOffsets, int[] runBounds,
+                   int latCol, int lonCol, int seqCol, ByteBuffer data) {
+        this.ids = ids;
+        this.rowCounts = rowCounts;
+        this.runOffsets = runOffsets;
+        this.runBounds = runBounds;
+        this.latCol = latCol;
+        this.lonCol = lonCol;
+        this.seqCol = seqCol;
+        this.data = data;
+        this.decoded = new LinkedHashMap<>(AppConstants.SHAPE_CACHE_SIZE * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ShapeTable.Polyline> eldest) {
+                return size() > AppConstants.SHAPE_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Indexes the rows of shapes.txt held in data without decoding any point.
+     */
+    static LazyShapeStore index(ByteBuffer shapesData) throws IOException {
+        ByteBuffer data = shapesData.slice();
+        StringDictionary ids = new StringDictionary();
+        RunList runs = new RunList();
+        int latCol;
+        int lonCol;
+        int seqCol;
+
+        try (GtfsCsvReader reader = new GtfsCsvReader(data)) {
+            if (reader.readHeader() && !reader.hasColumn("shape_id")) {
+                reader.replayCurrentRecord();
+            }
+            int idCol = reader.column("shape_id", 0);
+            latCol = reader.column("shape_pt_lat", 1);
+            lonCol = reader.column("shape_pt_lon", 2);
+            seqCol = reader.column("shape_pt_sequence", 3);
+
+            String lastId = null;
+            int lastCode = -1;
+            while (reader.next()) {
+                if (reader.fieldCount() < 4) continue;
+
+                String shapeId = reader.getPooledString(idCol);
+                if (shapeId.isEmpty()) continue;
+
+                if (shapeId != lastId) {
+                    lastId = shapeId;
+                    lastCode = ids.intern(shapeId);
+                }
+                runs.add(lastCode, (int) reader.recordOffset(), (int) reader.recordEndOffset());
+            }
+        }
+        return runs.build(ids, latCol, lonCol, seqCol, data);
+    }
+
+    /**
+     * Returns whether the store can decode shapes, i.e. it was not restored from a snapshot without its source bytes.
+     */
+    boolean hasData() {
+        return data != null;
+    }
+
+    /**
+     * Returns the same index reading from the given bytes of shapes.txt.
+     */
+    LazyShapeStore withData(ByteBuffer shapesData) {
+        return new LazyShapeStore(ids, rowCounts, runOffsets, runBounds, latCol, lonCol, seqCol, shapesData);
+    }
+
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public String shapeId(int code) {
+        return ids.get(code);
+    }
+
+    @Override
+    public int pointCount(String shapeId) {
+        int code = ids.codeOf(shapeId);
+        return code < 0 ? 0 : rowCounts[code];
+    }
+
+    @Override
+    public ShapeTable.Polyline shape(String shapeId) {
+        int code = ids.codeOf(shapeId);
+        if (code < 0 || data == null) {
+            return ShapeTable.Polyline.empty();
+        }
+        synchronized (decoded) {
+            ShapeTable.Polyline cached = decoded.get(code);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        ShapeTable.Polyline shape = decode(code);
+        synchronized (decoded) {
+            decoded.put(code, shape);
+        }
+        return shape;
+    }
+
+    private ShapeTable.Polyline decode(int code) {
+        ShapesLoader.ShapeRows rows = new ShapesLoader.ShapeRows();
+        try {
+            for (int run = runOffsets[code]; run < runOffsets[code + 1]; run++) {
+                int from = runBounds[run * 2];
+                int to = runBounds[run * 2 + 1];
+                try (GtfsCsvReader reader = new GtfsCsvReader(data.slice(from, to - from))) {
+                    while (reader.next()) {
+                        if (reader.fieldCount() < 4) continue;
+                        rows.add(reader.getDouble(latCol, 0.0), reader.getDouble(lonCol, 0.0),
+                                reader.getInt(seqCol, 0));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error decoding shape " + ids.get(code) + ": " + e.getMessage());
+            return ShapeTable.Polyline.empty();
+        }
+
+        String shapeId = ids.get(code);
+        ShapeTable.Builder builder = ShapeTable.builder(rows.size());
+        ShapesLoader.appendShape(builder, shapeId, rows);
+        return builder.build().shape(shapeId);
+    }
+
+    int[] rowCounts() {
+        return rowCounts;
+    }
+
+    int[] runOffsets() {
+        return runOffsets;
+    }
+
+    int[] runBounds() {
+        return runBounds;
+    }
+
+    int[] columns() {
+        return new int[] {latCol, lonCol, seqCol};
+    }
+
+    /**
+     * Byte ranges of consecutive rows, chained per shape code in file order.
+     * Adjacent rows of the same shape extend the shape's last range instead of opening a new one.
+     */
+    private static final class RunList {
+
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private int[] next = new int[1024];
+        private int[] head = new int[256];
+        private int[] tail = new int[256];
+        private int[] rowCounts = new int[256];
+        private int size;
+        private int shapes;
+
+        void add(int code, int start, int end) {
+            if (code >= shapes) {
+                if (code >= head.length) {
+                    int grown = Math.max(code + 1, head.length * 2);
+                    head = Arrays.copyOf(head, grown);
+                    tail = Arrays.copyOf(tail, grown);
+                    rowCounts = Arrays.copyOf(rowCounts, grown);
+                }
+                head[code] = -1;
+                tail[code] = -1;
+                shapes = code + 1;
+            }
+            rowCounts[code]++;
+
+            int last = tail[code];
+            if (last >= 0 && to[last] == start) {
+                to[last] = end;
+                return;
+            }
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                next = Arrays.copyOf(next, size * 2);
+            }
+            from[size] = start;
+            to[size] = end;
+            next[size] = -1;
+            if (last >= 0) {
+                next[last] = size;
+            } else {
+                head[code] = size;
+            }
+            tail[code] = size;
+            size++;
+        }
+
+        LazyShapeStore build(StringDictionary ids, int latCol, int lonCol, int seqCol, ByteBuffer data) {
+            int[] runOffsets = new int[shapes + 1];
+            int[] runBounds = new int[size * 2];
+            int run = 0;
+            for (int code = 0; code < shapes; code++) {
+                runOffsets[code] = run;
+                for (int i = head[code]; i >= 0; i = next[i]) {
+                    runBounds[run * 2] = from[i];
+                    runBounds[run * 2 + 1] = to[i];
+                    run++;
+                }
+            }
+            runOffsets[shapes] = run;
+            return new LazyShapeStore(ids, Arrays.copyOf(rowCounts, shapes), runOffsets, runBounds,
+                    latCol, lonCol, seqCol, data);
+        }
+    }
+}
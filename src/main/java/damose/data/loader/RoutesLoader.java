@@ -1,14 +1,12 @@
 package damose.data.loader;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import damose.config.AppConstants;
 import damose.model.Route;
 
 /**
@@ -16,7 +14,6 @@ import damose.model.Route;
  */
 public final class RoutesLoader {
 
-    private static final String ROUTES_PATH = "/gtfs_static/routes.txt";
     private static Map<String, Route> routesById = new HashMap<>();
 
     private RoutesLoader() {
@@ -26,34 +23,55 @@ public final class RoutesLoader {
      * Returns the result of load.
      */
     public static List<Route> load() {
-        return load(ROUTES_PATH);
+        return load(AppConstants.GTFS_ROUTES_PATH);
     }
 
     /**
      * Returns the result of load.
      */
     public static List<Route> load(String resourcePath) {
+        return load(resourcePath, () -> GtfsCsvReader.openResource(resourcePath));
+    }
+
+    /**
+     * Returns the routes of the given feed.
+     */
+    public static List<Route> load(GtfsSource source) {
+        return load(source.describe(GtfsSource.ROUTES), () -> source.openCsv(GtfsSource.ROUTES));
+    }
+
+    private static List<Route> load(String location, Callable<GtfsCsvReader> opener) {
         List<Route> routes = new ArrayList<>();
         routesById.clear();
 
-        try (InputStream in = RoutesLoader.class.getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                System.err.println("RoutesLoader: resource not found: " + resourcePath);
+        try (GtfsCsvReader reader = opener.call()) {
+            if (reader == null) {
+                System.err.println("RoutesLoader: resource not found: " + location);
                 return routes;
             }
-
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                String header = br.readLine();
-                if (header == null) return routes;
-
-                String line;
-                while ((line = br.readLine()) != null) {
-                    Route route = parseLine(line);
-                    if (route != null) {
-                        routes.add(route);
-                        routesById.put(route.getRouteId(), route);
-                    }
-                }
+            if (!reader.readHeader()) return routes;
+
+            int idCol = reader.column("route_id", 0);
+            int agencyCol = reader.column("agency_id", 1);
+            int shortNameCol = reader.column("route_short_name", 2);
+            int longNameCol = reader.column("route_long_name", 3);
+            int typeCol = reader.column("route_type", 4);
+            int colorCol = reader.column("route_color", 6);
+            int textColorCol = reader.column("route_text_color", 7);
+
+            while (reader.next()) {
+                if (reader.fieldCount() < 5) continue;
+
+                Route route = new Route(
+                        reader.getString(idCol),
+                        reader.getString(agencyCol),
+                        reader.getString(shortNameCol),
+                        reader.getString(longNameCol),
+                        reader.getInt(typeCol, 3),
+                        reader.getString(colorCol),
+                        reader.getString(textColorCol));
+                routes.add(route);
+                routesById.put(route.getRouteId(), route);
             }
         } catch (Exception e) {
             System.err.println("Error loading routes.txt: " + e.getMessage());
@@ -64,40 +82,19 @@ public final class RoutesLoader {
         return routes;
     }
 
-    private static Route parseLine(String line) {
-        if (line == null || line.trim().isEmpty()) return null;
-
-        List<String> fields = CsvParser.parseLine(line);
-        if (fields.size() < 5) return null;
-
-        try {
-            String routeId = safeGet(fields, 0).trim();
-            String agencyId = safeGet(fields, 1).trim();
-            String shortName = safeGet(fields, 2).trim();
-            String longName = safeGet(fields, 3).trim();
-            int routeType = parseRouteType(safeGet(fields, 4).trim());
-            String routeColor = safeGet(fields, 6).trim();
-            String textColor = safeGet(fields, 7).trim();
-
-            return new Route(routeId, agencyId, shortName, longName, routeType, routeColor, textColor);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private static int parseRouteType(String s) {
-        if (s == null || s.isEmpty()) return 3;
-        try {
-            return Integer.parseInt(s);
-        } catch (NumberFormatException e) {
-            return 3;
+    /**
+     * Replaces the route index with routes restored from a snapshot.
+     */
+    public static void register(List<Route> routes) {
+        routesById.clear();
+        if (routes == null) return;
+        for (Route route : routes) {
+            if (route != null) {
+                routesById.put(route.getRouteId(), route);
+            }
         }
     }
 
-    private static String safeGet(List<String> list, int idx) {
-        return idx < list.size() ? list.get(idx) : "";
-    }
-
     /**
      * Returns the route by id.
      */
@@ -1,22 +1,24 @@
 package damose.data.loader;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import org.jxmapviewer.viewer.GeoPosition;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import damose.config.AppConstants;
+import damose.model.ShapeStore;
+import damose.model.ShapeTable;
 
 /**
  * Static data loader for shapes loader.
+ * Points are parsed straight into fixed-point int columns and packed into a {@link ShapeTable};
+ * no per-point objects are created. With -D{@value AppConstants#LAZY_SHAPES_PROPERTY}=true a memory-mapped
+ * feed is only indexed and shapes are decoded on first use by a {@link LazyShapeStore}; feeds read onto the heap,
+ * such as zip entries and jar resources, are still parsed into a table.
  */
 public final class ShapesLoader {
 
@@ -26,103 +28,251 @@ public final class ShapesLoader {
     /**
      * Returns the result of load.
      */
-    public static Map<String, List<GeoPosition>> load() {
+    public static ShapeTable load() {
         return load(AppConstants.GTFS_SHAPES_PATH);
     }
 
     /**
      * Returns the result of load.
      */
-    public static Map<String, List<GeoPosition>> load(String resourcePath) {
-        Map<String, List<ShapeRow>> rowsByShapeId = new HashMap<>();
+    public static ShapeTable load(String resourcePath) {
+        return load(resourcePath, () -> ChunkedCsv.readResource(resourcePath));
+    }
 
-        try (InputStream in = ShapesLoader.class.getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                System.err.println("ShapesLoader: resource not found: " + resourcePath);
-                return Collections.emptyMap();
-            }
+    /**
+     * Returns the shapes of the given feed.
+     */
+    public static ShapeTable load(GtfsSource source) {
+        return load(source.describe(GtfsSource.SHAPES), () -> source.read(GtfsSource.SHAPES));
+    }
 
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                String line = br.readLine();
-                if (line == null) return Collections.emptyMap();
+    /**
+     * Returns whether shapes are indexed at startup and decoded on demand.
+     */
+    public static boolean lazyEnabled() {
+        return Boolean.getBoolean(AppConstants.LAZY_SHAPES_PROPERTY);
+    }
 
-                boolean headerConsumed = line.toLowerCase().contains("shape_id");
-                if (!headerConsumed) {
-                    processLine(line, rowsByShapeId);
-                }
+    /**
+     * Returns the shapes of the given feed, indexed or fully parsed depending on {@link #lazyEnabled()}.
+     */
+    public static ShapeStore loadConfigured(GtfsSource source) {
+        return lazyEnabled() ? index(source) : load(source);
+    }
 
-                while ((line = br.readLine()) != null) {
-                    processLine(line, rowsByShapeId);
-                }
+    /**
+     * Returns an index of the shapes of the given feed; points are decoded on first request.
+     * When the feed bytes are not memory-mapped, the index would pin them all on the heap, so the shapes
+     * are parsed into a table instead.
+     */
+    public static ShapeStore index(GtfsSource source) {
+        String location = source.describe(GtfsSource.SHAPES);
+        try {
+            ByteBuffer data = source.read(GtfsSource.SHAPES);
+            if (data == null) {
+                System.err.println("ShapesLoader: resource not found: " + location);
+                return ShapeTable.empty();
             }
+            if (!data.isDirect()) {
+                System.out.println("ShapesLoader: " + location + " is not memory-mapped; loading shapes eagerly");
+                return load(location, () -> data);
+            }
+            LazyShapeStore shapes = LazyShapeStore.index(data);
+            System.out.println("Shapes indexed: " + shapes.size());
+            return shapes;
         } catch (Exception e) {
-            System.err.println("Error loading shapes.txt: " + e.getMessage());
+            System.err.println("Error indexing shapes.txt: " + e.getMessage());
             e.printStackTrace();
-            return Collections.emptyMap();
+            return ShapeTable.empty();
         }
+    }
 
-        Map<String, List<GeoPosition>> shapesById = new HashMap<>(rowsByShapeId.size());
-        for (Map.Entry<String, List<ShapeRow>> entry : rowsByShapeId.entrySet()) {
-            List<ShapeRow> rows = entry.getValue();
-            rows.sort(Comparator.comparingInt(ShapeRow::sequence));
-
-            List<GeoPosition> points = new ArrayList<>(rows.size());
-            GeoPosition prev = null;
-            for (ShapeRow row : rows) {
-                GeoPosition current = new GeoPosition(row.lat(), row.lon());
-                if (prev == null
-                        || Math.abs(prev.getLatitude() - current.getLatitude()) > 0.0000001
-                        || Math.abs(prev.getLongitude() - current.getLongitude()) > 0.0000001) {
-                    points.add(current);
-                    prev = current;
-                }
+    /**
+     * Reattaches shapes restored from a snapshot to the bytes of the feed when they are decoded on demand.
+     * Mapping the feed is cheap; when it can only be read onto the heap, the shapes are parsed into a table.
+     */
+    public static ShapeStore restore(ShapeStore shapes, GtfsSource source) {
+        if (!(shapes instanceof LazyShapeStore lazy) || lazy.hasData()) {
+            return shapes;
+        }
+        try {
+            ByteBuffer data = source.read(GtfsSource.SHAPES);
+            if (data == null) {
+                return ShapeTable.empty();
+            }
+            if (!data.isDirect()) {
+                String location = source.describe(GtfsSource.SHAPES);
+                System.out.println("ShapesLoader: " + location + " is not memory-mapped; loading shapes eagerly");
+                return load(location, () -> data);
             }
-            if (points.size() >= 2) {
-                shapesById.put(entry.getKey(), points);
+            return lazy.withData(data.slice());
+        } catch (IOException e) {
+            System.err.println("Error reading shapes.txt: " + e.getMessage());
+            return ShapeTable.empty();
+        }
+    }
+
+    private static ShapeTable load(String location, Callable<ByteBuffer> reader) {
+        Map<String, ShapeRows> rowsByShapeId;
+        try {
+            ByteBuffer data = reader.call();
+            if (data == null) {
+                System.err.println("ShapesLoader: resource not found: " + location);
+                return ShapeTable.empty();
             }
+            int chunks = ChunkedCsv.chunkCountFor(data.remaining(), ForkJoinPool.getCommonPoolParallelism());
+            rowsByShapeId = readRows(data, chunks, ForkJoinPool.commonPool());
+        } catch (Exception e) {
+            System.err.println("Error loading shapes.txt: " + e.getMessage());
+            e.printStackTrace();
+            return ShapeTable.empty();
         }
+        return buildShapes(rowsByShapeId);
+    }
 
-        System.out.println("Shapes loaded: " + shapesById.size());
-        return shapesById;
+    /**
+     * Parses shapes bytes split into chunks on pool and returns the shapes built from them.
+     */
+    static ShapeTable load(ByteBuffer data, int chunks, ForkJoinPool pool) throws IOException {
+        return buildShapes(readRows(data, chunks, pool));
     }
 
-    private static void processLine(String line, Map<String, List<ShapeRow>> rowsByShapeId) {
-        if (line == null || line.trim().isEmpty()) return;
+    /**
+     * Groups shape rows by id. Chunks are merged in file order, so ids keep their first-seen order
+     * and each shape keeps its rows in file order, exactly as a single-chunk parse.
+     */
+    private static Map<String, ShapeRows> readRows(ByteBuffer data, int chunks, ForkJoinPool pool)
+            throws IOException {
+        ChunkedCsv csv = ChunkedCsv.open(data, "shape_id");
+        List<Map<String, ShapeRows>> parts = csv.parse(chunks, pool, ShapesLoader::readChunk);
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+
+        Map<String, ShapeRows> merged = new LinkedHashMap<>();
+        for (Map<String, ShapeRows> part : parts) {
+            for (Map.Entry<String, ShapeRows> entry : part.entrySet()) {
+                ShapeRows rows = merged.get(entry.getKey());
+                if (rows == null) {
+                    merged.put(entry.getKey(), entry.getValue());
+                } else {
+                    rows.appendAll(entry.getValue());
+                }
+            }
+        }
+        return merged;
+    }
 
-        List<String> fields = CsvParser.parseLine(line);
-        if (fields.size() < 4) return;
+    private static Map<String, ShapeRows> readChunk(GtfsCsvReader reader) throws IOException {
+        Map<String, ShapeRows> rowsByShapeId = new LinkedHashMap<>();
+        int idCol = reader.column("shape_id", 0);
+        int latCol = reader.column("shape_pt_lat", 1);
+        int lonCol = reader.column("shape_pt_lon", 2);
+        int seqCol = reader.column("shape_pt_sequence", 3);
 
-        String shapeId = safeGet(fields, 0).trim();
-        if (shapeId.isEmpty()) return;
+        while (reader.next()) {
+            if (reader.fieldCount() < 4) continue;
 
-        double lat = parseDouble(safeGet(fields, 1));
-        double lon = parseDouble(safeGet(fields, 2));
-        int seq = parseInt(safeGet(fields, 3));
+            String shapeId = reader.getPooledString(idCol);
+            if (shapeId.isEmpty()) continue;
 
-        rowsByShapeId.computeIfAbsent(shapeId, k -> new ArrayList<>())
-                .add(new ShapeRow(lat, lon, seq));
+            rowsByShapeId.computeIfAbsent(shapeId, k -> new ShapeRows())
+                    .add(reader.getDouble(latCol, 0.0), reader.getDouble(lonCol, 0.0), reader.getInt(seqCol, 0));
+        }
+        return rowsByShapeId;
     }
 
-    private static String safeGet(List<String> fields, int idx) {
-        return idx < fields.size() ? fields.get(idx) : "";
-    }
+    private static ShapeTable buildShapes(Map<String, ShapeRows> rowsByShapeId) {
+        int totalPoints = 0;
+        for (ShapeRows rows : rowsByShapeId.values()) {
+            totalPoints += rows.size;
+        }
 
-    private static int parseInt(String value) {
-        try {
-            return Integer.parseInt(value.trim());
-        } catch (Exception e) {
-            return 0;
+        ShapeTable.Builder builder = ShapeTable.builder(totalPoints);
+        for (Map.Entry<String, ShapeRows> entry : rowsByShapeId.entrySet()) {
+            appendShape(builder, entry.getKey(), entry.getValue());
         }
+        ShapeTable shapes = builder.build();
+
+        System.out.println("Shapes loaded: " + shapes.size());
+        return shapes;
     }
 
-    private static double parseDouble(String value) {
-        try {
-            return Double.parseDouble(value.trim());
-        } catch (Exception e) {
-            return 0.0;
+    /**
+     * Adds one shape to builder with its rows ordered by sequence.
+     */
+    static void appendShape(ShapeTable.Builder builder, String shapeId, ShapeRows rows) {
+        builder.startShape(shapeId);
+        for (int row : rows.orderBySequence()) {
+            builder.addUnits(rows.latUnits[row], rows.lonUnits[row]);
         }
+        builder.endShape();
     }
 
-    private record ShapeRow(double lat, double lon, int sequence) {
+    /**
+     * Growable columns of one shape's rows in file order.
+     */
+    static final class ShapeRows {
+
+        private int[] latUnits = new int[16];
+        private int[] lonUnits = new int[16];
+        private int[] sequences = new int[16];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void add(double lat, double lon, int sequence) {
+            ensureCapacity(size + 1);
+            latUnits[size] = (int) Math.round(lat * ShapeTable.UNITS_PER_DEGREE);
+            lonUnits[size] = (int) Math.round(lon * ShapeTable.UNITS_PER_DEGREE);
+            sequences[size] = sequence;
+            size++;
+        }
+
+        void appendAll(ShapeRows other) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.latUnits, 0, latUnits, size, other.size);
+            System.arraycopy(other.lonUnits, 0, lonUnits, size, other.size);
+            System.arraycopy(other.sequences, 0, sequences, size, other.size);
+            size += other.size;
+        }
+
+        /**
+         * Returns row indexes ordered by sequence; rows with equal sequence keep file order.
+         */
+        int[] orderBySequence() {
+            int[] order = new int[size];
+            boolean sorted = true;
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+                if (i > 0 && sequences[i] < sequences[i - 1]) {
+                    sorted = false;
+                }
+            }
+            if (sorted) {
+                return order;
+            }
+
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((long) sequences[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) keys[i];
+            }
+            return order;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > latUnits.length) {
+                int grown = Math.max(capacity, latUnits.length * 2);
+                latUnits = Arrays.copyOf(latUnits, grown);
+                lonUnits = Arrays.copyOf(lonUnits, grown);
+                sequences = Arrays.copyOf(sequences, grown);
+            }
+        }
     }
 }
@@ -1,140 +1,125 @@
 package damose.data.loader;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalTime;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import damose.config.AppConstants;
-import damose.model.StopTime;
+import damose.model.StopTimeTable;
+import damose.util.StringDictionary;
 
 /**
  * Static data loader for stop times loader.
  */
 public final class StopTimesLoader {
 
+    private static final int BYTES_PER_ROW_ESTIMATE = 48;
+
     private StopTimesLoader() {
     }
 
     /**
      * Returns the result of load.
      */
-    public static List<StopTime> load() {
+    public static StopTimeTable load() {
         return load(AppConstants.GTFS_STOP_TIMES_PATH);
     }
 
     /**
      * Returns the result of load.
      */
-    public static List<StopTime> load(String resourcePath) {
-        List<StopTime> result = new ArrayList<>();
+    public static StopTimeTable load(String resourcePath) {
+        return load(resourcePath, () -> ChunkedCsv.readResource(resourcePath));
+    }
 
-        try (InputStream in = StopTimesLoader.class.getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                System.err.println("StopTimesLoader: resource not found: " + resourcePath);
-                return result;
-            }
+    /**
+     * Returns the stop times of the given feed.
+     */
+    public static StopTimeTable load(GtfsSource source) {
+        return load(source.describe(GtfsSource.STOP_TIMES), () -> source.read(GtfsSource.STOP_TIMES));
+    }
 
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                String line;
-                boolean firstLine = true;
-
-                while ((line = br.readLine()) != null) {
-                    if (firstLine) {
-                        firstLine = false;
-                        continue;
-                    }
-
-                    List<String> parts = parseCsvLineFast(line);
-                    if (parts.size() < 5) continue;
-
-                    String tripId = safeGet(parts, 0).trim().intern();
-                    LocalTime arrival = parseTime(safeGet(parts, 1).trim());
-                    LocalTime departure = parseTime(safeGet(parts, 2).trim());
-                    String stopId = safeGet(parts, 3).trim().intern();
-                    int stopSequence = parseInt(safeGet(parts, 4).trim());
-                    String stopHeadsign = safeGet(parts, 5).trim();
-                    if (!stopHeadsign.isEmpty()) stopHeadsign = stopHeadsign.intern();
-                    int pickupType = parseInt(safeGet(parts, 6).trim());
-                    int dropOffType = parseInt(safeGet(parts, 7).trim());
-                    double shapeDistTraveled = parseDouble(safeGet(parts, 8).trim());
-                    int timepoint = parseInt(safeGet(parts, 9).trim());
-
-                    StopTime st = new StopTime(tripId, arrival, departure, stopId,
-                            stopSequence, stopHeadsign, pickupType, dropOffType,
-                            shapeDistTraveled, timepoint);
-
-                    result.add(st);
-                }
-
-                System.out.println("StopTimes loaded: " + result.size());
+    private static StopTimeTable load(String location, Callable<ByteBuffer> reader) {
+        try {
+            ByteBuffer data = reader.call();
+            if (data == null) {
+                System.err.println("StopTimesLoader: resource not found: " + location);
+                return emptyBuilder().build();
             }
-        } catch (IOException e) {
+            int chunks = ChunkedCsv.chunkCountFor(data.remaining(), ForkJoinPool.getCommonPoolParallelism());
+            StopTimeTable table = load(data, chunks, ForkJoinPool.commonPool());
+            System.out.println("StopTimes loaded: " + table.size() + " (" + chunks + " chunks)");
+            return table;
+        } catch (Exception e) {
             System.err.println("Error loading stop_times: " + e.getMessage());
             e.printStackTrace();
+            return emptyBuilder().build();
         }
-
-        return result;
     }
 
-    private static LocalTime parseTime(String s) {
-        try {
-            if (s == null || s.isEmpty()) return null;
-
-            String[] parts = s.split(":");
-            int h = Integer.parseInt(parts[0]);
-            int m = Integer.parseInt(parts[1]);
-            int sec = Integer.parseInt(parts[2]);
-
-            h = h % 24;
-
-            return LocalTime.of(h, m, sec);
-        } catch (Exception e) {
-            return null;
+    /**
+     * Parses stop_times bytes split into chunks on pool. Chunk results are merged in file order,
+     * so the table is identical to a single-chunk parse.
+     */
+    static StopTimeTable load(ByteBuffer data, int chunks, ForkJoinPool pool) throws IOException {
+        ChunkedCsv csv = ChunkedCsv.open(data, null);
+        int expectedRows = Math.max(16, data.remaining() / Math.max(1, chunks) / BYTES_PER_ROW_ESTIMATE);
+
+        List<StopTimeTable.Builder> parts = csv.parse(chunks, pool, chunk -> {
+            StopTimeTable.Builder part = StopTimeTable.builder(new StringDictionary(1 << 12), expectedRows);
+            readRows(chunk, part);
+            return part;
+        });
+        if (parts.size() == 1) {
+            return parts.get(0).build();
         }
-    }
 
-    private static int parseInt(String s) {
-        try {
-            return (s == null || s.isEmpty()) ? 0 : Integer.parseInt(s);
-        } catch (Exception e) {
-            return 0;
+        int rows = 0;
+        for (StopTimeTable.Builder part : parts) {
+            rows += part.size();
         }
-    }
-
-    private static double parseDouble(String s) {
-        try {
-            return (s == null || s.isEmpty()) ? 0.0 : Double.parseDouble(s);
-        } catch (Exception e) {
-            return 0.0;
+        StopTimeTable.Builder merged = StopTimeTable.builder(new StringDictionary(1 << 16), rows);
+        for (StopTimeTable.Builder part : parts) {
+            merged.appendAll(part);
         }
+        return merged.build();
     }
 
-    private static String safeGet(List<String> fields, int idx) {
-        return idx < fields.size() ? fields.get(idx) : "";
+    private static StopTimeTable.Builder emptyBuilder() {
+        return StopTimeTable.builder(new StringDictionary(), 0);
     }
 
-    private static List<String> parseCsvLineFast(String line) {
-        if (line == null) return List.of();
-
-        if (line.indexOf('"') < 0) {
-            List<String> out = new ArrayList<>(12);
-            int start = 0;
-            for (int i = 0; i < line.length(); i++) {
-                if (line.charAt(i) == ',') {
-                    out.add(line.substring(start, i));
-                    start = i + 1;
-                }
-            }
-            out.add(line.substring(start));
-            return out;
+    /**
+     * Appends every remaining record of reader to builder, resolving columns from its header.
+     */
+    static void readRows(GtfsCsvReader reader, StopTimeTable.Builder builder) throws IOException {
+        int tripCol = reader.column("trip_id", 0);
+        int arrivalCol = reader.column("arrival_time", 1);
+        int departureCol = reader.column("departure_time", 2);
+        int stopCol = reader.column("stop_id", 3);
+        int sequenceCol = reader.column("stop_sequence", 4);
+        int headsignCol = reader.column("stop_headsign", 5);
+        int pickupCol = reader.column("pickup_type", 6);
+        int dropOffCol = reader.column("drop_off_type", 7);
+        int distCol = reader.column("shape_dist_traveled", 8);
+        int timepointCol = reader.column("timepoint", 9);
+
+        while (reader.next()) {
+            if (reader.fieldCount() < 5) continue;
+
+            builder.add(
+                    reader.getPooledString(tripCol),
+                    reader.getTimeSeconds(arrivalCol),
+                    reader.getTimeSeconds(departureCol),
+                    reader.getPooledString(stopCol),
+                    reader.getInt(sequenceCol, 0),
+                    reader.getPooledString(headsignCol),
+                    reader.getInt(pickupCol, 0),
+                    reader.getInt(dropOffCol, 0),
+                    reader.getDouble(distCol, 0.0),
+                    reader.getInt(timepointCol, 0));
         }
-
-        return CsvParser.parseLine(line);
     }
 }
-
@@ -1,10 +1,8 @@
 package damose.data.loader;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import damose.config.AppConstants;
 import damose.model.Stop;
@@ -28,31 +26,43 @@ public final class StopsLoader {
      * Returns the result of load.
      */
     public static List<Stop> load(String resourcePath) {
-        List<Stop> stops = new ArrayList<>();
-
-        try (InputStream in = StopsLoader.class.getResourceAsStream(resourcePath);
-             BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
+        return load(resourcePath, () -> GtfsCsvReader.openResource(resourcePath));
+    }
 
-            br.readLine();
+    /**
+     * Returns the stops of the given feed.
+     */
+    public static List<Stop> load(GtfsSource source) {
+        return load(source.describe(GtfsSource.STOPS), () -> source.openCsv(GtfsSource.STOPS));
+    }
 
-            String line;
-            while ((line = br.readLine()) != null) {
-                List<String> fields = CsvParser.parseLine(line);
+    private static List<Stop> load(String location, Callable<GtfsCsvReader> opener) {
+        List<Stop> stops = new ArrayList<>();
 
-                if (fields.size() < 6) continue;
+        try (GtfsCsvReader reader = opener.call()) {
+            if (reader == null) {
+                System.err.println("StopsLoader: resource not found: " + location);
+                return stops;
+            }
+            if (!reader.readHeader()) {
+                return stops;
+            }
 
-                String stopId = fields.get(0).trim();
-                String stopCode = fields.get(1).trim();
-                String stopName = fields.get(2).trim();
-                String latStr = fields.get(4).trim();
-                String lonStr = fields.get(5).trim();
+            int idCol = reader.column("stop_id", 0);
+            int codeCol = reader.column("stop_code", 1);
+            int nameCol = reader.column("stop_name", 2);
+            int latCol = reader.column("stop_lat", 4);
+            int lonCol = reader.column("stop_lon", 5);
 
-                if (latStr.isEmpty() || lonStr.isEmpty()) continue;
+            while (reader.next()) {
+                if (reader.fieldCount() < 6) continue;
 
-                double lat = Double.parseDouble(latStr);
-                double lon = Double.parseDouble(lonStr);
+                double lat = reader.getDouble(latCol, Double.NaN);
+                double lon = reader.getDouble(lonCol, Double.NaN);
+                if (Double.isNaN(lat) || Double.isNaN(lon)) continue;
 
-                stops.add(new Stop(stopId, stopCode, stopName, lat, lon));
+                stops.add(new Stop(reader.getString(idCol), reader.getString(codeCol),
+                        reader.getString(nameCol), lat, lon));
             }
 
         } catch (Exception e) {
@@ -64,4 +74,3 @@ public final class StopsLoader {
         return stops;
     }
 }
-
@@ -1,11 +1,8 @@
 package damose.data.loader;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import damose.config.AppConstants;
 import damose.model.Trip;
@@ -29,29 +26,52 @@ public final class TripsLoader {
      * Returns the result of load.
      */
     public static List<Trip> load(String resourcePath) {
+        return load(resourcePath, () -> GtfsCsvReader.openResource(resourcePath));
+    }
+
+    /**
+     * Returns the trips of the given feed.
+     */
+    public static List<Trip> load(GtfsSource source) {
+        return load(source.describe(GtfsSource.TRIPS), () -> source.openCsv(GtfsSource.TRIPS));
+    }
+
+    private static List<Trip> load(String location, Callable<GtfsCsvReader> opener) {
         List<Trip> trips = new ArrayList<>();
 
-        try (InputStream in = TripsLoader.class.getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                System.err.println("TripsLoader: resource not found: " + resourcePath);
+        try (GtfsCsvReader reader = opener.call()) {
+            if (reader == null) {
+                System.err.println("TripsLoader: resource not found: " + location);
                 return trips;
             }
+            if (!reader.readHeader()) return trips;
 
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                String line = br.readLine();
-                if (line == null) return trips;
-
-                boolean headerConsumed = line.toLowerCase().startsWith("route_id")
-                        || line.toLowerCase().startsWith("service_id")
-                        || line.toLowerCase().contains("trip_id");
-
-                if (!headerConsumed) {
-                    processLine(line, trips);
-                }
+            boolean headerConsumed = reader.hasColumn("route_id")
+                    || reader.hasColumn("service_id")
+                    || reader.hasColumn("trip_id");
+            if (!headerConsumed) {
+                reader.replayCurrentRecord();
+            }
 
-                while ((line = br.readLine()) != null) {
-                    processLine(line, trips);
-                }
+            int routeCol = reader.column("route_id", 0);
+            int serviceCol = reader.column("service_id", 1);
+            int tripCol = reader.column("trip_id", 2);
+            int headsignCol = reader.column("trip_headsign", 3);
+            int shortNameCol = reader.column("trip_short_name", 4);
+            int directionCol = reader.column("direction_id", 5);
+            int shapeCol = reader.column("shape_id", 7);
+
+            while (reader.next()) {
+                if (reader.fieldCount() < 3) continue;
+
+                trips.add(new Trip(
+                        reader.getPooledString(routeCol),
+                        reader.getPooledString(serviceCol),
+                        reader.getString(tripCol),
+                        reader.getPooledString(headsignCol).replace("\"", "").trim(),
+                        reader.getString(shortNameCol),
+                        reader.getInt(directionCol, 0),
+                        reader.getPooledString(shapeCol)));
             }
         } catch (Exception e) {
             System.err.println("Error loading trips.txt: " + e.getMessage());
@@ -61,40 +81,4 @@ public final class TripsLoader {
         System.out.println("Trips loaded: " + trips.size());
         return trips;
     }
-
-    private static void processLine(String line, List<Trip> trips) {
-        if (line == null || line.trim().isEmpty()) return;
-
-        List<String> fields = CsvParser.parseLine(line);
-
-        if (fields.size() < 3) return;
-
-        try {
-            String routeId = safeGet(fields, 0).trim();
-            String serviceId = safeGet(fields, 1).trim();
-            String tripId = safeGet(fields, 2).trim();
-            String tripHeadsign = safeGet(fields, 3).replace("\"", "").trim();
-            String tripShortName = safeGet(fields, 4).trim();
-
-            int directionId = 0;
-            String dirField = safeGet(fields, 5).trim();
-            if (!dirField.isEmpty()) {
-                try {
-                    directionId = Integer.parseInt(dirField);
-                } catch (NumberFormatException ignored) {
-                }
-            }
-
-            String shapeId = safeGet(fields, 7).trim();
-
-            trips.add(new Trip(routeId, serviceId, tripId, tripHeadsign, tripShortName, directionId, shapeId));
-        } catch (Exception ex) {
-            System.err.println("TripsLoader: row ignored due to parsing error: " + ex.getMessage());
-        }
-    }
-
-    private static String safeGet(List<String> list, int idx) {
-        return idx < list.size() ? list.get(idx) : "";
-    }
 }
-
@@ -0,0 +1,98 @@
+package damose.data.loader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * GTFS feed read straight from a zip archive, with no temporary files; distinct entries can be read
+ * from several threads at once. Files opened as streams are inflated as they are read, but files handed to
+ * the chunked parsers, stop_times.txt and shapes.txt, are inflated whole into one heap buffer of their
+ * uncompressed size, so loading a large feed needs that much extra heap. Entries over 2 GB cannot be read.
+ * Files may sit at the archive root or inside one top-level folder.
+ */
+final class ZipGtfsSource implements GtfsSource {
+
+    private static final long LARGE_ENTRY_BYTES = 256L * 1024 * 1024;
+
+    private final Path path;
+    private final ZipFile zip;
+    private final Map<String, ZipEntry> entriesByName = new HashMap<>();
+
+    ZipGtfsSource(Path path) throws IOException {
+        this.path = path;
+        this.zip = new ZipFile(path.toFile());
+
+        Map<String, Integer> depthByName = new HashMap<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory()) continue;
+
+            String entryName = entry.getName();
+            int slash = entryName.lastIndexOf('/');
+            String fileName = entryName.substring(slash + 1);
+            int depth = (int) entryName.chars().filter(c -> c == '/').count();
+            if (depth > 1) continue;
+
+            Integer known = depthByName.get(fileName);
+            if (known == null || depth < known) {
+                depthByName.put(fileName, depth);
+                entriesByName.put(fileName, entry);
+            }
+        }
+    }
+
+    @Override
+    public InputStream open(String fileName) throws IOException {
+        ZipEntry entry = entriesByName.get(fileName);
+        return entry == null ? null : zip.getInputStream(entry);
+    }
+
+    @Override
+    public ByteBuffer read(String fileName) throws IOException {
+        ZipEntry entry = entriesByName.get(fileName);
+        if (entry == null) {
+            return null;
+        }
+
+        long size = entry.getSize();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException(describe(fileName) + " is too large to load in memory");
+        }
+        if (size > LARGE_ENTRY_BYTES) {
+            System.out.println("ZipGtfsSource: inflating " + describe(fileName) + " into "
+                    + (size >> 20) + " MB of heap; extract the feed to a directory to map it instead");
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            if (size < 0) {
+                return ByteBuffer.wrap(in.readAllBytes());
+            }
+            byte[] bytes = new byte[(int) size];
+            int read = in.readNBytes(bytes, 0, bytes.length);
+            return ByteBuffer.wrap(bytes, 0, read);
+        }
+    }
+
+    @Override
+    public String fingerprint(String fileName) {
+        ZipEntry entry = entriesByName.get(fileName);
+        return entry == null ? "missing" : "zip:" + entry.getCrc() + ":" + entry.getSize();
+    }
+
+    @Override
+    public String describe(String fileName) {
+        return path + "!/" + fileName;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
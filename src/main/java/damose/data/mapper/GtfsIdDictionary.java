@@ -0,0 +1,224 @@
+package damose.data.mapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import damose.model.StopTimeTable;
+import damose.model.Trip;
+import damose.util.StringDictionary;
+
+/**
+ * Int ids for the static trips, stops and routes, with the alias forms a realtime id may take.
+ * Trip and stop ids are the codes of the stop time table's dictionary; routes get codes of their own.
+ * A realtime id resolves to every static id sharing a variant with it, the same matches the variant sets of
+ * {@link TripIdUtils} and the stop and route variant rules give. Resolutions are memoized per raw id, misses included.
+ */
+public final class GtfsIdDictionary {
+
+    private static final int[] NONE = new int[0];
+    private static final int MEMO_CAPACITY = 8192;
+
+    private final StringDictionary codes;
+    private final StringDictionary routes;
+    private final Map<String, int[]> tripAliases;
+    private final Map<String, int[]> stopAliases;
+    private final Map<String, int[]> routeAliases;
+    private final IdMemo<int[]> tripResolutions = new IdMemo<>(MEMO_CAPACITY, this::lookupTrip);
+    private final IdMemo<int[]> stopResolutions = new IdMemo<>(MEMO_CAPACITY, this::lookupStop);
+    private final IdMemo<int[]> routeResolutions = new IdMemo<>(1024, this::lookupRoute);
+
+    private GtfsIdDictionary(StringDictionary codes,
+                             StringDictionary routes,
+                             Map<String, int[]> tripAliases,
+                             Map<String, int[]> stopAliases,
+                             Map<String, int[]> routeAliases) {
+        this.codes = codes;
+        this.routes = routes;
+        this.tripAliases = tripAliases;
+        this.stopAliases = stopAliases;
+        this.routeAliases = routeAliases;
+    }
+
+    /**
+     * Registers every trip and stop of the table, and the route of every trip the matcher knows.
+     * Trips are registered under their raw id and canonical key, stops and routes under all their variants.
+     */
+    public static GtfsIdDictionary build(StopTimeTable table, TripMatcher matcher) {
+        StringDictionary codes = table.dictionary();
+        boolean[] tripSeen = new boolean[codes.size()];
+        boolean[] stopSeen = new boolean[codes.size()];
+        StringDictionary routes = new StringDictionary(256);
+        Map<String, AliasCodes> trips = new HashMap<>();
+        Map<String, AliasCodes> stops = new HashMap<>();
+        Map<String, AliasCodes> routeVariants = new HashMap<>();
+
+        for (int row = 0; row < table.size(); row++) {
+            int tripCode = table.tripCode(row);
+            if (tripCode >= 0 && !tripSeen[tripCode]) {
+                tripSeen[tripCode] = true;
+                String tripId = codes.get(tripCode);
+                String canonical = TripIdUtils.canonicalKey(tripId);
+                if (canonical != null) {
+                    AliasCodes group = trips.computeIfAbsent(canonical, k -> new AliasCodes());
+                    group.add(tripCode);
+                    trips.putIfAbsent(tripId, group);
+                }
+                Trip trip = matcher != null ? matcher.matchByTripId(tripId) : null;
+                if (trip != null && trip.getRouteId() != null && routes.codeOf(trip.getRouteId()) < 0) {
+                    int routeCode = routes.intern(trip.getRouteId());
+                    for (String variant : RouteIdUtils.variants(trip.getRouteId())) {
+                        routeVariants.computeIfAbsent(variant, k -> new AliasCodes()).add(routeCode);
+                    }
+                }
+            }
+
+            int stopCode = table.stopCode(row);
+            if (stopCode >= 0 && !stopSeen[stopCode]) {
+                stopSeen[stopCode] = true;
+                for (String variant : StopIdUtils.variants(codes.get(stopCode))) {
+                    stops.computeIfAbsent(variant, k -> new AliasCodes()).add(stopCode);
+                }
+            }
+        }
+
+        return new GtfsIdDictionary(codes, routes, freeze(trips), freeze(stops), freeze(routeVariants));
+    }
+
+    /**
+     * Returns the code of a static trip id as it appears in the stop time table, or -1.
+     */
+    public int tripCode(String staticTripId) {
+        return codes.codeOf(staticTripId);
+    }
+
+    /**
+     * Returns the code of a static stop id as it appears in the stop time table, or -1.
+     */
+    public int stopCode(String staticStopId) {
+        return codes.codeOf(staticStopId);
+    }
+
+    /**
+     * Returns the code of a static route id, or -1.
+     */
+    public int routeCode(String staticRouteId) {
+        return routes.codeOf(staticRouteId);
+    }
+
+    /**
+     * Returns the codes of the static trips a realtime trip id matches, ascending. The array must not be modified.
+     */
+    public int[] resolveTripId(String realtimeTripId) {
+        return realtimeTripId == null ? NONE : tripResolutions.get(realtimeTripId);
+    }
+
+    /**
+     * Returns the codes of the static stops a realtime stop id matches, ascending. The array must not be modified.
+     */
+    public int[] resolveStopId(String realtimeStopId) {
+        return realtimeStopId == null ? NONE : stopResolutions.get(realtimeStopId);
+    }
+
+    /**
+     * Returns the codes of the static routes a realtime route id matches, ascending. The array must not be modified.
+     */
+    public int[] resolveRouteId(String realtimeRouteId) {
+        return realtimeRouteId == null ? NONE : routeResolutions.get(realtimeRouteId);
+    }
+
+    /**
+     * Returns the static trip or stop id of a code, or null for -1.
+     */
+    public String idOf(int code) {
+        return codes.get(code);
+    }
+
+    /**
+     * Returns the static route id of a route code, or null for -1.
+     */
+    public String routeIdOf(int routeCode) {
+        return routes.get(routeCode);
+    }
+
+    private int[] lookupTrip(String rawTripId) {
+        int[] exact = tripAliases.get(rawTripId);
+        if (exact != null) {
+            return exact;
+        }
+        String canonical = TripIdUtils.canonicalKey(rawTripId);
+        int[] matches = canonical != null ? tripAliases.get(canonical) : null;
+        return matches != null ? matches : NONE;
+    }
+
+    private int[] lookupStop(String rawStopId) {
+        return union(stopAliases, StopIdUtils.variants(rawStopId));
+    }
+
+    private int[] lookupRoute(String rawRouteId) {
+        return union(routeAliases, RouteIdUtils.variants(rawRouteId));
+    }
+
+    private static int[] union(Map<String, int[]> aliases, Set<String> variants) {
+        int[] result = NONE;
+        for (String variant : variants) {
+            int[] matches = aliases.get(variant);
+            if (matches == null || matches == result) continue;
+            if (result.length == 0) {
+                result = matches;
+            } else {
+                int[] merged = Arrays.copyOf(result, result.length + matches.length);
+                System.arraycopy(matches, 0, merged, result.length, matches.length);
+                Arrays.sort(merged);
+                result = distinct(merged);
+            }
+        }
+        return result;
+    }
+
+    private static int[] distinct(int[] sorted) {
+        int length = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (length == 0 || sorted[length - 1] != sorted[i]) {
+                sorted[length++] = sorted[i];
+            }
+        }
+        return length == sorted.length ? sorted : Arrays.copyOf(sorted, length);
+    }
+
+    private static Map<String, int[]> freeze(Map<String, AliasCodes> aliases) {
+        Map<String, int[]> frozen = new HashMap<>(aliases.size() * 2);
+        Map<AliasCodes, int[]> shared = new IdentityHashMap<>();
+        for (Map.Entry<String, AliasCodes> entry : aliases.entrySet()) {
+            frozen.put(entry.getKey(), shared.computeIfAbsent(entry.getValue(), AliasCodes::toArray));
+        }
+        return frozen;
+    }
+
+    /**
+     * Growable, duplicate-free list of the codes registered under one alias.
+     */
+    private static final class AliasCodes {
+
+        private int[] values = new int[1];
+        private int size;
+
+        void add(int code) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == code) return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = code;
+        }
+
+        int[] toArray() {
+            int[] out = Arrays.copyOf(values, size);
+            Arrays.sort(out);
+            return out;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package damose.data.mapper;
+
+import java.util.function.Function;
+
+/**
+ * Bounded memo of a function over ids that recur across feeds and queries.
+ * Each id maps to one slot of a fixed table and a colliding id replaces the previous entry,
+ * so lookups cost one hash and one equals and memory never grows past the table.
+ * Entries are immutable, so the memo can be shared between threads without locking.
+ */
+public final class IdMemo<V> {
+
+    private final Function<String, V> function;
+    private final Entry<V>[] slots;
+    private final int mask;
+
+    /**
+     * Creates a memo of function with room for capacity ids, rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public IdMemo(int capacity, Function<String, V> function) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.function = function;
+        this.slots = (Entry<V>[]) new Entry<?>[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns function applied to id, computing it only when id is not memoized; null ids are not memoized.
+     */
+    public V get(String id) {
+        if (id == null) {
+            return function.apply(null);
+        }
+        int hash = id.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        Entry<V> entry = slots[slot];
+        if (entry != null && entry.key.equals(id)) {
+            return entry.value;
+        }
+        V value = function.apply(id);
+        slots[slot] = new Entry<>(id, value);
+        return value;
+    }
+
+    private static final class Entry<V> {
+
+        private final String key;
+        private final V value;
+
+        Entry(String key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package damose.data.mapper;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Variants of route ids as they appear in realtime feeds and static data.
+ */
+public final class RouteIdUtils {
+
+    private static final IdMemo<Set<String>> VARIANTS = new IdMemo<>(1024, RouteIdUtils::computeVariants);
+
+    private RouteIdUtils() {
+    }
+
+    /**
+     * Returns the raw, upper-case and "route:"-less forms of a route id; two route ids match when their
+     * variants meet. The returned set is shared and must not be modified.
+     */
+    public static Set<String> variants(String rawRouteId) {
+        return rawRouteId == null ? Set.of() : VARIANTS.get(rawRouteId);
+    }
+
+    private static Set<String> computeVariants(String rawRouteId) {
+        String trimmed = rawRouteId.trim();
+        if (trimmed.isEmpty()) return Set.of();
+
+        Set<String> out = new HashSet<>();
+        out.add(trimmed);
+        out.add(trimmed.toUpperCase());
+
+        if (trimmed.regionMatches(true, 0, "route:", 0, 6)) {
+            String bare = trimmed.substring("route:".length()).trim();
+            if (!bare.isEmpty()) {
+                out.add(bare);
+                out.add(bare.toUpperCase());
+            }
+        }
+
+        return Collections.unmodifiableSet(out);
+    }
+}
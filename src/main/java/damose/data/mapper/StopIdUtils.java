@@ -0,0 +1,137 @@
+package damose.data.mapper;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Normalization of stop ids as they appear in realtime feeds and static data.
+ */
+public final class StopIdUtils {
+
+    private static final int MEMO_CAPACITY = 8192;
+
+    private static final IdMemo<String> NORMALIZED = new IdMemo<>(MEMO_CAPACITY, StopIdUtils::computeNormalize);
+    private static final IdMemo<Set<String>> VARIANTS = new IdMemo<>(MEMO_CAPACITY, StopIdUtils::computeVariants);
+
+    private StopIdUtils() {
+    }
+
+    /**
+     * Returns the stop id without "stop:" and short namespace prefixes, a leading "digits#" marker
+     * and a trailing "_digits" or ":digits" suffix; null only for null.
+     */
+    public static String normalize(String rawStopId) {
+        return rawStopId == null ? null : NORMALIZED.get(rawStopId);
+    }
+
+    /**
+     * Returns the trimmed result of {@link #normalize}, or null when it is empty.
+     */
+    public static String normalizeForMatch(String rawStopId) {
+        String normalized = normalize(rawStopId);
+        if (normalized == null) return null;
+        String trimmed = normalized.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    /**
+     * Returns the raw, normalized and digits-only forms of a stop id; two stop ids match when their variants meet.
+     * The returned set is shared and must not be modified.
+     */
+    public static Set<String> variants(String rawStopId) {
+        return rawStopId == null ? Set.of() : VARIANTS.get(rawStopId);
+    }
+
+    /**
+     * Returns the ASCII digits of value, in order.
+     */
+    public static String digitsOnly(String value) {
+        int digits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (isDigit(value.charAt(i))) digits++;
+        }
+        if (digits == value.length()) {
+            return value;
+        }
+        char[] out = new char[digits];
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isDigit(c)) out[length++] = c;
+        }
+        return new String(out);
+    }
+
+    private static Set<String> computeVariants(String rawStopId) {
+        String trimmed = rawStopId.trim();
+        if (trimmed.isEmpty()) return Set.of();
+
+        Set<String> out = new HashSet<>();
+        out.add(trimmed);
+
+        String normalized = normalizeForMatch(trimmed);
+        if (normalized != null) {
+            out.add(normalized);
+        }
+
+        String digits = digitsOnly(trimmed);
+        if (digits.length() >= 4) {
+            out.add(digits);
+        }
+
+        if (normalized != null) {
+            String normDigits = digitsOnly(normalized);
+            if (normDigits.length() >= 4) {
+                out.add(normDigits);
+            }
+        }
+
+        return Collections.unmodifiableSet(out);
+    }
+
+    private static String computeNormalize(String raw) {
+        int end = raw.length();
+        while (end > 0 && raw.charAt(end - 1) <= ' ') end--;
+        int start = skipSpaces(raw, 0, end);
+
+        while (true) {
+            if (raw.regionMatches(true, start, "stop:", 0, 5)) {
+                start = skipSpaces(raw, start + 5, end);
+                continue;
+            }
+            int colon = raw.indexOf(':', start);
+            if (colon > start && colon - start < 6) {
+                start = skipSpaces(raw, colon + 1, end);
+                continue;
+            }
+            break;
+        }
+
+        int afterDigits = start;
+        while (afterDigits < end && isDigit(raw.charAt(afterDigits))) afterDigits++;
+        if (afterDigits > start && afterDigits < end && raw.charAt(afterDigits) == '#') {
+            start = afterDigits + 1;
+        }
+
+        int beforeDigits = end;
+        while (beforeDigits > start && isDigit(raw.charAt(beforeDigits - 1))) beforeDigits--;
+        if (beforeDigits < end && beforeDigits > start) {
+            char marker = raw.charAt(beforeDigits - 1);
+            if (marker == '_' || marker == ':') {
+                end = beforeDigits - 1;
+            }
+        }
+
+        return raw.substring(start, end);
+    }
+
+    private static int skipSpaces(String s, int from, int end) {
+        while (from < end && s.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -1,70 +1,89 @@
 package damose.data.mapper;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import damose.model.StopTime;
+import damose.model.StopTimeTable;
 import damose.model.Trip;
 
 /**
  * Data mapping logic for stop trip mapper.
+ * Indexes hold row numbers into the shared {@link StopTimeTable} instead of StopTime objects.
  */
 public class StopTripMapper {
 
-    private final Map<String, List<StopTime>> stopToTrips = new HashMap<>();
-    private final Map<String, Map<Integer, String>> tripSeqToStop = new HashMap<>();
-    private final Map<String, List<StopTime>> tripToStopTimes = new HashMap<>();
-    private final Set<String> knownStopIds = new HashSet<>();
+    private static final int[] NO_ROWS = new int[0];
+    private static final long UNKNOWN_TIME_KEY = Integer.MAX_VALUE;
+
+    private final StopTimeTable table;
+    private final Map<String, int[]> rowsByStop = new HashMap<>();
+    private final Map<String, int[]> rowsByNormalizedTrip = new HashMap<>();
     private final TripMatcher matcher;
 
     public StopTripMapper(List<StopTime> stopTimes, TripMatcher matcher) {
-        this.matcher = matcher;
-
-        for (StopTime st : stopTimes) {
-            String stopId = st.getStopId();
-            String rawTripId = st.getTripId();
-            String normTripId = normalizeTripId(rawTripId);
-            int seq = st.getStopSequence();
-
-            if (stopId != null) knownStopIds.add(stopId);
+        this(StopTimeTable.fromStopTimes(stopTimes), matcher);
+    }
 
-            stopToTrips.computeIfAbsent(stopId, k -> new ArrayList<>()).add(st);
+    public StopTripMapper(StopTimeTable table, TripMatcher matcher) {
+        this.table = table;
+        this.matcher = matcher;
 
-            tripSeqToStop
-                    .computeIfAbsent(normTripId, k -> new HashMap<>())
-                    .put(seq, stopId);
+        int dictionarySize = table.dictionary().size();
+        String[] normalizedByTripCode = new String[dictionarySize];
+        boolean[] tripCodeSeen = new boolean[dictionarySize];
+        Map<String, IntRowList> stopGroups = new HashMap<>();
+        Map<String, IntRowList> tripGroups = new HashMap<>();
+
+        for (int row = 0; row < table.size(); row++) {
+            int tripCode = table.tripCode(row);
+            String normTripId = null;
+            if (tripCode >= 0) {
+                if (!tripCodeSeen[tripCode]) {
+                    tripCodeSeen[tripCode] = true;
+                    normalizedByTripCode[tripCode] = normalizeTripId(table.tripId(row));
+                }
+                normTripId = normalizedByTripCode[tripCode];
+            }
 
-            tripToStopTimes.computeIfAbsent(normTripId, k -> new ArrayList<>()).add(st);
+            stopGroups.computeIfAbsent(table.stopId(row), k -> new IntRowList()).add(row);
+            tripGroups.computeIfAbsent(normTripId, k -> new IntRowList()).add(row);
         }
 
-        for (List<StopTime> list : stopToTrips.values()) {
-            list.sort(Comparator.comparing(StopTime::getArrivalTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        for (Map.Entry<String, IntRowList> entry : stopGroups.entrySet()) {
+            rowsByStop.put(entry.getKey(), sortRows(entry.getValue(), true));
         }
-        for (List<StopTime> list : tripToStopTimes.values()) {
-            list.sort(Comparator.comparingInt(StopTime::getStopSequence));
+        for (Map.Entry<String, IntRowList> entry : tripGroups.entrySet()) {
+            rowsByNormalizedTrip.put(entry.getKey(), sortRows(entry.getValue(), false));
         }
 
-        System.out.println("StopTripMapper initialized: stopToTrips=" + stopToTrips.size() +
-                          " tripSeqToStop=" + tripSeqToStop.size());
+        System.out.println("StopTripMapper initialized: stopToTrips=" + rowsByStop.size() +
+                          " tripSeqToStop=" + rowsByNormalizedTrip.size());
+    }
+
+    /**
+     * Returns the backing stop time table.
+     */
+    public StopTimeTable getStopTimeTable() {
+        return table;
     }
 
     /**
      * Returns the trips for stop.
      */
     public List<Trip> getTripsForStop(String stopId) {
-        List<StopTime> times = stopToTrips.getOrDefault(stopId, Collections.emptyList());
-        if (times.isEmpty() || matcher == null) return Collections.emptyList();
+        int[] rows = rowsByStop.getOrDefault(stopId, NO_ROWS);
+        if (rows.length == 0 || matcher == null) return Collections.emptyList();
 
         Set<Trip> distinctTrips = new LinkedHashSet<>();
-        for (StopTime st : times) {
-            Trip trip = matcher.matchByTripId(st.getTripId());
+        for (int row : rows) {
+            Trip trip = matcher.matchByTripId(table.tripId(row));
             if (trip != null) distinctTrips.add(trip);
         }
         if (distinctTrips.isEmpty()) {
@@ -77,7 +96,7 @@ public class StopTripMapper {
      * Returns whether known stop id.
      */
     public boolean isKnownStopId(String stopId) {
-        return stopId != null && knownStopIds.contains(stopId);
+        return stopId != null && rowsByStop.containsKey(stopId);
     }
 
     /**
@@ -87,56 +106,96 @@ public class StopTripMapper {
         if (tripId == null) return null;
 
         String norm = normalizeTripId(tripId);
-        Map<Integer, String> seqMap = tripSeqToStop.get(norm);
-        if (seqMap != null) {
-            String s = seqMap.get(sequence);
-            if (s != null) {
-                return s;
-            }
+        String s = findStopBySequence(rowsByNormalizedTrip.get(norm), sequence);
+        if (s != null) {
+            return s;
         }
 
         String simple = TripIdUtils.normalizeSimple(tripId);
         if (simple != null && !simple.equals(norm)) {
-            seqMap = tripSeqToStop.get(simple);
-            if (seqMap != null) {
-                String s = seqMap.get(sequence);
-                if (s != null) {
-                    return s;
-                }
-            }
+            return findStopBySequence(rowsByNormalizedTrip.get(simple), sequence);
         }
 
         return null;
     }
 
     /**
-     * Returns the stop times for stop.
+     * Returns the stop time rows of stop ordered by arrival. The array is shared and must not be modified.
      */
-    public List<StopTime> getStopTimesForStop(String stopId) {
-        return stopToTrips.getOrDefault(stopId, Collections.emptyList());
+    public int[] getStopTimeRowsForStop(String stopId) {
+        return rowsByStop.getOrDefault(stopId, NO_ROWS);
     }
 
     /**
-     * Returns the stop times for trip.
+     * Returns the stop time rows of trip ordered by stop sequence. The array is shared and must not be modified.
      */
-    public List<StopTime> getStopTimesForTrip(String tripId) {
-        if (tripId == null) return Collections.emptyList();
+    public int[] getStopTimeRowsForTrip(String tripId) {
+        if (tripId == null) return NO_ROWS;
 
         String norm = normalizeTripId(tripId);
-        List<StopTime> direct = tripToStopTimes.get(norm);
+        int[] direct = rowsByNormalizedTrip.get(norm);
         if (direct != null) {
             return direct;
         }
 
         String simple = TripIdUtils.normalizeSimple(tripId);
         if (simple != null && !simple.equals(norm)) {
-            List<StopTime> fallback = tripToStopTimes.get(simple);
+            int[] fallback = rowsByNormalizedTrip.get(simple);
             if (fallback != null) {
                 return fallback;
             }
         }
 
-        return Collections.emptyList();
+        return NO_ROWS;
+    }
+
+    /**
+     * Returns the stop times for stop.
+     */
+    public List<StopTime> getStopTimesForStop(String stopId) {
+        int[] rows = getStopTimeRowsForStop(stopId);
+        return rows.length == 0 ? Collections.emptyList() : table.asList(rows);
+    }
+
+    /**
+     * Returns the stop times for trip.
+     */
+    public List<StopTime> getStopTimesForTrip(String tripId) {
+        int[] rows = getStopTimeRowsForTrip(tripId);
+        return rows.length == 0 ? Collections.emptyList() : table.asList(rows);
+    }
+
+    private String findStopBySequence(int[] rows, int sequence) {
+        if (rows == null) return null;
+        String found = null;
+        for (int row : rows) {
+            if (table.stopSequence(row) == sequence) {
+                found = table.stopId(row);
+            }
+        }
+        return found;
+    }
+
+    private int[] sortRows(IntRowList group, boolean byArrival) {
+        long[] keyed = new long[group.size];
+        for (int i = 0; i < group.size; i++) {
+            int row = group.rows[i];
+            long key;
+            if (byArrival) {
+                int arrival = table.arrivalSeconds(row);
+                key = arrival < 0 ? UNKNOWN_TIME_KEY : arrival % (24 * 60 * 60);
+            } else {
+                key = table.stopSequence(row);
+            }
+            keyed[i] = (key << 32) | row;
+        }
+        Arrays.sort(keyed);
+
+        int[] sorted = new int[keyed.length];
+        for (int i = 0; i < keyed.length; i++) {
+            sorted[i] = (int) keyed[i];
+        }
+        return sorted;
     }
 
     private String normalizeTripId(String id) {
@@ -145,5 +204,15 @@ public class StopTripMapper {
         return normalized != null ? normalized : id.trim();
     }
 
-}
+    private static final class IntRowList {
+        private int[] rows = new int[4];
+        private int size;
 
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package damose.data.mapper;
 
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -9,55 +9,93 @@ import java.util.Set;
  */
 public final class TripIdUtils {
 
+    private static final int MEMO_CAPACITY = 8192;
+
+    private static final IdMemo<String> NORMALIZED = new IdMemo<>(MEMO_CAPACITY, TripIdUtils::computeNormalizeSimple);
+    private static final IdMemo<Set<String>> VARIANTS = new IdMemo<>(MEMO_CAPACITY, TripIdUtils::computeVariants);
+
     private TripIdUtils() {
     }
 
     /**
      * Returns the result of normalizeSimple.
+     * Strips agency and short namespace prefixes and leading "digits#" markers, drops characters other than
+     * letters, digits, '-', '_' and '.', trims separators from both ends and lowercases; null when nothing is left.
      */
     public static String normalizeSimple(String raw) {
-        if (raw == null) return null;
-        String s = raw.trim();
-        if (s.isEmpty()) return null;
+        return raw == null ? null : NORMALIZED.get(raw);
+    }
+
+    /**
+     * Returns the result of generateVariants.
+     * The returned set is shared and must not be modified.
+     */
+    public static Set<String> generateVariants(String rawTripId) {
+        return rawTripId == null ? Set.of() : VARIANTS.get(rawTripId);
+    }
+
+    /**
+     * Returns the form every variant of a normalizable trip id shares: the normalized id without separators.
+     * Two such ids have a variant in common exactly when their canonical keys are equal; null when raw does not
+     * normalize.
+     */
+    public static String canonicalKey(String rawTripId) {
+        String norm = normalizeSimple(rawTripId);
+        return norm == null ? null : removeSeparators(norm);
+    }
+
+    private static String computeNormalizeSimple(String raw) {
+        int end = raw.length();
+        while (end > 0 && raw.charAt(end - 1) <= ' ') end--;
+        int start = skipSpaces(raw, 0, end);
+        if (start >= end) return null;
 
         while (true) {
-            String lower = s.toLowerCase();
-            if (lower.startsWith("agency:")) {
-                s = s.substring("agency:".length()).trim();
+            if (raw.regionMatches(true, start, "agency:", 0, 7)) {
+                start = skipSpaces(raw, start + 7, end);
                 continue;
             }
-            if (lower.startsWith("trip:")) {
-                s = s.substring("trip:".length()).trim();
+            if (raw.regionMatches(true, start, "trip:", 0, 5)) {
+                start = skipSpaces(raw, start + 5, end);
                 continue;
             }
-            int colon = s.indexOf(':');
-            if (colon > 0 && colon < 6) {
-                s = s.substring(colon + 1).trim();
+            int colon = raw.indexOf(':', start);
+            if (colon > start && colon - start < 6) {
+                start = skipSpaces(raw, colon + 1, end);
                 continue;
             }
             break;
         }
 
-        while (s.matches("^\\d+#.*")) {
-            s = s.replaceFirst("^\\d+#", "").trim();
+        while (true) {
+            int afterDigits = skipDigits(raw, start, end);
+            if (afterDigits == start || afterDigits >= end || raw.charAt(afterDigits) != '#') break;
+            start = skipSpaces(raw, afterDigits + 1, end);
         }
 
-        s = s.trim();
-        s = s.replaceAll("[^A-Za-z0-9_\\-\\.]", "");
-        s = s.replaceAll("^[\\-_.]+", "");
-        s = s.replaceAll("[\\-_.]+$", "");
-        s = s.toLowerCase();
+        boolean unchanged = start == 0 && end == raw.length();
+        for (int i = start; i < end && unchanged; i++) {
+            char c = raw.charAt(i);
+            unchanged = isIdChar(c) && !(c >= 'A' && c <= 'Z');
+        }
+        if (unchanged && start < end && !isSeparator(raw.charAt(start)) && !isSeparator(raw.charAt(end - 1))) {
+            return raw;
+        }
 
-        return s.isEmpty() ? null : s;
+        char[] out = new char[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = raw.charAt(i);
+            if (!isIdChar(c)) continue;
+            if (length == 0 && isSeparator(c)) continue;
+            out[length++] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        while (length > 0 && isSeparator(out[length - 1])) length--;
+        return length == 0 ? null : new String(out, 0, length);
     }
 
-    /**
-     * Returns the result of generateVariants.
-     */
-    public static Set<String> generateVariants(String rawTripId) {
+    private static Set<String> computeVariants(String rawTripId) {
         Set<String> out = new HashSet<>();
-        if (rawTripId == null) return out;
-
         String norm = normalizeSimple(rawTripId);
 
         if (norm == null) {
@@ -65,32 +103,66 @@ public final class TripIdUtils {
             if (!fallback.isEmpty()) {
                 out.add(fallback);
             }
-            return out;
+            return Collections.unmodifiableSet(out);
         }
 
         out.add(norm);
 
-        String noSep = norm.replaceAll("[-_\\.]", "");
-        if (!noSep.isEmpty()) out.add(noSep);
+        boolean hasDash = norm.indexOf('-') >= 0;
+        boolean hasUnderscore = norm.indexOf('_') >= 0;
+        boolean hasDot = norm.indexOf('.') >= 0;
+        if (hasDash || hasUnderscore || hasDot) {
+            String noSep = removeSeparators(norm);
+            if (!noSep.isEmpty()) out.add(noSep);
+        }
 
-        if (norm.contains("-")) {
+        if (hasDash) {
             out.add(norm.replace('-', '_'));
         }
 
-        if (norm.contains("_")) {
+        if (hasUnderscore) {
             out.add(norm.replace('_', '-'));
         }
 
-        if (norm.contains(".")) {
+        if (hasDot) {
             out.add(norm.replace('.', '-'));
             out.add(norm.replace('.', '_'));
             out.add(norm.replace(".", ""));
         }
 
-        out.removeIf(Objects::isNull);
-        out.removeIf(String::isEmpty);
+        out.remove("");
+        return Collections.unmodifiableSet(out);
+    }
+
+    private static String removeSeparators(String s) {
+        if (s.indexOf('-') < 0 && s.indexOf('_') < 0 && s.indexOf('.') < 0) {
+            return s;
+        }
+        char[] out = new char[s.length()];
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!isSeparator(c)) out[length++] = c;
+        }
+        return new String(out, 0, length);
+    }
+
+    private static int skipSpaces(String s, int from, int end) {
+        while (from < end && s.charAt(from) <= ' ') from++;
+        return from;
+    }
+
+    private static int skipDigits(String s, int from, int end) {
+        while (from < end && s.charAt(from) >= '0' && s.charAt(from) <= '9') from++;
+        return from;
+    }
+
+    private static boolean isIdChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || isSeparator(c);
+    }
 
-        return out;
+    private static boolean isSeparator(char c) {
+        return c == '-' || c == '_' || c == '.';
     }
 
     /**
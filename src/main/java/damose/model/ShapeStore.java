@@ -0,0 +1,27 @@
+package damose.model;
+
+/**
+ * Read access to shape polylines by shape id, whether they are packed in memory or decoded on demand.
+ */
+public interface ShapeStore {
+
+    /**
+     * Returns the number of shapes.
+     */
+    int size();
+
+    /**
+     * Returns the id of the shape with the given code.
+     */
+    String shapeId(int code);
+
+    /**
+     * Returns the number of points of a shape, or 0 when unknown.
+     */
+    int pointCount(String shapeId);
+
+    /**
+     * Returns a view of a shape, or an empty polyline when unknown.
+     */
+    ShapeTable.Polyline shape(String shapeId);
+}
@@ -0,0 +1,287 @@
+package damose.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import damose.util.StringDictionary;
+
+/**
+ * Packed store of all shape polylines.
+ * Points of every shape live in one int array as interleaved latitude/longitude pairs in fixed point
+ * (1e-7 degrees, about 1 cm); each shape is a slice of it addressed by its dictionary code.
+ * Shapes are handed out as read-only {@link Polyline} views over the shared array, never copied.
+ */
+public final class ShapeTable implements ShapeStore {
+
+    /**
+     * Fixed-point units per degree.
+     */
+    public static final double UNITS_PER_DEGREE = 1e7;
+
+    private static final ShapeTable EMPTY = builder(0).build();
+
+    private final StringDictionary ids;
+    private final int[] pointOffsets;
+    private final int[] coordinates;
+
+    private ShapeTable(Builder builder) {
+        this.ids = builder.ids;
+        this.pointOffsets = Arrays.copyOf(builder.pointOffsets, ids.size() + 1);
+        this.coordinates = Arrays.copyOf(builder.coordinates, builder.points * 2);
+    }
+
+    /**
+     * Returns a new builder sized for the given number of points.
+     */
+    public static Builder builder(int expectedPoints) {
+        return new Builder(expectedPoints);
+    }
+
+    /**
+     * Returns a table without shapes.
+     */
+    public static ShapeTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Builds a table holding the given shapes, in map iteration order.
+     */
+    public static ShapeTable fromShapes(Map<String, List<GeoPosition>> shapesById) {
+        if (shapesById == null || shapesById.isEmpty()) {
+            return EMPTY;
+        }
+        Builder builder = builder(shapesById.values().stream().mapToInt(List::size).sum());
+        for (Map.Entry<String, List<GeoPosition>> entry : shapesById.entrySet()) {
+            builder.startShape(entry.getKey());
+            for (GeoPosition point : entry.getValue()) {
+                builder.addPoint(point.getLatitude(), point.getLongitude());
+            }
+            builder.endShape();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of shapes.
+     */
+    @Override
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Returns true when there are no shapes.
+     */
+    public boolean isEmpty() {
+        return ids.size() == 0;
+    }
+
+    /**
+     * Returns the total number of points of all shapes.
+     */
+    public int totalPoints() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * Returns the id of the shape with the given code.
+     */
+    @Override
+    public String shapeId(int code) {
+        return ids.get(code);
+    }
+
+    /**
+     * Returns the code of a shape id, or -1 when unknown.
+     */
+    public int codeOf(String shapeId) {
+        return ids.codeOf(shapeId);
+    }
+
+    /**
+     * Returns the number of points of a shape, or 0 when unknown.
+     */
+    @Override
+    public int pointCount(String shapeId) {
+        int code = ids.codeOf(shapeId);
+        return code < 0 ? 0 : pointOffsets[code + 1] - pointOffsets[code];
+    }
+
+    /**
+     * Returns a view of a shape, or an empty polyline when unknown.
+     */
+    @Override
+    public Polyline shape(String shapeId) {
+        int code = ids.codeOf(shapeId);
+        return code < 0 ? Polyline.EMPTY : shape(code);
+    }
+
+    /**
+     * Returns a view of the shape with the given code.
+     */
+    public Polyline shape(int code) {
+        return new Polyline(coordinates, pointOffsets[code], pointOffsets[code + 1] - pointOffsets[code]);
+    }
+
+    /**
+     * Read-only view of one shape's points. Points are decoded on access.
+     */
+    public static final class Polyline extends AbstractList<GeoPosition> implements RandomAccess {
+
+        private static final Polyline EMPTY = new Polyline(new int[0], 0, 0);
+
+        private final int[] coordinates;
+        private final int firstPoint;
+        private final int size;
+
+        private Polyline(int[] coordinates, int firstPoint, int size) {
+            this.coordinates = coordinates;
+            this.firstPoint = firstPoint;
+            this.size = size;
+        }
+
+        /**
+         * Returns a polyline without points.
+         */
+        public static Polyline empty() {
+            return EMPTY;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public GeoPosition get(int index) {
+            return new GeoPosition(latitude(index), longitude(index));
+        }
+
+        /**
+         * Returns the latitude of point index.
+         */
+        public double latitude(int index) {
+            return latitudeUnits(index) / UNITS_PER_DEGREE;
+        }
+
+        /**
+         * Returns the longitude of point index.
+         */
+        public double longitude(int index) {
+            return longitudeUnits(index) / UNITS_PER_DEGREE;
+        }
+
+        /**
+         * Returns the latitude of point index in fixed-point units.
+         */
+        public int latitudeUnits(int index) {
+            return coordinates[slot(index)];
+        }
+
+        /**
+         * Returns the longitude of point index in fixed-point units.
+         */
+        public int longitudeUnits(int index) {
+            return coordinates[slot(index) + 1];
+        }
+
+        private int slot(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (firstPoint + index) * 2;
+        }
+    }
+
+    /**
+     * Accumulates shapes one at a time into a growable point array.
+     * Consecutive duplicate points are dropped, and shapes left with fewer than two points are discarded.
+     */
+    public static final class Builder {
+
+        private final StringDictionary ids = new StringDictionary();
+        private int[] pointOffsets = new int[17];
+        private int[] coordinates;
+        private int points;
+        private String pendingId;
+        private int pendingStart;
+
+        private Builder(int expectedPoints) {
+            coordinates = new int[Math.max(32, expectedPoints * 2)];
+        }
+
+        /**
+         * Starts a new shape; its points follow until {@link #endShape()}.
+         */
+        public Builder startShape(String shapeId) {
+            pendingId = shapeId;
+            pendingStart = points;
+            return this;
+        }
+
+        /**
+         * Appends a point in degrees to the current shape.
+         */
+        public Builder addPoint(double lat, double lon) {
+            return addUnits(toUnits(lat), toUnits(lon));
+        }
+
+        /**
+         * Appends a point in fixed-point units to the current shape.
+         */
+        public Builder addUnits(int latUnits, int lonUnits) {
+            if (points > pendingStart) {
+                int last = (points - 1) * 2;
+                if (coordinates[last] == latUnits && coordinates[last + 1] == lonUnits) {
+                    return this;
+                }
+            }
+            if (points * 2 + 2 > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+            coordinates[points * 2] = latUnits;
+            coordinates[points * 2 + 1] = lonUnits;
+            points++;
+            return this;
+        }
+
+        /**
+         * Completes the current shape, keeping it only when it has an unused id and at least two points.
+         */
+        public Builder endShape() {
+            String shapeId = pendingId;
+            pendingId = null;
+            if (shapeId == null || points - pendingStart < 2 || ids.codeOf(shapeId) >= 0) {
+                points = pendingStart;
+                return this;
+            }
+            int code = ids.intern(shapeId);
+            if (code + 2 > pointOffsets.length) {
+                pointOffsets = Arrays.copyOf(pointOffsets, pointOffsets.length * 2);
+            }
+            pointOffsets[code] = pendingStart;
+            pointOffsets[code + 1] = points;
+            return this;
+        }
+
+        /**
+         * Returns the table of all completed shapes.
+         */
+        public ShapeTable build() {
+            if (pendingId != null) {
+                endShape();
+            }
+            return new ShapeTable(this);
+        }
+
+        private static int toUnits(double degrees) {
+            return (int) Math.round(degrees * UNITS_PER_DEGREE);
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package damose.model;
+
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import damose.util.StringDictionary;
+
+/**
+ * Column-oriented, primitive-backed store of all stop_times rows.
+ * Each row is addressed by an int index; ids are int codes into a shared {@link StringDictionary}
+ * and times are seconds since the start of the service day (values past 24:00:00 are kept as-is).
+ */
+public final class StopTimeTable {
+
+    /**
+     * Marker for a missing arrival or departure time.
+     */
+    public static final int NO_TIME = -1;
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final StringDictionary dictionary;
+    private final int size;
+    private final int[] tripCodes;
+    private final int[] stopCodes;
+    private final int[] headsignCodes;
+    private final int[] arrivalSeconds;
+    private final int[] departureSeconds;
+    private final int[] stopSequences;
+    private final byte[] pickupTypes;
+    private final byte[] dropOffTypes;
+    private final byte[] timepoints;
+    private final float[] shapeDistTraveled;
+
+    private final int[] tripRowOffsets;
+    private final int[] rowsByTrip;
+
+    private StopTimeTable(Builder builder) {
+        this.dictionary = builder.dictionary;
+        this.size = builder.size;
+        this.tripCodes = Arrays.copyOf(builder.tripCodes, size);
+        this.stopCodes = Arrays.copyOf(builder.stopCodes, size);
+        this.headsignCodes = Arrays.copyOf(builder.headsignCodes, size);
+        this.arrivalSeconds = Arrays.copyOf(builder.arrivalSeconds, size);
+        this.departureSeconds = Arrays.copyOf(builder.departureSeconds, size);
+        this.stopSequences = Arrays.copyOf(builder.stopSequences, size);
+        this.pickupTypes = Arrays.copyOf(builder.pickupTypes, size);
+        this.dropOffTypes = Arrays.copyOf(builder.dropOffTypes, size);
+        this.timepoints = Arrays.copyOf(builder.timepoints, size);
+        this.shapeDistTraveled = Arrays.copyOf(builder.shapeDistTraveled, size);
+
+        this.tripRowOffsets = new int[dictionary.size() + 1];
+        this.rowsByTrip = new int[size];
+        buildTripIndex();
+    }
+
+    /**
+     * Returns a new builder appending rows to the given dictionary.
+     */
+    public static Builder builder(StringDictionary dictionary, int expectedRows) {
+        return new Builder(dictionary, expectedRows);
+    }
+
+    /**
+     * Builds a table holding the same rows as the given list, in the same order.
+     */
+    public static StopTimeTable fromStopTimes(List<StopTime> stopTimes) {
+        List<StopTime> source = stopTimes != null ? stopTimes : List.of();
+        Builder builder = builder(new StringDictionary(), source.size());
+        for (StopTime st : source) {
+            if (st == null) continue;
+            builder.add(st.getTripId(),
+                    toSeconds(st.getArrivalTime()),
+                    toSeconds(st.getDepartureTime()),
+                    st.getStopId(),
+                    st.getStopSequence(),
+                    st.getStopHeadsign(),
+                    st.getPickupType(),
+                    st.getDropOffType(),
+                    st.getShapeDistTraveled(),
+                    st.getTimepoint());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the dictionary backing trip, stop and headsign codes.
+     */
+    public StringDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the trip code of row.
+     */
+    public int tripCode(int row) {
+        return tripCodes[row];
+    }
+
+    /**
+     * Returns the stop code of row.
+     */
+    public int stopCode(int row) {
+        return stopCodes[row];
+    }
+
+    /**
+     * Returns the stop headsign code of row.
+     */
+    public int headsignCode(int row) {
+        return headsignCodes[row];
+    }
+
+    /**
+     * Returns the trip id of row.
+     */
+    public String tripId(int row) {
+        return dictionary.get(tripCodes[row]);
+    }
+
+    /**
+     * Returns the stop id of row.
+     */
+    public String stopId(int row) {
+        return dictionary.get(stopCodes[row]);
+    }
+
+    /**
+     * Returns the stop headsign of row.
+     */
+    public String stopHeadsign(int row) {
+        return dictionary.get(headsignCodes[row]);
+    }
+
+    /**
+     * Returns the arrival in service-day seconds, or {@link #NO_TIME}.
+     */
+    public int arrivalSeconds(int row) {
+        return arrivalSeconds[row];
+    }
+
+    /**
+     * Returns the departure in service-day seconds, or {@link #NO_TIME}.
+     */
+    public int departureSeconds(int row) {
+        return departureSeconds[row];
+    }
+
+    /**
+     * Returns the stop sequence of row.
+     */
+    public int stopSequence(int row) {
+        return stopSequences[row];
+    }
+
+    /**
+     * Returns the pickup type of row.
+     */
+    public int pickupType(int row) {
+        return pickupTypes[row];
+    }
+
+    /**
+     * Returns the drop off type of row.
+     */
+    public int dropOffType(int row) {
+        return dropOffTypes[row];
+    }
+
+    /**
+     * Returns the timepoint flag of row.
+     */
+    public int timepoint(int row) {
+        return timepoints[row];
+    }
+
+    /**
+     * Returns the shape distance traveled of row.
+     */
+    public double shapeDistTraveled(int row) {
+        return shapeDistTraveled[row];
+    }
+
+    /**
+     * Returns the arrival as wall-clock time, wrapping times past midnight; null when missing.
+     */
+    public LocalTime arrivalTime(int row) {
+        return toLocalTime(arrivalSeconds[row]);
+    }
+
+    /**
+     * Returns the departure as wall-clock time, wrapping times past midnight; null when missing.
+     */
+    public LocalTime departureTime(int row) {
+        return toLocalTime(departureSeconds[row]);
+    }
+
+    /**
+     * Materializes row as a standalone StopTime.
+     */
+    public StopTime toStopTime(int row) {
+        return new StopTime(tripId(row), arrivalTime(row), departureTime(row), stopId(row),
+                stopSequences[row], stopHeadsign(row), pickupTypes[row], dropOffTypes[row],
+                shapeDistTraveled[row], timepoints[row]);
+    }
+
+    /**
+     * Returns the number of rows of trip.
+     */
+    public int tripRowCount(String tripId) {
+        int code = dictionary.codeOf(tripId);
+        if (code < 0 || code + 1 >= tripRowOffsets.length) return 0;
+        return tripRowOffsets[code + 1] - tripRowOffsets[code];
+    }
+
+    /**
+     * Returns the rows of trip ordered by stop sequence.
+     */
+    public int[] rowsForTrip(String tripId) {
+        int code = dictionary.codeOf(tripId);
+        if (code < 0 || code + 1 >= tripRowOffsets.length) return new int[0];
+        return Arrays.copyOfRange(rowsByTrip, tripRowOffsets[code], tripRowOffsets[code + 1]);
+    }
+
+    /**
+     * Returns a read-only list view materializing rows on access.
+     */
+    public List<StopTime> asList() {
+        return new StopTimeRowList(this, null);
+    }
+
+    /**
+     * Returns a read-only list view of the given rows, materialized on access.
+     */
+    public List<StopTime> asList(int[] rows) {
+        return new StopTimeRowList(this, rows);
+    }
+
+    /**
+     * Returns raw column arrays for serialization. Callers must not modify them.
+     */
+    public Columns columns() {
+        return new Columns(tripCodes, stopCodes, headsignCodes, arrivalSeconds, departureSeconds,
+                stopSequences, pickupTypes, dropOffTypes, timepoints, shapeDistTraveled);
+    }
+
+    private void buildTripIndex() {
+        for (int row = 0; row < size; row++) {
+            int code = tripCodes[row];
+            if (code >= 0) {
+                tripRowOffsets[code + 1]++;
+            }
+        }
+        for (int i = 1; i < tripRowOffsets.length; i++) {
+            tripRowOffsets[i] += tripRowOffsets[i - 1];
+        }
+        int[] cursor = Arrays.copyOf(tripRowOffsets, tripRowOffsets.length - 1);
+        int indexed = 0;
+        for (int row = 0; row < size; row++) {
+            int code = tripCodes[row];
+            if (code >= 0) {
+                rowsByTrip[cursor[code]++] = row;
+                indexed++;
+            }
+        }
+        for (int code = 0; code + 1 < tripRowOffsets.length; code++) {
+            sortBySequence(tripRowOffsets[code], tripRowOffsets[code + 1]);
+        }
+        if (indexed < size) {
+            System.out.println("StopTimeTable: " + (size - indexed) + " rows without trip id");
+        }
+    }
+
+    private void sortBySequence(int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int row = rowsByTrip[i];
+            int seq = stopSequences[row];
+            int j = i - 1;
+            while (j >= from && stopSequences[rowsByTrip[j]] > seq) {
+                rowsByTrip[j + 1] = rowsByTrip[j];
+                j--;
+            }
+            rowsByTrip[j + 1] = row;
+        }
+    }
+
+    private static int toSeconds(LocalTime time) {
+        return time == null ? NO_TIME : time.toSecondOfDay();
+    }
+
+    private static LocalTime toLocalTime(int seconds) {
+        return seconds < 0 ? null : LocalTime.ofSecondOfDay(seconds % SECONDS_PER_DAY);
+    }
+
+    /**
+     * Raw column arrays, shared with the table.
+     */
+    public record Columns(int[] tripCodes,
+                          int[] stopCodes,
+                          int[] headsignCodes,
+                          int[] arrivalSeconds,
+                          int[] departureSeconds,
+                          int[] stopSequences,
+                          byte[] pickupTypes,
+                          byte[] dropOffTypes,
+                          byte[] timepoints,
+                          float[] shapeDistTraveled) {
+    }
+
+    /**
+     * Accumulates rows into growable column arrays.
+     */
+    public static final class Builder {
+
+        private final StringDictionary dictionary;
+        private int size;
+        private int[] tripCodes;
+        private int[] stopCodes;
+        private int[] headsignCodes;
+        private int[] arrivalSeconds;
+        private int[] departureSeconds;
+        private int[] stopSequences;
+        private byte[] pickupTypes;
+        private byte[] dropOffTypes;
+        private byte[] timepoints;
+        private float[] shapeDistTraveled;
+
+        private Builder(StringDictionary dictionary, int expectedRows) {
+            this.dictionary = dictionary != null ? dictionary : new StringDictionary();
+            int capacity = Math.max(16, expectedRows);
+            tripCodes = new int[capacity];
+            stopCodes = new int[capacity];
+            headsignCodes = new int[capacity];
+            arrivalSeconds = new int[capacity];
+            departureSeconds = new int[capacity];
+            stopSequences = new int[capacity];
+            pickupTypes = new byte[capacity];
+            dropOffTypes = new byte[capacity];
+            timepoints = new byte[capacity];
+            shapeDistTraveled = new float[capacity];
+        }
+
+        /**
+         * Appends one row, interning its ids.
+         */
+        public Builder add(String tripId, int arrivalSecs, int departureSecs, String stopId, int stopSequence,
+                           String stopHeadsign, int pickupType, int dropOffType, double shapeDist, int timepoint) {
+            return addCodes(dictionary.intern(tripId), dictionary.intern(stopId), dictionary.intern(stopHeadsign),
+                    arrivalSecs, departureSecs, stopSequence, pickupType, dropOffType, (float) shapeDist, timepoint);
+        }
+
+        /**
+         * Appends one row whose ids are already codes of this builder's dictionary.
+         */
+        public Builder addCodes(int tripCode, int stopCode, int headsignCode, int arrivalSecs, int departureSecs,
+                                int stopSequence, int pickupType, int dropOffType, float shapeDist, int timepoint) {
+            ensureCapacity(size + 1);
+            tripCodes[size] = tripCode;
+            stopCodes[size] = stopCode;
+            headsignCodes[size] = headsignCode;
+            arrivalSeconds[size] = arrivalSecs;
+            departureSeconds[size] = departureSecs;
+            stopSequences[size] = stopSequence;
+            pickupTypes[size] = (byte) pickupType;
+            dropOffTypes[size] = (byte) dropOffType;
+            timepoints[size] = (byte) timepoint;
+            shapeDistTraveled[size] = shapeDist;
+            size++;
+            return this;
+        }
+
+        /**
+         * Appends all rows of another builder in order, re-interning its ids into this builder's dictionary.
+         * Ids new to this dictionary get codes in the order the other builder first saw them.
+         */
+        public Builder appendAll(Builder other) {
+            StringDictionary source = other.dictionary;
+            int[] remap = new int[source.size()];
+            for (int code = 0; code < remap.length; code++) {
+                remap[code] = dictionary.intern(source.get(code));
+            }
+
+            ensureCapacity(size + other.size);
+            for (int i = 0; i < other.size; i++) {
+                tripCodes[size + i] = remapCode(remap, other.tripCodes[i]);
+                stopCodes[size + i] = remapCode(remap, other.stopCodes[i]);
+                headsignCodes[size + i] = remapCode(remap, other.headsignCodes[i]);
+            }
+            System.arraycopy(other.arrivalSeconds, 0, arrivalSeconds, size, other.size);
+            System.arraycopy(other.departureSeconds, 0, departureSeconds, size, other.size);
+            System.arraycopy(other.stopSequences, 0, stopSequences, size, other.size);
+            System.arraycopy(other.pickupTypes, 0, pickupTypes, size, other.size);
+            System.arraycopy(other.dropOffTypes, 0, dropOffTypes, size, other.size);
+            System.arraycopy(other.timepoints, 0, timepoints, size, other.size);
+            System.arraycopy(other.shapeDistTraveled, 0, shapeDistTraveled, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        /**
+         * Returns the number of rows added so far.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the dictionary rows are interned into.
+         */
+        public StringDictionary dictionary() {
+            return dictionary;
+        }
+
+        /**
+         * Returns the immutable table.
+         */
+        public StopTimeTable build() {
+            return new StopTimeTable(this);
+        }
+
+        private static int remapCode(int[] remap, int code) {
+            return code < 0 ? code : remap[code];
+        }
+
+        private void ensureCapacity(int required) {
+            if (required <= tripCodes.length) return;
+            int capacity = Math.max(required, tripCodes.length + (tripCodes.length >> 1));
+            tripCodes = Arrays.copyOf(tripCodes, capacity);
+            stopCodes = Arrays.copyOf(stopCodes, capacity);
+            headsignCodes = Arrays.copyOf(headsignCodes, capacity);
+            arrivalSeconds = Arrays.copyOf(arrivalSeconds, capacity);
+            departureSeconds = Arrays.copyOf(departureSeconds, capacity);
+            stopSequences = Arrays.copyOf(stopSequences, capacity);
+            pickupTypes = Arrays.copyOf(pickupTypes, capacity);
+            dropOffTypes = Arrays.copyOf(dropOffTypes, capacity);
+            timepoints = Arrays.copyOf(timepoints, capacity);
+            shapeDistTraveled = Arrays.copyOf(shapeDistTraveled, capacity);
+        }
+    }
+
+    private static final class StopTimeRowList extends AbstractList<StopTime> implements RandomAccess {
+
+        private final StopTimeTable table;
+        private final int[] rows;
+
+        StopTimeRowList(StopTimeTable table, int[] rows) {
+            this.table = table;
+            this.rows = rows;
+        }
+
+        @Override
+        public StopTime get(int index) {
+            if (rows == null) {
+                return table.toStopTime(index);
+            }
+            return table.toStopTime(rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? table.size : rows.length;
+        }
+    }
+}
@@ -1,35 +1,92 @@
 package damose.model;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import damose.util.StringDictionary;
 
 /**
  * Domain model for trip service calendar.
+ * Each service keeps one bitset of active days, indexed from its own first day, so lookups are a single bit test.
+ * Weekly patterns from calendar.txt are expanded with {@link #addWeeklyService}; calendar_dates.txt exceptions are
+ * then applied on top with {@link #addServiceDate} and {@link #removeServiceDate}.
  */
 public class TripServiceCalendar {
 
-    private final Map<String, Set<LocalDate>> serviceDates = new HashMap<>();
+    /**
+     * Weekday mask with every day of the week set.
+     */
+    public static final int ALL_WEEKDAYS = 0x7F;
+
+    private final StringDictionary serviceIds = new StringDictionary(64);
+    private BitSet[] days = new BitSet[64];
+    private int[] firstDays = new int[64];
+    private int serviceCount;
+
+    /**
+     * Returns the weekday mask bit of a day; Monday is bit 0.
+     */
+    public static int weekdayBit(DayOfWeek day) {
+        return 1 << (day.getValue() - 1);
+    }
 
     /**
      * Handles addServiceDate.
      */
     public void addServiceDate(String serviceId, LocalDate date) {
-        serviceDates.computeIfAbsent(serviceId, k -> new HashSet<>()).add(date);
+        if (serviceId == null || date == null) {
+            return;
+        }
+        int code = slot(serviceId);
+        int epochDay = (int) date.toEpochDay();
+        BitSet bits = bitsFor(code, epochDay);
+        bits.set(epochDay - firstDays[code]);
+    }
+
+    /**
+     * Activates a service on every day from start to end inclusive whose weekday is in weekdayMask.
+     */
+    public void addWeeklyService(String serviceId, LocalDate start, LocalDate end, int weekdayMask) {
+        if (serviceId == null || start == null || end == null || end.isBefore(start)
+                || (weekdayMask & ALL_WEEKDAYS) == 0) {
+            return;
+        }
+        int code = slot(serviceId);
+        int startDay = (int) start.toEpochDay();
+        int endDay = (int) end.toEpochDay();
+        BitSet bits = bitsFor(code, startDay);
+        bitsFor(code, endDay);
+        int weekday = start.getDayOfWeek().getValue() - 1;
+        for (int day = startDay; day <= endDay; day++) {
+            if ((weekdayMask & (1 << weekday)) != 0) {
+                bits.set(day - firstDays[code]);
+            }
+            weekday = weekday == 6 ? 0 : weekday + 1;
+        }
+        if (bits.isEmpty()) {
+            days[code] = null;
+            serviceCount--;
+        }
     }
 
     /**
      * Handles removeServiceDate.
      */
     public void removeServiceDate(String serviceId, LocalDate date) {
-        Set<LocalDate> dates = serviceDates.get(serviceId);
-        if (dates != null) {
-            dates.remove(date);
-            if (dates.isEmpty()) {
-                serviceDates.remove(serviceId);
-            }
+        int code = serviceIds.codeOf(serviceId);
+        if (code < 0 || days[code] == null || date == null) {
+            return;
+        }
+        int index = (int) date.toEpochDay() - firstDays[code];
+        if (index < 0) {
+            return;
+        }
+        days[code].clear(index);
+        if (days[code].isEmpty()) {
+            days[code] = null;
+            serviceCount--;
         }
     }
 
@@ -37,15 +94,123 @@ public class TripServiceCalendar {
      * Returns the result of serviceRunsOnDate.
      */
     public boolean serviceRunsOnDate(String serviceId, LocalDate date) {
-        Set<LocalDate> dates = serviceDates.get(serviceId);
-        return dates != null && dates.contains(date);
+        return date != null && serviceRunsOnDay(serviceIds.codeOf(serviceId), (int) date.toEpochDay());
+    }
+
+    /**
+     * Returns whether the service with the given code runs on an epoch day.
+     */
+    public boolean serviceRunsOnDay(int serviceCode, int epochDay) {
+        if (serviceCode < 0 || serviceCode >= serviceIds.size() || days[serviceCode] == null) {
+            return false;
+        }
+        int index = epochDay - firstDays[serviceCode];
+        return index >= 0 && days[serviceCode].get(index);
+    }
+
+    /**
+     * Returns the set of service codes active on date.
+     */
+    public BitSet activeServices(LocalDate date) {
+        int epochDay = (int) date.toEpochDay();
+        BitSet active = new BitSet(serviceIds.size());
+        for (int code = 0; code < serviceIds.size(); code++) {
+            if (serviceRunsOnDay(code, epochDay)) {
+                active.set(code);
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Returns the code of a service id, or -1 when the calendar does not know it.
+     */
+    public int serviceCode(String serviceId) {
+        return serviceIds.codeOf(serviceId);
+    }
+
+    /**
+     * Returns the number of service codes, including services left without active days.
+     */
+    public int serviceCodeCount() {
+        return serviceIds.size();
+    }
+
+    /**
+     * Returns the service id of a code.
+     */
+    public String serviceId(int serviceCode) {
+        return serviceIds.get(serviceCode);
+    }
+
+    /**
+     * Returns the epoch day of bit 0 of a service's day bitset.
+     */
+    public int firstDay(int serviceCode) {
+        return firstDays[serviceCode];
+    }
+
+    /**
+     * Returns the active-day bits of a service as words, or an empty array when it has no active days.
+     */
+    public long[] dayWords(int serviceCode) {
+        BitSet bits = days[serviceCode];
+        return bits == null ? new long[0] : bits.toLongArray();
+    }
+
+    /**
+     * Restores the active days of a service from {@link #firstDay} and {@link #dayWords}.
+     */
+    public void setServiceDays(String serviceId, int firstDay, long[] words) {
+        int code = slot(serviceId);
+        BitSet bits = BitSet.valueOf(words);
+        if (days[code] == null && !bits.isEmpty()) {
+            serviceCount++;
+        } else if (days[code] != null && bits.isEmpty()) {
+            serviceCount--;
+        }
+        days[code] = bits.isEmpty() ? null : bits;
+        firstDays[code] = firstDay;
     }
 
     /**
      * Returns the result of serviceCount.
      */
     public int serviceCount() {
-        return serviceDates.size();
+        return serviceCount;
+    }
+
+    private int slot(String serviceId) {
+        int code = serviceIds.intern(serviceId);
+        if (code >= days.length) {
+            days = Arrays.copyOf(days, days.length * 2);
+            firstDays = Arrays.copyOf(firstDays, firstDays.length * 2);
+        }
+        return code;
     }
-}
 
+    /**
+     * Returns the bitset of a service, creating it or moving its first day back so epochDay is addressable.
+     */
+    private BitSet bitsFor(int code, int epochDay) {
+        BitSet bits = days[code];
+        if (bits == null) {
+            bits = new BitSet();
+            days[code] = bits;
+            firstDays[code] = epochDay;
+            serviceCount++;
+            return bits;
+        }
+        int shift = firstDays[code] - epochDay;
+        if (shift > 0) {
+            BitSet shifted = new BitSet(bits.length() + shift);
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                shifted.set(i + shift);
+            }
+            days[code] = shifted;
+            firstDays[code] = epochDay;
+            return shifted;
+        }
+        return bits;
+    }
+}
@@ -16,6 +16,7 @@ public class VehiclePosition {
     private final String occupancyInfo;
     private final int occupancyPercentage;
     private final String currentStopId;
+    private final long timestamp;
 
     public VehiclePosition(String tripId, String vehicleId, GeoPosition position, int stopSequence) {
         this(tripId, vehicleId, position, stopSequence, null, -1, null, -1, null);
@@ -29,6 +30,14 @@ public class VehiclePosition {
     public VehiclePosition(String tripId, String vehicleId, GeoPosition position, int stopSequence,
                            String routeId, int directionId,
                            String occupancyInfo, int occupancyPercentage, String currentStopId) {
+        this(tripId, vehicleId, position, stopSequence, routeId, directionId,
+                occupancyInfo, occupancyPercentage, currentStopId, -1);
+    }
+
+    public VehiclePosition(String tripId, String vehicleId, GeoPosition position, int stopSequence,
+                           String routeId, int directionId,
+                           String occupancyInfo, int occupancyPercentage, String currentStopId,
+                           long timestamp) {
         this.tripId = tripId;
         this.vehicleId = vehicleId;
         this.position = position;
@@ -38,6 +47,7 @@ public class VehiclePosition {
         this.occupancyInfo = occupancyInfo;
         this.occupancyPercentage = occupancyPercentage;
         this.currentStopId = currentStopId;
+        this.timestamp = timestamp;
     }
 
     /**
@@ -103,6 +113,13 @@ public class VehiclePosition {
         return currentStopId;
     }
 
+    /**
+     * Returns the epoch second the position was measured at, or -1 when the feed does not say.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
     @Override
     /**
      * Returns the result of toString.
@@ -0,0 +1,92 @@
+package damose.service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import damose.data.mapper.TripMatcher;
+import damose.model.StopTimeTable;
+import damose.model.Trip;
+import damose.model.TripServiceCalendar;
+import damose.util.ServiceDayClock;
+
+/**
+ * Per-day sets of running trips, indexed by stop time table trip code.
+ * The sets of yesterday, today and tomorrow are built once when the feed date rolls over,
+ * so checking whether a trip runs is one bit test.
+ */
+final class ActiveTripIndex {
+
+    private static final int NEVER = -1;
+    private static final int ALWAYS = -2;
+    private static final int UNSEEN = -3;
+
+    private final TripServiceCalendar calendar;
+    private final int[] serviceByTripCode;
+    private volatile Days current;
+
+    ActiveTripIndex(StopTimeTable table, TripMatcher matcher, TripServiceCalendar calendar) {
+        this.calendar = calendar != null ? calendar : new TripServiceCalendar();
+        this.serviceByTripCode = new int[table.dictionary().size()];
+        Arrays.fill(serviceByTripCode, UNSEEN);
+
+        for (int row = 0; row < table.size(); row++) {
+            int tripCode = table.tripCode(row);
+            if (tripCode < 0 || serviceByTripCode[tripCode] != UNSEEN) {
+                continue;
+            }
+            Trip trip = matcher.matchByTripId(table.tripId(row));
+            if (trip == null) {
+                serviceByTripCode[tripCode] = NEVER;
+            } else if (trip.getServiceId() == null || trip.getServiceId().isEmpty()) {
+                serviceByTripCode[tripCode] = ALWAYS;
+            } else {
+                serviceByTripCode[tripCode] = this.calendar.serviceCode(trip.getServiceId());
+            }
+        }
+    }
+
+    /**
+     * Returns the running trips of yesterday, today and tomorrow around the window's feed date,
+     * indexed by offset + 1.
+     */
+    BitSet[] runningTrips(ServiceDayClock.Window window) {
+        int feedDay = (int) window.feedDate().toEpochDay();
+        Days days = current;
+        if (days != null && days.feedDay == feedDay) {
+            return days.running;
+        }
+
+        BitSet[] running = new BitSet[3];
+        for (int offset = ServiceDayClock.Window.YESTERDAY; offset <= ServiceDayClock.Window.TOMORROW; offset++) {
+            int day = feedDay + offset;
+            running[offset + 1] = days != null && Math.abs(day - days.feedDay) <= 1
+                    ? days.running[day - days.feedDay + 1]
+                    : buildRunningTrips(window.serviceDate(offset));
+        }
+        current = new Days(feedDay, running);
+        return running;
+    }
+
+    /**
+     * Returns whether the trip with the given code runs on the service date at offset in the window.
+     */
+    boolean isRunning(int tripCode, ServiceDayClock.Window window, int offset) {
+        return tripCode >= 0 && runningTrips(window)[offset + 1].get(tripCode);
+    }
+
+    private BitSet buildRunningTrips(LocalDate date) {
+        BitSet activeServices = calendar.activeServices(date);
+        BitSet running = new BitSet(serviceByTripCode.length);
+        for (int tripCode = 0; tripCode < serviceByTripCode.length; tripCode++) {
+            int service = serviceByTripCode[tripCode];
+            if (service == ALWAYS || (service >= 0 && activeServices.get(service))) {
+                running.set(tripCode);
+            }
+        }
+        return running;
+    }
+
+    private record Days(int feedDay, BitSet[] running) {
+    }
+}
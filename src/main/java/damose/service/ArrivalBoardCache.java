@@ -0,0 +1,78 @@
+package damose.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import damose.model.ConnectionMode;
+
+/**
+ * Bounded, least recently used cache of formatted arrival boards.
+ * A board is keyed by stop, connection mode, the minute it was computed in, the minute of the feed time
+ * and the realtime tables version, so a new minute or a new feed never reads an old board.
+ */
+final class ArrivalBoardCache {
+
+    private final int capacity;
+    private final Map<Key, List<String>> boards;
+
+    ArrivalBoardCache(int capacity) {
+        this.capacity = capacity;
+        this.boards = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<String>> eldest) {
+                return size() > ArrivalBoardCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached board for key, computing and storing it on a miss.
+     * The board is computed outside the cache lock; two concurrent misses may both compute it.
+     */
+    List<String> get(Key key, Supplier<List<String>> compute) {
+        synchronized (boards) {
+            List<String> cached = boards.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        List<String> board = List.copyOf(compute.get());
+        synchronized (boards) {
+            boards.put(key, board);
+        }
+        return board;
+    }
+
+    /**
+     * Drops every cached board.
+     */
+    void invalidateAll() {
+        synchronized (boards) {
+            boards.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached boards.
+     */
+    int size() {
+        synchronized (boards) {
+            return boards.size();
+        }
+    }
+
+    /**
+     * Identity of one board computation.
+     */
+    record Key(String stopId, ConnectionMode mode, long minute, long feedMinute, long realtimeVersion) {
+
+        /**
+         * Returns the key of a board computed at nowEpoch for a feed time, with the given tables version.
+         */
+        static Key of(String stopId, ConnectionMode mode, long nowEpoch, long feedTs, long realtimeVersion) {
+            return new Key(stopId, mode, Math.floorDiv(nowEpoch, 60), Math.floorDiv(feedTs, 60), realtimeVersion);
+        }
+    }
+}
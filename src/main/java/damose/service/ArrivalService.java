@@ -1,56 +1,73 @@
 package damose.service;
 
 import java.time.Instant;
-import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.Set;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 import damose.config.AppConstants;
+import damose.data.mapper.GtfsIdDictionary;
 import damose.data.mapper.StopTripMapper;
 import damose.data.mapper.TripIdUtils;
 import damose.data.mapper.TripMatcher;
 import damose.model.ConnectionMode;
-import damose.model.StopTime;
+import damose.model.StopTimeTable;
 import damose.model.Trip;
 import damose.model.TripServiceCalendar;
 import damose.model.TripUpdateRecord;
+import damose.util.ServiceDayClock;
 
 /**
  * Provides service logic for arrival service.
  */
 public class ArrivalService {
 
-    private final Map<String, Map<String, Long>> realtimeArrivals = new HashMap<>();
-    private final Map<String, Map<String, NavigableSet<Long>>> realtimeArrivalsByRoute = new HashMap<>();
-
     private static final long ROUTE_FALLBACK_MAX_DIFF_SECONDS = 30 * 60;
     private static final long RT_HISTORY_SECONDS = 5 * 60;
     private static final long RT_LOOKAHEAD_SECONDS = (AppConstants.RT_WINDOW_MIN + 30L) * 60L;
     private static final int MAX_ROUTE_EPOCHS_PER_STOP = 12;
+    // Widest epoch range whose whole-minute difference from now is inside the board's -2..STATIC_WINDOW_MIN window.
+    private static final long BOARD_FROM_SECONDS = -(2 * 60 + 59);
+    private static final long BOARD_TO_SECONDS = AppConstants.STATIC_WINDOW_MIN * 60L + 59;
+    private static final int MIN_STOPS_PER_BATCH_CHUNK = 16;
 
-    private final TripMatcher matcher;
     private final StopTripMapper stopTripMapper;
-    private final TripServiceCalendar tripServiceCalendar;
+    private final GtfsIdDictionary ids;
+    private final Trip[] tripsByCode;
+    private final ActiveTripIndex activeTrips;
+    private final StopDepartureIndex departures;
     private final RouteFallbackPredictionAssigner routeFallbackPredictionAssigner;
+    private final ServiceDayClock serviceDayClock = ServiceDayClock.systemDefault();
+    private final Object realtimeWriteLock = new Object();
+    private volatile RealtimeArrivalTables realtime = RealtimeArrivalTables.EMPTY;
+    private final ArrivalBoardCache boardCache = new ArrivalBoardCache(AppConstants.ARRIVAL_BOARD_CACHE_SIZE);
+    private final List<BoardSubscription> boardSubscriptions = new CopyOnWriteArrayList<>();
 
     public ArrivalService(TripMatcher matcher,
                           StopTripMapper stopTripMapper,
                           TripServiceCalendar tripServiceCalendar) {
-        this.matcher = matcher;
         this.stopTripMapper = stopTripMapper;
-        this.tripServiceCalendar = tripServiceCalendar;
+        this.ids = GtfsIdDictionary.build(stopTripMapper.getStopTimeTable(), matcher);
+        this.tripsByCode = resolveTrips(stopTripMapper.getStopTimeTable(), matcher);
+        this.activeTrips = new ActiveTripIndex(stopTripMapper.getStopTimeTable(), matcher, tripServiceCalendar);
+        this.departures = StopDepartureIndex.build(stopTripMapper.getStopTimeTable());
         this.routeFallbackPredictionAssigner = new RouteFallbackPredictionAssigner(
-                realtimeArrivalsByRoute,
-                realtimeArrivals,
+                ids,
                 ROUTE_FALLBACK_MAX_DIFF_SECONDS
         );
     }
@@ -64,101 +81,236 @@ public class ArrivalService {
 
     /**
      * Handles updateRealtimeArrivals.
+     * The new tables are built off to the side and published with one volatile write; queries keep reading
+     * the previous version until then and never wait for an update.
      */
     public void updateRealtimeArrivals(List<TripUpdateRecord> updates, long referenceEpochSeconds) {
-        if (updates == null || updates.isEmpty()) {
-            synchronized (realtimeArrivals) {
-                realtimeArrivals.clear();
-                realtimeArrivalsByRoute.clear();
-            }
-            return;
-        }
-
         boolean enforceWindow = referenceEpochSeconds > 0;
         long minAllowedEpoch = enforceWindow ? referenceEpochSeconds - RT_HISTORY_SECONDS : Long.MIN_VALUE;
         long maxAllowedEpoch = enforceWindow ? referenceEpochSeconds + RT_LOOKAHEAD_SECONDS : Long.MAX_VALUE;
 
-        synchronized (realtimeArrivals) {
-            realtimeArrivals.clear();
-            realtimeArrivalsByRoute.clear();
-            for (TripUpdateRecord update : updates) {
-                long arrivalEpoch = update.getArrivalEpochSeconds();
-                if (arrivalEpoch <= 0 || arrivalEpoch < minAllowedEpoch || arrivalEpoch > maxAllowedEpoch) {
-                    continue;
-                }
+        RealtimeArrivalTables previous;
+        RealtimeArrivalTables published;
+        synchronized (realtimeWriteLock) {
+            previous = realtime;
+            long version = previous.version() + 1;
+            published = (updates == null || updates.isEmpty())
+                    ? RealtimeArrivalTables.empty(version)
+                    : RealtimeArrivalTables.build(version, updates, ids,
+                            minAllowedEpoch, maxAllowedEpoch, MAX_ROUTE_EPOCHS_PER_STOP);
+            realtime = published;
+        }
+        boardCache.invalidateAll();
 
-                String rawFeedTrip = update.getTripId();
-                Set<String> variants = TripIdUtils.generateVariants(rawFeedTrip);
-                if (variants.isEmpty()) {
-                    String fallback = ArrivalMatchingUtils.normalizeTripKey(rawFeedTrip);
-                    if (fallback != null && !fallback.isBlank()) {
-                        variants = Set.of(fallback);
-                    }
-                }
-                if (variants.isEmpty()) {
-                    continue;
-                }
+        if (!boardSubscriptions.isEmpty()) {
+            long feedTs = enforceWindow ? referenceEpochSeconds : Instant.now().getEpochSecond();
+            pushChangedBoards(published.stopsChangedSince(previous, ids), feedTs, published);
+        }
+    }
 
-                Set<String> stopVariants = ArrivalMatchingUtils.generateStopIdVariants(update.getStopId());
-                if (stopVariants.isEmpty()) {
-                    continue;
-                }
+    /**
+     * Registers a listener for the realtime boards of stops and delivers their current boards to it.
+     * After that, each realtime update pushes the new board of every one of these stops whose realtime arrivals
+     * changed, on the thread applying the update; boards are those of {@link #computeArrivalsForStops} online.
+     */
+    public void addBoardListener(Collection<String> stopIds,
+                                 long currentFeedTs,
+                                 BiConsumer<String, List<RouteArrivalInfo>> listener) {
+        addBoardListener(stopIds, currentFeedTs, Long.MIN_VALUE, listener);
+    }
 
-                for (String key : variants) {
-                    Map<String, Long> byStop = realtimeArrivals.computeIfAbsent(key, k -> new HashMap<>());
-                    for (String stopKey : stopVariants) {
-                        byStop.merge(stopKey, arrivalEpoch, Math::min);
-                    }
+    /**
+     * Registers a listener for the realtime boards of stops whose caller already shows boards computed from
+     * tables of at least shownVersion, as read from {@link #realtimeArrivalsVersion()} before computing them.
+     * Current boards are delivered only when newer tables have been published since.
+     * A board is never delivered after a board of the same stop computed from newer tables.
+     */
+    public void addBoardListener(Collection<String> stopIds,
+                                 long currentFeedTs,
+                                 long shownVersion,
+                                 BiConsumer<String, List<RouteArrivalInfo>> listener) {
+        BoardSubscription subscription = new BoardSubscription(
+                Collections.unmodifiableSet(new LinkedHashSet<>(stopIds)), listener, shownVersion);
+        boardSubscriptions.add(subscription);
+        RealtimeArrivalTables tables = realtime;
+        if (tables.version() > shownVersion) {
+            computeArrivalsForStops(subscription.stopIds(), ConnectionMode.ONLINE, currentFeedTs, tables).forEach(
+                    (stopId, board) -> subscription.deliver(stopId, board, tables.version()));
+        }
+    }
+
+    /**
+     * Removes every subscription of a listener added with {@link #addBoardListener}.
+     */
+    public void removeBoardListener(BiConsumer<String, List<RouteArrivalInfo>> listener) {
+        boardSubscriptions.removeIf(subscription -> subscription.listener() == listener);
+    }
+
+    private void pushChangedBoards(BitSet changedStops, long feedTs, RealtimeArrivalTables tables) {
+        if (changedStops.isEmpty()) {
+            return;
+        }
+        Set<String> touched = new LinkedHashSet<>();
+        for (BoardSubscription subscription : boardSubscriptions) {
+            for (String stopId : subscription.stopIds()) {
+                int stopCode = ids.stopCode(stopId);
+                if (stopCode >= 0 && changedStops.get(stopCode)) {
+                    touched.add(stopId);
                 }
+            }
+        }
+        if (touched.isEmpty()) {
+            return;
+        }
 
-                Set<String> routeVariants = ArrivalMatchingUtils.generateRouteIdVariants(update.getRouteId());
-                for (String routeKey : routeVariants) {
-                    Map<String, NavigableSet<Long>> byStop =
-                            realtimeArrivalsByRoute.computeIfAbsent(routeKey, k -> new HashMap<>());
-                    for (String stopKey : stopVariants) {
-                        NavigableSet<Long> epochs = byStop.computeIfAbsent(stopKey, k -> new TreeSet<>());
-                        epochs.add(arrivalEpoch);
-                        while (epochs.size() > MAX_ROUTE_EPOCHS_PER_STOP) {
-                            epochs.pollLast();
-                        }
-                    }
+        Map<String, List<RouteArrivalInfo>> boards =
+                computeArrivalsForStops(touched, ConnectionMode.ONLINE, feedTs, tables);
+        for (BoardSubscription subscription : boardSubscriptions) {
+            for (String stopId : subscription.stopIds()) {
+                List<RouteArrivalInfo> board = boards.get(stopId);
+                if (board != null) {
+                    subscription.deliver(stopId, board, tables.version());
                 }
             }
         }
     }
 
+    /**
+     * Returns the version of the realtime arrival tables boards are computed from; it grows with every update.
+     */
+    public long realtimeArrivalsVersion() {
+        return realtime.version();
+    }
+
+    /**
+     * Rebuilds the realtime arrival tables from the trip updates of a snapshot.
+     */
+    public void updateRealtimeArrivals(RealtimeSnapshot snapshot, long referenceEpochSeconds) {
+        updateRealtimeArrivals(snapshot != null ? snapshot.tripUpdates() : List.of(), referenceEpochSeconds);
+    }
+
     /**
      * Returns the result of computeArrivalsForStop.
+     * Boards are cached per stop, mode, minute, feed minute and realtime tables version; the returned list is shared
+     * and unmodifiable.
      */
     public List<String> computeArrivalsForStop(String stopId, ConnectionMode mode, long currentFeedTs) {
-        List<StopTime> times = stopTripMapper.getStopTimesForStop(stopId);
-        if (times == null || times.isEmpty()) {
+        final long nowEpoch = Instant.now().getEpochSecond();
+        final RealtimeArrivalTables tables = realtime;
+        ArrivalBoardCache.Key key = ArrivalBoardCache.Key.of(stopId, mode, nowEpoch, currentFeedTs, tables.version());
+        return boardCache.get(key, () -> computeBoard(stopId, mode, currentFeedTs, nowEpoch, tables));
+    }
+
+    /**
+     * Returns the best upcoming arrival per route of each stop, sorted by predicted or else scheduled time.
+     * Stops keep their first-seen order; a stop without upcoming arrivals maps to an empty list.
+     * Every board is computed against the same clock, feed window and realtime tables version, and large
+     * sets are split into chunks computed on the common fork-join pool.
+     */
+    public Map<String, List<RouteArrivalInfo>> computeArrivalsForStops(Collection<String> stopIds,
+                                                                       ConnectionMode mode,
+                                                                       long currentFeedTs) {
+        return computeArrivalsForStops(stopIds, mode, currentFeedTs, realtime);
+    }
+
+    private Map<String, List<RouteArrivalInfo>> computeArrivalsForStops(Collection<String> stopIds,
+                                                                        ConnectionMode mode,
+                                                                        long currentFeedTs,
+                                                                        RealtimeArrivalTables tables) {
+        final long nowEpoch = Instant.now().getEpochSecond();
+        final ServiceDayClock.Window serviceDays = serviceDayClock.windowFor(currentFeedTs);
+        String[] stops = new LinkedHashSet<>(stopIds).toArray(new String[0]);
+
+        int chunks = Math.min(ForkJoinPool.getCommonPoolParallelism(), stops.length / MIN_STOPS_PER_BATCH_CHUNK);
+        List<Callable<List<List<RouteArrivalInfo>>>> tasks = new ArrayList<>();
+        for (int chunk = 0, from = 0; from < stops.length; chunk++) {
+            int to = chunks <= 1 ? stops.length : (int) ((long) stops.length * (chunk + 1) / chunks);
+            int start = from;
+            tasks.add(() -> {
+                List<List<RouteArrivalInfo>> boards = new ArrayList<>(to - start);
+                for (int i = start; i < to; i++) {
+                    boards.add(collectRouteArrivals(stops[i], mode, currentFeedTs, nowEpoch, serviceDays, tables));
+                }
+                return boards;
+            });
+            from = to;
+        }
+
+        List<List<RouteArrivalInfo>> boards = new ArrayList<>(stops.length);
+        if (tasks.size() == 1) {
+            boards.addAll(call(tasks.get(0)));
+        } else {
+            for (Future<List<List<RouteArrivalInfo>>> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                boards.addAll(await(future));
+            }
+        }
+
+        Map<String, List<RouteArrivalInfo>> result = new LinkedHashMap<>(stops.length * 2);
+        for (int i = 0; i < stops.length; i++) {
+            result.put(stops[i], boards.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the arrival board of a stop at nowEpoch.
+     */
+    private List<String> computeBoard(String stopId,
+                                      ConnectionMode mode,
+                                      long currentFeedTs,
+                                      long nowEpoch,
+                                      RealtimeArrivalTables tables) {
+        List<RouteArrivalInfo> arrivals = collectRouteArrivals(
+                stopId, mode, currentFeedTs, nowEpoch, serviceDayClock.windowFor(currentFeedTs), tables);
+        return formatBoard(arrivals, nowEpoch);
+    }
+
+    /**
+     * Returns the board lines of arrivals as displayed at nowEpoch, as {@link #computeArrivalsForStop} formats them.
+     */
+    public static List<String> formatBoard(List<RouteArrivalInfo> arrivals, long nowEpoch) {
+        if (arrivals.isEmpty()) {
             return List.of("Nessun arrivo imminente");
         }
 
-        final long nowEpoch = Instant.now().getEpochSecond();
-        final LocalDate feedDate = Instant.ofEpochSecond(currentFeedTs)
-                .atZone(ZoneId.systemDefault()).toLocalDate();
+        List<String> arrivi = new ArrayList<>(arrivals.size());
+        for (RouteArrivalInfo info : arrivals) {
+            arrivi.add(ArrivalFormattingSupport.formatArrivalInfo(info, nowEpoch));
+        }
+        return arrivi;
+    }
+
+    /**
+     * Returns the best arrival per route of a stop in the board window around nowEpoch, sorted by arrival.
+     * Only the stop's departures in the board window, looked up in the {@link StopDepartureIndex}, are examined.
+     */
+    private List<RouteArrivalInfo> collectRouteArrivals(String stopId,
+                                                        ConnectionMode mode,
+                                                        long currentFeedTs,
+                                                        long nowEpoch,
+                                                        ServiceDayClock.Window serviceDays,
+                                                        RealtimeArrivalTables tables) {
+        StopTimeTable table = stopTripMapper.getStopTimeTable();
+        if (!departures.hasDepartures(stopId)) {
+            return List.of();
+        }
+
+        int[] rows = departures.rowsBetweenEpochs(
+                stopId, serviceDays, nowEpoch + BOARD_FROM_SECONDS, nowEpoch + BOARD_TO_SECONDS);
 
         Map<String, RouteArrivalInfo> perRoute = new HashMap<>();
 
-        for (StopTime stopTime : times) {
-            Trip trip = matcher.matchByTripId(stopTime.getTripId());
+        for (int row : rows) {
+            int arrivalSeconds = table.arrivalSeconds(row);
+
+            int tripCode = table.tripCode(row);
+            Trip trip = tripCode >= 0 ? tripsByCode[tripCode] : null;
             if (trip == null) {
                 continue;
             }
 
             String routeId = trip.getRouteId();
-            if (!isTripRunningOnFeedDate(trip, feedDate)) {
-                continue;
-            }
-
-            LocalTime arrival = stopTime.getArrivalTime();
-            if (arrival == null) {
-                continue;
-            }
-
-            long scheduledEpoch = ArrivalMatchingUtils.computeScheduledEpochForFeed(arrival, currentFeedTs);
+            long scheduledEpoch = closestRunningEpoch(tripCode, arrivalSeconds, serviceDays, currentFeedTs);
             if (scheduledEpoch <= 0) {
                 continue;
             }
@@ -169,7 +321,7 @@ public class ArrivalService {
             }
 
             Long predictedEpoch = (mode == ConnectionMode.ONLINE)
-                    ? lookupRealtimeArrivalEpochStrictByStop(stopTime, stopId, routeId, scheduledEpoch)
+                    ? lookupRealtimeArrivalEpochStrictByStop(tables, table, row, stopId, routeId, scheduledEpoch)
                     : null;
 
             if (predictedEpoch != null) {
@@ -198,54 +350,47 @@ public class ArrivalService {
             }
         }
 
-        List<String> arrivi = perRoute.values().stream()
-                .sorted(Comparator.comparingLong(RouteArrivalInfo::sortKey))
-                .map(info -> ArrivalFormattingSupport.formatArrivalInfo(info, nowEpoch))
-                .collect(Collectors.toList());
-
-        if (arrivi.isEmpty()) {
-            arrivi = new ArrayList<>();
-            arrivi.add("Nessun arrivo imminente");
-        }
-        return arrivi;
+        List<RouteArrivalInfo> arrivals = new ArrayList<>(perRoute.values());
+        arrivals.sort(Comparator.comparingLong(RouteArrivalInfo::sortKey));
+        return Collections.unmodifiableList(arrivals);
     }
 
     /**
      * Returns the all trips for stop today.
      */
     public List<String> getAllTripsForStopToday(String stopId, ConnectionMode mode, long currentFeedTs) {
-        List<StopTime> times = stopTripMapper.getStopTimesForStop(stopId);
-        if (times == null || times.isEmpty()) {
+        StopTimeTable table = stopTripMapper.getStopTimeTable();
+        int[] rows = stopTripMapper.getStopTimeRowsForStop(stopId);
+        if (rows.length == 0) {
             return List.of("Nessun passaggio programmato per oggi");
         }
 
-        final LocalDate feedDate = Instant.ofEpochSecond(currentFeedTs)
-                .atZone(ZoneId.systemDefault()).toLocalDate();
+        final ServiceDayClock.Window serviceDays = serviceDayClock.windowFor(currentFeedTs);
+        final RealtimeArrivalTables tables = realtime;
 
         List<TripArrivalInfo> allTrips = new ArrayList<>();
 
-        for (StopTime stopTime : times) {
-            Trip trip = matcher.matchByTripId(stopTime.getTripId());
-            if (trip == null) {
+        for (int row : rows) {
+            int arrivalSeconds = table.arrivalSeconds(row);
+            if (arrivalSeconds < 0) {
                 continue;
             }
 
-            if (!isTripRunningOnFeedDate(trip, feedDate)) {
+            int tripCode = table.tripCode(row);
+            Trip trip = tripCode >= 0 ? tripsByCode[tripCode] : null;
+            if (trip == null) {
                 continue;
             }
 
-            LocalTime arr = stopTime.getArrivalTime();
-            if (arr == null) {
+            if (!activeTrips.isRunning(tripCode, serviceDays, ServiceDayClock.Window.TODAY)) {
                 continue;
             }
 
-            long scheduledEpoch = ArrivalMatchingUtils.computeScheduledEpochForFeed(arr, currentFeedTs);
-            if (scheduledEpoch <= 0) {
-                continue;
-            }
+            LocalTime arr = table.arrivalTime(row);
+            long scheduledEpoch = serviceDays.epochOf(ServiceDayClock.Window.TODAY, arrivalSeconds);
 
             Long predictedEpoch = (mode == ConnectionMode.ONLINE)
-                    ? lookupRealtimeArrivalEpochByTripAndStop(stopTime, stopId)
+                    ? lookupRealtimeArrivalEpochByTripAndStop(tables, table, row, stopId)
                     : null;
 
             allTrips.add(new TripArrivalInfo(
@@ -257,9 +402,9 @@ public class ArrivalService {
             ));
         }
 
-        allTrips.sort(Comparator.comparing(t -> t.arrivalTime));
+        allTrips.sort(Comparator.comparingLong(t -> t.scheduledEpoch));
         if (mode == ConnectionMode.ONLINE) {
-            routeFallbackPredictionAssigner.assignRouteFallbackPredictions(stopId, allTrips);
+            routeFallbackPredictionAssigner.assignRouteFallbackPredictions(tables, stopId, allTrips);
         }
 
         List<String> result = new ArrayList<>();
@@ -273,65 +418,158 @@ public class ArrivalService {
         return result;
     }
 
-    private boolean isTripRunningOnFeedDate(Trip trip, LocalDate feedDate) {
-        String serviceId = trip.getServiceId();
-        if (serviceId == null || serviceId.isEmpty()) {
-            return true;
+    /**
+     * Returns the static trip of every trip code in the table, resolved once; null where the matcher knows none.
+     */
+    private static Trip[] resolveTrips(StopTimeTable table, TripMatcher matcher) {
+        Trip[] trips = new Trip[table.dictionary().size()];
+        boolean[] seen = new boolean[trips.length];
+        for (int row = 0; row < table.size(); row++) {
+            int tripCode = table.tripCode(row);
+            if (tripCode >= 0 && !seen[tripCode]) {
+                seen[tripCode] = true;
+                trips[tripCode] = matcher.matchByTripId(table.tripId(row));
+            }
+        }
+        return trips;
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing arrival boards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Returns the epoch of a service-day time on the running service day closest to the feed time,
+     * so a 25:10 departure of yesterday's service is found at 01:10 today. Returns -1 when none runs.
+     */
+    private long closestRunningEpoch(int tripCode, int serviceSeconds, ServiceDayClock.Window serviceDays, long feedTs) {
+        if (tripCode < 0) {
+            return -1;
         }
-        return tripServiceCalendar.serviceRunsOnDate(serviceId, feedDate);
+        BitSet[] running = activeTrips.runningTrips(serviceDays);
+        long best = -1;
+        long bestDiff = Long.MAX_VALUE;
+        for (int offset = ServiceDayClock.Window.YESTERDAY; offset <= ServiceDayClock.Window.TOMORROW; offset++) {
+            if (!running[offset + 1].get(tripCode)) {
+                continue;
+            }
+            long candidate = serviceDays.epochOf(offset, serviceSeconds);
+            long diff = Math.abs(candidate - feedTs);
+            if (diff < bestDiff) {
+                bestDiff = diff;
+                best = candidate;
+            }
+        }
+        return best;
     }
 
-    private Long lookupRealtimeArrivalEpochStrictByStop(StopTime stopTime,
+    private Long lookupRealtimeArrivalEpochStrictByStop(RealtimeArrivalTables tables,
+                                                        StopTimeTable table,
+                                                        int row,
                                                         String stopId,
                                                         String routeId,
                                                         long scheduledEpoch) {
-        Long direct = lookupRealtimeArrivalEpochByTripAndStop(stopTime, stopId);
+        Long direct = lookupRealtimeArrivalEpochByTripAndStop(tables, table, row, stopId);
         if (direct != null) {
             return direct;
         }
-        return routeFallbackPredictionAssigner.lookupRouteFallbackArrivalEpoch(stopId, routeId, scheduledEpoch);
+        return routeFallbackPredictionAssigner.lookupRouteFallbackArrivalEpoch(tables, stopId, routeId, scheduledEpoch);
     }
 
-    private Long lookupRealtimeArrivalEpochByTripAndStop(StopTime stopTime, String stopId) {
-        String rawStaticTrip = stopTime.getTripId();
-        String normalizedStaticKey = ArrivalMatchingUtils.normalizeTripKey(rawStaticTrip);
+    /**
+     * Returns the earliest realtime arrival of a stop time row's trip at its stop, matched through the
+     * static codes, else through a feed trip id containing a variant of the static one.
+     * Feed trip ids containing a variant are found through the trigram index built with the realtime tables.
+     */
+    private Long lookupRealtimeArrivalEpochByTripAndStop(RealtimeArrivalTables tables,
+                                                         StopTimeTable table,
+                                                         int row,
+                                                         String stopId) {
+        Long direct = tables.arrivalByTripStop(table.tripCode(row), table.stopCode(row));
+        if (direct != null) {
+            return direct;
+        }
+        if (tables.isEmpty()) {
+            return null;
+        }
+
+        String normalizedStaticKey = ArrivalMatchingUtils.normalizeTripKey(table.tripId(row));
         Set<String> staticVariants = TripIdUtils.generateVariants(normalizedStaticKey);
         Set<String> stopVariants = ArrivalMatchingUtils.generateStopIdVariants(stopId);
-
-        synchronized (realtimeArrivals) {
+        for (String key : tables.tripKeysContainingAny(staticVariants)) {
             for (String variant : staticVariants) {
-                Map<String, Long> byStop = realtimeArrivals.get(variant);
-                if (byStop == null) {
+                if (!key.contains(variant)) {
                     continue;
                 }
+                Map<String, Long> candidate = tables.arrivalsByTripKey(key);
                 for (String stopVariant : stopVariants) {
-                    Long direct = byStop.get(stopVariant);
-                    if (direct != null) {
-                        return direct;
+                    Long value = candidate.get(stopVariant);
+                    if (value != null) {
+                        return value;
                     }
                 }
             }
+        }
+        return null;
+    }
+
+    /**
+     * The stops a board listener is registered for, with the tables version of the last board delivered per stop.
+     */
+    private static final class BoardSubscription {
+
+        private final Set<String> stopIds;
+        private final BiConsumer<String, List<RouteArrivalInfo>> listener;
+        private final Map<String, Long> deliveredVersions = new HashMap<>();
+
+        BoardSubscription(Set<String> stopIds, BiConsumer<String, List<RouteArrivalInfo>> listener, long shownVersion) {
+            this.stopIds = stopIds;
+            this.listener = listener;
+            for (String stopId : stopIds) {
+                deliveredVersions.put(stopId, shownVersion);
+            }
+        }
 
-            for (String key : realtimeArrivals.keySet()) {
-                for (String variant : staticVariants) {
-                    if (key == null || variant == null) {
-                        continue;
-                    }
-                    if (key.contains(variant) || key.endsWith(variant)) {
-                        Map<String, Long> candidate = realtimeArrivals.get(key);
-                        if (candidate == null) {
-                            continue;
-                        }
-                        for (String stopVariant : stopVariants) {
-                            Long value = candidate.get(stopVariant);
-                            if (value != null) {
-                                return value;
-                            }
-                        }
-                    }
-                }
+        Set<String> stopIds() {
+            return stopIds;
+        }
+
+        BiConsumer<String, List<RouteArrivalInfo>> listener() {
+            return listener;
+        }
+
+        /**
+         * Hands the board of a stop to the listener unless a board from the same or newer tables already was.
+         */
+        synchronized void deliver(String stopId, List<RouteArrivalInfo> board, long version) {
+            if (deliveredVersions.getOrDefault(stopId, Long.MIN_VALUE) >= version) {
+                return;
+            }
+            deliveredVersions.put(stopId, version);
+            try {
+                listener.accept(stopId, board);
+            } catch (RuntimeException e) {
+                System.out.println("Error in arrival board listener: " + e.getMessage());
             }
-            return null;
         }
     }
 }
@@ -1,15 +1,16 @@
 package damose.service;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.lang.reflect.Method;
 
 import org.jxmapviewer.viewer.GeoPosition;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.transit.realtime.GtfsRealtime;
 
+import damose.data.mapper.StopIdUtils;
 import damose.data.mapper.StopTripMapper;
-import damose.data.mapper.TripIdUtils;
 import damose.model.TripUpdateRecord;
 import damose.model.VehiclePosition;
 
@@ -21,162 +22,125 @@ public final class GtfsParser {
     private GtfsParser() {
     }
 
-    public static List<TripUpdateRecord> parseTripUpdates(GtfsRealtime.FeedMessage feed,
-                                                          StopTripMapper stopTripMapper,
-                                                          Long feedHeaderTs) {
+    /**
+     * Decodes the trip updates of a raw GTFS-RT payload without building a FeedMessage.
+     * Returns an empty list when the payload is missing or malformed.
+     */
+    public static List<TripUpdateRecord> parseTripUpdates(byte[] feed, StopTripMapper stopTripMapper) {
         if (feed == null) return new ArrayList<>();
-        int entityCount = Math.max(16, feed.getEntityCount() * 2);
-        List<TripUpdateRecord> updates = new ArrayList<>(entityCount);
-
-        for (GtfsRealtime.FeedEntity entity : feed.getEntityList()) {
-            if (!entity.hasTripUpdate()) continue;
-
-            GtfsRealtime.TripUpdate tu = entity.getTripUpdate();
-            String rawTripId = (tu.hasTrip() && tu.getTrip().hasTripId())
-                    ? tu.getTrip().getTripId() : null;
-            String rawRouteId = (tu.hasTrip() && tu.getTrip().hasRouteId())
-                    ? tu.getTrip().getRouteId() : null;
-            String simple = TripIdUtils.normalizeSimple(rawTripId);
-
-            for (GtfsRealtime.TripUpdate.StopTimeUpdate stu : tu.getStopTimeUpdateList()) {
-                if (stu.hasScheduleRelationship()) {
-                    GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship rel =
-                            stu.getScheduleRelationship();
-                    if (rel == GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SKIPPED
-                        || rel == GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.NO_DATA) {
-                        continue;
-                    }
-                }
-
-                String stopId = stu.hasStopId() ? normalizeStopId(stu.getStopId()) : null;
-                boolean hasUsableStopId = stopId != null && !stopId.isBlank();
-                boolean isKnownStopId = hasUsableStopId
-                        && stopTripMapper != null
-                        && stopTripMapper.isKnownStopId(stopId);
-
-                if ((!hasUsableStopId || !isKnownStopId)
-                        && stu.hasStopSequence()
-                        && stopTripMapper != null
-                        && rawTripId != null) {
-                    int seq = stu.getStopSequence();
-                    String mapped = stopTripMapper.getStopIdByTripAndSequence(rawTripId, seq);
-                    if (mapped == null || mapped.isBlank()) {
-                        mapped = stopTripMapper.getStopIdByTripAndSequence(simple, seq);
-                    }
-                    if (mapped != null && !mapped.isBlank()) {
-                        stopId = mapped;
-                    }
-                }
-
-                long rawTime = -1;
-                if (stu.hasArrival() && stu.getArrival().hasTime()) {
-                    rawTime = stu.getArrival().getTime();
-                } else if (stu.hasDeparture() && stu.getDeparture().hasTime()) {
-                    rawTime = stu.getDeparture().getTime();
-                }
-
-                long arrivalEpoch = normalizeEpoch(rawTime);
-                if (stopId != null && !stopId.isBlank() && arrivalEpoch > 0) {
-                    updates.add(new TripUpdateRecord(rawTripId, rawRouteId, stopId, arrivalEpoch));
-                }
-            }
+        try {
+            return GtfsRealtimeDecoder.decodeTripUpdates(CodedInputStream.newInstance(feed), stopTripMapper);
+        } catch (IOException e) {
+            System.out.println("Error decoding TripUpdates: " + e.getMessage());
+            return new ArrayList<>();
         }
-
-        return updates;
     }
 
     /**
-     * Returns the result of parseVehiclePositions.
+     * Decodes the vehicle positions of a raw GTFS-RT payload without building a FeedMessage.
+     * Returns an empty list when the payload is missing or malformed.
      */
-    public static List<VehiclePosition> parseVehiclePositions(GtfsRealtime.FeedMessage feed) {
+    public static List<VehiclePosition> parseVehiclePositions(byte[] feed) {
         if (feed == null) return new ArrayList<>();
-        int entityCount = Math.max(16, feed.getEntityCount());
-        List<VehiclePosition> positions = new ArrayList<>(entityCount);
-
-        for (GtfsRealtime.FeedEntity entity : feed.getEntityList()) {
-            if (!entity.hasVehicle()) continue;
-
-            GtfsRealtime.VehiclePosition vehicle = entity.getVehicle();
-
-            String tripId = (vehicle.hasTrip() && vehicle.getTrip().hasTripId())
-                    ? vehicle.getTrip().getTripId() : null;
-            String routeId = (vehicle.hasTrip() && vehicle.getTrip().hasRouteId())
-                    ? vehicle.getTrip().getRouteId() : null;
-            int directionId = (vehicle.hasTrip() && vehicle.getTrip().hasDirectionId())
-                    ? vehicle.getTrip().getDirectionId() : -1;
-            String vehicleId = (vehicle.hasVehicle() && vehicle.getVehicle().hasId())
-                    ? vehicle.getVehicle().getId() : null;
-            String currentStopId = vehicle.hasStopId() ? normalizeStopId(vehicle.getStopId()) : null;
-            String occupancyInfo = parseOccupancyInfo(vehicle);
-            int occupancyPercentage = parseOccupancyPercentage(vehicle);
-
-            if (!vehicle.hasPosition()) {
-                continue;
-            }
-
-            double lat = vehicle.getPosition().getLatitude();
-            double lon = vehicle.getPosition().getLongitude();
-            int stopSeq = vehicle.hasCurrentStopSequence() ? vehicle.getCurrentStopSequence() : -1;
-
-            if (!Double.isFinite(lat) || !Double.isFinite(lon)) {
-                continue;
-            }
+        try {
+            return GtfsRealtimeDecoder.decodeVehiclePositions(CodedInputStream.newInstance(feed));
+        } catch (IOException e) {
+            System.out.println("Error decoding VehiclePositions: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
 
-            if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
-                double latC = lat / 1_000_000.0;
-                double lonC = lon / 1_000_000.0;
-                if (Math.abs(latC) <= 90 && Math.abs(lonC) <= 180) {
-                    lat = latC;
-                    lon = lonC;
-                }
-            }
+    /**
+     * Returns header.timestamp of a raw GTFS-RT payload, or fallback when it has none.
+     */
+    public static long parseHeaderTimestamp(byte[] feed, long fallback) throws IOException {
+        return feed == null ? fallback : GtfsRealtimeDecoder.headerTimestamp(feed, fallback);
+    }
 
-            if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
-                continue;
+    /**
+     * Builds the record of one stop time update, resolving its stop id from the trip and stop sequence
+     * when the feed's stop id is missing or unknown. Returns null when no stop or no valid time is left.
+     */
+    static TripUpdateRecord toTripUpdateRecord(String rawTripId,
+                                               String simpleTripId,
+                                               String rawRouteId,
+                                               String rawStopId,
+                                               int stopSequence,
+                                               long rawTime,
+                                               StopTripMapper stopTripMapper) {
+        String stopId = rawStopId != null ? StopIdUtils.normalize(rawStopId) : null;
+        boolean hasUsableStopId = stopId != null && !stopId.isBlank();
+        boolean isKnownStopId = hasUsableStopId
+                && stopTripMapper != null
+                && stopTripMapper.isKnownStopId(stopId);
+
+        if ((!hasUsableStopId || !isKnownStopId)
+                && stopSequence >= 0
+                && stopTripMapper != null
+                && rawTripId != null) {
+            String mapped = stopTripMapper.getStopIdByTripAndSequence(rawTripId, stopSequence);
+            if (mapped == null || mapped.isBlank()) {
+                mapped = stopTripMapper.getStopIdByTripAndSequence(simpleTripId, stopSequence);
             }
-
-            if (lat == 0.0 && lon == 0.0) {
-                continue;
+            if (mapped != null && !mapped.isBlank()) {
+                stopId = mapped;
             }
-
-            positions.add(new VehiclePosition(
-                tripId,
-                vehicleId,
-                new GeoPosition(lat, lon),
-                stopSeq,
-                routeId,
-                directionId,
-                occupancyInfo,
-                occupancyPercentage,
-                currentStopId
-            ));
         }
 
-        return positions;
+        long arrivalEpoch = normalizeEpoch(rawTime);
+        if (stopId != null && !stopId.isBlank() && arrivalEpoch > 0) {
+            return new TripUpdateRecord(rawTripId, rawRouteId, stopId, arrivalEpoch);
+        }
+        return null;
     }
 
-    private static String normalizeStopId(String stopId) {
-        if (stopId == null) return null;
-        String normalized = stopId.trim();
+    /**
+     * Builds a vehicle position, rescaling microdegree coordinates. Returns null for unusable coordinates.
+     */
+    static VehiclePosition toVehiclePosition(String tripId,
+                                             String vehicleId,
+                                             double lat,
+                                             double lon,
+                                             int stopSeq,
+                                             String routeId,
+                                             int directionId,
+                                             String occupancyInfo,
+                                             int occupancyPercentage,
+                                             String rawStopId,
+                                             long rawTimestamp) {
+        if (!Double.isFinite(lat) || !Double.isFinite(lon)) {
+            return null;
+        }
 
-        while (true) {
-            String lower = normalized.toLowerCase();
-            if (lower.startsWith("stop:")) {
-                normalized = normalized.substring("stop:".length()).trim();
-                continue;
-            }
-            int colon = normalized.indexOf(':');
-            if (colon > 0 && colon < 6) {
-                normalized = normalized.substring(colon + 1).trim();
-                continue;
+        if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+            double latC = lat / 1_000_000.0;
+            double lonC = lon / 1_000_000.0;
+            if (Math.abs(latC) <= 90 && Math.abs(lonC) <= 180) {
+                lat = latC;
+                lon = lonC;
             }
-            break;
         }
 
-        normalized = normalized.replaceFirst("^\\d+#", "");
+        if (Math.abs(lat) > 90 || Math.abs(lon) > 180) {
+            return null;
+        }
 
-        normalized = normalized.replaceFirst("[_:]\\d+$", "");
-        return normalized;
+        if (lat == 0.0 && lon == 0.0) {
+            return null;
+        }
+
+        return new VehiclePosition(
+            tripId,
+            vehicleId,
+            new GeoPosition(lat, lon),
+            stopSeq,
+            routeId,
+            directionId,
+            occupancyInfo,
+            occupancyPercentage,
+            rawStopId != null ? StopIdUtils.normalize(rawStopId) : null,
+            normalizeEpoch(rawTimestamp)
+        );
     }
 
     private static long normalizeEpoch(long raw) {
@@ -193,12 +157,12 @@ public final class GtfsParser {
         return -1;
     }
 
-    private static String parseOccupancyInfo(GtfsRealtime.VehiclePosition vehicle) {
-        if (vehicle == null || !vehicle.hasOccupancyStatus()) {
+    static String occupancyInfo(GtfsRealtime.VehiclePosition.OccupancyStatus occupancyStatus) {
+        if (occupancyStatus == null) {
             return null;
         }
 
-        String status = vehicle.getOccupancyStatus().name();
+        String status = occupancyStatus.name();
         return switch (status) {
             case "EMPTY" -> "vuoto";
             case "MANY_SEATS_AVAILABLE" -> "molti posti disponibili";
@@ -212,26 +176,4 @@ public final class GtfsParser {
             default -> status.toLowerCase().replace('_', ' ');
         };
     }
-
-    private static int parseOccupancyPercentage(GtfsRealtime.VehiclePosition vehicle) {
-        if (vehicle == null) return -1;
-
-        try {
-            Method hasMethod = vehicle.getClass().getMethod("hasOccupancyPercentage");
-            Object has = hasMethod.invoke(vehicle);
-            if (!(has instanceof Boolean) || !((Boolean) has)) {
-                return -1;
-            }
-
-            Method getMethod = vehicle.getClass().getMethod("getOccupancyPercentage");
-            Object value = getMethod.invoke(vehicle);
-            if (value instanceof Integer i && i >= 0) {
-                return i;
-            }
-        } catch (Exception ignored) {
-        }
-
-        return -1;
-    }
 }
-
@@ -0,0 +1,414 @@
+package damose.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import com.google.transit.realtime.GtfsRealtime;
+
+import damose.data.mapper.StopTripMapper;
+import damose.data.mapper.TripIdUtils;
+import damose.model.TripUpdateRecord;
+import damose.model.VehiclePosition;
+
+/**
+ * Streaming GTFS-RT decoder working on the protobuf wire format.
+ * Entities are walked one at a time with {@link CodedInputStream} and only the fields copied into
+ * {@link TripUpdateRecord} and {@link VehiclePosition} are read; everything else is skipped without
+ * building the generated message tree.
+ */
+final class GtfsRealtimeDecoder {
+
+    // FeedMessage
+    private static final int FEED_HEADER = 1;
+    private static final int FEED_ENTITY = 2;
+    // FeedHeader
+    private static final int HEADER_TIMESTAMP = 3;
+    // FeedEntity
+    private static final int ENTITY_TRIP_UPDATE = 3;
+    private static final int ENTITY_VEHICLE = 4;
+    // TripUpdate
+    private static final int TRIP_UPDATE_TRIP = 1;
+    private static final int TRIP_UPDATE_STOP_TIME_UPDATE = 2;
+    // TripDescriptor
+    private static final int TRIP_TRIP_ID = 1;
+    private static final int TRIP_ROUTE_ID = 5;
+    private static final int TRIP_DIRECTION_ID = 6;
+    // StopTimeUpdate
+    private static final int STU_STOP_SEQUENCE = 1;
+    private static final int STU_ARRIVAL = 2;
+    private static final int STU_DEPARTURE = 3;
+    private static final int STU_STOP_ID = 4;
+    private static final int STU_SCHEDULE_RELATIONSHIP = 5;
+    // StopTimeEvent
+    private static final int EVENT_TIME = 2;
+    // VehiclePosition
+    private static final int VEHICLE_TRIP = 1;
+    private static final int VEHICLE_POSITION = 2;
+    private static final int VEHICLE_CURRENT_STOP_SEQUENCE = 3;
+    private static final int VEHICLE_TIMESTAMP = 5;
+    private static final int VEHICLE_STOP_ID = 7;
+    private static final int VEHICLE_VEHICLE = 8;
+    private static final int VEHICLE_OCCUPANCY_STATUS = 9;
+    private static final int VEHICLE_OCCUPANCY_PERCENTAGE = 10;
+    // Position
+    private static final int POSITION_LATITUDE = 1;
+    private static final int POSITION_LONGITUDE = 2;
+    // VehicleDescriptor
+    private static final int DESCRIPTOR_ID = 1;
+
+    private static final int SKIPPED = GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SKIPPED_VALUE;
+    private static final int NO_DATA = GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.NO_DATA_VALUE;
+
+    private GtfsRealtimeDecoder() {
+    }
+
+    /**
+     * Returns header.timestamp of a feed, or fallback when the header has none.
+     * Entities are skipped by length, so this also checks the top-level framing of the whole feed.
+     */
+    static long headerTimestamp(byte[] feed, long fallback) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(feed);
+        long timestamp = fallback;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (tag == lengthDelimited(FEED_HEADER)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                while ((tag = in.readTag()) != 0) {
+                    if (tag == varint(HEADER_TIMESTAMP)) {
+                        timestamp = in.readUInt64();
+                    } else {
+                        in.skipField(tag);
+                    }
+                }
+                in.popLimit(limit);
+            } else {
+                in.skipField(tag);
+            }
+        }
+        return timestamp;
+    }
+
+    /**
+     * Decodes the stop time updates of every TripUpdate entity.
+     */
+    static List<TripUpdateRecord> decodeTripUpdates(CodedInputStream in, StopTripMapper stopTripMapper)
+            throws IOException {
+        List<TripUpdateRecord> updates = new ArrayList<>(256);
+        TripUpdateScratch scratch = new TripUpdateScratch();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (tag != lengthDelimited(FEED_ENTITY)) {
+                in.skipField(tag);
+                continue;
+            }
+            int entityLimit = in.pushLimit(in.readRawVarint32());
+            while ((tag = in.readTag()) != 0) {
+                if (tag == lengthDelimited(ENTITY_TRIP_UPDATE)) {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    scratch.reset();
+                    readTripUpdate(in, scratch);
+                    in.popLimit(limit);
+                    scratch.emit(updates, stopTripMapper);
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            in.popLimit(entityLimit);
+        }
+        return updates;
+    }
+
+    /**
+     * Decodes every VehiclePosition entity that carries a usable position.
+     */
+    static List<VehiclePosition> decodeVehiclePositions(CodedInputStream in) throws IOException {
+        List<VehiclePosition> positions = new ArrayList<>(256);
+        VehicleScratch scratch = new VehicleScratch();
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (tag != lengthDelimited(FEED_ENTITY)) {
+                in.skipField(tag);
+                continue;
+            }
+            int entityLimit = in.pushLimit(in.readRawVarint32());
+            while ((tag = in.readTag()) != 0) {
+                if (tag == lengthDelimited(ENTITY_VEHICLE)) {
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    scratch.reset();
+                    readVehicle(in, scratch);
+                    in.popLimit(limit);
+                    VehiclePosition position = scratch.toVehiclePosition();
+                    if (position != null) {
+                        positions.add(position);
+                    }
+                } else {
+                    in.skipField(tag);
+                }
+            }
+            in.popLimit(entityLimit);
+        }
+        return positions;
+    }
+
+    private static void readTripUpdate(CodedInputStream in, TripUpdateScratch scratch) throws IOException {
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (tag == lengthDelimited(TRIP_UPDATE_TRIP)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                while ((tag = in.readTag()) != 0) {
+                    if (tag == lengthDelimited(TRIP_TRIP_ID)) {
+                        scratch.tripId = in.readString();
+                    } else if (tag == lengthDelimited(TRIP_ROUTE_ID)) {
+                        scratch.routeId = in.readString();
+                    } else {
+                        in.skipField(tag);
+                    }
+                }
+                in.popLimit(limit);
+            } else if (tag == lengthDelimited(TRIP_UPDATE_STOP_TIME_UPDATE)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                readStopTimeUpdate(in, scratch);
+                in.popLimit(limit);
+            } else {
+                in.skipField(tag);
+            }
+        }
+    }
+
+    private static void readStopTimeUpdate(CodedInputStream in, TripUpdateScratch scratch) throws IOException {
+        String stopId = null;
+        int sequence = -1;
+        long arrival = -1;
+        long departure = -1;
+        int relationship = 0;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case STU_STOP_SEQUENCE -> {
+                    if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_VARINT) {
+                        in.skipField(tag);
+                    } else {
+                        sequence = in.readUInt32();
+                    }
+                }
+                case STU_ARRIVAL, STU_DEPARTURE -> {
+                    if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                        in.skipField(tag);
+                        break;
+                    }
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    long time = readEventTime(in);
+                    in.popLimit(limit);
+                    if (WireFormat.getTagFieldNumber(tag) == STU_ARRIVAL) {
+                        arrival = time;
+                    } else {
+                        departure = time;
+                    }
+                }
+                case STU_STOP_ID -> {
+                    if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                        in.skipField(tag);
+                    } else {
+                        stopId = in.readString();
+                    }
+                }
+                case STU_SCHEDULE_RELATIONSHIP -> {
+                    if (WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_VARINT) {
+                        in.skipField(tag);
+                    } else {
+                        relationship = in.readEnum();
+                    }
+                }
+                default -> in.skipField(tag);
+            }
+        }
+        if (relationship == SKIPPED || relationship == NO_DATA) {
+            return;
+        }
+        scratch.add(stopId, sequence, arrival >= 0 ? arrival : departure);
+    }
+
+    /**
+     * Returns StopTimeEvent.time, or -1 when the event has none.
+     */
+    private static long readEventTime(CodedInputStream in) throws IOException {
+        long time = -1;
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (tag == varint(EVENT_TIME)) {
+                time = in.readInt64();
+            } else {
+                in.skipField(tag);
+            }
+        }
+        return time;
+    }
+
+    private static void readVehicle(CodedInputStream in, VehicleScratch scratch) throws IOException {
+        int tag;
+        while ((tag = in.readTag()) != 0) {
+            if (tag == lengthDelimited(VEHICLE_TRIP)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                while ((tag = in.readTag()) != 0) {
+                    if (tag == lengthDelimited(TRIP_TRIP_ID)) {
+                        scratch.tripId = in.readString();
+                    } else if (tag == lengthDelimited(TRIP_ROUTE_ID)) {
+                        scratch.routeId = in.readString();
+                    } else if (tag == varint(TRIP_DIRECTION_ID)) {
+                        scratch.directionId = in.readUInt32();
+                    } else {
+                        in.skipField(tag);
+                    }
+                }
+                in.popLimit(limit);
+            } else if (tag == lengthDelimited(VEHICLE_POSITION)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                while ((tag = in.readTag()) != 0) {
+                    if (tag == fixed32(POSITION_LATITUDE)) {
+                        scratch.latitude = in.readFloat();
+                        scratch.hasLatitude = true;
+                    } else if (tag == fixed32(POSITION_LONGITUDE)) {
+                        scratch.longitude = in.readFloat();
+                        scratch.hasLongitude = true;
+                    } else {
+                        in.skipField(tag);
+                    }
+                }
+                in.popLimit(limit);
+                scratch.hasPosition = true;
+            } else if (tag == varint(VEHICLE_CURRENT_STOP_SEQUENCE)) {
+                scratch.stopSequence = in.readUInt32();
+            } else if (tag == varint(VEHICLE_TIMESTAMP)) {
+                scratch.timestamp = in.readUInt64();
+            } else if (tag == lengthDelimited(VEHICLE_STOP_ID)) {
+                scratch.stopId = in.readString();
+            } else if (tag == lengthDelimited(VEHICLE_VEHICLE)) {
+                int limit = in.pushLimit(in.readRawVarint32());
+                while ((tag = in.readTag()) != 0) {
+                    if (tag == lengthDelimited(DESCRIPTOR_ID)) {
+                        scratch.vehicleId = in.readString();
+                    } else {
+                        in.skipField(tag);
+                    }
+                }
+                in.popLimit(limit);
+            } else if (tag == varint(VEHICLE_OCCUPANCY_STATUS)) {
+                scratch.occupancyStatus = GtfsRealtime.VehiclePosition.OccupancyStatus.forNumber(in.readEnum());
+            } else if (tag == varint(VEHICLE_OCCUPANCY_PERCENTAGE)) {
+                scratch.occupancyPercentage = in.readUInt32();
+            } else {
+                in.skipField(tag);
+            }
+        }
+    }
+
+    private static int varint(int field) {
+        return (field << 3) | WireFormat.WIRETYPE_VARINT;
+    }
+
+    private static int fixed32(int field) {
+        return (field << 3) | WireFormat.WIRETYPE_FIXED32;
+    }
+
+    private static int lengthDelimited(int field) {
+        return (field << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    /**
+     * Stop time updates of one TripUpdate, held until the whole entity is read,
+     * since the trip descriptor may follow its stop time updates on the wire.
+     */
+    private static final class TripUpdateScratch {
+
+        private String tripId;
+        private String routeId;
+        private String[] stopIds = new String[64];
+        private int[] sequences = new int[64];
+        private long[] times = new long[64];
+        private int size;
+
+        void reset() {
+            tripId = null;
+            routeId = null;
+            Arrays.fill(stopIds, 0, size, null);
+            size = 0;
+        }
+
+        void add(String stopId, int sequence, long time) {
+            if (size == stopIds.length) {
+                stopIds = Arrays.copyOf(stopIds, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            stopIds[size] = stopId;
+            sequences[size] = sequence;
+            times[size] = time;
+            size++;
+        }
+
+        void emit(List<TripUpdateRecord> updates, StopTripMapper stopTripMapper) {
+            if (size == 0) {
+                return;
+            }
+            String simple = TripIdUtils.normalizeSimple(tripId);
+            for (int i = 0; i < size; i++) {
+                TripUpdateRecord record = GtfsParser.toTripUpdateRecord(
+                        tripId, simple, routeId, stopIds[i], sequences[i], times[i], stopTripMapper);
+                if (record != null) {
+                    updates.add(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fields of one VehiclePosition entity.
+     */
+    private static final class VehicleScratch {
+
+        private String tripId;
+        private String routeId;
+        private int directionId;
+        private String vehicleId;
+        private String stopId;
+        private int stopSequence;
+        private long timestamp;
+        private GtfsRealtime.VehiclePosition.OccupancyStatus occupancyStatus;
+        private int occupancyPercentage;
+        private boolean hasPosition;
+        private boolean hasLatitude;
+        private boolean hasLongitude;
+        private double latitude;
+        private double longitude;
+
+        void reset() {
+            tripId = null;
+            routeId = null;
+            directionId = -1;
+            vehicleId = null;
+            stopId = null;
+            stopSequence = -1;
+            timestamp = -1;
+            occupancyStatus = null;
+            occupancyPercentage = -1;
+            hasPosition = false;
+            hasLatitude = false;
+            hasLongitude = false;
+            latitude = 0.0;
+            longitude = 0.0;
+        }
+
+        VehiclePosition toVehiclePosition() {
+            if (!hasPosition || !hasLatitude || !hasLongitude) {
+                return null;
+            }
+            return GtfsParser.toVehiclePosition(tripId, vehicleId, latitude, longitude, stopSequence,
+                    routeId, directionId, GtfsParser.occupancyInfo(occupancyStatus),
+                    occupancyPercentage >= 0 ? occupancyPercentage : -1, stopId, timestamp);
+        }
+    }
+}
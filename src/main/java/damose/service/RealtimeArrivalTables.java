@@ -0,0 +1,245 @@
+package damose.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiPredicate;
+
+import damose.data.mapper.GtfsIdDictionary;
+import damose.data.mapper.TripIdUtils;
+import damose.model.TripUpdateRecord;
+
+/**
+ * Immutable realtime arrival lookups built from one list of trip updates.
+ * Arrivals are indexed by static trip and stop code, by static route and stop code, and by feed trip id variant
+ * for the fuzzy fallback. Tables are built off to the side and published whole, so readers never lock.
+ */
+final class RealtimeArrivalTables {
+
+    static final RealtimeArrivalTables EMPTY =
+            new RealtimeArrivalTables(0, Map.of(), Map.of(), Map.of(), SubstringIndex.empty());
+
+    private static final long[] NO_EPOCHS = new long[0];
+
+    private final long version;
+    private final Map<String, Map<String, Long>> byTripKey;
+    private final Map<Long, Long> byTripStop;
+    private final Map<Long, long[]> byRouteStop;
+    private final SubstringIndex tripKeys;
+
+    private RealtimeArrivalTables(long version,
+                                  Map<String, Map<String, Long>> byTripKey,
+                                  Map<Long, Long> byTripStop,
+                                  Map<Long, long[]> byRouteStop,
+                                  SubstringIndex tripKeys) {
+        this.version = version;
+        this.byTripKey = byTripKey;
+        this.byTripStop = byTripStop;
+        this.byRouteStop = byRouteStop;
+        this.tripKeys = tripKeys;
+    }
+
+    /**
+     * Returns empty tables with the given version.
+     */
+    static RealtimeArrivalTables empty(long version) {
+        return new RealtimeArrivalTables(version, Map.of(), Map.of(), Map.of(), SubstringIndex.empty());
+    }
+
+    /**
+     * Indexes the updates arriving between the two epochs, inclusive.
+     * Feed trip, stop and route ids are resolved once to static codes through the dictionary;
+     * each route and stop keeps at most maxRouteEpochs of its earliest arrivals.
+     */
+    static RealtimeArrivalTables build(long version,
+                                       List<TripUpdateRecord> updates,
+                                       GtfsIdDictionary ids,
+                                       long minAllowedEpoch,
+                                       long maxAllowedEpoch,
+                                       int maxRouteEpochs) {
+        Map<String, Map<String, Long>> byTripKey = new HashMap<>();
+        Map<Long, Long> byTripStop = new HashMap<>();
+        Map<Long, NavigableSet<Long>> byRouteStop = new HashMap<>();
+
+        for (TripUpdateRecord update : updates) {
+            long arrivalEpoch = update.getArrivalEpochSeconds();
+            if (arrivalEpoch <= 0 || arrivalEpoch < minAllowedEpoch || arrivalEpoch > maxAllowedEpoch) {
+                continue;
+            }
+
+            String rawFeedTrip = update.getTripId();
+            Set<String> variants = TripIdUtils.generateVariants(rawFeedTrip);
+            if (variants.isEmpty()) {
+                String fallback = ArrivalMatchingUtils.normalizeTripKey(rawFeedTrip);
+                if (fallback != null && !fallback.isBlank()) {
+                    variants = Set.of(fallback);
+                }
+            }
+            if (variants.isEmpty()) {
+                continue;
+            }
+
+            Set<String> stopVariants = ArrivalMatchingUtils.generateStopIdVariants(update.getStopId());
+            if (stopVariants.isEmpty()) {
+                continue;
+            }
+
+            for (String key : variants) {
+                Map<String, Long> byStop = byTripKey.computeIfAbsent(key, k -> new HashMap<>());
+                for (String stopKey : stopVariants) {
+                    byStop.merge(stopKey, arrivalEpoch, Math::min);
+                }
+            }
+
+            int[] stopCodes = ids.resolveStopId(update.getStopId());
+            for (int tripCode : ids.resolveTripId(rawFeedTrip)) {
+                for (int stopCode : stopCodes) {
+                    byTripStop.merge(ArrivalMatchingUtils.pairKey(tripCode, stopCode), arrivalEpoch, Math::min);
+                }
+            }
+
+            for (int routeCode : ids.resolveRouteId(update.getRouteId())) {
+                for (int stopCode : stopCodes) {
+                    NavigableSet<Long> epochs = byRouteStop.computeIfAbsent(
+                            ArrivalMatchingUtils.pairKey(routeCode, stopCode), k -> new TreeSet<>());
+                    epochs.add(arrivalEpoch);
+                    while (epochs.size() > maxRouteEpochs) {
+                        epochs.pollLast();
+                    }
+                }
+            }
+        }
+
+        Map<Long, long[]> routeEpochs = new HashMap<>(byRouteStop.size() * 2);
+        for (Map.Entry<Long, NavigableSet<Long>> entry : byRouteStop.entrySet()) {
+            routeEpochs.put(entry.getKey(), entry.getValue().stream().mapToLong(Long::longValue).toArray());
+        }
+        return new RealtimeArrivalTables(version, byTripKey, byTripStop, routeEpochs,
+                SubstringIndex.build(byTripKey.keySet()));
+    }
+
+    /**
+     * Returns the version of these tables; every published rebuild, clears included, gets a higher one.
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Returns whether no arrival is indexed by feed trip id.
+     */
+    boolean isEmpty() {
+        return byTripKey.isEmpty();
+    }
+
+    /**
+     * Returns the earliest arrival of a static trip code at a static stop code, or null.
+     */
+    Long arrivalByTripStop(int tripCode, int stopCode) {
+        return byTripStop.get(ArrivalMatchingUtils.pairKey(tripCode, stopCode));
+    }
+
+    /**
+     * Returns the arrivals of a static route code at a static stop code, ascending. The array must not be modified.
+     */
+    long[] arrivalsByRouteStop(int routeCode, int stopCode) {
+        return byRouteStop.getOrDefault(ArrivalMatchingUtils.pairKey(routeCode, stopCode), NO_EPOCHS);
+    }
+
+    /**
+     * Returns the arrivals by stop id variant of a feed trip id variant, or null.
+     */
+    Map<String, Long> arrivalsByTripKey(String tripKey) {
+        return byTripKey.get(tripKey);
+    }
+
+    /**
+     * Returns the feed trip id variants containing at least one of the needles.
+     */
+    List<String> tripKeysContainingAny(Set<String> needles) {
+        return tripKeys.containingAny(needles);
+    }
+
+    /**
+     * Returns the codes of the static stops whose realtime arrivals may differ between previous and these tables:
+     * stops of changed trip and stop or route and stop entries, and every stop sharing a variant with a changed
+     * stop entry of a feed trip key.
+     */
+    BitSet stopsChangedSince(RealtimeArrivalTables previous, GtfsIdDictionary ids) {
+        BitSet changed = new BitSet();
+        if (previous == this) {
+            return changed;
+        }
+        markChangedStops(byTripStop, previous.byTripStop, Objects::equals, changed);
+        markChangedStops(byRouteStop, previous.byRouteStop, Arrays::equals, changed);
+
+        Set<String> feedTripKeys = new HashSet<>(byTripKey.keySet());
+        feedTripKeys.addAll(previous.byTripKey.keySet());
+        for (String tripKey : feedTripKeys) {
+            Map<String, Long> current = byTripKey.getOrDefault(tripKey, Map.of());
+            Map<String, Long> before = previous.byTripKey.getOrDefault(tripKey, Map.of());
+            if (current.equals(before)) continue;
+
+            Set<String> stopKeys = new HashSet<>(current.keySet());
+            stopKeys.addAll(before.keySet());
+            for (String stopKey : stopKeys) {
+                if (!Objects.equals(current.get(stopKey), before.get(stopKey))) {
+                    for (int stopCode : ids.resolveStopId(stopKey)) {
+                        changed.set(stopCode);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static <V> void markChangedStops(Map<Long, V> current,
+                                             Map<Long, V> previous,
+                                             BiPredicate<V, V> same,
+                                             BitSet changed) {
+        for (Map.Entry<Long, V> entry : current.entrySet()) {
+            V before = previous.get(entry.getKey());
+            if (before == null || !same.test(entry.getValue(), before)) {
+                changed.set(stopCodeOf(entry.getKey()));
+            }
+        }
+        for (Long key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                changed.set(stopCodeOf(key));
+            }
+        }
+    }
+
+    private static int stopCodeOf(long pairKey) {
+        return (int) pairKey;
+    }
+
+    /**
+     * Returns the indexed epoch closest to target, the earlier one on ties, or null when there is none.
+     */
+    static Long closestEpoch(long[] ascendingEpochs, long target) {
+        if (ascendingEpochs.length == 0) {
+            return null;
+        }
+        int at = Arrays.binarySearch(ascendingEpochs, target);
+        if (at >= 0) {
+            return ascendingEpochs[at];
+        }
+        int ceil = -at - 1;
+        if (ceil == 0) {
+            return ascendingEpochs[0];
+        }
+        if (ceil == ascendingEpochs.length) {
+            return ascendingEpochs[ceil - 1];
+        }
+        long floor = ascendingEpochs[ceil - 1];
+        return target - floor <= ascendingEpochs[ceil] - target ? floor : ascendingEpochs[ceil];
+    }
+}
@@ -0,0 +1,157 @@
+package damose.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import damose.config.AppConstants;
+
+/**
+ * Downloads GTFS-RT feeds over one shared {@link HttpClient}, so connections are kept alive between polls
+ * and several feeds can be requested at once. Bodies may arrive gzip-compressed and are inflated here.
+ * Requests are conditional: the ETag and Last-Modified of the last full response per URL whose body was stored
+ * are sent back, so an unchanged feed costs a bodiless 304.
+ */
+public final class RealtimeFeedClient {
+
+    static final int NOT_MODIFIED = 304;
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) damose-bus-tracker/1.0";
+
+    private final HttpClient client;
+    private final Map<String, Validators> validators = new ConcurrentHashMap<>();
+
+    public RealtimeFeedClient() {
+        this(HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(AppConstants.HTTP_CONNECT_TIMEOUT_MS))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    public RealtimeFeedClient(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Starts downloading a feed. The future completes with the response, or exceptionally on I/O errors.
+     */
+    public CompletableFuture<FeedResponse> fetch(String url) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(AppConstants.HTTP_READ_TIMEOUT_MS))
+                .header("User-Agent", USER_AGENT)
+                .header("Accept", "application/x-protobuf, application/octet-stream, */*")
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        Validators known = validators.get(url);
+        if (known != null) {
+            if (known.etag() != null) {
+                request.header("If-None-Match", known.etag());
+            }
+            if (known.lastModified() != null) {
+                request.header("If-Modified-Since", known.lastModified());
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> toFeedResponse(url, response, startNanos));
+    }
+
+    /**
+     * Remembers the ETag and Last-Modified of a full response, so the next request of its URL is conditional.
+     * Called by the holder of the feed once it has stored the body; other responses are ignored.
+     */
+    public void rememberValidators(FeedResponse response) {
+        if (response.statusCode() != 200) {
+            return;
+        }
+        if (response.etag() == null && response.lastModified() == null) {
+            validators.remove(response.url());
+        } else {
+            validators.put(response.url(), new Validators(response.etag(), response.lastModified()));
+        }
+    }
+
+    /**
+     * Drops the remembered validators, so the next request of every feed downloads a full body.
+     * Called when the caller discards the feeds it already holds.
+     */
+    public void forgetValidators() {
+        validators.clear();
+    }
+
+    /**
+     * Drops the remembered validators of one feed URL.
+     */
+    public void forgetValidators(String url) {
+        validators.remove(url);
+    }
+
+    private FeedResponse toFeedResponse(String url, HttpResponse<byte[]> response, long startNanos) {
+        int status = response.statusCode();
+        byte[] body;
+        try {
+            body = status == NOT_MODIFIED ? null : decode(response);
+        } catch (UncheckedIOException e) {
+            forgetValidators(url);
+            throw e;
+        }
+        String etag = status == 200 ? response.headers().firstValue("ETag").orElse(null) : null;
+        String lastModified = status == 200 ? response.headers().firstValue("Last-Modified").orElse(null) : null;
+        return new FeedResponse(url, status, body, (System.nanoTime() - startNanos) / 1_000_000L, etag, lastModified);
+    }
+
+    private static byte[] decode(HttpResponse<byte[]> response) {
+        byte[] body = response.body();
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.trim().equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (!gzip || body == null || body.length == 0) {
+            return body;
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot inflate feed from " + response.uri(), e);
+        }
+    }
+
+    /**
+     * Outcome of one feed download, with the time from request start to the fully read body
+     * and the validators of a full response, not yet remembered.
+     */
+    public record FeedResponse(String url,
+                               int statusCode,
+                               byte[] body,
+                               long elapsedMillis,
+                               String etag,
+                               String lastModified) {
+
+        /**
+         * Returns whether the server answered 200 with a non-empty body.
+         */
+        public boolean hasBody() {
+            return statusCode == 200 && body != null && body.length > 0;
+        }
+
+        /**
+         * Returns whether the server answered 304, i.e. the feed is unchanged since the last full response.
+         */
+        public boolean notModified() {
+            return statusCode == NOT_MODIFIED;
+        }
+    }
+
+    private record Validators(String etag, String lastModified) {
+    }
+}
@@ -0,0 +1,121 @@
+package damose.service;
+
+import java.io.IOException;
+import java.util.zip.CRC32C;
+
+/**
+ * Latest payload of one feed, with its header timestamp and hash.
+ * The validators of a full response are handed back to the client only once its body is stored or found
+ * identical to the stored one, so a body that could not be used is downloaded again on the next poll.
+ */
+final class RealtimeFeedState {
+
+    private final String name;
+    private final String url;
+    private final RealtimeFeedClient client;
+    private volatile Payload payload = new Payload(null, Long.MIN_VALUE, 0);
+    private volatile long fetchMillis = -1;
+    private long bodyHash;
+
+    RealtimeFeedState(String name, String url, RealtimeFeedClient client) {
+        this.name = name;
+        this.url = url;
+        this.client = client;
+    }
+
+    /**
+     * Returns the feed name used in logs.
+     */
+    String name() {
+        return name;
+    }
+
+    /**
+     * Returns the feed URL.
+     */
+    String url() {
+        return url;
+    }
+
+    /**
+     * Returns the stored payload; its body is null before the first one and after a clear.
+     */
+    Payload payload() {
+        return payload;
+    }
+
+    /**
+     * Returns the duration of the last download in milliseconds, or -1 before the first one.
+     */
+    long fetchMillis() {
+        return fetchMillis;
+    }
+
+    /**
+     * Applies one download; returns whether the feed is now current, either updated or confirmed unchanged.
+     */
+    synchronized boolean accept(RealtimeFeedClient.FeedResponse response) {
+        if (response == null) {
+            return false;
+        }
+        fetchMillis = response.elapsedMillis();
+        if (response.notModified()) {
+            if (payload.body() == null) {
+                client.forgetValidators(url);
+                return false;
+            }
+            return true;
+        }
+        if (response.statusCode() != 200) {
+            System.out.println("HTTP error: " + response.statusCode() + " for " + response.url());
+            return false;
+        }
+        if (!response.hasBody()) {
+            return false;
+        }
+
+        long hash = hash(response.body());
+        if (payload.body() != null && hash == bodyHash) {
+            client.rememberValidators(response);
+            return true;
+        }
+        long timestamp;
+        try {
+            timestamp = GtfsParser.parseHeaderTimestamp(response.body(), Long.MIN_VALUE);
+        } catch (IOException e) {
+            System.out.println("Error parsing " + name + ": " + e.getMessage());
+            client.forgetValidators(url);
+            return false;
+        }
+        payload = new Payload(response.body(), timestamp, payload.version() + 1);
+        bodyHash = hash;
+        client.rememberValidators(response);
+        System.out.println(name + " updated: header.ts="
+                + (timestamp == Long.MIN_VALUE ? "n/a" : String.valueOf(timestamp))
+                + " in " + fetchMillis + " ms");
+        return true;
+    }
+
+    /**
+     * Drops the stored payload, bumping its version.
+     */
+    synchronized void clear() {
+        payload = new Payload(null, Long.MIN_VALUE, payload.version() + 1);
+        bodyHash = 0;
+    }
+
+    /**
+     * Returns the body's CRC32C in the low word and its length in the high word.
+     */
+    private static long hash(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body, 0, body.length);
+        return ((long) body.length << 32) | crc.getValue();
+    }
+
+    /**
+     * One stored feed body with its header timestamp; version counts the stored bodies, clears included.
+     */
+    record Payload(byte[] body, long headerTimestamp, long version) {
+    }
+}
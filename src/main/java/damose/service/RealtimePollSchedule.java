@@ -0,0 +1,99 @@
+package damose.service;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Decides when the realtime feeds are polled next.
+ * After a successful poll the next one is aimed just after the feed is expected to publish again, using
+ * the spacing of its header.timestamp values and the smallest delay seen between publication and download.
+ * Failed polls back off exponentially with jitter.
+ */
+final class RealtimePollSchedule {
+
+    private static final long MAX_CADENCE_SECONDS = 300;
+    private static final long PUBLISH_MARGIN_MILLIS = 1_000;
+
+    private final long defaultIntervalMillis;
+    private final long minIntervalMillis;
+    private final long maxBackoffMillis;
+    private final LongUnaryOperator jitter;
+
+    private long lastHeaderTimestamp = Long.MIN_VALUE;
+    private long cadenceMillis;
+    private long minLagMillis;
+    private int failures;
+
+    /**
+     * Creates a schedule; jitter maps a bound to a random value in [0, bound).
+     */
+    RealtimePollSchedule(long defaultIntervalMillis,
+                         long minIntervalMillis,
+                         long maxBackoffMillis,
+                         LongUnaryOperator jitter) {
+        this.defaultIntervalMillis = defaultIntervalMillis;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Records a successful poll and returns the delay before the next one.
+     * headerTimestamp is the feed's header.timestamp in epoch seconds, or Long.MIN_VALUE when unknown.
+     */
+    synchronized long onSuccess(long headerTimestamp, long nowMillis) {
+        failures = 0;
+        if (headerTimestamp == Long.MIN_VALUE) {
+            return defaultIntervalMillis;
+        }
+
+        if (headerTimestamp != lastHeaderTimestamp) {
+            long lagMillis = nowMillis - headerTimestamp * 1000;
+            if (lastHeaderTimestamp == Long.MIN_VALUE) {
+                minLagMillis = lagMillis;
+            } else {
+                long spacing = headerTimestamp - lastHeaderTimestamp;
+                if (spacing > 0 && spacing <= MAX_CADENCE_SECONDS) {
+                    cadenceMillis = cadenceMillis == 0
+                            ? spacing * 1000
+                            : (3 * cadenceMillis + spacing * 1000) / 4;
+                }
+                minLagMillis = Math.min(minLagMillis, lagMillis);
+            }
+            lastHeaderTimestamp = headerTimestamp;
+        }
+
+        if (cadenceMillis == 0) {
+            return defaultIntervalMillis;
+        }
+        long expectedMillis = lastHeaderTimestamp * 1000 + cadenceMillis + minLagMillis + PUBLISH_MARGIN_MILLIS;
+        long delay = expectedMillis - nowMillis;
+        return Math.max(minIntervalMillis, Math.min(delay, 2 * defaultIntervalMillis));
+    }
+
+    /**
+     * Records a failed poll and returns the jittered backoff before the next one.
+     */
+    synchronized long onFailure() {
+        failures = Math.min(failures + 1, 30);
+        long backoff = Math.min(maxBackoffMillis, minIntervalMillis << (failures - 1));
+        long half = backoff / 2;
+        return half + jitter.applyAsLong(backoff - half);
+    }
+
+    /**
+     * Returns the estimated spacing between feed publications in milliseconds, or 0 while unknown.
+     */
+    synchronized long cadenceMillis() {
+        return cadenceMillis;
+    }
+
+    /**
+     * Forgets the observed cadence and failures.
+     */
+    synchronized void reset() {
+        lastHeaderTimestamp = Long.MIN_VALUE;
+        cadenceMillis = 0;
+        minLagMillis = 0;
+        failures = 0;
+    }
+}
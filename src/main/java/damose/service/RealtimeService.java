@@ -1,31 +1,58 @@
 package damose.service;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.time.Instant;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import com.google.transit.realtime.GtfsRealtime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import damose.config.AppConstants;
+import damose.data.mapper.StopTripMapper;
 import damose.model.ConnectionMode;
+import damose.model.TripUpdateRecord;
+import damose.model.VehiclePosition;
 
 /**
  * Provides service logic for realtime service.
+ * One poller thread runs fetch, decode and index, then hands the resulting {@link RealtimeSnapshot}
+ * to the snapshot listeners; the next poll is timed by {@link RealtimePollSchedule}.
  */
 public class RealtimeService {
 
-    private static GtfsRealtime.FeedMessage latestVehiclePositions;
-    private static GtfsRealtime.FeedMessage latestTripUpdates;
+    private static final RealtimeFeedClient FEED_CLIENT = new RealtimeFeedClient();
+
+    private static final RealtimeFeedState VEHICLE_FEED =
+            new RealtimeFeedState("VehiclePositions", AppConstants.VEHICLE_POSITIONS_URL, FEED_CLIENT);
+    private static final RealtimeFeedState TRIP_FEED =
+            new RealtimeFeedState("TripUpdates", AppConstants.TRIP_UPDATES_URL, FEED_CLIENT);
+    private static final Object SNAPSHOT_LOCK = new Object();
+    private static final RealtimePollSchedule POLL_SCHEDULE = new RealtimePollSchedule(
+            AppConstants.RT_UPDATE_INTERVAL_MS,
+            AppConstants.RT_MIN_POLL_INTERVAL_MS,
+            AppConstants.RT_MAX_BACKOFF_MS,
+            bound -> ThreadLocalRandom.current().nextLong(Math.max(1, bound)));
+    private static final List<Consumer<RealtimeSnapshot>> SNAPSHOT_LISTENERS = new CopyOnWriteArrayList<>();
+    private static final AtomicReference<RealtimeSnapshot> PENDING_PUBLISH = new AtomicReference<>();
+    private static final ExecutorService PUBLISHER =
+            Executors.newSingleThreadExecutor(daemonThreads("realtime-publisher"));
 
-    private static Timer timer;
-    private static ConnectionMode mode = ConnectionMode.ONLINE;
+    private static ScheduledExecutorService poller;
+    private static long pollGeneration;
+    private static volatile ConnectionMode mode = ConnectionMode.ONLINE;
     private static Runnable onDataReceived;
     private static boolean dataReceivedOnce = false;
     private static volatile long lastSuccessfulFetchEpochSeconds = Long.MIN_VALUE;
     private static volatile int consecutiveFailures = 0;
+    private static volatile StopTripMapper stopTripMapper;
+    private static volatile RealtimeSnapshot snapshot = RealtimeSnapshot.empty();
 
     private RealtimeService() {
     }
@@ -54,129 +81,240 @@ public class RealtimeService {
 
     /**
      * Returns the result of startPolling.
+     * The first poll starts at once; each following one is scheduled when the previous one has finished,
+     * so a slow poll delays the next instead of piling up behind it.
      */
     public static synchronized void startPolling() {
         stopPolling();
-        timer = new Timer("GTFSRealtimeUpdater", true);
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            /**
-             * Handles run.
-             */
-            public void run() {
-                if (mode == ConnectionMode.ONLINE) {
-                    fetchRealtimeFeeds();
-                }
-            }
-        }, 0, AppConstants.RT_UPDATE_INTERVAL_MS);
+        long generation = ++pollGeneration;
+        poller = Executors.newSingleThreadScheduledExecutor(daemonThreads("GTFSRealtimeUpdater"));
+        poller.execute(() -> pollCycle(generation));
     }
 
     /**
      * Returns the result of stopPolling.
      */
     public static synchronized void stopPolling() {
-        if (timer != null) {
-            timer.cancel();
-            timer = null;
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
         }
+        pollGeneration++;
+        POLL_SCHEDULE.reset();
         if (mode == ConnectionMode.OFFLINE) {
             clearRealtimeCache();
         }
     }
 
-    /**
-     * Returns the result of fetchRealtimeFeeds.
-     */
-    public static void fetchRealtimeFeeds() {
-        boolean hadSuccessfulFetch = false;
+    private static void pollCycle(long generation) {
+        long delayMillis = AppConstants.RT_UPDATE_INTERVAL_MS;
         try {
-            GtfsRealtime.FeedMessage parsed = fetchFeedFromUrl(AppConstants.VEHICLE_POSITIONS_URL);
-            if (parsed != null) {
-                latestVehiclePositions = parsed;
-                hadSuccessfulFetch = true;
-                System.out.println("VehiclePositions updated: header.ts="
-                        + (parsed.hasHeader() && parsed.getHeader().hasTimestamp()
-                        ? parsed.getHeader().getTimestamp() : "n/a"));
+            if (mode == ConnectionMode.ONLINE) {
+                delayMillis = fetchRealtimeFeeds()
+                        ? POLL_SCHEDULE.onSuccess(latestHeaderTimestamp(), System.currentTimeMillis())
+                        : POLL_SCHEDULE.onFailure();
             }
-        } catch (Exception e) {
-            System.out.println("Error fetching VehiclePositions: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.out.println("Error in realtime poll: " + e.getMessage());
+            delayMillis = POLL_SCHEDULE.onFailure();
         }
+        scheduleNextPoll(generation, delayMillis);
+    }
 
-        try {
-            GtfsRealtime.FeedMessage parsed = fetchFeedFromUrl(AppConstants.TRIP_UPDATES_URL);
-            if (parsed != null) {
-                latestTripUpdates = parsed;
-                hadSuccessfulFetch = true;
-                System.out.println("TripUpdates updated: header.ts="
-                        + (parsed.hasHeader() && parsed.getHeader().hasTimestamp()
-                        ? parsed.getHeader().getTimestamp() : "n/a"));
-            }
-        } catch (Exception e) {
-            System.out.println("Error fetching TripUpdates: " + e.getMessage());
+    private static synchronized void scheduleNextPoll(long generation, long delayMillis) {
+        if (generation != pollGeneration || poller == null) {
+            return;
+        }
+        poller.schedule(() -> pollCycle(generation), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long latestHeaderTimestamp() {
+        long timestamp = TRIP_FEED.payload().headerTimestamp();
+        return timestamp != Long.MIN_VALUE ? timestamp : VEHICLE_FEED.payload().headerTimestamp();
+    }
+
+    /**
+     * Returns the result of fetchRealtimeFeeds.
+     * Both feeds are requested concurrently; the call returns once both have completed or failed.
+     * A feed answered with 304, or with a body identical to the last one, keeps the previous payload and version;
+     * a changed feed is decoded once into a new {@link RealtimeSnapshot}.
+     * Responses arriving after a switch to offline mode are discarded. Returns whether either feed is current.
+     */
+    public static boolean fetchRealtimeFeeds() {
+        CompletableFuture<RealtimeFeedClient.FeedResponse> vehicleFetch = FEED_CLIENT.fetch(VEHICLE_FEED.url());
+        CompletableFuture<RealtimeFeedClient.FeedResponse> tripFetch = FEED_CLIENT.fetch(TRIP_FEED.url());
+
+        RealtimeFeedClient.FeedResponse vehicleResponse = await(vehicleFetch, VEHICLE_FEED.name());
+        RealtimeFeedClient.FeedResponse tripResponse = await(tripFetch, TRIP_FEED.name());
+        if (mode != ConnectionMode.ONLINE) {
+            return false;
         }
+        boolean vehiclesCurrent = VEHICLE_FEED.accept(vehicleResponse);
+        boolean tripsCurrent = TRIP_FEED.accept(tripResponse);
 
-        if (hadSuccessfulFetch) {
+        if (vehiclesCurrent || tripsCurrent) {
             lastSuccessfulFetchEpochSeconds = Instant.now().getEpochSecond();
             consecutiveFailures = 0;
-            notifyDataReceived();
         } else {
             consecutiveFailures++;
         }
+        refreshSnapshot(false);
+        if (vehiclesCurrent || tripsCurrent) {
+            notifyDataReceived();
+        }
+        return vehiclesCurrent || tripsCurrent;
     }
 
-    private static GtfsRealtime.FeedMessage fetchFeedFromUrl(String urlStr) {
-        HttpURLConnection conn = null;
+    private static RealtimeFeedClient.FeedResponse await(CompletableFuture<RealtimeFeedClient.FeedResponse> fetch,
+                                                         String feedName) {
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setConnectTimeout(AppConstants.HTTP_CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(AppConstants.HTTP_READ_TIMEOUT_MS);
-            conn.setRequestProperty("User-Agent",
-                "Mozilla/5.0 (Windows NT 10.0; Win64; x64) damose-bus-tracker/1.0");
-            conn.setRequestProperty("Accept", "application/x-protobuf, application/octet-stream, */*");
-            conn.setRequestProperty("Accept-Encoding", "identity");
-            conn.setInstanceFollowRedirects(true);
-
-            int code = conn.getResponseCode();
-            if (code != 200) {
-                System.out.println("HTTP error: " + code + " for " + urlStr);
-                return null;
-            }
+            return fetch.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.out.println("Error fetching " + feedName + ": " + cause.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sets the mapper used to resolve stop ids of trip updates and re-decodes the current trip updates with it.
+     */
+    public static void setStopTripMapper(StopTripMapper mapper) {
+        stopTripMapper = mapper;
+        refreshSnapshot(true);
+    }
+
+    /**
+     * Returns the snapshot of the latest decoded feeds; never null.
+     */
+    public static RealtimeSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Registers a listener for realtime snapshots and delivers the current one to it shortly after.
+     * Listeners are called one at a time on a single publisher thread after every poll, changed or not.
+     * A listener still busy when newer snapshots arrive receives only the newest of them next.
+     */
+    public static void addSnapshotListener(Consumer<RealtimeSnapshot> listener) {
+        SNAPSHOT_LISTENERS.add(listener);
+        publish(snapshot);
+    }
+
+    /**
+     * Removes a listener added with {@link #addSnapshotListener}.
+     */
+    public static void removeSnapshotListener(Consumer<RealtimeSnapshot> listener) {
+        SNAPSHOT_LISTENERS.remove(listener);
+    }
 
-            if (conn.getContentLengthLong() == 0) {
-                return null;
+    private static void publish(RealtimeSnapshot published) {
+        if (PENDING_PUBLISH.getAndSet(published) == null) {
+            PUBLISHER.execute(RealtimeService::deliverPendingSnapshot);
+        }
+    }
+
+    private static void deliverPendingSnapshot() {
+        RealtimeSnapshot pending = PENDING_PUBLISH.getAndSet(null);
+        if (pending == null) {
+            return;
+        }
+        for (Consumer<RealtimeSnapshot> listener : SNAPSHOT_LISTENERS) {
+            try {
+                listener.accept(pending);
+            } catch (RuntimeException e) {
+                System.out.println("Error in realtime snapshot listener: " + e.getMessage());
             }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread t = new Thread(runnable, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
 
-            try (InputStream in = conn.getInputStream()) {
-                return GtfsRealtime.FeedMessage.parseFrom(in);
+    /**
+     * Decodes the feeds whose payload changed since the current snapshot and publishes the result.
+     */
+    private static void refreshSnapshot(boolean redecodeTripUpdates) {
+        synchronized (SNAPSHOT_LOCK) {
+            RealtimeSnapshot current = snapshot;
+            RealtimeFeedState.Payload trips = TRIP_FEED.payload();
+            if (redecodeTripUpdates || trips.version() != current.tripUpdatesVersion()) {
+                List<TripUpdateRecord> updates = trips.body() == null
+                        ? List.of()
+                        : GtfsParser.parseTripUpdates(trips.body(), stopTripMapper);
+                current = current.withTripUpdates(trips.version(), trips.headerTimestamp(), updates);
             }
-        } catch (java.io.IOException ex) {
-            System.out.println("Error fetching/parsing from " + urlStr + ": " + ex.getMessage());
-            return null;
-        } finally {
-            if (conn != null) conn.disconnect();
+            RealtimeFeedState.Payload vehicles = VEHICLE_FEED.payload();
+            if (vehicles.version() != current.vehiclePositionsVersion()) {
+                List<VehiclePosition> positions = vehicles.body() == null
+                        ? List.of()
+                        : GtfsParser.parseVehiclePositions(vehicles.body());
+                current = current.withVehiclePositions(vehicles.version(), positions);
+            }
+            snapshot = current;
+            publish(current);
         }
     }
 
     /**
-     * Returns the latest vehicle positions.
+     * Returns the duration of the last VehiclePositions download in milliseconds, or -1 before the first one.
+     */
+    public static long getLastVehiclePositionsFetchMillis() {
+        return VEHICLE_FEED.fetchMillis();
+    }
+
+    /**
+     * Returns the duration of the last TripUpdates download in milliseconds, or -1 before the first one.
+     */
+    public static long getLastTripUpdatesFetchMillis() {
+        return TRIP_FEED.fetchMillis();
+    }
+
+    /**
+     * Returns a counter bumped each time a changed VehiclePositions payload is stored; 0 before the first one.
+     */
+    public static long getVehiclePositionsVersion() {
+        return VEHICLE_FEED.payload().version();
+    }
+
+    /**
+     * Returns a counter bumped each time a changed TripUpdates payload is stored; 0 before the first one.
      */
-    public static GtfsRealtime.FeedMessage getLatestVehiclePositions() {
-        return latestVehiclePositions;
+    public static long getTripUpdatesVersion() {
+        return TRIP_FEED.payload().version();
     }
 
     /**
-     * Returns the latest trip updates.
+     * Returns the raw payload of the latest vehicle positions feed, or null. The array must not be modified.
      */
-    public static GtfsRealtime.FeedMessage getLatestTripUpdates() {
-        return latestTripUpdates;
+    public static byte[] getLatestVehiclePositions() {
+        return VEHICLE_FEED.payload().body();
+    }
+
+    /**
+     * Returns the raw payload of the latest trip updates feed, or null. The array must not be modified.
+     */
+    public static byte[] getLatestTripUpdates() {
+        return TRIP_FEED.payload().body();
+    }
+
+    /**
+     * Returns header.timestamp of the latest trip updates feed, or Long.MIN_VALUE when unknown.
+     */
+    public static long getTripUpdatesHeaderTimestamp() {
+        return TRIP_FEED.payload().headerTimestamp();
     }
 
     /**
      * Returns the result of hasRealTimeData.
      */
     public static boolean hasRealTimeData() {
-        return latestTripUpdates != null || latestVehiclePositions != null;
+        return TRIP_FEED.payload().body() != null || VEHICLE_FEED.payload().body() != null;
     }
 
     /**
@@ -228,8 +366,10 @@ public class RealtimeService {
     }
 
     private static void clearRealtimeCache() {
-        latestVehiclePositions = null;
-        latestTripUpdates = null;
+        VEHICLE_FEED.clear();
+        TRIP_FEED.clear();
+        FEED_CLIENT.forgetValidators();
+        refreshSnapshot(false);
     }
 
     private static void resetHealthState() {
@@ -237,4 +377,3 @@ public class RealtimeService {
         consecutiveFailures = 0;
     }
 }
-
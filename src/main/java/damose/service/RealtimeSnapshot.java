@@ -0,0 +1,329 @@
+package damose.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import damose.data.mapper.TripIdUtils;
+import damose.model.TripUpdateRecord;
+import damose.model.VehiclePosition;
+
+/**
+ * Immutable view of the decoded realtime feeds, built once per feed version and shared by every consumer.
+ * Trip updates are indexed by trip id variant, stop and route; vehicle positions by marker id, trip and route.
+ * A new snapshot reuses the indexes of the feed that did not change.
+ */
+public final class RealtimeSnapshot {
+
+    private static final RealtimeSnapshot EMPTY =
+            new RealtimeSnapshot(0, TripUpdates.EMPTY, Vehicles.EMPTY);
+
+    private final long version;
+    private final TripUpdates tripUpdates;
+    private final Vehicles vehicles;
+
+    private RealtimeSnapshot(long version, TripUpdates tripUpdates, Vehicles vehicles) {
+        this.version = version;
+        this.tripUpdates = tripUpdates;
+        this.vehicles = vehicles;
+    }
+
+    /**
+     * Returns the snapshot without realtime data.
+     */
+    public static RealtimeSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns a snapshot holding only the given vehicle positions, with unversioned indexes.
+     */
+    public static RealtimeSnapshot ofVehicles(List<VehiclePosition> positions) {
+        return EMPTY.withVehiclePositions(0, positions);
+    }
+
+    /**
+     * Returns a copy with new trip updates, keeping the current vehicle positions.
+     */
+    public RealtimeSnapshot withTripUpdates(long feedVersion, long feedTimestamp, List<TripUpdateRecord> updates) {
+        return new RealtimeSnapshot(version + 1, new TripUpdates(feedVersion, feedTimestamp, updates), vehicles);
+    }
+
+    /**
+     * Returns a copy with new vehicle positions, keeping the current trip updates.
+     */
+    public RealtimeSnapshot withVehiclePositions(long feedVersion, List<VehiclePosition> positions) {
+        return new RealtimeSnapshot(version + 1, tripUpdates, new Vehicles(feedVersion, positions));
+    }
+
+    /**
+     * Returns a counter bumped by every change of either feed.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the RealtimeService version of the trip updates feed this snapshot holds; 0 when none.
+     */
+    public long tripUpdatesVersion() {
+        return tripUpdates.feedVersion;
+    }
+
+    /**
+     * Returns the RealtimeService version of the vehicle positions feed this snapshot holds; 0 when none.
+     */
+    public long vehiclePositionsVersion() {
+        return vehicles.feedVersion;
+    }
+
+    /**
+     * Returns header.timestamp of the trip updates feed, or Long.MIN_VALUE when unknown.
+     */
+    public long feedTimestamp() {
+        return tripUpdates.feedTimestamp;
+    }
+
+    /**
+     * Returns whether the snapshot holds any trip update or vehicle position.
+     */
+    public boolean isEmpty() {
+        return tripUpdates.all.isEmpty() && vehicles.all.isEmpty();
+    }
+
+    /**
+     * Returns every trip update record, in feed order.
+     */
+    public List<TripUpdateRecord> tripUpdates() {
+        return tripUpdates.all;
+    }
+
+    /**
+     * Returns the trip update records of every feed trip sharing an id variant with tripId.
+     */
+    public List<TripUpdateRecord> tripUpdatesForTrip(String tripId) {
+        Set<String> variants = TripIdUtils.generateVariants(tripId);
+        List<TripUpdateRecord> first = null;
+        Set<List<TripUpdateRecord>> groups = null;
+        for (String variant : variants) {
+            List<List<TripUpdateRecord>> matches = tripUpdates.byTripVariant.get(variant);
+            if (matches == null) continue;
+            for (List<TripUpdateRecord> group : matches) {
+                if (first == null) {
+                    first = group;
+                } else if (group != first) {
+                    if (groups == null) {
+                        groups = Collections.newSetFromMap(new IdentityHashMap<>());
+                        groups.add(first);
+                    }
+                    groups.add(group);
+                }
+            }
+        }
+        if (first == null) {
+            return List.of();
+        }
+        if (groups == null) {
+            return first;
+        }
+        List<TripUpdateRecord> merged = new ArrayList<>();
+        for (List<TripUpdateRecord> group : groups) {
+            merged.addAll(group);
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the trip update records of a stop id as decoded from the feed.
+     */
+    public List<TripUpdateRecord> tripUpdatesForStop(String stopId) {
+        return lookup(tripUpdates.byStop, stopId);
+    }
+
+    /**
+     * Returns the trip update records of a route id, compared ignoring case.
+     */
+    public List<TripUpdateRecord> tripUpdatesForRoute(String routeId) {
+        return lookup(tripUpdates.byRoute, foldedKey(routeId));
+    }
+
+    /**
+     * Returns every vehicle position, in feed order.
+     */
+    public List<VehiclePosition> vehicles() {
+        return vehicles.all;
+    }
+
+    /**
+     * Returns the first position of every vehicle key, plus every position without one, in feed order.
+     */
+    public List<VehiclePosition> uniqueVehicles() {
+        return vehicles.unique;
+    }
+
+    /**
+     * Returns the positions whose {@link #markerId} equals markerId ignoring case.
+     */
+    public List<VehiclePosition> vehiclesByMarkerId(String markerId) {
+        return lookup(vehicles.byMarker, foldedKey(markerId));
+    }
+
+    /**
+     * Returns the positions of a feed trip id.
+     */
+    public List<VehiclePosition> vehiclesForTrip(String tripId) {
+        return lookup(vehicles.byTrip, trimToNull(tripId));
+    }
+
+    /**
+     * Returns the positions of a route id, compared ignoring case.
+     */
+    public List<VehiclePosition> vehiclesForRoute(String routeId) {
+        return lookup(vehicles.byRoute, foldedKey(routeId));
+    }
+
+    /**
+     * Returns the id shown for a vehicle marker: the vehicle id, else the trip id, else "unknown".
+     */
+    public static String markerId(VehiclePosition vp) {
+        String markerId = trimToNull(vp.getVehicleId());
+        if (markerId != null) return markerId;
+
+        markerId = trimToNull(vp.getTripId());
+        if (markerId != null) return markerId;
+
+        return "unknown";
+    }
+
+    private static <T> List<T> lookup(Map<String, List<T>> index, String key) {
+        if (key == null) {
+            return List.of();
+        }
+        List<T> values = index.get(key);
+        return values != null ? values : List.of();
+    }
+
+    private static String foldedKey(String id) {
+        String trimmed = trimToNull(id);
+        return trimmed == null ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static <T> Map<String, List<T>> freeze(Map<String, List<T>> index) {
+        index.replaceAll((key, values) -> Collections.unmodifiableList(values));
+        return index;
+    }
+
+    private static final class TripUpdates {
+
+        private static final TripUpdates EMPTY = new TripUpdates(0, Long.MIN_VALUE, List.of());
+
+        private final long feedVersion;
+        private final long feedTimestamp;
+        private final List<TripUpdateRecord> all;
+        private final Map<String, List<List<TripUpdateRecord>>> byTripVariant;
+        private final Map<String, List<TripUpdateRecord>> byStop;
+        private final Map<String, List<TripUpdateRecord>> byRoute;
+
+        TripUpdates(long feedVersion, long feedTimestamp, List<TripUpdateRecord> updates) {
+            this.feedVersion = feedVersion;
+            this.feedTimestamp = feedTimestamp;
+            this.all = updates == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(updates));
+
+            Map<String, List<TripUpdateRecord>> byTrip = new LinkedHashMap<>();
+            Map<String, List<TripUpdateRecord>> stops = new HashMap<>();
+            Map<String, List<TripUpdateRecord>> routes = new HashMap<>();
+            for (TripUpdateRecord update : all) {
+                if (update == null) continue;
+                String tripId = trimToNull(update.getTripId());
+                if (tripId != null) {
+                    byTrip.computeIfAbsent(tripId, k -> new ArrayList<>()).add(update);
+                }
+                String stopId = trimToNull(update.getStopId());
+                if (stopId != null) {
+                    stops.computeIfAbsent(stopId, k -> new ArrayList<>()).add(update);
+                }
+                String routeId = foldedKey(update.getRouteId());
+                if (routeId != null) {
+                    routes.computeIfAbsent(routeId, k -> new ArrayList<>()).add(update);
+                }
+            }
+
+            Map<String, List<List<TripUpdateRecord>>> variants = new HashMap<>(byTrip.size() * 2);
+            for (List<TripUpdateRecord> group : freeze(byTrip).values()) {
+                for (String variant : TripIdUtils.generateVariants(group.get(0).getTripId())) {
+                    variants.computeIfAbsent(variant, k -> new ArrayList<>(1)).add(group);
+                }
+            }
+            this.byTripVariant = variants;
+            this.byStop = freeze(stops);
+            this.byRoute = freeze(routes);
+        }
+    }
+
+    private static final class Vehicles {
+
+        private static final Vehicles EMPTY = new Vehicles(0, List.of());
+
+        private final long feedVersion;
+        private final List<VehiclePosition> all;
+        private final List<VehiclePosition> unique;
+        private final Map<String, List<VehiclePosition>> byMarker;
+        private final Map<String, List<VehiclePosition>> byTrip;
+        private final Map<String, List<VehiclePosition>> byRoute;
+
+        Vehicles(long feedVersion, List<VehiclePosition> positions) {
+            this.feedVersion = feedVersion;
+            List<VehiclePosition> usable = new ArrayList<>(positions == null ? 0 : positions.size());
+            if (positions != null) {
+                for (VehiclePosition vp : positions) {
+                    if (vp != null && vp.getPosition() != null) {
+                        usable.add(vp);
+                    }
+                }
+            }
+            this.all = Collections.unmodifiableList(usable);
+
+            List<VehiclePosition> firsts = new ArrayList<>(all.size());
+            Set<String> seenKeys = new HashSet<>();
+            Map<String, List<VehiclePosition>> markers = new HashMap<>();
+            Map<String, List<VehiclePosition>> trips = new HashMap<>();
+            Map<String, List<VehiclePosition>> routes = new HashMap<>();
+            for (VehiclePosition vp : all) {
+                String vehicleKey = trimToNull(vp.getVehicleId());
+                if (vehicleKey == null) {
+                    vehicleKey = trimToNull(vp.getTripId());
+                }
+                if (vehicleKey == null || seenKeys.add(vehicleKey)) {
+                    firsts.add(vp);
+                }
+
+                markers.computeIfAbsent(foldedKey(markerId(vp)), k -> new ArrayList<>(1)).add(vp);
+                String tripId = trimToNull(vp.getTripId());
+                if (tripId != null) {
+                    trips.computeIfAbsent(tripId, k -> new ArrayList<>(1)).add(vp);
+                }
+                String routeId = foldedKey(vp.getRouteId());
+                if (routeId != null) {
+                    routes.computeIfAbsent(routeId, k -> new ArrayList<>()).add(vp);
+                }
+            }
+            this.unique = Collections.unmodifiableList(firsts);
+            this.byMarker = freeze(markers);
+            this.byTrip = freeze(trips);
+            this.byRoute = freeze(routes);
+        }
+    }
+}
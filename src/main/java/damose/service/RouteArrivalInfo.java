@@ -3,7 +3,7 @@ package damose.service;
 /**
  * Best arrival candidate per route.
  */
-final class RouteArrivalInfo {
+public final class RouteArrivalInfo {
     final String routeId;
     final long scheduledEpoch;
     final Long predictedEpoch;
@@ -14,7 +14,31 @@ final class RouteArrivalInfo {
         this.predictedEpoch = predictedEpoch;
     }
 
-    long sortKey() {
+    /**
+     * Returns the static route id.
+     */
+    public String getRouteId() {
+        return routeId;
+    }
+
+    /**
+     * Returns the scheduled arrival epoch.
+     */
+    public long getScheduledEpoch() {
+        return scheduledEpoch;
+    }
+
+    /**
+     * Returns the realtime predicted arrival epoch, or null when there is no prediction.
+     */
+    public Long getPredictedEpoch() {
+        return predictedEpoch;
+    }
+
+    /**
+     * Returns the predicted arrival epoch when there is one, else the scheduled one.
+     */
+    public long sortKey() {
         if (predictedEpoch == null) {
             return scheduledEpoch;
         }
@@ -1,63 +1,44 @@
 package damose.service;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.PriorityQueue;
+
+import damose.data.mapper.GtfsIdDictionary;
 
 /**
  * Route-level fallback prediction support for missing trip-level RT updates.
  */
 final class RouteFallbackPredictionAssigner {
 
-    private final Map<String, Map<String, NavigableSet<Long>>> realtimeArrivalsByRoute;
-    private final Object syncLock;
+    private static final int EPOCH_NODE = -1;
+    private static final Comparator<Candidate> CANDIDATE_ORDER = Comparator.comparingLong(Candidate::diff)
+            .thenComparingLong(Candidate::scheduledEpoch)
+            .thenComparingLong(Candidate::epoch);
+
+    private final GtfsIdDictionary ids;
     private final long routeFallbackMaxDiffSeconds;
 
-    RouteFallbackPredictionAssigner(Map<String, Map<String, NavigableSet<Long>>> realtimeArrivalsByRoute,
-                                    Object syncLock,
-                                    long routeFallbackMaxDiffSeconds) {
-        this.realtimeArrivalsByRoute = realtimeArrivalsByRoute;
-        this.syncLock = syncLock;
+    RouteFallbackPredictionAssigner(GtfsIdDictionary ids, long routeFallbackMaxDiffSeconds) {
+        this.ids = ids;
         this.routeFallbackMaxDiffSeconds = routeFallbackMaxDiffSeconds;
     }
 
-    Long lookupRouteFallbackArrivalEpoch(String stopId, String routeId, long scheduledEpoch) {
-        Set<String> routeVariants = ArrivalMatchingUtils.generateRouteIdVariants(routeId);
-        Set<String> stopVariants = ArrivalMatchingUtils.generateStopIdVariants(stopId);
-
-        synchronized (syncLock) {
-            Long bestRouteFallback = null;
-            long bestDiff = Long.MAX_VALUE;
-            for (String routeVariant : routeVariants) {
-                Map<String, NavigableSet<Long>> byStop = realtimeArrivalsByRoute.get(routeVariant);
-                if (byStop == null) {
-                    continue;
-                }
-                for (String stopVariant : stopVariants) {
-                    NavigableSet<Long> epochs = byStop.get(stopVariant);
-                    Long candidate = pickClosestEpoch(epochs, scheduledEpoch);
-                    if (candidate == null) {
-                        continue;
-                    }
-                    long diff = Math.abs(candidate - scheduledEpoch);
-                    if (diff < bestDiff) {
-                        bestDiff = diff;
-                        bestRouteFallback = candidate;
-                    }
-                }
-            }
-            if (bestRouteFallback != null && bestDiff <= routeFallbackMaxDiffSeconds) {
-                return bestRouteFallback;
-            }
+    Long lookupRouteFallbackArrivalEpoch(RealtimeArrivalTables tables,
+                                         String stopId,
+                                         String routeId,
+                                         long scheduledEpoch) {
+        Long candidate = RealtimeArrivalTables.closestEpoch(routeEpochs(tables, routeId, stopId), scheduledEpoch);
+        if (candidate != null && Math.abs(candidate - scheduledEpoch) <= routeFallbackMaxDiffSeconds) {
+            return candidate;
         }
         return null;
     }
 
-    void assignRouteFallbackPredictions(String stopId, List<TripArrivalInfo> allTrips) {
+    void assignRouteFallbackPredictions(RealtimeArrivalTables tables, String stopId, List<TripArrivalInfo> allTrips) {
         Map<String, List<TripArrivalInfo>> unresolvedByRoute = new HashMap<>();
         for (TripArrivalInfo info : allTrips) {
             if (info.predictedEpoch != null) {
@@ -70,79 +51,101 @@ final class RouteFallbackPredictionAssigner {
         }
 
         for (Map.Entry<String, List<TripArrivalInfo>> entry : unresolvedByRoute.entrySet()) {
-            List<Long> fallbackEpochs = collectRouteFallbackEpochs(entry.getKey(), stopId);
-            if (fallbackEpochs.isEmpty()) {
+            long[] fallbackEpochs = routeEpochs(tables, entry.getKey(), stopId);
+            if (fallbackEpochs.length == 0) {
                 continue;
             }
             assignClosestRouteFallback(entry.getValue(), fallbackEpochs);
         }
     }
 
-    private List<Long> collectRouteFallbackEpochs(String routeId, String stopId) {
-        Set<String> routeVariants = ArrivalMatchingUtils.generateRouteIdVariants(routeId);
-        Set<String> stopVariants = ArrivalMatchingUtils.generateStopIdVariants(stopId);
-        NavigableSet<Long> allEpochs = new TreeSet<>();
-
-        synchronized (syncLock) {
-            for (String routeVariant : routeVariants) {
-                Map<String, NavigableSet<Long>> byStop = realtimeArrivalsByRoute.get(routeVariant);
-                if (byStop == null) {
-                    continue;
-                }
-                for (String stopVariant : stopVariants) {
-                    NavigableSet<Long> epochs = byStop.get(stopVariant);
-                    if (epochs != null) {
-                        allEpochs.addAll(epochs);
-                    }
-                }
-            }
-        }
-        return new ArrayList<>(allEpochs);
+    private long[] routeEpochs(RealtimeArrivalTables tables, String routeId, String stopId) {
+        return tables.arrivalsByRouteStop(ids.routeCode(routeId), ids.stopCode(stopId));
     }
 
-    private void assignClosestRouteFallback(List<TripArrivalInfo> unresolvedTrips, List<Long> availableEpochs) {
-        List<TripArrivalInfo> pendingTrips = new ArrayList<>(unresolvedTrips);
-        List<Long> pendingEpochs = new ArrayList<>(availableEpochs);
-
-        while (!pendingTrips.isEmpty() && !pendingEpochs.isEmpty()) {
-            int bestTripIdx = -1;
-            int bestEpochIdx = -1;
-            long bestDiff = Long.MAX_VALUE;
-
-            for (int i = 0; i < pendingTrips.size(); i++) {
-                long scheduled = pendingTrips.get(i).scheduledEpoch;
-                for (int j = 0; j < pendingEpochs.size(); j++) {
-                    long diff = Math.abs(pendingEpochs.get(j) - scheduled);
-                    if (diff < bestDiff) {
-                        bestDiff = diff;
-                        bestTripIdx = i;
-                        bestEpochIdx = j;
-                    }
-                }
+    /**
+     * Repeatedly gives the closest unassigned trip and epoch to each other, the earliest trip and then the earliest
+     * epoch on ties, until no pair is within the max diff. Trips with the same scheduled time form one node taken
+     * in list order, so in the merged order of nodes and epochs the closest pair is always adjacent: only adjacent
+     * pairs are queued, and each assignment queues at most one new pair, for O((T + E) log(T + E)) work.
+     * Epochs must be ascending and distinct.
+     */
+    void assignClosestRouteFallback(List<TripArrivalInfo> unresolvedTrips, long[] epochs) {
+        List<TripArrivalInfo> trips = new ArrayList<>(unresolvedTrips);
+        trips.sort(Comparator.comparingLong(t -> t.scheduledEpoch));
+
+        int capacity = trips.size() + epochs.length;
+        long[] values = new long[capacity];
+        int[] nextTrip = new int[capacity];
+        int[] endTrip = new int[capacity];
+        int nodes = 0;
+        for (int t = 0, e = 0; t < trips.size() || e < epochs.length; nodes++) {
+            if (e == epochs.length || (t < trips.size() && trips.get(t).scheduledEpoch < epochs[e])) {
+                long scheduled = trips.get(t).scheduledEpoch;
+                int end = t + 1;
+                while (end < trips.size() && trips.get(end).scheduledEpoch == scheduled) end++;
+                values[nodes] = scheduled;
+                nextTrip[nodes] = t;
+                endTrip[nodes] = end;
+                t = end;
+            } else {
+                values[nodes] = epochs[e++];
+                nextTrip[nodes] = EPOCH_NODE;
             }
+        }
+
+        int[] prev = new int[nodes];
+        int[] next = new int[nodes];
+        boolean[] removed = new boolean[nodes];
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(CANDIDATE_ORDER);
+        for (int node = 0; node < nodes; node++) {
+            prev[node] = node - 1;
+            next[node] = node + 1 < nodes ? node + 1 : -1;
+            offer(queue, values, nextTrip, node, next[node]);
+        }
 
-            if (bestTripIdx < 0 || bestEpochIdx < 0 || bestDiff > routeFallbackMaxDiffSeconds) {
-                break;
+        while (!queue.isEmpty()) {
+            Candidate pair = queue.poll();
+            if (removed[pair.left] || removed[pair.right] || next[pair.left] != pair.right) {
+                continue;
             }
+            int tripNode = nextTrip[pair.left] != EPOCH_NODE ? pair.left : pair.right;
+            int epochNode = tripNode == pair.left ? pair.right : pair.left;
+            trips.get(nextTrip[tripNode]++).predictedEpoch = values[epochNode];
 
-            TripArrivalInfo assignedTrip = pendingTrips.remove(bestTripIdx);
-            Long assignedEpoch = pendingEpochs.remove(bestEpochIdx);
-            assignedTrip.predictedEpoch = assignedEpoch;
+            unlink(queue, values, nextTrip, prev, next, removed, epochNode);
+            if (nextTrip[tripNode] == endTrip[tripNode]) {
+                unlink(queue, values, nextTrip, prev, next, removed, tripNode);
+            }
         }
     }
 
-    private static Long pickClosestEpoch(NavigableSet<Long> epochs, long targetEpoch) {
-        if (epochs == null || epochs.isEmpty()) {
-            return null;
-        }
-        Long floor = epochs.floor(targetEpoch);
-        Long ceil = epochs.ceiling(targetEpoch);
-        if (floor == null) {
-            return ceil;
+    private void unlink(PriorityQueue<Candidate> queue, long[] values, int[] nextTrip,
+                        int[] prev, int[] next, boolean[] removed, int node) {
+        removed[node] = true;
+        int before = prev[node];
+        int after = next[node];
+        if (before >= 0) next[before] = after;
+        if (after >= 0) prev[after] = before;
+        offer(queue, values, nextTrip, before, after);
+    }
+
+    private void offer(PriorityQueue<Candidate> queue, long[] values, int[] nextTrip, int left, int right) {
+        if (left < 0 || right < 0 || (nextTrip[left] == EPOCH_NODE) == (nextTrip[right] == EPOCH_NODE)) {
+            return;
         }
-        if (ceil == null) {
-            return floor;
+        long diff = values[right] - values[left];
+        if (diff > routeFallbackMaxDiffSeconds) {
+            return;
         }
-        return Math.abs(targetEpoch - floor) <= Math.abs(ceil - targetEpoch) ? floor : ceil;
+        boolean tripFirst = nextTrip[left] != EPOCH_NODE;
+        queue.add(new Candidate(diff, tripFirst ? values[left] : values[right],
+                tripFirst ? values[right] : values[left], left, right));
+    }
+
+    /**
+     * Adjacent trip node and epoch node, ordered by distance, then scheduled time, then epoch.
+     */
+    private record Candidate(long diff, long scheduledEpoch, long epoch, int left, int right) {
     }
 }
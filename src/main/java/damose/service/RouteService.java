@@ -2,7 +2,6 @@ package damose.service;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,8 +9,11 @@ import java.util.stream.Collectors;
 
 import org.jxmapviewer.viewer.GeoPosition;
 
+import damose.model.ShapeStore;
+import damose.model.ShapeTable;
 import damose.model.Stop;
 import damose.model.StopTime;
+import damose.model.StopTimeTable;
 import damose.model.Trip;
 
 /**
@@ -20,23 +22,28 @@ import damose.model.Trip;
 public class RouteService {
 
     private final List<Trip> trips;
-    private final List<StopTime> stopTimes;
+    private final StopTimeTable stopTimes;
     private final Map<String, Stop> stopsById;
-    private final Map<String, List<GeoPosition>> shapesById;
+    private final ShapeStore shapes;
     private final Map<String, List<Trip>> tripsByRouteId;
-    private final Map<String, Integer> stopCountByTripId;
 
     public RouteService(List<Trip> trips,
                         List<StopTime> stopTimes,
                         List<Stop> stops,
                         Map<String, List<GeoPosition>> shapesById) {
+        this(trips, StopTimeTable.fromStopTimes(stopTimes), stops, ShapeTable.fromShapes(shapesById));
+    }
+
+    public RouteService(List<Trip> trips,
+                        StopTimeTable stopTimes,
+                        List<Stop> stops,
+                        ShapeStore shapes) {
         this.trips = trips;
         this.stopTimes = stopTimes;
         this.stopsById = stops.stream()
                 .collect(Collectors.toMap(Stop::getStopId, s -> s, (a, b) -> a));
-        this.shapesById = shapesById != null ? shapesById : Collections.emptyMap();
+        this.shapes = shapes != null ? shapes : ShapeTable.empty();
         this.tripsByRouteId = buildTripsByRouteId(trips);
-        this.stopCountByTripId = buildStopCountByTripId(stopTimes);
     }
 
     /**
@@ -78,14 +85,11 @@ public class RouteService {
     public List<Stop> getStopsForTrip(String tripId) {
         if (tripId == null) return Collections.emptyList();
 
-        List<StopTime> tripStopTimes = stopTimes.stream()
-                .filter(st -> st.getTripId().equals(tripId))
-                .sorted(Comparator.comparingInt(StopTime::getStopSequence))
-                .collect(Collectors.toList());
+        int[] tripRows = stopTimes.rowsForTrip(tripId);
 
-        List<Stop> orderedStops = new ArrayList<>();
-        for (StopTime st : tripStopTimes) {
-            Stop stop = stopsById.get(st.getStopId());
+        List<Stop> orderedStops = new ArrayList<>(tripRows.length);
+        for (int row : tripRows) {
+            Stop stop = stopsById.get(stopTimes.stopId(row));
             if (stop != null) {
                 orderedStops.add(stop);
             }
@@ -126,7 +130,7 @@ public class RouteService {
     }
 
     /**
-     * Returns the shape for route.
+     * Returns the shape for route. The result is a read-only view over the shared shape table.
      */
     public List<GeoPosition> getShapeForRoute(String routeId) {
         if (routeId == null) return Collections.emptyList();
@@ -144,7 +148,7 @@ public class RouteService {
     }
 
     /**
-     * Returns the shape for route and direction.
+     * Returns the shape for route and direction. The result is a read-only view over the shared shape table.
      */
     public List<GeoPosition> getShapeForRouteAndDirection(String routeId, int directionId) {
         if (routeId == null) return Collections.emptyList();
@@ -217,22 +221,13 @@ public class RouteService {
         return map;
     }
 
-    private static Map<String, Integer> buildStopCountByTripId(List<StopTime> stopTimes) {
-        Map<String, Integer> map = new HashMap<>();
-        for (StopTime stopTime : stopTimes) {
-            if (stopTime == null || stopTime.getTripId() == null) continue;
-            map.merge(stopTime.getTripId(), 1, Integer::sum);
-        }
-        return map;
-    }
-
     private Trip chooseBestTrip(List<Trip> candidates) {
         if (candidates == null || candidates.isEmpty()) return null;
 
         Trip bestTrip = null;
         int maxStops = -1;
         for (Trip trip : candidates) {
-            int count = stopCountByTripId.getOrDefault(trip.getTripId(), 0);
+            int count = stopTimes.tripRowCount(trip.getTripId());
             if (count > maxStops) {
                 maxStops = count;
                 bestTrip = trip;
@@ -252,7 +247,7 @@ public class RouteService {
             int shapePoints = getShapePointCount(trip);
             if (shapePoints < 2) continue;
 
-            int stopCount = stopCountByTripId.getOrDefault(trip.getTripId(), 0);
+            int stopCount = stopTimes.tripRowCount(trip.getTripId());
             if (shapePoints > bestShapePoints
                     || (shapePoints == bestShapePoints && stopCount > bestStops)) {
                 bestShapePoints = shapePoints;
@@ -268,19 +263,15 @@ public class RouteService {
         String shapeId = trip.getShapeId();
         if (shapeId == null || shapeId.isBlank()) return Collections.emptyList();
 
-        List<GeoPosition> shape = shapesById.get(shapeId.trim());
-        if (shape == null || shape.size() < 2) {
-            return Collections.emptyList();
-        }
-        return new ArrayList<>(shape);
+        ShapeTable.Polyline shape = shapes.shape(shapeId.trim());
+        return shape.size() < 2 ? Collections.emptyList() : shape;
     }
 
     private int getShapePointCount(Trip trip) {
         if (trip == null || trip.getShapeId() == null || trip.getShapeId().isBlank()) {
             return 0;
         }
-        List<GeoPosition> shape = shapesById.get(trip.getShapeId().trim());
-        return shape == null ? 0 : shape.size();
+        return shapes.pointCount(trip.getShapeId().trim());
     }
 
 }
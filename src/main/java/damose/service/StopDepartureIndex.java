@@ -0,0 +1,127 @@
+package damose.service;
+
+import java.util.Arrays;
+
+import damose.model.StopTimeTable;
+import damose.util.ServiceDayClock;
+
+/**
+ * Stop time rows grouped by stop code and sorted by service-day arrival seconds, in flat primitive arrays.
+ * The rows of a stop arriving in a time range are found by binary search, so a board query reads only
+ * the departures in its window instead of the stop's whole day. Rows without an arrival time are left out.
+ */
+final class StopDepartureIndex {
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final StopTimeTable table;
+    private final int[] offsets;
+    private final int[] seconds;
+    private final int[] rows;
+
+    private StopDepartureIndex(StopTimeTable table, int[] offsets, int[] seconds, int[] rows) {
+        this.table = table;
+        this.offsets = offsets;
+        this.seconds = seconds;
+        this.rows = rows;
+    }
+
+    /**
+     * Indexes every row of the table with a known arrival time.
+     */
+    static StopDepartureIndex build(StopTimeTable table) {
+        int codes = table.dictionary().size();
+        int[] offsets = new int[codes + 1];
+        for (int row = 0; row < table.size(); row++) {
+            int stopCode = table.stopCode(row);
+            if (stopCode >= 0 && table.arrivalSeconds(row) >= 0) {
+                offsets[stopCode + 1]++;
+            }
+        }
+        for (int code = 0; code < codes; code++) {
+            offsets[code + 1] += offsets[code];
+        }
+
+        long[] keyed = new long[offsets[codes]];
+        int[] cursor = Arrays.copyOf(offsets, codes);
+        for (int row = 0; row < table.size(); row++) {
+            int stopCode = table.stopCode(row);
+            int arrival = table.arrivalSeconds(row);
+            if (stopCode >= 0 && arrival >= 0) {
+                keyed[cursor[stopCode]++] = ((long) arrival << 32) | row;
+            }
+        }
+
+        int[] seconds = new int[keyed.length];
+        int[] rows = new int[keyed.length];
+        for (int code = 0; code < codes; code++) {
+            Arrays.sort(keyed, offsets[code], offsets[code + 1]);
+        }
+        for (int i = 0; i < keyed.length; i++) {
+            seconds[i] = (int) (keyed[i] >>> 32);
+            rows[i] = (int) keyed[i];
+        }
+        return new StopDepartureIndex(table, offsets, seconds, rows);
+    }
+
+    /**
+     * Returns whether any row of the stop has an arrival time.
+     */
+    boolean hasDepartures(String stopId) {
+        int stopCode = codeOf(stopId);
+        return stopCode >= 0 && offsets[stopCode] < offsets[stopCode + 1];
+    }
+
+    /**
+     * Returns the rows of the stop arriving between the two service-day seconds, inclusive, by arrival.
+     */
+    int[] rowsBetween(String stopId, long fromSeconds, long toSeconds) {
+        int stopCode = codeOf(stopId);
+        if (stopCode < 0 || fromSeconds > toSeconds) {
+            return NO_ROWS;
+        }
+        int start = lowerBound(offsets[stopCode], offsets[stopCode + 1], fromSeconds);
+        int end = lowerBound(start, offsets[stopCode + 1], toSeconds + 1);
+        return start == end ? NO_ROWS : Arrays.copyOfRange(rows, start, end);
+    }
+
+    /**
+     * Returns the rows of the stop whose arrival, taken on yesterday's, today's or tomorrow's service day
+     * of the window, falls between the two epochs, inclusive. A row appears once per matching service day.
+     */
+    int[] rowsBetweenEpochs(String stopId, ServiceDayClock.Window serviceDays, long fromEpoch, long toEpoch) {
+        int[] out = NO_ROWS;
+        for (int offset = ServiceDayClock.Window.YESTERDAY; offset <= ServiceDayClock.Window.TOMORROW; offset++) {
+            long origin = serviceDays.epochOf(offset, 0);
+            int[] slice = rowsBetween(stopId, fromEpoch - origin, toEpoch - origin);
+            if (slice.length == 0) continue;
+            if (out.length == 0) {
+                out = slice;
+            } else {
+                int[] merged = Arrays.copyOf(out, out.length + slice.length);
+                System.arraycopy(slice, 0, merged, out.length, slice.length);
+                out = merged;
+            }
+        }
+        return out;
+    }
+
+    private int codeOf(String stopId) {
+        int code = stopId == null ? -1 : table.dictionary().codeOf(stopId);
+        return code < offsets.length - 1 ? code : -1;
+    }
+
+    private int lowerBound(int from, int to, long value) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (seconds[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,138 @@
+package damose.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trigram index over a fixed set of strings, answering which of them contain a given substring.
+ * A query reads the posting list of the needle's rarest trigram and verifies only those strings,
+ * instead of testing every string; needles shorter than a trigram fall back to a scan.
+ */
+final class SubstringIndex {
+
+    private static final int GRAM = 3;
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final String[] values;
+    private final Map<Long, int[]> postings;
+
+    private SubstringIndex(String[] values, Map<Long, int[]> postings) {
+        this.values = values;
+        this.postings = postings;
+    }
+
+    /**
+     * Indexes values, keeping their iteration order as the order of query results.
+     */
+    static SubstringIndex build(Collection<String> values) {
+        String[] indexed = values.toArray(new String[0]);
+        Map<Long, PostingList> lists = new HashMap<>(indexed.length * 8);
+        for (int id = 0; id < indexed.length; id++) {
+            String value = indexed[id];
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                lists.computeIfAbsent(gram(value, i), k -> new PostingList()).add(id);
+            }
+        }
+
+        Map<Long, int[]> postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Long, PostingList> entry : lists.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new SubstringIndex(indexed, postings);
+    }
+
+    /**
+     * Returns an empty index.
+     */
+    static SubstringIndex empty() {
+        return new SubstringIndex(new String[0], Map.of());
+    }
+
+    /**
+     * Returns the indexed strings containing at least one of the needles, in indexing order.
+     */
+    List<String> containingAny(Collection<String> needles) {
+        if (values.length == 0 || needles.isEmpty()) {
+            return List.of();
+        }
+        boolean[] matched = new boolean[values.length];
+        int matches = 0;
+        for (String needle : needles) {
+            if (needle == null || needle.isEmpty()) continue;
+            if (needle.length() < GRAM) {
+                for (int id = 0; id < values.length; id++) {
+                    if (!matched[id] && values[id].contains(needle)) {
+                        matched[id] = true;
+                        matches++;
+                    }
+                }
+                continue;
+            }
+            for (int id : rarestPostings(needle)) {
+                if (!matched[id] && values[id].contains(needle)) {
+                    matched[id] = true;
+                    matches++;
+                }
+            }
+        }
+
+        if (matches == 0) {
+            return List.of();
+        }
+        List<String> out = new ArrayList<>(matches);
+        for (int id = 0; id < values.length; id++) {
+            if (matched[id]) out.add(values[id]);
+        }
+        return out;
+    }
+
+    /**
+     * Returns the number of indexed strings.
+     */
+    int size() {
+        return values.length;
+    }
+
+    private int[] rarestPostings(String needle) {
+        int[] rarest = null;
+        for (int i = 0; i + GRAM <= needle.length(); i++) {
+            int[] list = postings.get(gram(needle, i));
+            if (list == null) {
+                return NO_POSTINGS;
+            }
+            if (rarest == null || list.length < rarest.length) {
+                rarest = list;
+            }
+        }
+        return rarest;
+    }
+
+    private static long gram(String s, int from) {
+        return ((long) s.charAt(from) << 32) | ((long) s.charAt(from + 1) << 16) | s.charAt(from + 2);
+    }
+
+    /**
+     * Growable list of ascending string ids sharing one trigram; an id is added once per string.
+     */
+    private static final class PostingList {
+
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
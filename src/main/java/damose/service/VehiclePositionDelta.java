@@ -0,0 +1,157 @@
+package damose.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import damose.model.VehiclePosition;
+
+/**
+ * Differences between the unique vehicles of two realtime snapshots, keyed by vehicle id.
+ * A vehicle is unchanged when its position timestamp, coordinates and trip are the same as before;
+ * otherwise it is moved. Vehicles without a vehicle or trip id are keyed by their place in the feed.
+ */
+public final class VehiclePositionDelta {
+
+    private final RealtimeSnapshot base;
+    private final RealtimeSnapshot target;
+    private final Map<String, VehiclePosition> added;
+    private final Map<String, VehiclePosition> moved;
+    private final Map<String, VehiclePosition> removed;
+    private final Map<String, VehiclePosition> unchanged;
+
+    private VehiclePositionDelta(RealtimeSnapshot base,
+                                 RealtimeSnapshot target,
+                                 Map<String, VehiclePosition> added,
+                                 Map<String, VehiclePosition> moved,
+                                 Map<String, VehiclePosition> removed,
+                                 Map<String, VehiclePosition> unchanged) {
+        this.base = base;
+        this.target = target;
+        this.added = Collections.unmodifiableMap(added);
+        this.moved = Collections.unmodifiableMap(moved);
+        this.removed = Collections.unmodifiableMap(removed);
+        this.unchanged = Collections.unmodifiableMap(unchanged);
+    }
+
+    /**
+     * Compares the vehicles of target with those of base; a null base makes every vehicle added.
+     */
+    public static VehiclePositionDelta between(RealtimeSnapshot base, RealtimeSnapshot target) {
+        List<VehiclePosition> previous = base != null ? base.uniqueVehicles() : List.of();
+        List<VehiclePosition> current = target.uniqueVehicles();
+
+        Map<String, VehiclePosition> before = new HashMap<>(previous.size() * 2);
+        for (int i = 0; i < previous.size(); i++) {
+            before.put(key(previous.get(i), i), previous.get(i));
+        }
+
+        Map<String, VehiclePosition> added = new LinkedHashMap<>();
+        Map<String, VehiclePosition> moved = new LinkedHashMap<>();
+        Map<String, VehiclePosition> unchanged = new LinkedHashMap<>(current.size() * 2);
+        for (int i = 0; i < current.size(); i++) {
+            VehiclePosition vp = current.get(i);
+            String key = key(vp, i);
+            VehiclePosition old = before.remove(key);
+            if (old == null) {
+                added.put(key, vp);
+            } else if (sameReport(old, vp)) {
+                unchanged.put(key, vp);
+            } else {
+                moved.put(key, vp);
+            }
+        }
+        return new VehiclePositionDelta(base, target, added, moved, new LinkedHashMap<>(before), unchanged);
+    }
+
+    /**
+     * Returns the key a vehicle is tracked under: its vehicle id, else its trip id.
+     */
+    public static String key(VehiclePosition vp, int feedIndex) {
+        String key = trimToNull(vp.getVehicleId());
+        if (key == null) {
+            key = trimToNull(vp.getTripId());
+        }
+        return key != null ? key : "#" + feedIndex;
+    }
+
+    private static boolean sameReport(VehiclePosition a, VehiclePosition b) {
+        return a.getTimestamp() == b.getTimestamp()
+                && a.getPosition().getLatitude() == b.getPosition().getLatitude()
+                && a.getPosition().getLongitude() == b.getPosition().getLongitude()
+                && Objects.equals(a.getTripId(), b.getTripId());
+    }
+
+    /**
+     * Returns the snapshot the delta starts from, or null when every vehicle is new.
+     */
+    public RealtimeSnapshot base() {
+        return base;
+    }
+
+    /**
+     * Returns the snapshot the delta leads to.
+     */
+    public RealtimeSnapshot target() {
+        return target;
+    }
+
+    /**
+     * Returns vehicles absent from the base, by key.
+     */
+    public Map<String, VehiclePosition> added() {
+        return added;
+    }
+
+    /**
+     * Returns vehicles whose report changed, by key, with their new position.
+     */
+    public Map<String, VehiclePosition> moved() {
+        return moved;
+    }
+
+    /**
+     * Returns vehicles no longer in the target, by key, with their last position.
+     */
+    public Map<String, VehiclePosition> removed() {
+        return removed;
+    }
+
+    /**
+     * Returns vehicles reported exactly as in the base, by key.
+     */
+    public Map<String, VehiclePosition> unchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Returns whether no vehicle was added, moved or removed.
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && moved.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Returns whether an added, moved or removed vehicle satisfies the predicate.
+     */
+    public boolean anyChanged(Predicate<VehiclePosition> predicate) {
+        for (Map<String, VehiclePosition> changes : List.of(added, moved, removed)) {
+            for (VehiclePosition vp : changes.values()) {
+                if (predicate.test(vp)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
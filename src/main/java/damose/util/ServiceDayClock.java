@@ -0,0 +1,122 @@
+package damose.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+/**
+ * Converts GTFS service-day times to epoch seconds.
+ * A GTFS time counts seconds from "noon minus 12h" of its service day, so it may exceed 24:00:00
+ * and stays correct across DST changes. The origin of each service day is computed once per feed date;
+ * a scheduled epoch is then a single addition.
+ */
+public final class ServiceDayClock {
+
+    private static final long TWELVE_HOURS = 12L * 60 * 60;
+
+    private final ZoneId zone;
+    private volatile Window lastWindow;
+
+    public ServiceDayClock(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Returns a clock for the system default time zone.
+     */
+    public static ServiceDayClock systemDefault() {
+        return new ServiceDayClock(ZoneId.systemDefault());
+    }
+
+    /**
+     * Returns the epoch second a service day's times count from.
+     */
+    public long originOf(LocalDate serviceDate) {
+        return serviceDate.atTime(LocalTime.NOON).atZone(zone).toEpochSecond() - TWELVE_HOURS;
+    }
+
+    /**
+     * Returns the calendar date of an epoch second in this clock's zone.
+     */
+    public LocalDate dateOf(long epochSeconds) {
+        return Instant.ofEpochSecond(epochSeconds).atZone(zone).toLocalDate();
+    }
+
+    /**
+     * Returns the service days around the date of a feed timestamp, reusing the last window for the same date.
+     */
+    public Window windowFor(long feedEpochSeconds) {
+        LocalDate feedDate = dateOf(feedEpochSeconds);
+        Window window = lastWindow;
+        if (window == null || !window.feedDate.equals(feedDate)) {
+            window = new Window(feedDate,
+                    originOf(feedDate.minusDays(1)), originOf(feedDate), originOf(feedDate.plusDays(1)));
+            lastWindow = window;
+        }
+        return window;
+    }
+
+    /**
+     * Yesterday, today and tomorrow relative to a feed date, with their precomputed origins.
+     * Offsets run from {@link #YESTERDAY} to {@link #TOMORROW}.
+     */
+    public static final class Window {
+
+        public static final int YESTERDAY = -1;
+        public static final int TODAY = 0;
+        public static final int TOMORROW = 1;
+
+        private final LocalDate feedDate;
+        private final LocalDate[] dates;
+        private final long[] origins;
+
+        private Window(LocalDate feedDate, long yesterdayOrigin, long todayOrigin, long tomorrowOrigin) {
+            this.feedDate = feedDate;
+            this.dates = new LocalDate[] {feedDate.minusDays(1), feedDate, feedDate.plusDays(1)};
+            this.origins = new long[] {yesterdayOrigin, todayOrigin, tomorrowOrigin};
+        }
+
+        /**
+         * Returns the date of the feed timestamp.
+         */
+        public LocalDate feedDate() {
+            return feedDate;
+        }
+
+        /**
+         * Returns the service date at offset days from the feed date.
+         */
+        public LocalDate serviceDate(int offset) {
+            return dates[offset + 1];
+        }
+
+        /**
+         * Returns the epoch of a service-day time on the service date at offset.
+         */
+        public long epochOf(int offset, int serviceSeconds) {
+            return origins[offset + 1] + serviceSeconds;
+        }
+
+        /**
+         * Returns the epoch of a service-day time on whichever of the three service days puts it closest
+         * to reference, or -1 for a negative (unknown) time.
+         */
+        public long closestEpoch(int serviceSeconds, long reference) {
+            if (serviceSeconds < 0) {
+                return -1;
+            }
+            long best = -1;
+            long bestDiff = Long.MAX_VALUE;
+            for (int offset = YESTERDAY; offset <= TOMORROW; offset++) {
+                long candidate = epochOf(offset, serviceSeconds);
+                long diff = Math.abs(candidate - reference);
+                if (diff < bestDiff) {
+                    bestDiff = diff;
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+}
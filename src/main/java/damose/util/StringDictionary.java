@@ -0,0 +1,70 @@
+package damose.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only pool mapping strings to dense int codes.
+ * Writes are not synchronized: fill it on one thread, then share it read-only.
+ */
+public final class StringDictionary {
+
+    private final Map<String, Integer> codes;
+    private String[] values;
+    private int size;
+
+    public StringDictionary() {
+        this(1024);
+    }
+
+    public StringDictionary(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.codes = new HashMap<>(capacity * 2);
+        this.values = new String[capacity];
+    }
+
+    /**
+     * Returns the code of value, registering it when new. Null maps to -1.
+     */
+    public int intern(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer existing = codes.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        codes.put(value, size);
+        return size++;
+    }
+
+    /**
+     * Returns the code of value, or -1 when it was never registered.
+     */
+    public int codeOf(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Returns the string for code, or null for -1.
+     */
+    public String get(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    /**
+     * Returns the number of distinct strings.
+     */
+    public int size() {
+        return size;
+    }
+}
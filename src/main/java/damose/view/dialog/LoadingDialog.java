@@ -193,6 +193,16 @@ public class LoadingDialog extends JFrame {
         setDetail("Lettura " + item);
     }
 
+    /**
+     * Handles stepStaticStage.
+     */
+    public void stepStaticStage(String item, int completed, int total, long elapsedMillis) {
+        int safeTotal = Math.max(1, total);
+        int percent = 20 + (30 * Math.min(completed, safeTotal)) / safeTotal;
+        setProgress(percent, "Caricamento dati GTFS... " + completed + "/" + safeTotal);
+        setDetail(String.format("%s pronto in %,d ms", item, elapsedMillis));
+    }
+
     /**
      * Handles stepStaticDone.
      */
@@ -202,6 +212,15 @@ public class LoadingDialog extends JFrame {
         setDetail(String.format("%,d fermate  |  %,d viaggi", stopsCount, tripsCount));
     }
 
+    /**
+     * Handles stepStaticDone.
+     */
+    public void stepStaticDone(int stopsCount, int tripsCount, long elapsedMillis) {
+        steps[1].setState(LoadingStepIndicator.State.DONE);
+        setProgress(50, "Dati GTFS caricati");
+        setDetail(String.format("%,d fermate  |  %,d viaggi  |  %,d ms", stopsCount, tripsCount, elapsedMillis));
+    }
+
     /**
      * Handles stepRTStart.
      */
@@ -5,7 +5,9 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.swing.SwingUtilities;
@@ -19,6 +21,8 @@ import damose.model.Trip;
 import damose.model.VehiclePosition;
 import damose.model.BusWaypoint;
 import damose.model.VehicleType;
+import damose.service.RealtimeSnapshot;
+import damose.service.VehiclePositionDelta;
 import damose.view.render.RoutePainter;
 
 /**
@@ -31,7 +35,8 @@ public class MapOverlayManager {
     private static final Color BUS_ROUTE_OUTLINE_COLOR = new Color(0, 0, 0, 235);
 
     private static Set<String> currentStopIds = new HashSet<>();
-    private static Set<String> currentBusIds = new HashSet<>();
+    private static final Map<String, BusWaypoint> busWaypointsByKey = new LinkedHashMap<>();
+    private static RealtimeSnapshot appliedSnapshot = null;
 
     private static final List<Stop> routeStops = new ArrayList<>();
     private static final List<Stop> visibleStops = new ArrayList<>();
@@ -209,13 +214,27 @@ public class MapOverlayManager {
         setSelectedStopId(null);
     }
 
+    /**
+     * Shows the unique vehicles of a realtime snapshot.
+     */
     public static void updateMap(JXMapViewer mapViewer,
                                  List<Stop> allStops,
-                                 List<VehiclePosition> busPositions,
+                                 RealtimeSnapshot snapshot,
+                                 List<Trip> trips) {
+        updateMap(mapViewer, allStops, VehiclePositionDelta.between(null, snapshot), trips);
+    }
+
+    /**
+     * Applies a vehicle delta: only added and moved vehicles get new waypoints, removed ones are dropped.
+     * A delta that does not start from the snapshot shown now rebuilds every waypoint.
+     */
+    public static void updateMap(JXMapViewer mapViewer,
+                                 List<Stop> allStops,
+                                 VehiclePositionDelta delta,
                                  List<Trip> trips) {
 
         if (!SwingUtilities.isEventDispatchThread()) {
-            SwingUtilities.invokeLater(() -> updateMap(mapViewer, allStops, busPositions, trips));
+            SwingUtilities.invokeLater(() -> updateMap(mapViewer, allStops, delta, trips));
             return;
         }
 
@@ -233,43 +252,25 @@ public class MapOverlayManager {
             }
 
             tripLookupIndex.ensureIndexed(trips);
-            List<BusWaypoint> newBusWaypoints = new ArrayList<>();
-            Set<String> newBusIds = new HashSet<>();
-            Set<String> seenVehicleKeys = new HashSet<>();
-
-            for (VehiclePosition vp : busPositions) {
-                if (vp == null || vp.getPosition() == null) continue;
-
-                String vehicleKey = trimToNull(vp.getVehicleId());
-                if (vehicleKey == null) {
-                    vehicleKey = trimToNull(vp.getTripId());
-                }
-                if (vehicleKey != null && !seenVehicleKeys.add(vehicleKey)) {
-                    continue;
-                }
-
-                String vpRouteId = trimToNull(vp.getRouteId());
-                Integer vpDirection = vp.getDirectionId() >= 0 ? vp.getDirectionId() : null;
-                Trip trip = tripLookupIndex.findTrip(vp.getTripId(), vpRouteId, vpDirection);
-
-                String headsign = (trip != null) ? trip.getTripHeadsign() : vp.getTripId();
-                String routeId = vpRouteId != null ? vpRouteId : trimToNull((trip != null) ? trip.getRouteId() : null);
-                int directionId = vpDirection != null ? vpDirection : (trip != null ? trip.getDirectionId() : -1);
-
-                if (routeId == null) {
-                    continue;
-                }
-
-                newBusWaypoints.add(new BusWaypoint(vp, headsign, routeId, directionId));
-                if (vehicleKey != null) {
-                    newBusIds.add(vehicleKey);
-                }
+            VehiclePositionDelta applied = delta.base() == appliedSnapshot
+                    ? delta
+                    : VehiclePositionDelta.between(null, delta.target());
+            appliedSnapshot = delta.target();
+
+            boolean vehiclesChanged = false;
+            if (applied.base() == null && !busWaypointsByKey.isEmpty()) {
+                busWaypointsByKey.clear();
+                vehiclesChanged = true;
             }
+            for (String key : applied.removed().keySet()) {
+                vehiclesChanged |= busWaypointsByKey.remove(key) != null;
+            }
+            vehiclesChanged |= putWaypoints(applied.added());
+            vehiclesChanged |= putWaypoints(applied.moved());
 
-            if (!newBusWaypoints.isEmpty() || !currentBusIds.isEmpty()) {
-                currentBusIds = newBusIds;
+            if (vehiclesChanged) {
                 busWaypoints.clear();
-                busWaypoints.addAll(newBusWaypoints);
+                busWaypoints.addAll(busWaypointsByKey.values());
                 needsRepaint = true;
             }
         }
@@ -279,6 +280,35 @@ public class MapOverlayManager {
         }
     }
 
+    private static boolean putWaypoints(Map<String, VehiclePosition> positions) {
+        boolean changed = false;
+        for (Map.Entry<String, VehiclePosition> entry : positions.entrySet()) {
+            BusWaypoint waypoint = toWaypoint(entry.getValue());
+            if (waypoint != null) {
+                busWaypointsByKey.put(entry.getKey(), waypoint);
+                changed = true;
+            } else if (busWaypointsByKey.remove(entry.getKey()) != null) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static BusWaypoint toWaypoint(VehiclePosition vp) {
+        String vpRouteId = trimToNull(vp.getRouteId());
+        Integer vpDirection = vp.getDirectionId() >= 0 ? vp.getDirectionId() : null;
+        Trip trip = tripLookupIndex.findTrip(vp.getTripId(), vpRouteId, vpDirection);
+
+        String headsign = (trip != null) ? trip.getTripHeadsign() : vp.getTripId();
+        String routeId = vpRouteId != null ? vpRouteId : trimToNull((trip != null) ? trip.getRouteId() : null);
+        int directionId = vpDirection != null ? vpDirection : (trip != null ? trip.getDirectionId() : -1);
+
+        if (routeId == null) {
+            return null;
+        }
+        return new BusWaypoint(vp, headsign, routeId, directionId);
+    }
+
     private static String trimToNull(String value) {
         if (value == null) return null;
         String trimmed = value.trim();
@@ -315,7 +345,7 @@ public class MapOverlayManager {
     }
 
     /**
-     * Updates the route value.
+     * Updates the route value. A shape table polyline is handed to the painter as-is, without copying its points.
      */
     public static void setRoute(List<Stop> stops, List<GeoPosition> shapePath) {
         synchronized (lock) {
@@ -329,15 +359,15 @@ public class MapOverlayManager {
 
             routeStops.addAll(stops);
 
-            List<GeoPosition> positions = new ArrayList<>();
             if (shapePath != null && shapePath.size() >= 2) {
-                positions.addAll(shapePath);
+                routePainter.setRoute(shapePath);
             } else {
+                List<GeoPosition> positions = new ArrayList<>(stops.size());
                 for (Stop stop : stops) {
                     positions.add(new GeoPosition(stop.getStopLat(), stop.getStopLon()));
                 }
+                routePainter.setRoute(positions);
             }
-            routePainter.setRoute(positions);
         }
 
         if (currentMap != null) {
@@ -12,8 +12,12 @@ import java.util.List;
 import org.jxmapviewer.JXMapViewer;
 import org.jxmapviewer.painter.Painter;
 import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactory;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+import org.jxmapviewer.viewer.util.GeoUtil;
 
 import damose.config.AppConstants;
+import damose.model.ShapeTable;
 
 /**
  * Rendering logic for route painter.
@@ -30,14 +34,21 @@ public class RoutePainter implements Painter<JXMapViewer> {
     }
 
     public RoutePainter(List<GeoPosition> route) {
-        this.route = route != null ? new ArrayList<>(route) : new ArrayList<>();
+        this.route = snapshotOf(route);
     }
 
     /**
-     * Updates the route value.
+     * Updates the route value. Shape table views are kept as-is since they are immutable.
      */
     public void setRoute(List<GeoPosition> route) {
-        this.route = route != null ? new ArrayList<>(route) : new ArrayList<>();
+        this.route = snapshotOf(route);
+    }
+
+    private static List<GeoPosition> snapshotOf(List<GeoPosition> route) {
+        if (route instanceof ShapeTable.Polyline) {
+            return route;
+        }
+        return route != null ? new ArrayList<>(route) : new ArrayList<>();
     }
 
     /**
@@ -70,7 +81,7 @@ public class RoutePainter implements Painter<JXMapViewer> {
 
     @Override
     /**
-     * Handles paint.
+     * Handles paint. Shape table polylines are projected from their coordinates, without a GeoPosition per point.
      */
     public void paint(Graphics2D g, JXMapViewer map, int w, int h) {
         if (route == null || route.size() < 2) {
@@ -81,40 +92,38 @@ public class RoutePainter implements Painter<JXMapViewer> {
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
         Rectangle2D viewport = map.getViewportBounds();
-
-        List<Point2D> screenPoints = new ArrayList<>();
-        for (GeoPosition pos : route) {
-            Point2D worldPt = map.getTileFactory().geoToPixel(pos, map.getZoom());
-            int screenX = (int) (worldPt.getX() - viewport.getX());
-            int screenY = (int) (worldPt.getY() - viewport.getY());
-            screenPoints.add(new Point2D.Double(screenX, screenY));
+        TileFactory tileFactory = map.getTileFactory();
+        int zoom = map.getZoom();
+
+        int count = route.size();
+        int[] xPoints = new int[count];
+        int[] yPoints = new int[count];
+        if (route instanceof ShapeTable.Polyline polyline) {
+            TileFactoryInfo info = tileFactory.getInfo();
+            for (int i = 0; i < count; i++) {
+                Point2D worldPt = GeoUtil.getBitmapCoordinate(polyline.latitude(i), polyline.longitude(i), zoom, info);
+                xPoints[i] = (int) (worldPt.getX() - viewport.getX());
+                yPoints[i] = (int) (worldPt.getY() - viewport.getY());
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                Point2D worldPt = tileFactory.geoToPixel(route.get(i), zoom);
+                xPoints[i] = (int) (worldPt.getX() - viewport.getX());
+                yPoints[i] = (int) (worldPt.getY() - viewport.getY());
+            }
         }
 
         g2.setColor(outlineColor);
         g2.setStroke(new BasicStroke(lineWidth + 3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        drawPolyline(g2, screenPoints);
+        g2.drawPolyline(xPoints, yPoints, count);
 
         g2.setColor(routeColor);
         g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-        drawPolyline(g2, screenPoints);
+        g2.drawPolyline(xPoints, yPoints, count);
 
         g2.dispose();
     }
 
-    private void drawPolyline(Graphics2D g, List<Point2D> points) {
-        if (points.size() < 2) return;
-
-        int[] xPoints = new int[points.size()];
-        int[] yPoints = new int[points.size()];
-
-        for (int i = 0; i < points.size(); i++) {
-            xPoints[i] = (int) points.get(i).getX();
-            yPoints[i] = (int) points.get(i).getY();
-        }
-
-        g.drawPolyline(xPoints, yPoints, points.size());
-    }
-
     /**
      * Returns the result of hasRoute.
      */
@@ -0,0 +1,121 @@
+package damose.data.loader;
+
+import damose.model.ShapeTable;
+import damose.model.StopTimeTable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ChunkedCsv")
+class ChunkedCsvTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdownNow();
+    }
+
+    private static ByteBuffer stopTimesCsv() {
+        Random random = new Random(7);
+        StringBuilder csv = new StringBuilder(
+                "trip_id,arrival_time,departure_time,stop_id,stop_sequence,stop_headsign,pickup_type\r\n");
+        for (int trip = 0; trip < 400; trip++) {
+            int start = 5 * 3600 + random.nextInt(20 * 3600);
+            for (int seq = 1; seq <= 25; seq++) {
+                String time = String.format("%02d:%02d:%02d", (start / 3600), (start / 60) % 60, start % 60);
+                String headsign = seq % 7 == 0 ? "\"Termini, \"\"via\"\"\nNazionale\"" : "";
+                csv.append("0#").append(trip).append('-').append(trip % 3).append(',')
+                        .append(time).append(',').append(time).append(',')
+                        .append(70000 + random.nextInt(300)).append(',').append(seq).append(',')
+                        .append(headsign).append(',').append(seq % 2).append("\r\n");
+                start += 60 + random.nextInt(120);
+            }
+            if (trip % 50 == 0) {
+                csv.append("\r\n");
+            }
+        }
+        return ByteBuffer.wrap(csv.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("should build the same stop time table from any number of chunks")
+    void shouldMatchSequentialStopTimes() throws Exception {
+        ByteBuffer data = stopTimesCsv();
+        StopTimeTable sequential = StopTimesLoader.load(data, 1, pool);
+
+        assertEquals(400 * 25, sequential.size());
+        assertEquals("Termini, \"via\"\nNazionale", sequential.stopHeadsign(6));
+
+        for (int chunks : new int[] {2, 3, 7, 16, 64}) {
+            StopTimeTable chunked = StopTimesLoader.load(data, chunks, pool);
+
+            assertEquals(sequential.size(), chunked.size(), chunks + " chunks");
+            assertEquals(sequential.dictionary().size(), chunked.dictionary().size());
+            for (int row = 0; row < sequential.size(); row++) {
+                assertEquals(sequential.tripCode(row), chunked.tripCode(row));
+                assertEquals(sequential.stopCode(row), chunked.stopCode(row));
+                assertEquals(sequential.headsignCode(row), chunked.headsignCode(row));
+                assertEquals(sequential.arrivalSeconds(row), chunked.arrivalSeconds(row));
+                assertEquals(sequential.stopSequence(row), chunked.stopSequence(row));
+                assertEquals(sequential.pickupType(row), chunked.pickupType(row));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should build the same shapes from any number of chunks")
+    void shouldMatchSequentialShapes() throws Exception {
+        Random random = new Random(11);
+        StringBuilder csv = new StringBuilder("shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\n");
+        List<String> lines = new ArrayList<>();
+        for (int shape = 0; shape < 60; shape++) {
+            for (int seq = 1; seq <= 40; seq++) {
+                lines.add("SH" + shape + "," + (41.8 + random.nextDouble() / 10) + ","
+                        + (12.4 + random.nextDouble() / 10) + "," + seq);
+            }
+        }
+        Collections.shuffle(lines, random);
+        lines.forEach(line -> csv.append(line).append('\n'));
+        ByteBuffer data = ByteBuffer.wrap(csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        ShapeTable sequential = ShapesLoader.load(data, 1, pool);
+        assertEquals(60, sequential.size());
+        assertEquals(2400, sequential.totalPoints());
+
+        for (int chunks : new int[] {2, 5, 32}) {
+            ShapeTable chunked = ShapesLoader.load(data, chunks, pool);
+            assertEquals(sequential.size(), chunked.size(), chunks + " chunks");
+            for (int code = 0; code < sequential.size(); code++) {
+                String shapeId = sequential.shapeId(code);
+                assertEquals(sequential.shape(code), chunked.shape(shapeId), chunks + " chunks, " + shapeId);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should only split on line breaks outside quotes")
+    void shouldSkipQuotedLineBreaks() {
+        ByteBuffer data = ByteBuffer.wrap("a,\"x\ny\"\nb\n".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(8, ChunkedCsv.recordEnd(data, 0, false));
+        assertEquals(8, ChunkedCsv.recordEnd(data, 4, true));
+        assertEquals(10, ChunkedCsv.recordEnd(data, 8, false));
+    }
+}
@@ -0,0 +1,150 @@
+package damose.data.loader;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GtfsCsvReader")
+class GtfsCsvReaderTest {
+
+    private static GtfsCsvReader reader(String csv) {
+        return new GtfsCsvReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Nested
+    @DisplayName("Tokenizing")
+    class Tokenizing {
+
+        @Test
+        @DisplayName("should split quoted fields with commas, escaped quotes and line breaks")
+        void shouldHandleQuoting() throws IOException {
+            try (GtfsCsvReader r = reader("a,\"b, c\",\"say \"\"hi\"\"\",\"two\nlines\"\r\nnext,row\n")) {
+                assertTrue(r.next());
+                assertEquals(4, r.fieldCount());
+                assertEquals("a", r.getString(0));
+                assertEquals("b, c", r.getString(1));
+                assertEquals("say \"hi\"", r.getString(2));
+                assertEquals("two\nlines", r.getString(3));
+
+                assertTrue(r.next());
+                assertEquals("next", r.getString(0));
+                assertEquals("row", r.getString(1));
+                assertFalse(r.next());
+            }
+        }
+
+        @Test
+        @DisplayName("should skip blank lines and keep a last line without terminator")
+        void shouldSkipBlankLines() throws IOException {
+            try (GtfsCsvReader r = reader("x\n\n   \r\ny,,z")) {
+                assertTrue(r.next());
+                assertEquals("x", r.getString(0));
+                assertTrue(r.next());
+                assertEquals(3, r.fieldCount());
+                assertTrue(r.isEmpty(1));
+                assertEquals("", r.getString(7));
+                assertFalse(r.next());
+            }
+        }
+
+        @Test
+        @DisplayName("should keep records intact across buffer refills")
+        void shouldReadRecordsLargerThanBuffer() throws IOException {
+            StringBuilder csv = new StringBuilder();
+            String big = "x".repeat(300_000);
+            csv.append("id,\"").append(big).append("\"\n");
+            for (int i = 0; i < 50_000; i++) {
+                csv.append(i).append(",\"v").append(i).append("\"\n");
+            }
+
+            try (GtfsCsvReader r = new GtfsCsvReader(ByteBuffer.wrap(csv.toString().getBytes(StandardCharsets.UTF_8)))) {
+                assertTrue(r.next());
+                assertEquals(big, r.getString(1));
+                for (int i = 0; i < 50_000; i++) {
+                    assertTrue(r.next());
+                    assertEquals(i, r.getInt(0, -1));
+                    assertEquals("v" + i, r.getPooledString(1));
+                }
+                assertFalse(r.next());
+            }
+        }
+
+        @Test
+        @DisplayName("should resolve header columns and strip a byte order mark")
+        void shouldResolveHeader() throws IOException {
+            try (GtfsCsvReader r = reader("\uFEFFstop_id, Stop_Name ,stop_lat\n70001,Termini,41.9\n")) {
+                assertTrue(r.readHeader());
+                assertEquals(0, r.column("stop_id", 9));
+                assertEquals(1, r.column("stop_name", 9));
+                assertEquals(9, r.column("stop_lon", 9));
+                assertTrue(r.next());
+                assertEquals("Termini", r.getString(r.column("stop_name", 2)));
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Parsing in place")
+    class ParsingInPlace {
+
+        @Test
+        @DisplayName("should parse GTFS times past midnight")
+        void shouldParseTimes() throws IOException {
+            try (GtfsCsvReader r = reader("08:05:09, 25:10:00,7:00:00,08:60:00,8:00,,ab:00:00\n")) {
+                assertTrue(r.next());
+                assertEquals(8 * 3600 + 5 * 60 + 9, r.getTimeSeconds(0));
+                assertEquals(25 * 3600 + 600, r.getTimeSeconds(1));
+                assertEquals(7 * 3600, r.getTimeSeconds(2));
+                assertEquals(GtfsCsvReader.NO_TIME, r.getTimeSeconds(3));
+                assertEquals(GtfsCsvReader.NO_TIME, r.getTimeSeconds(4));
+                assertEquals(GtfsCsvReader.NO_TIME, r.getTimeSeconds(5));
+                assertEquals(GtfsCsvReader.NO_TIME, r.getTimeSeconds(6));
+            }
+        }
+
+        @Test
+        @DisplayName("should parse ints and dates with fallbacks")
+        void shouldParseIntsAndDates() throws IOException {
+            try (GtfsCsvReader r = reader("42,-7,x1,99999999999,20260302,20261332\n")) {
+                assertTrue(r.next());
+                assertEquals(42, r.getInt(0, 0));
+                assertEquals(-7, r.getInt(1, 0));
+                assertEquals(3, r.getInt(2, 3));
+                assertEquals(3, r.getInt(3, 3));
+                assertEquals(LocalDate.of(2026, 3, 2), r.getDate(4));
+                assertNull(r.getDate(5));
+            }
+        }
+
+        @Test
+        @DisplayName("should parse doubles exactly like Double.parseDouble")
+        void shouldParseDoublesExactly() throws IOException {
+            Random random = new Random(42);
+            StringBuilder csv = new StringBuilder("41.9009,-0.0,1e3,.5,abc,12345678901234567.89");
+            for (int i = 0; i < 2_000; i++) {
+                csv.append(',').append(String.format(Locale.ROOT, "%.6f", (random.nextDouble() - 0.5) * 360));
+                csv.append(',').append(random.nextDouble() * 1000);
+            }
+
+            try (GtfsCsvReader r = reader(csv.toString())) {
+                assertTrue(r.next());
+                assertEquals(Double.NaN, r.getDouble(4, Double.NaN));
+                String[] raw = csv.toString().split(",");
+                for (int i = 0; i < raw.length; i++) {
+                    if (i == 4) continue;
+                    assertEquals(Double.parseDouble(raw[i]), r.getDouble(i, Double.NaN), "field " + raw[i]);
+                }
+            }
+        }
+    }
+}
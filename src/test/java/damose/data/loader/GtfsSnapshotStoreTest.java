@@ -0,0 +1,123 @@
+package damose.data.loader;
+
+import damose.model.Route;
+import damose.model.ShapeTable;
+import damose.model.Stop;
+import damose.model.StopTime;
+import damose.model.StopTimeTable;
+import damose.model.Trip;
+import damose.model.TripServiceCalendar;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GtfsSnapshotStore")
+class GtfsSnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private GtfsSnapshotStore store;
+    private GtfsSnapshot snapshot;
+    private byte[] digest;
+
+    @BeforeEach
+    void setUp() {
+        store = new GtfsSnapshotStore(tempDir.resolve("cache").resolve("gtfs.snapshot"));
+        digest = new byte[32];
+        Arrays.fill(digest, (byte) 7);
+
+        TripServiceCalendar calendar = new TripServiceCalendar();
+        calendar.addServiceDate("FER", LocalDate.of(2026, 3, 2));
+        calendar.addServiceDate("FER", LocalDate.of(2026, 3, 3));
+
+        snapshot = new GtfsSnapshot(
+            List.of(new Stop("70001", "70001", "Termini (MA-MB-FS)", 41.9009, 12.5016)),
+            List.of(new Trip("64", "FER", "0#64-1", "San Pietro", "", 1, "SH64")),
+            StopTimeTable.fromStopTimes(List.of(
+                new StopTime("0#64-1", LocalTime.of(8, 0), LocalTime.of(8, 1), "70001", 1, "", 0, 0, 0.0, 1),
+                new StopTime("0#64-1", null, null, "70002", 2, "San Pietro", 1, 3, 412.5, 0)
+            )),
+            ShapeTable.fromShapes(Map.of("SH64", List.of(new GeoPosition(41.90, 12.50), new GeoPosition(41.91, 12.49)))),
+            List.of(new Route("64", "ATAC", "64", "Termini - San Pietro", 3, "FF0000", "FFFFFF")),
+            calendar
+        );
+    }
+
+    @Test
+    @DisplayName("should restore every table after a write")
+    void shouldRoundTripSnapshot() {
+        assertTrue(store.write(snapshot, digest));
+
+        GtfsSnapshot restored = store.read(digest);
+
+        assertNotNull(restored);
+        assertEquals("Termini (MA-MB-FS)", restored.stops().get(0).getStopName());
+        assertEquals(12.5016, restored.stops().get(0).getStopLon(), 1e-9);
+        assertEquals("SH64", restored.trips().get(0).getShapeId());
+        assertEquals(1, restored.trips().get(0).getDirectionId());
+        assertEquals(2, restored.stopTimes().size());
+        assertEquals(LocalTime.of(8, 1), restored.stopTimes().departureTime(0));
+        assertNull(restored.stopTimes().arrivalTime(1));
+        assertEquals("San Pietro", restored.stopTimes().stopHeadsign(1));
+        assertEquals(412.5, restored.stopTimes().shapeDistTraveled(1), 1e-9);
+        assertArrayEquals(new int[] {0, 1}, restored.stopTimes().rowsForTrip("0#64-1"));
+        assertEquals(2, restored.shapes().pointCount("SH64"));
+        assertEquals(12.49, restored.shapes().shape("SH64").longitude(1), 1e-7);
+        assertEquals("FF0000", restored.routes().get(0).getRouteColor());
+        assertTrue(restored.calendar().serviceRunsOnDate("FER", LocalDate.of(2026, 3, 3)));
+        assertFalse(restored.calendar().serviceRunsOnDate("FER", LocalDate.of(2026, 3, 4)));
+    }
+
+    @Test
+    @DisplayName("should keep indexed shapes as byte ranges to reattach to the feed")
+    void shouldRoundTripShapeIndex() throws Exception {
+        ByteBuffer shapesData = ByteBuffer.wrap(("shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence\n"
+                + "SH64,41.90,12.50,1\nSH64,41.91,12.49,2\n").getBytes(StandardCharsets.UTF_8));
+        GtfsSnapshot indexed = new GtfsSnapshot(snapshot.stops(), snapshot.trips(), snapshot.stopTimes(),
+                LazyShapeStore.index(shapesData), snapshot.routes(), snapshot.calendar());
+        assertTrue(store.write(indexed, digest));
+
+        LazyShapeStore restored = assertInstanceOf(LazyShapeStore.class, store.read(digest).shapes());
+
+        assertFalse(restored.hasData());
+        assertEquals(2, restored.pointCount("SH64"));
+        assertEquals(12.49, restored.withData(shapesData).shape("SH64").longitude(1), 1e-7);
+    }
+
+    @Test
+    @DisplayName("should ignore a snapshot written for different sources")
+    void shouldRejectStaleSnapshot() {
+        assertTrue(store.write(snapshot, digest));
+
+        byte[] otherDigest = digest.clone();
+        otherDigest[0] = 1;
+
+        assertNull(store.read(otherDigest));
+    }
+
+    @Test
+    @DisplayName("should ignore a missing or corrupt snapshot")
+    void shouldRejectCorruptSnapshot() throws Exception {
+        assertNull(store.read(digest));
+
+        Path file = tempDir.resolve("corrupt.snapshot");
+        Files.write(file, new byte[] {1, 2, 3});
+
+        assertNull(new GtfsSnapshotStore(file).read(digest));
+    }
+}
@@ -0,0 +1,95 @@
+package damose.data.loader;
+
+import damose.model.Stop;
+import damose.model.StopTimeTable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GtfsSource")
+class GtfsSourceTest {
+
+    private static final Map<String, String> FEED = Map.of(
+            GtfsSource.STOPS, "stop_id,stop_code,stop_name,stop_desc,stop_lat,stop_lon\n"
+                    + "70001,70001,Termini,,41.9009,12.5016\n",
+            GtfsSource.STOP_TIMES, "trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+                    + "T1,08:00:00,08:00:00,70001,1\n"
+                    + "T1,25:10:00,25:10:00,70002,2\n");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("should read tables from a zip with the feed inside a folder")
+    void shouldReadZip() throws Exception {
+        Path zip = tempDir.resolve("rome_static_gtfs.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (Map.Entry<String, String> file : FEED.entrySet()) {
+                out.putNextEntry(new ZipEntry("rome_static_gtfs/" + file.getKey()));
+                out.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+
+        try (GtfsSource source = GtfsSource.of(zip)) {
+            assertFeedLoaded(source);
+            assertTrue(source.fingerprint(GtfsSource.STOPS).startsWith("zip:"));
+            assertNull(source.open(GtfsSource.SHAPES));
+            assertTrue(ShapesLoader.load(source).isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("should read tables from a plain directory")
+    void shouldReadDirectory() throws Exception {
+        for (Map.Entry<String, String> file : FEED.entrySet()) {
+            try (OutputStream out = Files.newOutputStream(tempDir.resolve(file.getKey()))) {
+                out.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        try (GtfsSource source = GtfsSource.of(tempDir)) {
+            assertFeedLoaded(source);
+            assertEquals("missing", source.fingerprint(GtfsSource.ROUTES));
+        }
+    }
+
+    @Test
+    @DisplayName("should change the snapshot digest when a table changes")
+    void shouldDigestFeedContent() throws Exception {
+        Path stops = tempDir.resolve(GtfsSource.STOPS);
+        Files.writeString(stops, FEED.get(GtfsSource.STOPS));
+        GtfsSnapshotStore store = new GtfsSnapshotStore(tempDir.resolve("snapshot"));
+
+        byte[] before;
+        try (GtfsSource source = GtfsSource.of(tempDir)) {
+            before = store.computeSourceDigest(source);
+        }
+        Files.writeString(stops, FEED.get(GtfsSource.STOPS) + "70002,70002,Piazza Venezia,,41.8958,12.4826\n");
+        try (GtfsSource source = GtfsSource.of(tempDir)) {
+            assertFalse(Arrays.equals(before, store.computeSourceDigest(source)));
+        }
+    }
+
+    private static void assertFeedLoaded(GtfsSource source) {
+        List<Stop> stops = StopsLoader.load(source);
+        assertEquals(1, stops.size());
+        assertEquals("Termini", stops.get(0).getStopName());
+
+        StopTimeTable stopTimes = StopTimesLoader.load(source);
+        assertEquals(2, stopTimes.size());
+        assertEquals(25 * 3600 + 600, stopTimes.arrivalSeconds(1));
+    }
+}
@@ -0,0 +1,110 @@
+package damose.data.loader;
+
+import damose.model.ShapeStore;
+import damose.model.ShapeTable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("LazyShapeStore")
+class LazyShapeStoreTest {
+
+    private static final String SHAPES_CSV = """
+            shape_id,shape_pt_lat,shape_pt_lon,shape_pt_sequence
+            SH1,41.9000,12.5000,1
+            SH1,41.9010,12.5010,2
+            SH2,41.8000,12.4000,2
+            SH2,41.8000,12.4000,3
+            SH1,41.9020,12.5020,3
+            SH2,41.8100,12.4100,1
+
+            SH2,41.8200,12.4200,4
+            SH3,41.7000,12.3000,1
+            """;
+
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    @DisplayName("should decode the same shapes as a full parse")
+    void shouldMatchPackedShapes() throws Exception {
+        ByteBuffer data = ByteBuffer.wrap(SHAPES_CSV.getBytes(StandardCharsets.UTF_8));
+
+        ShapeTable packed = ShapesLoader.load(data, 1, pool);
+        LazyShapeStore lazy = LazyShapeStore.index(data);
+
+        assertEquals(3, lazy.size());
+        assertEquals(3, lazy.pointCount("SH1"));
+        assertEquals(4, lazy.pointCount("SH2"));
+        for (String shapeId : new String[] {"SH1", "SH2"}) {
+            assertEquals(packed.shape(shapeId), lazy.shape(shapeId), shapeId);
+        }
+        assertTrue(lazy.shape("SH3").isEmpty());
+        assertTrue(lazy.shape("missing").isEmpty());
+        assertSame(lazy.shape("SH1"), lazy.shape("SH1"));
+    }
+
+    @Test
+    @DisplayName("should only decode after the feed bytes are attached again")
+    void shouldRequireDataToDecode() throws Exception {
+        ByteBuffer data = ByteBuffer.wrap(SHAPES_CSV.getBytes(StandardCharsets.UTF_8));
+        LazyShapeStore lazy = LazyShapeStore.index(data);
+
+        LazyShapeStore detached = lazy.withData(null);
+        assertFalse(detached.hasData());
+        assertEquals(3, detached.pointCount("SH1"));
+        assertTrue(detached.shape("SH1").isEmpty());
+
+        ShapeStore reattached = detached.withData(data);
+        assertEquals(lazy.shape("SH2"), reattached.shape("SH2"));
+    }
+
+    @Test
+    @DisplayName("should index mapped feeds and parse heap-read feeds into a table")
+    void shouldIndexOnlyMappedFeeds() throws Exception {
+        Files.writeString(tempDir.resolve(GtfsSource.SHAPES), SHAPES_CSV);
+        Path zip = tempDir.resolve("feed.zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry(GtfsSource.SHAPES));
+            out.write(SHAPES_CSV.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+
+        try (GtfsSource directory = GtfsSource.of(tempDir); GtfsSource zipped = GtfsSource.of(zip)) {
+            ShapeStore mapped = ShapesLoader.index(directory);
+            assertInstanceOf(LazyShapeStore.class, mapped);
+            assertInstanceOf(LazyShapeStore.class,
+                    ShapesLoader.restore(((LazyShapeStore) mapped).withData(null), directory));
+
+            ShapeStore inflated = ShapesLoader.index(zipped);
+            assertInstanceOf(ShapeTable.class, inflated);
+            assertEquals(mapped.shape("SH2"), inflated.shape("SH2"));
+            assertInstanceOf(ShapeTable.class,
+                    ShapesLoader.restore(((LazyShapeStore) mapped).withData(null), zipped));
+        }
+    }
+}
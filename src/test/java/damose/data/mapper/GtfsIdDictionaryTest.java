@@ -0,0 +1,62 @@
+package damose.data.mapper;
+
+import damose.model.StopTimeTable;
+import damose.model.Trip;
+import damose.util.StringDictionary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GtfsIdDictionary")
+class GtfsIdDictionaryTest {
+
+    private final GtfsIdDictionary ids = build();
+
+    private static GtfsIdDictionary build() {
+        TripMatcher matcher = new TripMatcher(List.of(
+                new Trip("64", "SVC", "TRIP_8833", "A", "64", 0, "S1"),
+                new Trip("route:75", "SVC", "T-1.2", "B", "75", 0, "S2")
+        ));
+        StopTimeTable.Builder builder = StopTimeTable.builder(new StringDictionary(), 3);
+        builder.add("TRIP_8833", 3600, 3600, "70001", 1, "", 0, 0, 0, 1);
+        builder.add("TRIP_8833", 3700, 3700, "stop:70002", 2, "", 0, 0, 0, 1);
+        builder.add("T-1.2", 3800, 3800, "70001", 1, "", 0, 0, 0, 1);
+        return GtfsIdDictionary.build(builder.build(), matcher);
+    }
+
+    @Test
+    @DisplayName("should resolve realtime trip ids sharing a variant with a static trip")
+    void shouldResolveTripAliases() {
+        int code = ids.tripCode("TRIP_8833");
+
+        assertArrayEquals(new int[]{code}, ids.resolveTripId("TRIP_8833"));
+        assertArrayEquals(new int[]{code}, ids.resolveTripId("0#trip-8833"));
+        assertArrayEquals(new int[]{code}, ids.resolveTripId("agency:TRIP8833"));
+        assertArrayEquals(new int[]{ids.tripCode("T-1.2")}, ids.resolveTripId("t_1_2"));
+        assertEquals(0, ids.resolveTripId("UNKNOWN").length);
+        assertEquals(0, ids.resolveTripId("UNKNOWN").length);
+    }
+
+    @Test
+    @DisplayName("should resolve realtime stop ids through their variants")
+    void shouldResolveStopAliases() {
+        assertArrayEquals(new int[]{ids.stopCode("70001")}, ids.resolveStopId("IT:70001"));
+        assertArrayEquals(new int[]{ids.stopCode("stop:70002")}, ids.resolveStopId("70002"));
+        assertEquals(0, ids.resolveStopId("99999").length);
+    }
+
+    @Test
+    @DisplayName("should resolve realtime route ids ignoring case and the route prefix")
+    void shouldResolveRouteAliases() {
+        int route64 = ids.routeCode("64");
+        int route75 = ids.routeCode("route:75");
+
+        assertTrue(route64 >= 0);
+        assertArrayEquals(new int[]{route64}, ids.resolveRouteId("64"));
+        assertArrayEquals(new int[]{route75}, ids.resolveRouteId("75"));
+        assertEquals("route:75", ids.routeIdOf(route75));
+    }
+}
@@ -0,0 +1,82 @@
+package damose.data.mapper;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StopIdUtils")
+class StopIdUtilsTest {
+
+    @Nested
+    @DisplayName("normalize()")
+    class NormalizeTests {
+
+        @ParameterizedTest
+        @CsvSource({
+                "stop:70001, 70001",
+                "STOP: 70001, 70001",
+                "RM:70001, 70001",
+                "0#70001, 70001",
+                "70001_2, 70001",
+                "ABCDEF:12, ABCDEF",
+                "70001, 70001"
+        })
+        @DisplayName("should strip prefixes and suffixes")
+        void shouldStripPrefixesAndSuffixes(String input, String expected) {
+            assertEquals(expected, StopIdUtils.normalize(input));
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"  stop:stop:12#_3 ", "a_1_2", "a__12", "12#", "_12", "   ", "5# 70001", "x:y:7"})
+        @DisplayName("should match the regex-based normalization")
+        void shouldMatchRegexNormalization(String input) {
+            assertEquals(regexNormalize(input), StopIdUtils.normalize(input));
+        }
+
+        @Test
+        @DisplayName("should return the same instance for a clean id")
+        void shouldReuseCleanId() {
+            String id = "4242424";
+            assertSame(id, StopIdUtils.normalize(id));
+        }
+
+        @Test
+        @DisplayName("should return null from normalizeForMatch when nothing is left")
+        void shouldReturnNullForEmptyMatch() {
+            assertNull(StopIdUtils.normalizeForMatch("12#"));
+            assertNull(StopIdUtils.normalizeForMatch(null));
+            assertEquals("70001", StopIdUtils.normalizeForMatch("5# 70001"));
+        }
+    }
+
+    @Test
+    @DisplayName("should keep only ASCII digits")
+    void shouldKeepOnlyDigits() {
+        assertEquals("70001", StopIdUtils.digitsOnly("stop:70-001"));
+        assertEquals("", StopIdUtils.digitsOnly("abc"));
+    }
+
+    private static String regexNormalize(String stopId) {
+        String normalized = stopId.trim();
+        while (true) {
+            String lower = normalized.toLowerCase();
+            if (lower.startsWith("stop:")) {
+                normalized = normalized.substring("stop:".length()).trim();
+                continue;
+            }
+            int colon = normalized.indexOf(':');
+            if (colon > 0 && colon < 6) {
+                normalized = normalized.substring(colon + 1).trim();
+                continue;
+            }
+            break;
+        }
+        normalized = normalized.replaceFirst("^\\d+#", "");
+        return normalized.replaceFirst("[_:]\\d+$", "");
+    }
+}
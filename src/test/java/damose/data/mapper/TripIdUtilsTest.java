@@ -93,6 +93,13 @@ class TripIdUtilsTest {
             assertEquals("test", TripIdUtils.normalizeSimple("...test..."));
         }
 
+        @ParameterizedTest
+        @ValueSource(strings = {"agency: TRIP:0#12#Ab_C-9.", "RM:1#x", "  7#  -A!B- ", "abcdef:1", "0#", "a:b:c", "#1"})
+        @DisplayName("should match the regex-based normalization")
+        void shouldMatchRegexNormalization(String input) {
+            assertEquals(regexNormalize(input), TripIdUtils.normalizeSimple(input));
+        }
+
         @Test
         @DisplayName("should preserve meaningful trailing digits")
         void shouldPreserveMeaningfulTrailingDigits() {
@@ -182,15 +189,32 @@ class TripIdUtilsTest {
             assertEquals("test123", TripIdUtils.normalizeOrEmpty("TEST123"));
         }
     }
-}
-
-
-
-
-
-
-
-
-
-
 
+    private static String regexNormalize(String raw) {
+        String s = raw.trim();
+        if (s.isEmpty()) return null;
+        while (true) {
+            String lower = s.toLowerCase();
+            if (lower.startsWith("agency:")) {
+                s = s.substring("agency:".length()).trim();
+                continue;
+            }
+            if (lower.startsWith("trip:")) {
+                s = s.substring("trip:".length()).trim();
+                continue;
+            }
+            int colon = s.indexOf(':');
+            if (colon > 0 && colon < 6) {
+                s = s.substring(colon + 1).trim();
+                continue;
+            }
+            break;
+        }
+        while (s.matches("^\\d+#.*")) {
+            s = s.replaceFirst("^\\d+#", "").trim();
+        }
+        s = s.trim().replaceAll("[^A-Za-z0-9_\\-\\.]", "");
+        s = s.replaceAll("^[\\-_.]+", "").replaceAll("[\\-_.]+$", "").toLowerCase();
+        return s.isEmpty() ? null : s;
+    }
+}
@@ -0,0 +1,64 @@
+package damose.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ShapeTable")
+class ShapeTableTest {
+
+    private ShapeTable table;
+
+    @BeforeEach
+    void setUp() {
+        table = ShapeTable.builder(8)
+            .startShape("SH1")
+            .addPoint(41.9009, 12.5016)
+            .addPoint(41.9009, 12.5016)
+            .addPoint(41.8986, 12.4769)
+            .endShape()
+            .startShape("SH2")
+            .addPoint(41.90, 12.50)
+            .endShape()
+            .startShape("SH3")
+            .addPoint(41.89, 12.49)
+            .addPoint(41.88, 12.48)
+            .addPoint(41.87, 12.47)
+            .build();
+    }
+
+    @Test
+    @DisplayName("should drop repeated points and shapes with fewer than two points")
+    void shouldPackValidShapes() {
+        assertEquals(2, table.size());
+        assertEquals(5, table.totalPoints());
+        assertEquals(2, table.pointCount("SH1"));
+        assertEquals(0, table.pointCount("SH2"));
+        assertEquals(3, table.pointCount("SH3"));
+    }
+
+    @Test
+    @DisplayName("should decode points from the packed view")
+    void shouldExposePolylineView() {
+        ShapeTable.Polyline shape = table.shape("SH1");
+
+        assertEquals(41.8986, shape.latitude(1), 1e-7);
+        assertEquals(12.4769, shape.longitude(1), 1e-7);
+        assertEquals(List.of(new GeoPosition(41.9009, 12.5016), new GeoPosition(41.8986, 12.4769)), shape);
+        assertThrows(IndexOutOfBoundsException.class, () -> shape.latitude(2));
+        assertThrows(UnsupportedOperationException.class, () -> shape.add(new GeoPosition(0, 0)));
+    }
+
+    @Test
+    @DisplayName("should return an empty view for unknown shapes")
+    void shouldHandleUnknownShape() {
+        assertTrue(table.shape("missing").isEmpty());
+        assertEquals(-1, table.codeOf("missing"));
+        assertTrue(ShapeTable.empty().isEmpty());
+    }
+}
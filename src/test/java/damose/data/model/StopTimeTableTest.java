@@ -0,0 +1,67 @@
+package damose.model;
+
+import damose.util.StringDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StopTimeTable")
+class StopTimeTableTest {
+
+    private StopTimeTable table;
+
+    @BeforeEach
+    void setUp() {
+        table = StopTimeTable.builder(new StringDictionary(), 4)
+            .add("T1", 8 * 3600 + 10 * 60, 8 * 3600 + 10 * 60, "S2", 2, "", 0, 0, 1.5, 1)
+            .add("T1", 8 * 3600, 8 * 3600, "S1", 1, "", 0, 0, 0, 1)
+            .add("T2", 25 * 3600 + 5 * 60, 25 * 3600 + 6 * 60, "S1", 1, "Termini", 1, 2, 0, 0)
+            .add("T2", StopTimeTable.NO_TIME, StopTimeTable.NO_TIME, "S3", 2, "", 0, 0, 0, 0)
+            .build();
+    }
+
+    @Test
+    @DisplayName("should share one dictionary code per distinct id")
+    void shouldShareIdCodes() {
+        assertEquals(table.stopCode(1), table.stopCode(2));
+        assertSame(table.stopId(1), table.stopId(2));
+        assertEquals("T2", table.tripId(3));
+    }
+
+    @Test
+    @DisplayName("should keep service-day seconds past midnight")
+    void shouldKeepSecondsPastMidnight() {
+        assertEquals(25 * 3600 + 5 * 60, table.arrivalSeconds(2));
+        assertEquals(LocalTime.of(1, 5), table.arrivalTime(2));
+        assertNull(table.arrivalTime(3));
+    }
+
+    @Test
+    @DisplayName("should index trip rows by stop sequence")
+    void shouldIndexTripRowsBySequence() {
+        assertArrayEquals(new int[] {1, 0}, table.rowsForTrip("T1"));
+        assertEquals(2, table.tripRowCount("T2"));
+        assertEquals(0, table.tripRowCount("UNKNOWN"));
+        assertArrayEquals(new int[0], table.rowsForTrip("S1"));
+    }
+
+    @Test
+    @DisplayName("should materialize rows equal to the original StopTime")
+    void shouldMaterializeRows() {
+        List<StopTime> rows = table.asList();
+
+        assertEquals(4, rows.size());
+        StopTime st = rows.get(2);
+        assertEquals("T2", st.getTripId());
+        assertEquals("S1", st.getStopId());
+        assertEquals("Termini", st.getStopHeadsign());
+        assertEquals(1, st.getPickupType());
+        assertEquals(2, st.getDropOffType());
+        assertEquals(LocalTime.of(1, 6), st.getDepartureTime());
+    }
+}
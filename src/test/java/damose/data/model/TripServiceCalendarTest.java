@@ -5,7 +5,9 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.BitSet;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -185,6 +187,62 @@ class TripServiceCalendarTest {
         }
     }
 
+    @Nested
+    @DisplayName("addWeeklyService()")
+    class AddWeeklyServiceTests {
+
+        private final int weekdays = TripServiceCalendar.ALL_WEEKDAYS
+                & ~TripServiceCalendar.weekdayBit(DayOfWeek.SATURDAY)
+                & ~TripServiceCalendar.weekdayBit(DayOfWeek.SUNDAY);
+
+        @Test
+        @DisplayName("should run only on selected weekdays within the range")
+        void shouldExpandWeekdayRange() {
+            calendar.addWeeklyService("FER", LocalDate.of(2024, 12, 2), LocalDate.of(2024, 12, 31), weekdays);
+
+            assertTrue(calendar.serviceRunsOnDate("FER", LocalDate.of(2024, 12, 2)));
+            assertTrue(calendar.serviceRunsOnDate("FER", LocalDate.of(2024, 12, 31)));
+            assertFalse(calendar.serviceRunsOnDate("FER", LocalDate.of(2024, 12, 7)));
+            assertFalse(calendar.serviceRunsOnDate("FER", LocalDate.of(2024, 12, 1)));
+            assertFalse(calendar.serviceRunsOnDate("FER", LocalDate.of(2025, 1, 1)));
+        }
+
+        @Test
+        @DisplayName("should apply calendar_dates exceptions on top of the weekly pattern")
+        void shouldApplyExceptions() {
+            calendar.addWeeklyService("FER", LocalDate.of(2024, 12, 2), LocalDate.of(2024, 12, 31), weekdays);
+            calendar.removeServiceDate("FER", LocalDate.of(2024, 12, 25));
+            calendar.addServiceDate("FER", LocalDate.of(2024, 11, 30));
+
+            assertFalse(calendar.serviceRunsOnDate("FER", LocalDate.of(2024, 12, 25)));
+            assertTrue(calendar.serviceRunsOnDate("FER", LocalDate.of(2024, 11, 30)));
+            assertTrue(calendar.serviceRunsOnDate("FER", LocalDate.of(2024, 12, 24)));
+        }
+
+        @Test
+        @DisplayName("should not count a range without matching weekdays")
+        void shouldIgnoreEmptyRange() {
+            calendar.addWeeklyService("SAB", LocalDate.of(2024, 12, 2), LocalDate.of(2024, 12, 4),
+                    TripServiceCalendar.weekdayBit(DayOfWeek.SATURDAY));
+
+            assertEquals(0, calendar.serviceCount());
+        }
+
+        @Test
+        @DisplayName("should list the services active on a date")
+        void shouldListActiveServices() {
+            calendar.addWeeklyService("FER", LocalDate.of(2024, 12, 2), LocalDate.of(2024, 12, 31), weekdays);
+            calendar.addServiceDate("FES", LocalDate.of(2024, 12, 8));
+
+            BitSet saturday = calendar.activeServices(LocalDate.of(2024, 12, 7));
+            BitSet sunday = calendar.activeServices(LocalDate.of(2024, 12, 8));
+
+            assertTrue(saturday.isEmpty());
+            assertTrue(sunday.get(calendar.serviceCode("FES")));
+            assertFalse(sunday.get(calendar.serviceCode("FER")));
+        }
+    }
+
     @Nested
     @DisplayName("Real-world Scenarios")
     class RealWorldScenarioTests {
@@ -0,0 +1,61 @@
+package damose.service;
+
+import damose.model.ConnectionMode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ArrivalBoardCache")
+class ArrivalBoardCacheTest {
+
+    private final ArrivalBoardCache cache = new ArrivalBoardCache(2);
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private List<String> board(String line) {
+        computations.incrementAndGet();
+        return List.of(line);
+    }
+
+    @Test
+    @DisplayName("should compute a board once per stop, mode, minute, feed minute and version")
+    void shouldReuseBoardWithinKey() {
+        ArrivalBoardCache.Key key = ArrivalBoardCache.Key.of("STOP_1", ConnectionMode.ONLINE, 600, 600, 3);
+
+        List<String> first = cache.get(key, () -> board("a"));
+        List<String> second = cache.get(ArrivalBoardCache.Key.of("STOP_1", ConnectionMode.ONLINE, 659, 630, 3),
+                () -> board("b"));
+
+        assertSame(first, second);
+        assertEquals(1, computations.get());
+        assertEquals(List.of("b"), cache.get(ArrivalBoardCache.Key.of("STOP_1", ConnectionMode.ONLINE, 660, 630, 3),
+                () -> board("b")));
+        assertEquals(List.of("c"), cache.get(ArrivalBoardCache.Key.of("STOP_1", ConnectionMode.ONLINE, 600, 600, 4),
+                () -> board("c")));
+        assertEquals(3, computations.get());
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used board and drop all on invalidation")
+    void shouldBoundAndInvalidate() {
+        ArrivalBoardCache.Key a = ArrivalBoardCache.Key.of("A", ConnectionMode.OFFLINE, 0, 0, 0);
+        ArrivalBoardCache.Key b = ArrivalBoardCache.Key.of("B", ConnectionMode.OFFLINE, 0, 0, 0);
+        ArrivalBoardCache.Key c = ArrivalBoardCache.Key.of("C", ConnectionMode.OFFLINE, 0, 0, 0);
+        cache.get(a, () -> board("a"));
+        cache.get(b, () -> board("b"));
+        cache.get(a, () -> board("a"));
+        cache.get(c, () -> board("c"));
+
+        assertEquals(2, cache.size());
+        cache.get(a, () -> board("a"));
+        assertEquals(3, computations.get());
+        cache.get(b, () -> board("b"));
+        assertEquals(4, computations.get());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+}
@@ -1,9 +1,13 @@
 package damose.service;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,9 +16,12 @@ import damose.data.mapper.StopTripMapper;
 import damose.data.mapper.TripMatcher;
 import damose.model.ConnectionMode;
 import damose.model.StopTime;
+import damose.model.StopTimeTable;
 import damose.model.Trip;
 import damose.model.TripServiceCalendar;
 import damose.model.TripUpdateRecord;
+import damose.util.ServiceDayClock;
+import damose.util.StringDictionary;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -63,4 +70,171 @@ class ArrivalServiceTest {
         assertTrue(tripsToday.get(1).contains("[-10 min]"));
         assertTrue(tripsToday.stream().noneMatch(s -> s.contains("[+14 min]")));
     }
+
+    @Test
+    @DisplayName("should match a realtime trip id written in another alias form")
+    void shouldMatchRealtimeTripAlias() {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now(zone);
+
+        Trip trip = new Trip("88", "SVC", "TRIP_8833", "MARLIANA", "88", 0, "S1");
+        TripMatcher matcher = new TripMatcher(List.of(trip));
+        StopTripMapper mapper = new StopTripMapper(List.of(new StopTime("TRIP_8833", LocalTime.of(8, 33),
+                LocalTime.of(8, 33), "STOP_1", 1, "", 0, 0, 0, 1)), matcher);
+        TripServiceCalendar calendar = new TripServiceCalendar();
+        calendar.addServiceDate("SVC", today);
+        ArrivalService service = new ArrivalService(matcher, mapper, calendar);
+
+        long feedTs = today.atTime(12, 0).atZone(zone).toEpochSecond();
+        long realtimeEpoch = today.atTime(8, 36).atZone(zone).toEpochSecond();
+        service.updateRealtimeArrivals(List.of(
+                new TripUpdateRecord("0#trip-8833", "OTHER", "STOP_1", realtimeEpoch)
+        ));
+
+        List<String> tripsToday = service.getAllTripsForStopToday("STOP_1", ConnectionMode.ONLINE, feedTs);
+
+        assertEquals(1, tripsToday.size());
+        assertTrue(tripsToday.get(0).contains("[+3 min]"));
+    }
+
+    @Test
+    @DisplayName("should list trips after midnight at the end of the service day")
+    void shouldKeepAfterMidnightTripsInServiceDayOrder() {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now(zone);
+
+        Trip late = new Trip("N1", "SVC", "TRIP_LATE", "NOTTURNO", "N1", 0, "S1");
+        Trip evening = new Trip("N1", "SVC", "TRIP_EVENING", "SERALE", "N1", 0, "S1");
+        TripMatcher matcher = new TripMatcher(List.of(late, evening));
+
+        StopTimeTable.Builder builder = StopTimeTable.builder(new StringDictionary(), 2);
+        builder.add("TRIP_LATE", 24 * 3600 + 30 * 60, 24 * 3600 + 30 * 60, "STOP_N", 1, "", 0, 0, 0, 1);
+        builder.add("TRIP_EVENING", 23 * 3600 + 50 * 60, 23 * 3600 + 50 * 60, "STOP_N", 1, "", 0, 0, 0, 1);
+        StopTripMapper mapper = new StopTripMapper(builder.build(), matcher);
+
+        TripServiceCalendar calendar = new TripServiceCalendar();
+        calendar.addServiceDate("SVC", today);
+        ArrivalService service = new ArrivalService(matcher, mapper, calendar);
+
+        long feedTs = today.atTime(12, 0).atZone(zone).toEpochSecond();
+        List<String> tripsToday = service.getAllTripsForStopToday("STOP_N", ConnectionMode.OFFLINE, feedTs);
+
+        assertEquals(2, tripsToday.size());
+        assertTrue(tripsToday.get(0).startsWith("23:50 | N1"));
+        assertTrue(tripsToday.get(1).startsWith("00:30 | N1"));
+    }
+
+    @Test
+    @DisplayName("should publish a new realtime tables version on every update, clears included")
+    void shouldVersionRealtimeTables() {
+        Trip trip = new Trip("88", "SVC", "TRIP_8833", "MARLIANA", "88", 0, "S1");
+        TripMatcher matcher = new TripMatcher(List.of(trip));
+        StopTripMapper mapper = new StopTripMapper(List.of(new StopTime("TRIP_8833", LocalTime.of(8, 33),
+                LocalTime.of(8, 33), "STOP_1", 1, "", 0, 0, 0, 1)), matcher);
+        ArrivalService service = new ArrivalService(matcher, mapper, new TripServiceCalendar());
+
+        long initial = service.realtimeArrivalsVersion();
+        service.updateRealtimeArrivals(List.of(new TripUpdateRecord("TRIP_8833", "88", "STOP_1", 1_000_000L)));
+        long updated = service.realtimeArrivalsVersion();
+        service.updateRealtimeArrivals(List.of());
+
+        assertTrue(updated > initial);
+        assertTrue(service.realtimeArrivalsVersion() > updated);
+    }
+
+    @Test
+    @DisplayName("should compute the boards of many stops in one call, in stop order")
+    void shouldComputeBoardsForManyStops() {
+        long now = Instant.now().getEpochSecond();
+        long todayOrigin = ServiceDayClock.systemDefault().windowFor(now).epochOf(ServiceDayClock.Window.TODAY, 0);
+        int nowSeconds = (int) (now - todayOrigin);
+
+        Trip trip64 = new Trip("64", "", "TRIP_64", "SAN PIETRO", "64", 0, "S1");
+        Trip trip75 = new Trip("75", "", "TRIP_75", "POLICLINICO", "75", 0, "S2");
+        TripMatcher matcher = new TripMatcher(List.of(trip64, trip75));
+
+        int stopCount = 40;
+        StopTimeTable.Builder builder = StopTimeTable.builder(new StringDictionary(), stopCount * 2);
+        List<String> stopIds = new ArrayList<>();
+        for (int i = 0; i < stopCount; i++) {
+            String stopId = "STOP_" + (stopCount - i);
+            stopIds.add(stopId);
+            int arrival = nowSeconds + 60 * (10 + i);
+            builder.add("TRIP_64", arrival, arrival, stopId, i, "", 0, 0, 0, 1);
+            if (i % 2 == 0) {
+                builder.add("TRIP_75", arrival + 60, arrival + 60, stopId, i, "", 0, 0, 0, 1);
+            }
+        }
+        StopTripMapper mapper = new StopTripMapper(builder.build(), matcher);
+        ArrivalService service = new ArrivalService(matcher, mapper, new TripServiceCalendar());
+        stopIds.add("UNKNOWN");
+
+        Map<String, List<RouteArrivalInfo>> boards = service.computeArrivalsForStops(stopIds, ConnectionMode.OFFLINE, now);
+
+        assertEquals(stopIds, List.copyOf(boards.keySet()));
+        assertTrue(boards.get("UNKNOWN").isEmpty());
+        for (int i = 0; i < stopCount; i++) {
+            List<RouteArrivalInfo> board = boards.get(stopIds.get(i));
+            assertEquals(i % 2 == 0 ? 2 : 1, board.size());
+            assertEquals("64", board.get(0).getRouteId());
+            assertEquals(todayOrigin + nowSeconds + 60L * (10 + i), board.get(0).getScheduledEpoch());
+            assertEquals(board.size(),
+                    service.computeArrivalsForStop(stopIds.get(i), ConnectionMode.OFFLINE, now).size());
+        }
+    }
+
+    @Test
+    @DisplayName("should push boards only for subscribed stops whose realtime arrivals changed")
+    void shouldPushOnlyChangedBoards() {
+        long now = Instant.now().getEpochSecond();
+        long todayOrigin = ServiceDayClock.systemDefault().windowFor(now).epochOf(ServiceDayClock.Window.TODAY, 0);
+        int arrival = (int) (now - todayOrigin) + 20 * 60;
+
+        Trip trip = new Trip("64", "", "TRIP_64", "SAN PIETRO", "64", 0, "S1");
+        TripMatcher matcher = new TripMatcher(List.of(trip));
+        StopTimeTable.Builder builder = StopTimeTable.builder(new StringDictionary(), 2);
+        builder.add("TRIP_64", arrival, arrival, "STOP_A", 1, "", 0, 0, 0, 1);
+        builder.add("TRIP_64", arrival + 300, arrival + 300, "STOP_B", 2, "", 0, 0, 0, 1);
+        ArrivalService service = new ArrivalService(
+                matcher, new StopTripMapper(builder.build(), matcher), new TripServiceCalendar());
+
+        List<String> pushed = new ArrayList<>();
+        BiConsumer<String, List<RouteArrivalInfo>> listener = (stopId, board) -> pushed.add(stopId);
+        service.addBoardListener(List.of("STOP_A", "STOP_B"), now, listener);
+        assertEquals(List.of("STOP_A", "STOP_B"), pushed);
+
+        pushed.clear();
+        long predicted = todayOrigin + arrival + 120;
+        service.updateRealtimeArrivals(List.of(new TripUpdateRecord("TRIP_64", "64", "STOP_A", predicted)), now);
+        assertEquals(List.of("STOP_A"), pushed);
+
+        pushed.clear();
+        service.updateRealtimeArrivals(List.of(new TripUpdateRecord("TRIP_64", "64", "STOP_A", predicted)), now);
+        assertTrue(pushed.isEmpty());
+
+        service.removeBoardListener(listener);
+        service.updateRealtimeArrivals(List.of(), now);
+        assertTrue(pushed.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should deliver current boards only when tables are newer than the shown ones")
+    void shouldSkipCurrentBoardsAlreadyShown() {
+        long now = Instant.now().getEpochSecond();
+        Trip trip = new Trip("64", "", "TRIP_64", "SAN PIETRO", "64", 0, "S1");
+        TripMatcher matcher = new TripMatcher(List.of(trip));
+        StopTimeTable.Builder builder = StopTimeTable.builder(new StringDictionary(), 1);
+        builder.add("TRIP_64", 8 * 3600, 8 * 3600, "STOP_A", 1, "", 0, 0, 0, 1);
+        ArrivalService service = new ArrivalService(
+                matcher, new StopTripMapper(builder.build(), matcher), new TripServiceCalendar());
+
+        List<String> pushed = new ArrayList<>();
+        long shown = service.realtimeArrivalsVersion();
+        service.addBoardListener(List.of("STOP_A"), now, shown, (stopId, board) -> pushed.add(stopId));
+        assertTrue(pushed.isEmpty());
+
+        service.updateRealtimeArrivals(List.of(), now);
+        service.addBoardListener(List.of("STOP_A"), now, shown, (stopId, board) -> pushed.add(stopId));
+        assertEquals(List.of("STOP_A"), pushed);
+    }
 }
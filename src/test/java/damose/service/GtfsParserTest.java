@@ -0,0 +1,194 @@
+package damose.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import damose.data.mapper.TripIdUtils;
+import damose.model.TripUpdateRecord;
+import damose.model.VehiclePosition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("GtfsParser")
+class GtfsParserTest {
+
+    private static GtfsRealtime.FeedMessage tripUpdatesFeed() {
+        GtfsRealtime.TripUpdate.Builder update = GtfsRealtime.TripUpdate.newBuilder()
+                .addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                        .setStopId("stop:70001")
+                        .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(1_700_000_100L)))
+                .addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                        .setStopId("70002")
+                        .setScheduleRelationship(
+                                GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SKIPPED)
+                        .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(1_700_000_200L)))
+                .addStopTimeUpdate(GtfsRealtime.TripUpdate.StopTimeUpdate.newBuilder()
+                        .setStopId("70003")
+                        .setDeparture(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setTime(1_700_000_300_000L)))
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("T1").setRouteId("64"));
+
+        return GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setTimestamp(1_700_000_000L))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("e1").setTripUpdate(update))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("e2")
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                                .setPosition(GtfsRealtime.Position.newBuilder().setLatitude(41.9f).setLongitude(12.5f))))
+                .build();
+    }
+
+    private static GtfsRealtime.FeedMessage vehiclePositionsFeed() {
+        return GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder().setGtfsRealtimeVersion("2.0"))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("v1")
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                                .setTrip(GtfsRealtime.TripDescriptor.newBuilder()
+                                        .setTripId("T1").setRouteId("64").setDirectionId(1))
+                                .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("BUS1"))
+                                .setPosition(GtfsRealtime.Position.newBuilder()
+                                        .setLatitude(41.9f).setLongitude(12.5f).setBearing(90f))
+                                .setCurrentStopSequence(4)
+                                .setStopId("70001")
+                                .setOccupancyStatus(GtfsRealtime.VehiclePosition.OccupancyStatus.FULL)
+                                .setOccupancyPercentage(95)))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("v2")
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                                .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("BUS2"))))
+                .addEntity(GtfsRealtime.FeedEntity.newBuilder().setId("v3")
+                        .setVehicle(GtfsRealtime.VehiclePosition.newBuilder()
+                                .setVehicle(GtfsRealtime.VehicleDescriptor.newBuilder().setId("BUS3"))
+                                .setPosition(GtfsRealtime.Position.newBuilder().setLatitude(0f).setLongitude(0f))))
+                .build();
+    }
+
+    /**
+     * Reference trip update parse through the generated FeedMessage API, which the streaming decoder must match.
+     */
+    private static List<TripUpdateRecord> referenceTripUpdates(GtfsRealtime.FeedMessage feed) {
+        List<TripUpdateRecord> updates = new ArrayList<>();
+        for (GtfsRealtime.FeedEntity entity : feed.getEntityList()) {
+            if (!entity.hasTripUpdate()) continue;
+
+            GtfsRealtime.TripUpdate tu = entity.getTripUpdate();
+            String rawTripId = (tu.hasTrip() && tu.getTrip().hasTripId()) ? tu.getTrip().getTripId() : null;
+            String rawRouteId = (tu.hasTrip() && tu.getTrip().hasRouteId()) ? tu.getTrip().getRouteId() : null;
+            String simple = TripIdUtils.normalizeSimple(rawTripId);
+
+            for (GtfsRealtime.TripUpdate.StopTimeUpdate stu : tu.getStopTimeUpdateList()) {
+                GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship rel = stu.getScheduleRelationship();
+                if (stu.hasScheduleRelationship()
+                        && (rel == GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SKIPPED
+                        || rel == GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.NO_DATA)) {
+                    continue;
+                }
+
+                long rawTime = -1;
+                if (stu.hasArrival() && stu.getArrival().hasTime()) {
+                    rawTime = stu.getArrival().getTime();
+                } else if (stu.hasDeparture() && stu.getDeparture().hasTime()) {
+                    rawTime = stu.getDeparture().getTime();
+                }
+
+                TripUpdateRecord record = GtfsParser.toTripUpdateRecord(
+                        rawTripId, simple, rawRouteId,
+                        stu.hasStopId() ? stu.getStopId() : null,
+                        stu.hasStopSequence() ? stu.getStopSequence() : -1,
+                        rawTime, null);
+                if (record != null) {
+                    updates.add(record);
+                }
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Reference vehicle position parse through the generated FeedMessage API, which the streaming decoder must match.
+     */
+    private static List<VehiclePosition> referenceVehiclePositions(GtfsRealtime.FeedMessage feed) {
+        List<VehiclePosition> positions = new ArrayList<>();
+        for (GtfsRealtime.FeedEntity entity : feed.getEntityList()) {
+            if (!entity.hasVehicle() || !entity.getVehicle().hasPosition()) continue;
+
+            GtfsRealtime.VehiclePosition vehicle = entity.getVehicle();
+            GtfsRealtime.TripDescriptor trip = vehicle.getTrip();
+            VehiclePosition position = GtfsParser.toVehiclePosition(
+                    vehicle.hasTrip() && trip.hasTripId() ? trip.getTripId() : null,
+                    vehicle.hasVehicle() && vehicle.getVehicle().hasId() ? vehicle.getVehicle().getId() : null,
+                    vehicle.getPosition().getLatitude(),
+                    vehicle.getPosition().getLongitude(),
+                    vehicle.hasCurrentStopSequence() ? vehicle.getCurrentStopSequence() : -1,
+                    vehicle.hasTrip() && trip.hasRouteId() ? trip.getRouteId() : null,
+                    vehicle.hasTrip() && trip.hasDirectionId() ? trip.getDirectionId() : -1,
+                    GtfsParser.occupancyInfo(vehicle.hasOccupancyStatus() ? vehicle.getOccupancyStatus() : null),
+                    vehicle.hasOccupancyPercentage() ? vehicle.getOccupancyPercentage() : -1,
+                    vehicle.hasStopId() ? vehicle.getStopId() : null,
+                    vehicle.hasTimestamp() ? vehicle.getTimestamp() : -1);
+            if (position != null) {
+                positions.add(position);
+            }
+        }
+        return positions;
+    }
+
+    @Nested
+    @DisplayName("Streaming decoder")
+    class StreamingDecoderTests {
+
+        @Test
+        @DisplayName("should decode the same trip updates as the FeedMessage parser")
+        void shouldMatchFeedMessageTripUpdates() {
+            GtfsRealtime.FeedMessage feed = tripUpdatesFeed();
+
+            List<TripUpdateRecord> expected = referenceTripUpdates(feed);
+            List<TripUpdateRecord> decoded = GtfsParser.parseTripUpdates(feed.toByteArray(), null);
+
+            assertEquals(2, decoded.size());
+            assertEquals(expected.toString(), decoded.toString());
+            assertEquals("70001", decoded.get(0).getStopId());
+            assertEquals(1_700_000_300L, decoded.get(1).getArrivalEpochSeconds());
+        }
+
+        @Test
+        @DisplayName("should decode the same vehicle positions as the FeedMessage parser")
+        void shouldMatchFeedMessageVehiclePositions() {
+            GtfsRealtime.FeedMessage feed = vehiclePositionsFeed();
+
+            List<VehiclePosition> expected = referenceVehiclePositions(feed);
+            List<VehiclePosition> decoded = GtfsParser.parseVehiclePositions(feed.toByteArray());
+
+            assertEquals(1, decoded.size());
+            assertEquals(expected.toString(), decoded.toString());
+            VehiclePosition vehicle = decoded.get(0);
+            assertEquals("BUS1", vehicle.getVehicleId());
+            assertEquals(1, vehicle.getDirectionId());
+            assertEquals(95, vehicle.getOccupancyPercentage());
+            assertEquals("70001", vehicle.getCurrentStopId());
+        }
+
+        @Test
+        @DisplayName("should read the header timestamp")
+        void shouldReadHeaderTimestamp() throws Exception {
+            assertEquals(1_700_000_000L,
+                    GtfsParser.parseHeaderTimestamp(tripUpdatesFeed().toByteArray(), -1));
+            assertEquals(-1, GtfsParser.parseHeaderTimestamp(vehiclePositionsFeed().toByteArray(), -1));
+        }
+
+        @Test
+        @DisplayName("should return no records for a truncated payload")
+        void shouldRejectTruncatedPayload() {
+            byte[] feed = tripUpdatesFeed().toByteArray();
+            byte[] truncated = Arrays.copyOf(feed, feed.length - 5);
+
+            assertTrue(GtfsParser.parseTripUpdates(truncated, null).isEmpty());
+            assertThrows(IOException.class, () -> GtfsParser.parseHeaderTimestamp(truncated, -1));
+        }
+    }
+}
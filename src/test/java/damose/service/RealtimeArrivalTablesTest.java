@@ -0,0 +1,59 @@
+package damose.service;
+
+import damose.data.mapper.GtfsIdDictionary;
+import damose.data.mapper.TripMatcher;
+import damose.model.StopTimeTable;
+import damose.model.Trip;
+import damose.model.TripUpdateRecord;
+import damose.util.StringDictionary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RealtimeArrivalTables")
+class RealtimeArrivalTablesTest {
+
+    private final GtfsIdDictionary ids = buildIds();
+
+    private static GtfsIdDictionary buildIds() {
+        TripMatcher matcher = new TripMatcher(List.of(new Trip("64", "SVC", "TRIP_8833", "A", "64", 0, "S1")));
+        StopTimeTable.Builder builder = StopTimeTable.builder(new StringDictionary(), 1);
+        builder.add("TRIP_8833", 3600, 3600, "70001", 1, "", 0, 0, 0, 1);
+        return GtfsIdDictionary.build(builder.build(), matcher);
+    }
+
+    @Test
+    @DisplayName("should index updates in the window by trip, route and feed trip key")
+    void shouldIndexUpdatesInWindow() {
+        RealtimeArrivalTables tables = RealtimeArrivalTables.build(7, List.of(
+                new TripUpdateRecord("0#trip-8833", "64", "IT:70001", 1_500L),
+                new TripUpdateRecord("0#trip-8833", "64", "IT:70001", 1_200L),
+                new TripUpdateRecord("OTHER", "64", "70001", 1_900L),
+                new TripUpdateRecord("LATE", "64", "70001", 9_000L)
+        ), ids, 1_000L, 2_000L, 12);
+
+        int trip = ids.tripCode("TRIP_8833");
+        int stop = ids.stopCode("70001");
+        assertEquals(7, tables.version());
+        assertEquals(1_200L, tables.arrivalByTripStop(trip, stop));
+        assertArrayEquals(new long[]{1_200L, 1_500L, 1_900L}, tables.arrivalsByRouteStop(ids.routeCode("64"), stop));
+        assertEquals(List.of("other"), tables.tripKeysContainingAny(Set.of("other")));
+        assertNull(tables.arrivalsByTripKey("late"));
+    }
+
+    @Test
+    @DisplayName("should pick the closest epoch, the earlier one on ties")
+    void shouldPickClosestEpoch() {
+        long[] epochs = {100, 200, 300};
+
+        assertNull(RealtimeArrivalTables.closestEpoch(new long[0], 150));
+        assertEquals(100L, RealtimeArrivalTables.closestEpoch(epochs, 10));
+        assertEquals(100L, RealtimeArrivalTables.closestEpoch(epochs, 150));
+        assertEquals(200L, RealtimeArrivalTables.closestEpoch(epochs, 151));
+        assertEquals(300L, RealtimeArrivalTables.closestEpoch(epochs, 999));
+    }
+}
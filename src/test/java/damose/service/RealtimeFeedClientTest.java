@@ -0,0 +1,130 @@
+package damose.service;
+
+import com.google.transit.realtime.GtfsRealtime;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RealtimeFeedClient")
+class RealtimeFeedClientTest {
+
+    private final Deque<Reply> replies = new ArrayDeque<>();
+    private final List<String> sentEtags = new ArrayList<>();
+    private HttpServer server;
+    private String url;
+    private RealtimeFeedClient client;
+    private RealtimeFeedState feed;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/feed", exchange -> {
+            sentEtags.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+            Reply reply = replies.poll();
+            reply.headers().forEach((name, value) -> exchange.getResponseHeaders().add(name, value));
+            if (reply.body() == null) {
+                exchange.sendResponseHeaders(reply.status(), -1);
+            } else {
+                exchange.sendResponseHeaders(reply.status(), reply.body().length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(reply.body());
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/feed";
+        client = new RealtimeFeedClient(HttpClient.newHttpClient());
+        feed = new RealtimeFeedState("TripUpdates", url, client);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private boolean poll() {
+        return feed.accept(client.fetch(url).join());
+    }
+
+    private static byte[] feedBody(long timestamp) {
+        return GtfsRealtime.FeedMessage.newBuilder()
+                .setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                        .setGtfsRealtimeVersion("2.0")
+                        .setTimestamp(timestamp))
+                .build()
+                .toByteArray();
+    }
+
+    @Test
+    @DisplayName("should keep the payload and its version on a 304")
+    void shouldKeepPayloadOnNotModified() {
+        byte[] body = feedBody(100);
+        replies.add(new Reply(200, body, Map.of("ETag", "\"v1\"")));
+        replies.add(new Reply(304, null, Map.of()));
+
+        assertTrue(poll());
+        long version = feed.payload().version();
+        assertTrue(poll());
+
+        assertEquals(version, feed.payload().version());
+        assertArrayEquals(body, feed.payload().body());
+        assertEquals(100, feed.payload().headerTimestamp());
+        assertEquals(Arrays.asList(null, "\"v1\""), sentEtags);
+    }
+
+    @Test
+    @DisplayName("should keep the version for an identical body and remember its new validators")
+    void shouldKeepVersionForIdenticalBody() {
+        replies.add(new Reply(200, feedBody(100), Map.of("ETag", "\"v1\"")));
+        replies.add(new Reply(200, feedBody(100), Map.of("ETag", "\"v2\"")));
+        replies.add(new Reply(304, null, Map.of()));
+
+        assertTrue(poll());
+        long version = feed.payload().version();
+        assertTrue(poll());
+        assertTrue(poll());
+
+        assertEquals(version, feed.payload().version());
+        assertEquals("\"v2\"", sentEtags.get(2));
+    }
+
+    @Test
+    @DisplayName("should forget validators when a body fails to inflate")
+    void shouldForgetValidatorsOnFailedDecode() {
+        byte[] body = feedBody(100);
+        replies.add(new Reply(200, body, Map.of("ETag", "\"v1\"")));
+        replies.add(new Reply(200, new byte[]{1, 2, 3}, Map.of("ETag", "\"v2\"", "Content-Encoding", "gzip")));
+        replies.add(new Reply(200, feedBody(200), Map.of("ETag", "\"v3\"")));
+
+        assertTrue(poll());
+        long version = feed.payload().version();
+        assertThrows(CompletionException.class, () -> client.fetch(url).join());
+        assertArrayEquals(body, feed.payload().body());
+        assertTrue(poll());
+
+        assertNull(sentEtags.get(2));
+        assertEquals(version + 1, feed.payload().version());
+        assertEquals(200, feed.payload().headerTimestamp());
+    }
+
+    private record Reply(int status, byte[] body, Map<String, String> headers) {
+    }
+}
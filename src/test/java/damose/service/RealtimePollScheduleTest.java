@@ -0,0 +1,91 @@
+package damose.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RealtimePollSchedule")
+class RealtimePollScheduleTest {
+
+    private static final long HEADER_TS = 1_700_000_000L;
+
+    private static RealtimePollSchedule schedule(long jitterValue) {
+        return new RealtimePollSchedule(30_000, 5_000, 60_000, bound -> Math.min(jitterValue, bound - 1));
+    }
+
+    @Nested
+    @DisplayName("After success")
+    class SuccessTests {
+
+        @Test
+        @DisplayName("should use the default interval until the cadence is known")
+        void shouldUseDefaultIntervalFirst() {
+            RealtimePollSchedule schedule = schedule(0);
+
+            assertEquals(30_000, schedule.onSuccess(Long.MIN_VALUE, 0));
+            assertEquals(30_000, schedule.onSuccess(HEADER_TS, HEADER_TS * 1000 + 2_000));
+            assertEquals(0, schedule.cadenceMillis());
+        }
+
+        @Test
+        @DisplayName("should aim just after the next expected publication")
+        void shouldAlignToHeaderCadence() {
+            RealtimePollSchedule schedule = schedule(0);
+            schedule.onSuccess(HEADER_TS, HEADER_TS * 1000 + 2_000);
+
+            long delay = schedule.onSuccess(HEADER_TS + 20, (HEADER_TS + 20) * 1000 + 4_000);
+
+            assertEquals(20_000, schedule.cadenceMillis());
+            assertEquals(20_000 + 2_000 + 1_000 - 4_000, delay);
+        }
+
+        @Test
+        @DisplayName("should retry at the minimum interval when a publication is overdue")
+        void shouldRetrySoonWhenOverdue() {
+            RealtimePollSchedule schedule = schedule(0);
+            schedule.onSuccess(HEADER_TS, HEADER_TS * 1000);
+            schedule.onSuccess(HEADER_TS + 20, (HEADER_TS + 20) * 1000);
+
+            assertEquals(5_000, schedule.onSuccess(HEADER_TS + 20, (HEADER_TS + 45) * 1000));
+        }
+    }
+
+    @Nested
+    @DisplayName("After failure")
+    class FailureTests {
+
+        @Test
+        @DisplayName("should back off exponentially up to the maximum")
+        void shouldBackOffExponentially() {
+            RealtimePollSchedule schedule = schedule(0);
+
+            assertEquals(2_500, schedule.onFailure());
+            assertEquals(5_000, schedule.onFailure());
+            assertEquals(10_000, schedule.onFailure());
+            assertEquals(20_000, schedule.onFailure());
+            assertEquals(30_000, schedule.onFailure());
+            assertEquals(30_000, schedule.onFailure());
+        }
+
+        @Test
+        @DisplayName("should add jitter to the upper half of the backoff")
+        void shouldAddJitter() {
+            RealtimePollSchedule schedule = schedule(1_000_000);
+
+            assertEquals(4_999, schedule.onFailure());
+        }
+
+        @Test
+        @DisplayName("should reset the backoff after a success")
+        void shouldResetAfterSuccess() {
+            RealtimePollSchedule schedule = schedule(0);
+            schedule.onFailure();
+            schedule.onFailure();
+            schedule.onSuccess(Long.MIN_VALUE, 0);
+
+            assertEquals(2_500, schedule.onFailure());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package damose.service;
+
+import damose.model.TripUpdateRecord;
+import damose.model.VehiclePosition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RealtimeSnapshot")
+class RealtimeSnapshotTest {
+
+    private static final GeoPosition ROME = new GeoPosition(41.9, 12.5);
+
+    @Nested
+    @DisplayName("Trip updates")
+    class TripUpdateTests {
+
+        private final RealtimeSnapshot snapshot = RealtimeSnapshot.empty().withTripUpdates(3, 1_700_000_000L, List.of(
+                new TripUpdateRecord("0#1-A.B", "64", "70001", 100),
+                new TripUpdateRecord("0#1-A.B", "64", "70002", 200),
+                new TripUpdateRecord("T2", "75", "70001", 300)
+        ));
+
+        @Test
+        @DisplayName("should find updates through any trip id variant")
+        void shouldFindUpdatesByTripVariant() {
+            assertEquals(2, snapshot.tripUpdatesForTrip("1_A_B").size());
+            assertEquals(2, snapshot.tripUpdatesForTrip("1-A.B").size());
+            assertTrue(snapshot.tripUpdatesForTrip("missing").isEmpty());
+        }
+
+        @Test
+        @DisplayName("should index updates by stop and route")
+        void shouldIndexByStopAndRoute() {
+            assertEquals(2, snapshot.tripUpdatesForStop("70001").size());
+            assertEquals(1, snapshot.tripUpdatesForRoute(" 75 ").size());
+        }
+
+        @Test
+        @DisplayName("should keep trip updates when vehicles change")
+        void shouldKeepTripUpdatesWhenVehiclesChange() {
+            RealtimeSnapshot next = snapshot.withVehiclePositions(7, List.of());
+
+            assertEquals(snapshot.version() + 1, next.version());
+            assertEquals(3, next.tripUpdatesVersion());
+            assertEquals(7, next.vehiclePositionsVersion());
+            assertSame(snapshot.tripUpdates(), next.tripUpdates());
+            assertEquals(1_700_000_000L, next.feedTimestamp());
+        }
+    }
+
+    @Nested
+    @DisplayName("Vehicles")
+    class VehicleTests {
+
+        private final RealtimeSnapshot snapshot = RealtimeSnapshot.ofVehicles(List.of(
+                new VehiclePosition("T1", "BUS1", ROME, 1, "64", 0),
+                new VehiclePosition("T1", "BUS1", ROME, 2, "64", 0),
+                new VehiclePosition("T2", null, ROME, 1, "75", 1),
+                new VehiclePosition(null, null, ROME, 1),
+                new VehiclePosition("T3", "BUS3", null, 1)
+        ));
+
+        @Test
+        @DisplayName("should drop positions without coordinates")
+        void shouldDropPositionsWithoutCoordinates() {
+            assertEquals(4, snapshot.vehicles().size());
+        }
+
+        @Test
+        @DisplayName("should keep the first position of each vehicle")
+        void shouldKeepFirstPositionPerVehicle() {
+            List<VehiclePosition> unique = snapshot.uniqueVehicles();
+
+            assertEquals(3, unique.size());
+            assertEquals(1, unique.get(0).getStopSequence());
+        }
+
+        @Test
+        @DisplayName("should look up vehicles by marker id ignoring case")
+        void shouldLookUpByMarkerId() {
+            assertEquals(2, snapshot.vehiclesByMarkerId("bus1").size());
+            assertEquals(1, snapshot.vehiclesByMarkerId("T2").size());
+            assertEquals(1, snapshot.vehiclesByMarkerId("unknown").size());
+            assertEquals(1, snapshot.vehiclesForRoute("75").size());
+            assertEquals(2, snapshot.vehiclesForTrip("T1").size());
+        }
+    }
+}
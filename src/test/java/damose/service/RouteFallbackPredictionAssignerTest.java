@@ -0,0 +1,108 @@
+package damose.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RouteFallbackPredictionAssigner")
+class RouteFallbackPredictionAssignerTest {
+
+    private static final long MAX_DIFF = 30 * 60;
+
+    private final RouteFallbackPredictionAssigner assigner = new RouteFallbackPredictionAssigner(null, MAX_DIFF);
+
+    @Test
+    @DisplayName("should give each epoch to at most one trip, closest pairs first")
+    void shouldAssignClosestPairsFirst() {
+        List<TripArrivalInfo> trips = trips(1_000, 1_600, 1_700, 9_000);
+
+        assigner.assignClosestRouteFallback(trips, new long[]{1_680, 2_000});
+
+        assertNull(trips.get(0).predictedEpoch);
+        assertEquals(2_000L, trips.get(1).predictedEpoch);
+        assertEquals(1_680L, trips.get(2).predictedEpoch);
+        assertNull(trips.get(3).predictedEpoch);
+    }
+
+    @Test
+    @DisplayName("should give trips with the same scheduled time epochs in list order")
+    void shouldAssignTiedTripsInOrder() {
+        List<TripArrivalInfo> trips = trips(1_000, 1_000, 1_000);
+
+        assigner.assignClosestRouteFallback(trips, new long[]{900, 1_100});
+
+        assertEquals(900L, trips.get(0).predictedEpoch);
+        assertEquals(1_100L, trips.get(1).predictedEpoch);
+        assertNull(trips.get(2).predictedEpoch);
+    }
+
+    @Test
+    @DisplayName("should match the pairwise greedy assignment on random boards")
+    void shouldMatchPairwiseGreedy() {
+        Random random = new Random(42);
+        for (int round = 0; round < 2_000; round++) {
+            List<TripArrivalInfo> trips = new ArrayList<>();
+            int tripCount = random.nextInt(15);
+            for (int i = 0; i < tripCount; i++) {
+                trips.add(trip(random.nextInt(40) * 300L));
+            }
+            trips.sort((a, b) -> Long.compare(a.scheduledEpoch, b.scheduledEpoch));
+            long[] epochs = random.longs(random.nextInt(13), 0, 12_000).sorted().distinct().toArray();
+
+            List<TripArrivalInfo> expected = copy(trips);
+            pairwiseGreedy(expected, epochs);
+            assigner.assignClosestRouteFallback(trips, epochs);
+
+            for (int i = 0; i < trips.size(); i++) {
+                assertEquals(expected.get(i).predictedEpoch, trips.get(i).predictedEpoch,
+                        "round " + round + " trip " + i + " epochs " + Arrays.toString(epochs));
+            }
+        }
+    }
+
+    private static void pairwiseGreedy(List<TripArrivalInfo> unresolvedTrips, long[] epochs) {
+        List<TripArrivalInfo> pendingTrips = new ArrayList<>(unresolvedTrips);
+        List<Long> pendingEpochs = new ArrayList<>();
+        for (long epoch : epochs) pendingEpochs.add(epoch);
+
+        while (!pendingTrips.isEmpty() && !pendingEpochs.isEmpty()) {
+            int bestTrip = -1;
+            int bestEpoch = -1;
+            long bestDiff = Long.MAX_VALUE;
+            for (int i = 0; i < pendingTrips.size(); i++) {
+                for (int j = 0; j < pendingEpochs.size(); j++) {
+                    long diff = Math.abs(pendingEpochs.get(j) - pendingTrips.get(i).scheduledEpoch);
+                    if (diff < bestDiff) {
+                        bestDiff = diff;
+                        bestTrip = i;
+                        bestEpoch = j;
+                    }
+                }
+            }
+            if (bestDiff > MAX_DIFF) break;
+            pendingTrips.remove(bestTrip).predictedEpoch = pendingEpochs.remove(bestEpoch);
+        }
+    }
+
+    private static List<TripArrivalInfo> trips(long... scheduled) {
+        List<TripArrivalInfo> out = new ArrayList<>();
+        for (long epoch : scheduled) out.add(trip(epoch));
+        return out;
+    }
+
+    private static List<TripArrivalInfo> copy(List<TripArrivalInfo> trips) {
+        List<TripArrivalInfo> out = new ArrayList<>();
+        for (TripArrivalInfo info : trips) out.add(trip(info.scheduledEpoch));
+        return out;
+    }
+
+    private static TripArrivalInfo trip(long scheduledEpoch) {
+        return new TripArrivalInfo("88", "", null, scheduledEpoch, null);
+    }
+}
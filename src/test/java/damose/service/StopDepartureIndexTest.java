@@ -0,0 +1,62 @@
+package damose.service;
+
+import damose.model.StopTimeTable;
+import damose.util.ServiceDayClock;
+import damose.util.StringDictionary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StopDepartureIndex")
+class StopDepartureIndexTest {
+
+    private final StopTimeTable table = buildTable();
+    private final StopDepartureIndex index = StopDepartureIndex.build(table);
+
+    private static StopTimeTable buildTable() {
+        StopTimeTable.Builder builder = StopTimeTable.builder(new StringDictionary(), 6);
+        builder.add("T1", 9 * 3600, 9 * 3600, "STOP_A", 1, "", 0, 0, 0, 1);
+        builder.add("T2", 8 * 3600, 8 * 3600, "STOP_A", 1, "", 0, 0, 0, 1);
+        builder.add("T3", 25 * 3600, 25 * 3600, "STOP_A", 1, "", 0, 0, 0, 1);
+        builder.add("T4", StopTimeTable.NO_TIME, StopTimeTable.NO_TIME, "STOP_A", 2, "", 0, 0, 0, 1);
+        builder.add("T1", 9 * 3600 + 300, 9 * 3600 + 300, "STOP_B", 2, "", 0, 0, 0, 1);
+        builder.add("T4", StopTimeTable.NO_TIME, StopTimeTable.NO_TIME, "STOP_C", 1, "", 0, 0, 0, 1);
+        return builder.build();
+    }
+
+    @Test
+    @DisplayName("should return the stop's rows in a range of service-day seconds, by arrival")
+    void shouldSliceByServiceSeconds() {
+        assertArrayEquals(new int[]{1, 0}, index.rowsBetween("STOP_A", 8 * 3600, 9 * 3600));
+        assertArrayEquals(new int[]{0, 2}, index.rowsBetween("STOP_A", 8 * 3600 + 1, 26 * 3600));
+        assertArrayEquals(new int[]{4}, index.rowsBetween("STOP_B", 0, 30 * 3600));
+        assertEquals(0, index.rowsBetween("STOP_A", 10 * 3600, 20 * 3600).length);
+        assertEquals(0, index.rowsBetween("UNKNOWN", 0, 30 * 3600).length);
+    }
+
+    @Test
+    @DisplayName("should leave out rows without an arrival time")
+    void shouldSkipUnknownTimes() {
+        assertTrue(index.hasDepartures("STOP_A"));
+        assertFalse(index.hasDepartures("STOP_C"));
+        assertFalse(index.hasDepartures("UNKNOWN"));
+        assertEquals(0, index.rowsBetween("STOP_C", Long.MIN_VALUE, Long.MAX_VALUE).length);
+    }
+
+    @Test
+    @DisplayName("should find yesterday's after-midnight departures by epoch")
+    void shouldSliceByEpochAcrossServiceDays() {
+        LocalDate today = LocalDate.of(2026, 3, 10);
+        ServiceDayClock clock = new ServiceDayClock(ZoneOffset.UTC);
+        ServiceDayClock.Window window = clock.windowFor(today.atTime(12, 0).toEpochSecond(ZoneOffset.UTC));
+        long oneAm = today.atTime(1, 0).toEpochSecond(ZoneOffset.UTC);
+        long eightAm = today.atTime(8, 0).toEpochSecond(ZoneOffset.UTC);
+
+        assertArrayEquals(new int[]{2}, index.rowsBetweenEpochs("STOP_A", window, oneAm - 60, oneAm + 60));
+        assertArrayEquals(new int[]{1, 0}, index.rowsBetweenEpochs("STOP_A", window, eightAm, eightAm + 3600));
+    }
+}
@@ -0,0 +1,40 @@
+package damose.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SubstringIndex")
+class SubstringIndexTest {
+
+    private final SubstringIndex index = SubstringIndex.build(List.of(
+            "1234-a-feriale", "98765", "x1234", "abab", "64"
+    ));
+
+    @Test
+    @DisplayName("should find every string containing the needle, in indexing order")
+    void shouldFindContainingStrings() {
+        assertEquals(List.of("1234-a-feriale", "x1234"), index.containingAny(Set.of("1234")));
+        assertEquals(List.of("abab"), index.containingAny(Set.of("bab")));
+        assertTrue(index.containingAny(Set.of("12345")).isEmpty());
+    }
+
+    @Test
+    @DisplayName("should scan for needles shorter than a trigram")
+    void shouldHandleShortNeedles() {
+        assertEquals(List.of("64"), index.containingAny(Set.of("64")));
+        assertEquals(List.of("98765", "abab"), index.containingAny(Set.of("ba", "9")));
+    }
+
+    @Test
+    @DisplayName("should report each string once across needles")
+    void shouldMergeNeedles() {
+        assertEquals(List.of("1234-a-feriale", "98765", "x1234"),
+                index.containingAny(List.of("x12", "8765", "feriale", "234")));
+        assertTrue(SubstringIndex.empty().containingAny(Set.of("1234")).isEmpty());
+    }
+}
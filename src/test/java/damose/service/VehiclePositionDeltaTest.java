@@ -0,0 +1,67 @@
+package damose.service;
+
+import damose.model.VehiclePosition;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("VehiclePositionDelta")
+class VehiclePositionDeltaTest {
+
+    private static VehiclePosition vehicle(String id, double lat, long timestamp) {
+        return new VehiclePosition("T-" + id, id, new GeoPosition(lat, 12.5), 1, "64", 0,
+                null, -1, null, timestamp);
+    }
+
+    @Test
+    @DisplayName("should report every vehicle as added without a base")
+    void shouldAddEverythingWithoutBase() {
+        RealtimeSnapshot snapshot = RealtimeSnapshot.ofVehicles(List.of(vehicle("A", 41.9, 100)));
+
+        VehiclePositionDelta delta = VehiclePositionDelta.between(null, snapshot);
+
+        assertEquals(1, delta.added().size());
+        assertTrue(delta.moved().isEmpty());
+        assertNull(delta.base());
+        assertFalse(delta.isEmpty());
+    }
+
+    @Test
+    @DisplayName("should split vehicles into added, moved, removed and unchanged")
+    void shouldClassifyVehicles() {
+        RealtimeSnapshot before = RealtimeSnapshot.ofVehicles(List.of(
+                vehicle("A", 41.90, 100),
+                vehicle("B", 41.91, 100),
+                vehicle("C", 41.92, 100)
+        ));
+        RealtimeSnapshot after = before.withVehiclePositions(2, List.of(
+                vehicle("A", 41.90, 100),
+                vehicle("B", 41.95, 130),
+                vehicle("D", 41.93, 130)
+        ));
+
+        VehiclePositionDelta delta = VehiclePositionDelta.between(before, after);
+
+        assertEquals(List.of("D"), List.copyOf(delta.added().keySet()));
+        assertEquals(List.of("B"), List.copyOf(delta.moved().keySet()));
+        assertEquals(List.of("C"), List.copyOf(delta.removed().keySet()));
+        assertEquals(List.of("A"), List.copyOf(delta.unchanged().keySet()));
+        assertSame(after.vehicles().get(0), delta.unchanged().get("A"));
+    }
+
+    @Test
+    @DisplayName("should be empty when every vehicle repeats its last report")
+    void shouldBeEmptyForRepeatedReports() {
+        RealtimeSnapshot before = RealtimeSnapshot.ofVehicles(List.of(vehicle("A", 41.9, 100)));
+        RealtimeSnapshot after = before.withVehiclePositions(2, List.of(vehicle("A", 41.9, 100)));
+
+        VehiclePositionDelta delta = VehiclePositionDelta.between(before, after);
+
+        assertTrue(delta.isEmpty());
+        assertFalse(delta.anyChanged(vp -> true));
+    }
+}
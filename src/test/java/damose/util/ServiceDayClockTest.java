@@ -0,0 +1,51 @@
+package damose.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@DisplayName("ServiceDayClock")
+class ServiceDayClockTest {
+
+    private final ServiceDayClock clock = new ServiceDayClock(ZoneId.of("Europe/Rome"));
+
+    @Test
+    @DisplayName("should count service-day time from noon minus 12h, also on DST days")
+    void shouldUseNoonMinusTwelveHours() {
+        assertEquals(Instant.parse("2026-03-01T23:00:00Z").getEpochSecond(),
+                clock.originOf(LocalDate.of(2026, 3, 2)));
+        assertEquals(Instant.parse("2026-03-28T22:00:00Z").getEpochSecond(),
+                clock.originOf(LocalDate.of(2026, 3, 29)));
+    }
+
+    @Test
+    @DisplayName("should place times past 24:00 on the previous service day")
+    void shouldResolveAfterMidnightTimes() {
+        long feedTs = Instant.parse("2026-03-03T00:05:00Z").getEpochSecond();
+        ServiceDayClock.Window window = clock.windowFor(feedTs);
+
+        assertEquals(LocalDate.of(2026, 3, 3), window.feedDate());
+        assertEquals(Instant.parse("2026-03-03T00:10:00Z").getEpochSecond(),
+                window.closestEpoch(25 * 3600 + 10 * 60, feedTs));
+        assertEquals(Instant.parse("2026-03-02T22:50:00Z").getEpochSecond(),
+                window.closestEpoch(23 * 3600 + 50 * 60, feedTs));
+        assertEquals(-1, window.closestEpoch(-1, feedTs));
+    }
+
+    @Test
+    @DisplayName("should reuse the window while the feed date does not change")
+    void shouldReuseWindowForSameDate() {
+        long morning = Instant.parse("2026-03-03T07:00:00Z").getEpochSecond();
+        ServiceDayClock.Window window = clock.windowFor(morning);
+
+        assertSame(window, clock.windowFor(morning + 3600));
+        assertEquals(clock.originOf(LocalDate.of(2026, 3, 2)) + 100,
+                window.epochOf(ServiceDayClock.Window.YESTERDAY, 100));
+    }
+}